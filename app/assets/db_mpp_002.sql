@@ -0,0 +1,8 @@
+CREATE INDEX messages_chat_id_send_time_idx ON messages (chat_id, send_time);
+CREATE INDEX messages_read_state_chat_id_idx ON messages (read, state, chat_id);
+CREATE INDEX messages_author_id_recipient_id_idx ON messages (author_id, recipient_id);
+CREATE INDEX messages_recipient_id_idx ON messages (recipient_id);
+CREATE INDEX user_chats_chat_id_idx ON user_chats (chat_id);
+CREATE INDEX user_contacts_contact_id_idx ON user_contacts (contact_id);
+CREATE INDEX users_account_id_idx ON users (account_id);
+CREATE INDEX chats_account_id_idx ON chats (account_id);
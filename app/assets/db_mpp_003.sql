@@ -0,0 +1,2 @@
+DROP INDEX messages_chat_id_send_time_idx;
+CREATE INDEX messages_chat_id_send_time_id_idx ON messages (chat_id, send_time, id);
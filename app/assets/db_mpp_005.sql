@@ -0,0 +1,5 @@
+CREATE VIRTUAL TABLE messages_fts USING fts3 (title, body);
+INSERT INTO messages_fts (docid, title, body) SELECT rowid, title, body FROM messages;
+CREATE TRIGGER messages_fts_insert AFTER INSERT ON messages BEGIN INSERT INTO messages_fts (docid, title, body) VALUES (new.rowid, new.title, new.body); END;
+CREATE TRIGGER messages_fts_update AFTER UPDATE OF title, body ON messages BEGIN UPDATE messages_fts SET title = new.title, body = new.body WHERE docid = new.rowid; END;
+CREATE TRIGGER messages_fts_delete AFTER DELETE ON messages BEGIN DELETE FROM messages_fts WHERE docid = old.rowid; END;
@@ -0,0 +1,11 @@
+DROP TRIGGER messages_fts_insert;
+DROP TRIGGER messages_fts_update;
+DROP TRIGGER messages_fts_delete;
+ALTER TABLE messages ADD COLUMN fts_docid integer;
+UPDATE messages SET fts_docid = rowid;
+CREATE UNIQUE INDEX messages_fts_docid_idx ON messages (fts_docid);
+DELETE FROM messages_fts;
+INSERT INTO messages_fts (docid, title, body) SELECT fts_docid, title, body FROM messages;
+CREATE TRIGGER messages_fts_insert AFTER INSERT ON messages BEGIN INSERT INTO messages_fts (title, body) VALUES (new.title, new.body); UPDATE messages SET fts_docid = last_insert_rowid() WHERE id = new.id; END;
+CREATE TRIGGER messages_fts_update AFTER UPDATE OF title, body ON messages BEGIN UPDATE messages_fts SET title = new.title, body = new.body WHERE docid = new.fts_docid; END;
+CREATE TRIGGER messages_fts_delete AFTER DELETE ON messages BEGIN DELETE FROM messages_fts WHERE docid = old.fts_docid; END;
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.benchmarks;
+
+import com.google.inject.Inject;
+import org.openjdk.jmh.annotations.*;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.accounts.AccountService;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.users.User;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups of accounts done by long poll threads ({@link AccountService#getAccountByEntity(Entity)}) and UI threads
+ * ({@link AccountService#getEnabledAccounts()}, {@link AccountService#getEnabledAccountUsers()}) while sync data of
+ * account is saved by another thread
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AccountServiceBenchmark {
+
+	@Inject
+	@Nonnull
+	private AccountService accountService;
+
+	private Account account;
+
+	private Entity contact;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		final BenchmarksRunner runner = BenchmarksRunner.getCurrent();
+		runner.injectMembers(this);
+
+		account = runner.getAccount3();
+		contact = runner.getContact(account, 0).getEntity();
+	}
+
+	@Benchmark
+	@Group("lookup")
+	@GroupThreads(2)
+	public Account longPollLookup() {
+		return accountService.getAccountByEntity(contact);
+	}
+
+	@Benchmark
+	@Group("lookup")
+	@GroupThreads(2)
+	public Collection<User> uiLookup() {
+		accountService.getEnabledAccounts();
+		return accountService.getEnabledAccountUsers();
+	}
+
+	@Benchmark
+	@Group("lookup")
+	@GroupThreads(1)
+	public Account syncDataSaved() {
+		final Account account = accountService.getAccountById(this.account.getId());
+		accountService.saveAccountSyncData(account);
+		return account;
+	}
+}
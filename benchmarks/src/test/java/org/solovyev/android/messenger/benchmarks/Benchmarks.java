@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.benchmarks;
+
+import org.joda.time.DateTime;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.messages.MutableMessage;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.solovyev.android.messenger.messages.Messages.newMessage;
+
+/**
+ * Synthetic data for benchmarks
+ */
+final class Benchmarks {
+
+	@Nonnull
+	private static final AtomicInteger counter = new AtomicInteger();
+
+	private Benchmarks() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * @return unique number, used for ids of generated entities
+	 */
+	static int nextIndex() {
+		return counter.incrementAndGet();
+	}
+
+	@Nonnull
+	static List<MutableMessage> newMessages(@Nonnull Account account,
+											@Nonnull Entity chat,
+											@Nonnull Entity author,
+											@Nonnull Entity recipient,
+											int count) {
+		final DateTime now = DateTime.now();
+
+		final List<MutableMessage> messages = new ArrayList<MutableMessage>(count);
+		for (int i = 0; i < count; i++) {
+			final MutableMessage message = newMessage(account.newMessageEntity("benchmark_" + nextIndex()));
+			message.setChat(chat);
+			message.setAuthor(author);
+			message.setRecipient(recipient);
+			message.setSendDate(now.plusSeconds(i));
+			message.setBody("body_" + i);
+			message.setRead(i % 3 == 0);
+			message.getProperties().setProperty("property_1", "test");
+			messages.add(message);
+		}
+		return messages;
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.benchmarks;
+
+import org.junit.Test;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.solovyev.android.messenger.DefaultMessengerTest;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.users.User;
+import roboguice.RoboGuice;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Runs JMH benchmarks of this module against the in-memory database populated by {@link DefaultMessengerTest}.
+ * <p/>
+ * Android classes are available only through Robolectric's class loader, so JMH is started from the test and runs
+ * benchmarks in the same JVM (without forks). Benchmarks get services with {@link #injectMembers(Object)}.
+ * <p/>
+ * Usage:
+ * <pre>
+ * mvn -Pbenchmarks install -DskipTests
+ * mvn -Pbenchmarks test -pl benchmarks [-Dbenchmarks.include=MessageDaoBenchmark] [-Dbenchmarks.iterations=10]
+ * </pre>
+ */
+public class BenchmarksRunner extends DefaultMessengerTest {
+
+	@Nullable
+	private static volatile BenchmarksRunner current;
+
+	@Test
+	public void runBenchmarks() throws Exception {
+		final Options options = new OptionsBuilder()
+				.include(System.getProperty("benchmarks.include", ".*Benchmark.*"))
+				.forks(0)
+				.warmupIterations(Integer.getInteger("benchmarks.warmups", 5))
+				.measurementIterations(Integer.getInteger("benchmarks.iterations", 10))
+				.build();
+
+		current = this;
+		try {
+			new Runner(options).run();
+		} finally {
+			current = null;
+		}
+	}
+
+	@Nonnull
+	static BenchmarksRunner getCurrent() {
+		final BenchmarksRunner result = current;
+		if (result == null) {
+			throw new IllegalStateException("Benchmarks must be run by " + BenchmarksRunner.class.getSimpleName());
+		}
+		return result;
+	}
+
+	void injectMembers(@Nonnull Object benchmark) {
+		RoboGuice.getInjector(getApplication()).injectMembers(benchmark);
+	}
+
+	@Nonnull
+	User getContact(@Nonnull Account account, int i) {
+		return getContactForAccount(account, i);
+	}
+}
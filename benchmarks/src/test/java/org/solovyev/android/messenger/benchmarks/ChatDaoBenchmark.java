@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.benchmarks;
+
+import com.google.inject.Inject;
+import org.openjdk.jmh.annotations.*;
+import org.solovyev.android.messenger.MergeDaoResult;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.chats.AccountChat;
+import org.solovyev.android.messenger.chats.Chat;
+import org.solovyev.android.messenger.chats.ChatService;
+import org.solovyev.android.messenger.chats.SqliteChatDao;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.users.User;
+import org.solovyev.android.messenger.users.UserService;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.solovyev.android.messenger.chats.Chats.newPrivateAccountChat;
+
+/**
+ * {@link SqliteChatDao#mergeChats(String, Iterable)} of new chats (with their messages) and of already saved chats
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ChatDaoBenchmark {
+
+	private static final int MESSAGES_IN_CHAT = 10;
+
+	@Param({"1", "10", "50"})
+	private int chatsCount;
+
+	@Inject
+	@Nonnull
+	private SqliteChatDao dao;
+
+	@Inject
+	@Nonnull
+	private ChatService chatService;
+
+	@Inject
+	@Nonnull
+	private UserService userService;
+
+	private BenchmarksRunner runner;
+
+	private Account account;
+
+	private List<AccountChat> savedChats;
+
+	private List<AccountChat> newChats;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		runner = BenchmarksRunner.getCurrent();
+		runner.injectMembers(this);
+
+		account = runner.getAccount3();
+		savedChats = newChats();
+		dao.mergeChats(account.getUser().getId(), savedChats);
+	}
+
+	@Setup(Level.Invocation)
+	public void prepareNewChats() {
+		newChats = newChats();
+	}
+
+	@Nonnull
+	private List<AccountChat> newChats() {
+		final User user = account.getUser();
+
+		final List<User> contacts = new ArrayList<User>(chatsCount);
+		for (int i = 0; i < chatsCount; i++) {
+			contacts.add(runner.getContact(account, 1000 + Benchmarks.nextIndex()));
+		}
+		// chat participants must exist
+		userService.mergeContacts(account, contacts, false, false);
+
+		final List<AccountChat> chats = new ArrayList<AccountChat>(chatsCount);
+		for (User contact : contacts) {
+			final Entity chat = chatService.getPrivateChatId(user.getEntity(), contact.getEntity());
+			chats.add(newPrivateAccountChat(chat, user, contact, Benchmarks.newMessages(account, chat, contact.getEntity(), user.getEntity(), MESSAGES_IN_CHAT)));
+		}
+		return chats;
+	}
+
+	@Benchmark
+	public MergeDaoResult<Chat, String> mergeNewChats() {
+		return dao.mergeChats(account.getUser().getId(), newChats);
+	}
+
+	@Benchmark
+	public MergeDaoResult<Chat, String> mergeSavedChats() {
+		return dao.mergeChats(account.getUser().getId(), savedChats);
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.benchmarks;
+
+import com.google.inject.Inject;
+import org.openjdk.jmh.annotations.*;
+import org.solovyev.android.messenger.chats.ChatService;
+import org.solovyev.android.messenger.chats.DefaultChatService;
+import org.solovyev.android.messenger.chats.UiChat;
+import org.solovyev.android.messenger.users.User;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DefaultChatService#getLastUiChats(User, String, int)} and {@link DefaultChatService#getLastUiChats(String, int)}
+ * which are used to fill the list of chats
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ChatServiceBenchmark {
+
+	private static final int COUNT = 20;
+
+	@Inject
+	@Nonnull
+	private ChatService chatService;
+
+	private User user;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		final BenchmarksRunner runner = BenchmarksRunner.getCurrent();
+		runner.injectMembers(this);
+
+		user = runner.getAccount3().getUser();
+	}
+
+	@Benchmark
+	public List<UiChat> getLastUiChatsOfUser() {
+		return chatService.getLastUiChats(user, null, COUNT);
+	}
+
+	@Benchmark
+	public List<UiChat> getLastUiChatsOfUserWithQuery() {
+		return chatService.getLastUiChats(user, "first_name_1", COUNT);
+	}
+
+	@Benchmark
+	public List<UiChat> getLastUiChats() {
+		return chatService.getLastUiChats(null, COUNT);
+	}
+}
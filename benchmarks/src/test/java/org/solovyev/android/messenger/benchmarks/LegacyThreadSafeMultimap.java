@@ -0,0 +1,90 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.benchmarks;
+
+import org.solovyev.common.collections.multimap.ThreadSafeMultimap;
+
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Previous implementation of {@link ThreadSafeMultimap}, kept for comparison: all updates are serialized, changes of
+ * objects in all keys copy the whole map and reads are not synchronized at all.
+ */
+final class LegacyThreadSafeMultimap<K, V> {
+
+	@Nonnull
+	private volatile Map<K, List<V>> map;
+
+	LegacyThreadSafeMultimap(@Nonnull Map<K, List<V>> map) {
+		this.map = map;
+	}
+
+	@Nonnull
+	public List<V> get(@Nonnull K key) {
+		final List<V> values = map.get(key);
+		if (values == null) {
+			return (List<V>) ThreadSafeMultimap.NO_VALUE;
+		} else {
+			return unmodifiableList(values);
+		}
+	}
+
+	public synchronized boolean update(@Nonnull K key, @Nonnull ThreadSafeMultimap.ListUpdater<V> updater) {
+		final List<V> newValue = updater.update(get(key));
+		if (newValue != null) {
+			map.put(key, newValue);
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	public synchronized boolean updateAll(@Nonnull ThreadSafeMultimap.ListUpdater<V> updater) {
+		// as ObjectsChangedMapUpdater did: whole map is copied if any list is changed
+		Map<K, List<V>> newMap = null;
+		for (Map.Entry<K, List<V>> entry : map.entrySet()) {
+			final List<V> newValues = updater.update(entry.getValue());
+			if (newValues != null) {
+				if (newMap == null) {
+					newMap = copy(map);
+				}
+				newMap.put(entry.getKey(), newValues);
+			}
+		}
+
+		if (newMap != null) {
+			map = newMap;
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	@Nonnull
+	static <K, V> Map<K, List<V>> copy(@Nonnull Map<K, List<V>> map) {
+		final Map<K, List<V>> copy = new HashMap<K, List<V>>(map.size());
+		for (Map.Entry<K, List<V>> entry : map.entrySet()) {
+			copy.put(entry.getKey(), ThreadSafeMultimap.copy(entry.getValue()));
+		}
+		return copy;
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.benchmarks;
+
+import com.google.inject.Inject;
+import org.openjdk.jmh.annotations.*;
+import org.solovyev.android.messenger.MergeDaoResult;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.chats.Chat;
+import org.solovyev.android.messenger.chats.ChatService;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.messages.MutableMessage;
+import org.solovyev.android.messenger.messages.SqliteMessageDao;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SqliteMessageDao#mergeMessages(String, java.util.Collection)} of new messages (inserts) and of already
+ * saved messages (updates). Messages table is cleared before each trial (database is shared by all benchmarks run in the
+ * same JVM) and contains exactly {@link #otherMessages} messages of another chat and {@link #batchSize} saved messages
+ * of the benchmarked chat. Messages inserted by {@link #mergeNewMessages()} are removed after each invocation, so every
+ * invocation inserts into the table of the same size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MessageDaoBenchmark {
+
+	private static final int PREFILL_BATCH_SIZE = 1000;
+
+	@Param({"10", "100", "1000"})
+	private int batchSize;
+
+	@Param({"0", "100000"})
+	private int otherMessages;
+
+	@Inject
+	@Nonnull
+	private SqliteMessageDao dao;
+
+	@Inject
+	@Nonnull
+	private ChatService chatService;
+
+	private Account account;
+
+	private Entity author;
+
+	private Entity recipient;
+
+	private Chat chat;
+
+	private List<MutableMessage> savedMessages;
+
+	private List<MutableMessage> newMessages;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		final BenchmarksRunner runner = BenchmarksRunner.getCurrent();
+		runner.injectMembers(this);
+
+		account = runner.getAccount3();
+		author = account.getUser().getEntity();
+		recipient = runner.getContact(account, 0).getEntity();
+		chat = chatService.getOrCreatePrivateChat(author, recipient);
+
+		// messages (together with their full text index and chat summaries) might be left by previous benchmarks
+		dao.deleteAll();
+
+		final Entity otherRecipient = runner.getContact(account, 1).getEntity();
+		final Chat otherChat = chatService.getOrCreatePrivateChat(author, otherRecipient);
+		for (int count = 0; count < otherMessages; count += PREFILL_BATCH_SIZE) {
+			dao.mergeMessages(otherChat.getId(), Benchmarks.newMessages(account, otherChat.getEntity(), author, otherRecipient, Math.min(PREFILL_BATCH_SIZE, otherMessages - count)));
+		}
+
+		savedMessages = Benchmarks.newMessages(account, chat.getEntity(), author, recipient, batchSize);
+		dao.mergeMessages(chat.getId(), savedMessages);
+	}
+
+	@Setup(Level.Invocation)
+	public void prepareNewMessages() {
+		newMessages = Benchmarks.newMessages(account, chat.getEntity(), author, recipient, batchSize);
+	}
+
+	@TearDown(Level.Invocation)
+	public void removeNewMessages() {
+		// no-op for mergeSavedMessages: new messages are prepared but never saved
+		for (MutableMessage newMessage : newMessages) {
+			dao.deleteById(newMessage.getId());
+		}
+	}
+
+	@Benchmark
+	public MergeDaoResult<Message, String> mergeNewMessages() {
+		return dao.mergeMessages(chat.getId(), newMessages);
+	}
+
+	@Benchmark
+	public MergeDaoResult<Message, String> mergeSavedMessages() {
+		return dao.mergeMessages(chat.getId(), savedMessages);
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.benchmarks;
+
+import com.google.inject.Inject;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.*;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.chats.Chat;
+import org.solovyev.android.messenger.chats.ChatService;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.messages.MessageService;
+import org.solovyev.android.messenger.messages.MutableMessage;
+import org.solovyev.android.messenger.messages.SqliteMessageDao;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.solovyev.android.messenger.messages.Messages.newMessage;
+
+/**
+ * {@link MessageService#searchMessages(String, int, int)} on a database with {@link #MESSAGES_COUNT} messages. Words of
+ * messages are taken from a vocabulary with skewed distribution, so there are both frequent and rare words: "word0" is
+ * the most frequent word, "word19999" is one of the rarest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MessageSearchBenchmark {
+
+	private static final int MESSAGES_COUNT = 500000;
+	private static final int BATCH_SIZE = 1000;
+	private static final int CHATS_COUNT = 10;
+	// chats with contacts which are not used by other benchmarks
+	private static final int FIRST_CONTACT = 10;
+	private static final int VOCABULARY_SIZE = 20000;
+	private static final int WORDS_IN_MESSAGE = 8;
+	private static final int PAGE_SIZE = 30;
+
+	@Param({"word0", "word19999", "word12", "word1 word100", "nothing"})
+	private String query;
+
+	@Inject
+	@Nonnull
+	private SqliteMessageDao dao;
+
+	@Inject
+	@Nonnull
+	private MessageService messageService;
+
+	@Inject
+	@Nonnull
+	private ChatService chatService;
+
+	@Nonnull
+	private final Random random = new Random(42);
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		final BenchmarksRunner runner = BenchmarksRunner.getCurrent();
+		runner.injectMembers(this);
+
+		final Account account = runner.getAccount3();
+		final Entity author = account.getUser().getEntity();
+
+		final List<Chat> chats = new ArrayList<Chat>(CHATS_COUNT);
+		final List<Entity> recipients = new ArrayList<Entity>(CHATS_COUNT);
+		int count = 0;
+		for (int i = 0; i < CHATS_COUNT; i++) {
+			final Entity recipient = runner.getContact(account, FIRST_CONTACT + i).getEntity();
+			final Chat chat = chatService.getOrCreatePrivateChat(author, recipient);
+			chats.add(chat);
+			recipients.add(recipient);
+			count += dao.getMessagesCount(chat.getId());
+		}
+
+		// messages are kept in the database between trials
+		final DateTime start = DateTime.now().minusYears(1);
+		for (; count < MESSAGES_COUNT; count += BATCH_SIZE) {
+			final int chatIndex = (count / BATCH_SIZE) % CHATS_COUNT;
+			final Chat chat = chats.get(chatIndex);
+			dao.mergeMessages(chat.getId(), newMessages(account, chat, recipients.get(chatIndex), start.plusMinutes(count), BATCH_SIZE));
+		}
+	}
+
+	@Benchmark
+	public List<Message> searchFirstPage() {
+		return messageService.searchMessages(query, 0, PAGE_SIZE);
+	}
+
+	@Benchmark
+	public List<Message> searchTenthPage() {
+		return messageService.searchMessages(query, 9 * PAGE_SIZE, PAGE_SIZE);
+	}
+
+	@Nonnull
+	private List<Message> newMessages(@Nonnull Account account, @Nonnull Chat chat, @Nonnull Entity recipient, @Nonnull DateTime sendDate, int count) {
+		final Entity author = account.getUser().getEntity();
+
+		final List<Message> messages = new ArrayList<Message>(count);
+		for (int i = 0; i < count; i++) {
+			final MutableMessage message = newMessage(account.newMessageEntity("search_" + Benchmarks.nextIndex()));
+			message.setChat(chat.getEntity());
+			message.setAuthor(author);
+			message.setRecipient(recipient);
+			message.setSendDate(sendDate.plusSeconds(i));
+			message.setBody(newBody());
+			messages.add(message);
+		}
+		return messages;
+	}
+
+	@Nonnull
+	private String newBody() {
+		final StringBuilder body = new StringBuilder();
+		for (int i = 0; i < WORDS_IN_MESSAGE; i++) {
+			if (i > 0) {
+				body.append(' ');
+			}
+			// squared uniform value gives skewed distribution: small indices are much more frequent
+			final double r = random.nextDouble();
+			body.append("word").append((int) (r * r * VOCABULARY_SIZE));
+		}
+		return body.toString();
+	}
+}
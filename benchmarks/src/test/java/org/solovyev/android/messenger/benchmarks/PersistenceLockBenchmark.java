@@ -0,0 +1,88 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.users.PersistenceLock;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.solovyev.android.messenger.entities.Entities.newEntity;
+
+/**
+ * Merges done concurrently under {@link PersistenceLock}: each merge holds the lock of its account while "writing" and
+ * then the lock of one of the entities of the account. Threads are distributed over {@link #accounts} accounts, with one
+ * account all merges are serialized as it was with the global lock.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(8)
+public class PersistenceLockBenchmark {
+
+	// emulates work done by DAO while the lock is held
+	private static final long WORK_TOKENS = 1000;
+
+	@Param({"1", "4"})
+	private int accounts;
+
+	private PersistenceLock lock;
+
+	@Nonnull
+	private final AtomicInteger threads = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		lock = new PersistenceLock();
+		threads.set(0);
+	}
+
+	@State(Scope.Thread)
+	public static class Merger {
+
+		private String accountId;
+
+		private int counter;
+
+		@Setup(Level.Trial)
+		public void setUp(@Nonnull PersistenceLockBenchmark benchmark) {
+			accountId = "test~" + benchmark.threads.getAndIncrement() % benchmark.accounts;
+		}
+	}
+
+	@Benchmark
+	public void merge(@Nonnull Merger merger) {
+		lock.lockAccount(merger.accountId);
+		try {
+			Blackhole.consumeCPU(WORK_TOKENS);
+		} finally {
+			lock.unlockAccount(merger.accountId);
+		}
+
+		final Entity entity = newEntity(merger.accountId, String.valueOf(merger.counter++ % 100));
+		lock.lockEntity(entity);
+		try {
+			Blackhole.consumeCPU(WORK_TOKENS / 10);
+		} finally {
+			lock.unlockEntity(entity);
+		}
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.solovyev.android.messenger.users.MutableUser;
+import org.solovyev.android.messenger.users.PhoneNumber;
+import org.solovyev.android.messenger.users.PhoneNumberIndex;
+import org.solovyev.android.messenger.users.User;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.solovyev.android.messenger.entities.Entities.newEntity;
+import static org.solovyev.android.messenger.users.PhoneNumber.newPhoneNumber;
+import static org.solovyev.android.messenger.users.PhoneNumberIndex.newPhoneNumberIndex;
+import static org.solovyev.android.messenger.users.User.PROPERTY_PHONE;
+import static org.solovyev.android.messenger.users.User.PROPERTY_PHONES;
+import static org.solovyev.android.messenger.users.Users.newEmptyUser;
+
+/**
+ * Lookup of contact by phone number of incoming SMS or call: {@link PhoneNumberIndex} against linear scan of contacts
+ * (as it was done by SMS realm before)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PhoneNumberIndexBenchmark {
+
+	@Param({"10000"})
+	private int contactsCount;
+
+	private List<User> contacts;
+
+	private PhoneNumberIndex index;
+
+	private int counter;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		// Robolectric must be initialized for PhoneNumberUtils
+		BenchmarksRunner.getCurrent();
+
+		contacts = new ArrayList<User>(contactsCount);
+		for (int i = 0; i < contactsCount; i++) {
+			final MutableUser contact = newEmptyUser(newEntity("sms~01", "contact_" + i));
+			contact.getProperties().setProperty(PROPERTY_PHONE, getMobilePhone(i));
+			contact.getProperties().setProperty(PROPERTY_PHONES, getMobilePhone(i) + User.PROPERTY_PHONES_SEPARATOR + getHomePhone(i));
+			contacts.add(contact);
+		}
+		index = newPhoneNumberIndex(contacts);
+	}
+
+	@Nonnull
+	private static String getMobilePhone(int i) {
+		return String.format("+7 911 %07d", i);
+	}
+
+	@Nonnull
+	private static String getHomePhone(int i) {
+		return String.format("+7 812 %07d", i);
+	}
+
+	@Nonnull
+	private String nextPhone() {
+		// home phones are checked after the default ones => worst case for linear scan
+		return getHomePhone(counter++ % contactsCount);
+	}
+
+	@Benchmark
+	public User index() {
+		return index.find(nextPhone());
+	}
+
+	@Benchmark
+	public User linearScan() {
+		final PhoneNumber phoneNumber = newPhoneNumber(nextPhone());
+		for (User contact : contacts) {
+			if (isSamePhone(phoneNumber, contact.getPropertyValueByName(PROPERTY_PHONE))) {
+				return contact;
+			}
+			for (String phone : contact.getPhoneNumbers()) {
+				if (isSamePhone(phoneNumber, phone)) {
+					return contact;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static boolean isSamePhone(@Nonnull PhoneNumber phoneNumber, @Nullable String phone) {
+		return phone != null && newPhoneNumber(phone).same(phoneNumber);
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.solovyev.common.collections.multimap.ObjectAddedUpdater;
+import org.solovyev.common.collections.multimap.ObjectRemovedUpdater;
+import org.solovyev.common.collections.multimap.ObjectsChangedUpdater;
+import org.solovyev.common.collections.multimap.ThreadSafeMultimap;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.solovyev.common.collections.multimap.ThreadSafeMultimap.newThreadSafeMultimap;
+
+/**
+ * Updates of {@link ThreadSafeMultimap} as done by UserChats and ChatParticipants (UserContacts uses the same scheme): adding/removing of value
+ * to/from the list of one key and replacing of changed value in lists of all keys. Reads are done concurrently by other threads.
+ * Same operations are done over {@link LegacyThreadSafeMultimap} (groups with "legacy_" prefix).
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ThreadSafeMultimapBenchmark {
+
+	@Param({"10", "100"})
+	private int keysCount;
+
+	@Param({"10", "100"})
+	private int valuesCount;
+
+	private ThreadSafeMultimap<Integer, String> multimap;
+
+	private LegacyThreadSafeMultimap<Integer, String> legacyMultimap;
+
+	private int counter;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		final Map<Integer, List<String>> map = new HashMap<Integer, List<String>>(keysCount);
+		for (int i = 0; i < keysCount; i++) {
+			final List<String> values = new ArrayList<String>(valuesCount);
+			for (int j = 0; j < valuesCount; j++) {
+				values.add("value_" + (i * valuesCount + j));
+			}
+			map.put(i, values);
+		}
+		multimap = newThreadSafeMultimap(map);
+		legacyMultimap = new LegacyThreadSafeMultimap<Integer, String>(LegacyThreadSafeMultimap.copy(map));
+	}
+
+	@Benchmark
+	@Group("add")
+	@GroupThreads(1)
+	public boolean addValue() {
+		final int key = counter++ % keysCount;
+		final String value = "new_value_" + key;
+		multimap.update(key, new ObjectAddedUpdater<String>(value));
+		// value is removed right after it was added to keep size of lists constant
+		return multimap.update(key, new ObjectRemovedUpdater<String>(value));
+	}
+
+	@Benchmark
+	@Group("add")
+	@GroupThreads(3)
+	public List<String> addValueReaders() {
+		return multimap.get(counter % keysCount);
+	}
+
+	@Benchmark
+	@Group("change")
+	@GroupThreads(1)
+	public boolean changeValue() {
+		return multimap.updateAll(new ObjectsChangedUpdater<String>(nextChangedValue()));
+	}
+
+	@Benchmark
+	@Group("change")
+	@GroupThreads(3)
+	public List<String> changeValueReaders() {
+		return multimap.get(counter % keysCount);
+	}
+
+	@Benchmark
+	@Group("legacy_add")
+	@GroupThreads(1)
+	public boolean legacyAddValue() {
+		final int key = counter++ % keysCount;
+		final String value = "new_value_" + key;
+		legacyMultimap.update(key, new ObjectAddedUpdater<String>(value));
+		return legacyMultimap.update(key, new ObjectRemovedUpdater<String>(value));
+	}
+
+	@Benchmark
+	@Group("legacy_add")
+	@GroupThreads(3)
+	public List<String> legacyAddValueReaders() {
+		return legacyMultimap.get(counter % keysCount);
+	}
+
+	@Benchmark
+	@Group("legacy_change")
+	@GroupThreads(1)
+	public boolean legacyChangeValue() {
+		return legacyMultimap.updateAll(new ObjectsChangedUpdater<String>(nextChangedValue()));
+	}
+
+	@Benchmark
+	@Group("legacy_change")
+	@GroupThreads(3)
+	public List<String> legacyChangeValueReaders() {
+		return legacyMultimap.get(counter % keysCount);
+	}
+
+	@Nonnull
+	private String nextChangedValue() {
+		// new instance equal to the existing value
+		return new String("value_" + (counter++ % (keysCount * valuesCount)));
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.benchmarks;
+
+import com.google.inject.Inject;
+import org.openjdk.jmh.annotations.*;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.chats.Chat;
+import org.solovyev.android.messenger.chats.ChatEventType;
+import org.solovyev.android.messenger.chats.ChatService;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.messages.MutableMessage;
+import org.solovyev.android.messenger.messages.UnreadMessagesCounter;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Updates of {@link UnreadMessagesCounter} on chat events (events are delivered synchronously in tests)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UnreadMessagesCounterBenchmark {
+
+	private static final int MESSAGES_COUNT = 10;
+
+	@Inject
+	@Nonnull
+	private UnreadMessagesCounter counter;
+
+	@Inject
+	@Nonnull
+	private ChatService chatService;
+
+	private Chat chat;
+
+	private Message message;
+
+	private List<Message> messages;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		final BenchmarksRunner runner = BenchmarksRunner.getCurrent();
+		runner.injectMembers(this);
+		counter.init();
+
+		final Account account = runner.getAccount3();
+		final Entity user = account.getUser().getEntity();
+		final Entity contact = runner.getContact(account, 0).getEntity();
+		chat = chatService.getOrCreatePrivateChat(user, contact);
+
+		final List<MutableMessage> incomingMessages = Benchmarks.newMessages(account, chat.getEntity(), contact, user, MESSAGES_COUNT);
+		for (MutableMessage incomingMessage : incomingMessages) {
+			incomingMessage.setRead(false);
+		}
+		messages = new ArrayList<Message>(incomingMessages);
+		message = messages.get(0);
+	}
+
+	@Benchmark
+	public int messageAdded() {
+		chatService.fireEvent(ChatEventType.message_added.newEvent(chat, message));
+		return counter.getUnreadMessagesCount();
+	}
+
+	@Benchmark
+	public int messagesAdded() {
+		chatService.fireEvent(ChatEventType.messages_added.newEvent(chat, messages));
+		return counter.getUnreadMessagesCount();
+	}
+
+	@Benchmark
+	public int messageRead() {
+		chatService.fireEvent(ChatEventType.message_read.newEvent(chat, message));
+		return counter.getUnreadMessagesCount();
+	}
+}
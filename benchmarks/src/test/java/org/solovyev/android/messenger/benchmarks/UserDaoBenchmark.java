@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.benchmarks;
+
+import com.google.inject.Inject;
+import org.openjdk.jmh.annotations.*;
+import org.solovyev.android.messenger.MergeDaoResult;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.users.SqliteUserDao;
+import org.solovyev.android.messenger.users.User;
+import org.solovyev.android.properties.AProperty;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.solovyev.android.properties.Properties.newProperty;
+
+/**
+ * {@link SqliteUserDao#mergeLinkedEntities(String, Iterable, boolean, boolean)} of new contacts and of already saved
+ * contacts (the usual case of contacts synchronization). Saved contacts carry {@link #EXTRA_PROPERTIES} additional
+ * properties and one of them is changed before each invocation of {@link #mergeChangedContacts()}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class UserDaoBenchmark {
+
+	private static final int EXTRA_PROPERTIES = 12;
+
+	@Param({"10", "100", "1000"})
+	private int contactsCount;
+
+	@Inject
+	@Nonnull
+	private SqliteUserDao dao;
+
+	private BenchmarksRunner runner;
+
+	private Account account;
+
+	private List<User> savedContacts;
+
+	private List<User> newContacts;
+
+	private List<User> changedContacts;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		runner = BenchmarksRunner.getCurrent();
+		runner.injectMembers(this);
+
+		account = runner.getAccount2();
+		savedContacts = new ArrayList<User>(contactsCount);
+		for (User contact : newContacts()) {
+			for (int i = 0; i < EXTRA_PROPERTIES; i++) {
+				contact = contact.cloneWithNewProperty(newProperty("benchmark_property_" + i, String.valueOf(i)));
+			}
+			savedContacts.add(contact);
+		}
+		dao.mergeLinkedEntities(account.getUser().getId(), savedContacts, false, true);
+	}
+
+	@Setup(Level.Invocation)
+	public void prepareNewContacts() {
+		newContacts = newContacts();
+	}
+
+	@Setup(Level.Invocation)
+	public void prepareChangedContacts() {
+		final AProperty changedProperty = newProperty("benchmark_property_0", String.valueOf(Benchmarks.nextIndex()));
+		changedContacts = new ArrayList<User>(savedContacts.size());
+		for (User contact : savedContacts) {
+			changedContacts.add(contact.cloneWithNewProperty(changedProperty));
+		}
+	}
+
+	@Nonnull
+	private List<User> newContacts() {
+		final List<User> contacts = new ArrayList<User>(contactsCount);
+		for (int i = 0; i < contactsCount; i++) {
+			contacts.add(runner.getContact(account, 1000 + Benchmarks.nextIndex()));
+		}
+		return contacts;
+	}
+
+	@Benchmark
+	public MergeDaoResult<User, String> mergeNewContacts() {
+		return dao.mergeLinkedEntities(account.getUser().getId(), newContacts, false, true);
+	}
+
+	@Benchmark
+	public MergeDaoResult<User, String> mergeSavedContacts() {
+		return dao.mergeLinkedEntities(account.getUser().getId(), savedContacts, false, true);
+	}
+
+	@Benchmark
+	public MergeDaoResult<User, String> mergeChangedContacts() {
+		return dao.mergeLinkedEntities(account.getUser().getId(), changedContacts, false, true);
+	}
+}
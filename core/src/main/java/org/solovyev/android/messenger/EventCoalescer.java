@@ -0,0 +1,203 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Collects values of events which are fired one by one (for example, presence of contacts or states of messages) during
+ * a short window and delivers them as one batch per group (for example, per chat or per account user).
+ * Values with the same key (for example, entity of message) are coalesced: only the latest value is delivered.
+ *
+ * @param <G> type of group
+ * @param <K> type of key
+ * @param <V> type of value
+ */
+@ThreadSafe
+public final class EventCoalescer<G, K, V> {
+
+	public static final long DEFAULT_WINDOW_MILLIS = 100L;
+
+	@Nonnull
+	private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(@Nonnull Runnable r) {
+			final Thread thread = new Thread(r, "Event coalescer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final long windowMillis;
+
+	@Nonnull
+	private final Delivery<G, V> delivery;
+
+	@Nonnull
+	private final Object lock = new Object();
+
+	@GuardedBy("lock")
+	@Nonnull
+	private final Map<G, Batch<G, K, V>> batches = new LinkedHashMap<G, Batch<G, K, V>>();
+
+	@Nonnull
+	private final Runnable flusher = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+
+	/*
+	**********************************************************************
+	*
+	*                           STATISTICS
+	*
+	**********************************************************************
+	*/
+
+	@Nonnull
+	private final AtomicInteger queueDepth = new AtomicInteger();
+
+	@Nonnull
+	private final AtomicLong deliveredBatches = new AtomicLong();
+
+	@Nonnull
+	private final AtomicLong totalLatencyMillis = new AtomicLong();
+
+	@Nonnull
+	private final AtomicLong maxLatencyMillis = new AtomicLong();
+
+	public EventCoalescer(@Nonnull Delivery<G, V> delivery) {
+		this(DEFAULT_WINDOW_MILLIS, delivery);
+	}
+
+	public EventCoalescer(long windowMillis, @Nonnull Delivery<G, V> delivery) {
+		this.windowMillis = windowMillis;
+		this.delivery = delivery;
+	}
+
+	public void add(@Nonnull G group, @Nonnull K key, @Nonnull V value) {
+		boolean schedule = false;
+		synchronized (lock) {
+			Batch<G, K, V> batch = batches.get(group);
+			if (batch == null) {
+				batch = new Batch<G, K, V>(group);
+				batches.put(group, batch);
+				schedule = batches.size() == 1;
+			}
+
+			if (batch.values.put(key, value) == null) {
+				queueDepth.incrementAndGet();
+			}
+		}
+
+		if (schedule) {
+			scheduler.schedule(flusher, windowMillis, MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Delivers all collected values immediately
+	 */
+	public void flush() {
+		final List<Batch<G, K, V>> batches;
+		synchronized (lock) {
+			batches = new ArrayList<Batch<G, K, V>>(this.batches.values());
+			this.batches.clear();
+		}
+
+		for (Batch<G, K, V> batch : batches) {
+			queueDepth.addAndGet(-batch.values.size());
+			delivery.deliver(batch.group, new ArrayList<V>(batch.values.values()));
+
+			final long latency = System.currentTimeMillis() - batch.createdTime;
+			deliveredBatches.incrementAndGet();
+			totalLatencyMillis.addAndGet(latency);
+			long max = maxLatencyMillis.get();
+			while (latency > max && !maxLatencyMillis.compareAndSet(max, latency)) {
+				max = maxLatencyMillis.get();
+			}
+		}
+	}
+
+	/**
+	 * @return number of values waiting for delivery
+	 */
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	public long getDeliveredBatchesCount() {
+		return deliveredBatches.get();
+	}
+
+	/**
+	 * @return average time between the first value of the batch was added and the batch was delivered
+	 */
+	public long getAverageLatencyMillis() {
+		final long batches = deliveredBatches.get();
+		return batches == 0 ? 0 : totalLatencyMillis.get() / batches;
+	}
+
+	public long getMaxLatencyMillis() {
+		return maxLatencyMillis.get();
+	}
+
+	@Override
+	public String toString() {
+		return "EventCoalescer{" +
+				"queueDepth=" + getQueueDepth() +
+				", deliveredBatches=" + getDeliveredBatchesCount() +
+				", averageLatency=" + getAverageLatencyMillis() +
+				", maxLatency=" + getMaxLatencyMillis() +
+				'}';
+	}
+
+	public static interface Delivery<G, V> {
+		void deliver(@Nonnull G group, @Nonnull List<V> values);
+	}
+
+	private static final class Batch<G, K, V> {
+
+		@Nonnull
+		private final G group;
+
+		private final long createdTime = System.currentTimeMillis();
+
+		// insertion order is kept => values are delivered in order of their first appearance
+		@Nonnull
+		private final Map<K, V> values = new LinkedHashMap<K, V>();
+
+		private Batch(@Nonnull G group) {
+			this.group = group;
+		}
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import org.solovyev.android.db.DbExec;
+import org.solovyev.android.properties.AProperty;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes properties of many entities with statements compiled once per execution (all executions done by
+ * AndroidDbUtils#doDbExecs share one transaction).
+ * <p/>
+ * Each property is inserted or replaced by (entity id, property name) unique key. For entities which might already have
+ * properties in the table properties which are not written anymore are deleted by one statement per entity,
+ * i.e. properties are not deleted and inserted again on each update.
+ */
+public final class UpsertPropertiesExec implements DbExec {
+
+	@Nonnull
+	private final String tableName;
+
+	@Nonnull
+	private final String idColumnName;
+
+	// if false property with null value is removed
+	private final boolean nullValues;
+
+	@Nonnull
+	private final List<EntityProperties> entities = new ArrayList<EntityProperties>();
+
+	private UpsertPropertiesExec(@Nonnull String tableName, @Nonnull String idColumnName, boolean nullValues) {
+		this.tableName = tableName;
+		this.idColumnName = idColumnName;
+		this.nullValues = nullValues;
+	}
+
+	@Nonnull
+	public static UpsertPropertiesExec newUpsertPropertiesExec(@Nonnull String tableName, @Nonnull String idColumnName, boolean nullValues) {
+		return new UpsertPropertiesExec(tableName, idColumnName, nullValues);
+	}
+
+	/**
+	 * Properties of new entity: entity has no properties in the table yet
+	 */
+	@Nonnull
+	public UpsertPropertiesExec addNew(@Nonnull String entityId, @Nonnull Collection<AProperty> properties) {
+		entities.add(new EntityProperties(entityId, properties, false));
+		return this;
+	}
+
+	/**
+	 * Properties of existing entity: properties of entity not contained in <var>properties</var> are removed
+	 */
+	@Nonnull
+	public UpsertPropertiesExec addExisting(@Nonnull String entityId, @Nonnull Collection<AProperty> properties) {
+		entities.add(new EntityProperties(entityId, properties, true));
+		return this;
+	}
+
+	public boolean isEmpty() {
+		return entities.isEmpty();
+	}
+
+	@Override
+	public long exec(@Nonnull SQLiteDatabase db) {
+		if (entities.isEmpty()) {
+			return 0;
+		}
+
+		long result = 0;
+
+		final SQLiteStatement upsert = db.compileStatement("insert or replace into " + tableName + " (" + idColumnName + ", property_name, property_value) values (?, ?, ?)");
+		// key: number of written properties, value: statement deleting other properties
+		final Map<Integer, SQLiteStatement> deletes = new HashMap<Integer, SQLiteStatement>();
+		try {
+			final List<String> names = new ArrayList<String>();
+			for (EntityProperties entity : entities) {
+				names.clear();
+
+				for (AProperty property : entity.properties) {
+					final String value = property.getValue();
+					if (value != null || nullValues) {
+						upsert.bindString(1, entity.entityId);
+						upsert.bindString(2, property.getName());
+						if (value != null) {
+							upsert.bindString(3, value);
+						} else {
+							upsert.bindNull(3);
+						}
+						if (upsert.executeInsert() == SQL_ERROR) {
+							result = SQL_ERROR;
+						}
+						names.add(property.getName());
+					}
+				}
+
+				if (entity.existing) {
+					final SQLiteStatement delete = getDeleteStatement(db, deletes, names.size());
+					delete.bindString(1, entity.entityId);
+					for (int i = 0; i < names.size(); i++) {
+						delete.bindString(i + 2, names.get(i));
+					}
+					delete.execute();
+				}
+			}
+		} finally {
+			upsert.close();
+			for (SQLiteStatement delete : deletes.values()) {
+				delete.close();
+			}
+		}
+
+		return result;
+	}
+
+	@Nonnull
+	private SQLiteStatement getDeleteStatement(@Nonnull SQLiteDatabase db, @Nonnull Map<Integer, SQLiteStatement> deletes, int keptProperties) {
+		SQLiteStatement result = deletes.get(keptProperties);
+		if (result == null) {
+			final StringBuilder sql = new StringBuilder();
+			sql.append("delete from ").append(tableName).append(" where ").append(idColumnName).append(" = ?");
+			if (keptProperties > 0) {
+				sql.append(" and property_name not in (");
+				for (int i = 0; i < keptProperties; i++) {
+					if (i > 0) {
+						sql.append(", ");
+					}
+					sql.append("?");
+				}
+				sql.append(")");
+			}
+			result = db.compileStatement(sql.toString());
+			deletes.put(keptProperties, result);
+		}
+		return result;
+	}
+
+	private static final class EntityProperties {
+
+		@Nonnull
+		private final String entityId;
+
+		@Nonnull
+		private final Collection<AProperty> properties;
+
+		private final boolean existing;
+
+		private EntityProperties(@Nonnull String entityId, @Nonnull Collection<AProperty> properties, boolean existing) {
+			this.entityId = entityId;
+			this.properties = properties;
+			this.existing = existing;
+		}
+	}
+}
@@ -180,6 +180,22 @@ public abstract class AbstractAccount<C extends AccountConfiguration> extends JO
 		return clone;
 	}
 
+	@Nonnull
+	@Override
+	public AbstractAccount<C> updateMessagesSyncCursor(@Nullable String messagesSyncCursor) {
+		final AbstractAccount<C> clone = this.clone();
+		clone.syncData = clone.syncData.updateMessagesSyncCursor(messagesSyncCursor);
+		return clone;
+	}
+
+	@Nonnull
+	@Override
+	public AbstractAccount<C> updateContactsSyncCursor(@Nullable String contactsSyncCursor) {
+		final AbstractAccount<C> clone = this.clone();
+		clone.syncData = clone.syncData.updateContactsSyncCursor(contactsSyncCursor);
+		return clone;
+	}
+
 	@Nonnull
 	@Override
 	public AccountSyncData getSyncData() {
@@ -194,6 +210,14 @@ public abstract class AbstractAccount<C extends AccountConfiguration> extends JO
 		return clone;
 	}
 
+	@Nonnull
+	@Override
+	public final Account copyForNewUser(@Nonnull User user) {
+		final AbstractAccount clone = clone();
+		clone.user = user;
+		return clone;
+	}
+
 	@Nonnull
 	@Override
 	public AbstractAccount<C> clone() {
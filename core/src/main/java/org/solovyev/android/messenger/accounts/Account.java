@@ -28,6 +28,7 @@ import org.solovyev.android.messenger.users.CompositeUserChoice;
 import org.solovyev.android.messenger.users.User;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.List;
 
 public interface Account<C extends AccountConfiguration> extends Identifiable {
@@ -81,6 +82,9 @@ public interface Account<C extends AccountConfiguration> extends Identifiable {
 	@Nonnull
 	Account copyForNewState(@Nonnull AccountState newState);
 
+	@Nonnull
+	Account copyForNewUser(@Nonnull User user);
+
 	boolean isAccountUser(@Nonnull String accountUserId);
 	boolean isAccountUser(@Nonnull Entity entity);
 
@@ -158,6 +162,12 @@ public interface Account<C extends AccountConfiguration> extends Identifiable {
 	@Nonnull
 	Account<C> updateUserIconsSyncDate();
 
+	@Nonnull
+	Account<C> updateMessagesSyncCursor(@Nullable String messagesSyncCursor);
+
+	@Nonnull
+	Account<C> updateContactsSyncCursor(@Nullable String contactsSyncCursor);
+
 	@Nonnull
 	AccountSyncData getSyncData();
 }
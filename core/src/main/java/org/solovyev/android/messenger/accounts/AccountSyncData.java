@@ -35,6 +35,20 @@ public interface AccountSyncData extends JCloneable<AccountSyncData> {
 	@Nullable
 	DateTime getLastUserIconsSyncData();
 
+	/**
+	 * @return realm specific position in the stream of messages up to which messages have been synchronized, null if
+	 * messages have never been synchronized incrementally
+	 */
+	@Nullable
+	String getMessagesSyncCursor();
+
+	/**
+	 * @return realm specific position in the list of contacts up to which contacts have been synchronized, null if
+	 * contacts have never been synchronized incrementally
+	 */
+	@Nullable
+	String getContactsSyncCursor();
+
     /*
 	**********************************************************************
     *
@@ -51,4 +65,10 @@ public interface AccountSyncData extends JCloneable<AccountSyncData> {
 
 	@Nonnull
 	AccountSyncData updateUserIconsSyncDate();
+
+	@Nonnull
+	AccountSyncData updateMessagesSyncCursor(@Nullable String messagesSyncCursor);
+
+	@Nonnull
+	AccountSyncData updateContactsSyncCursor(@Nullable String contactsSyncCursor);
 }
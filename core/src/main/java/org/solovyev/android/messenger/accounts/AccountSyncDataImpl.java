@@ -35,38 +35,52 @@ class AccountSyncDataImpl extends JObject implements MutableAccountSyncData {
 	@Nullable
 	private DateTime lastUserIconsSyncDate;
 
+	@Nullable
+	private String messagesSyncCursor;
+
+	@Nullable
+	private String contactsSyncCursor;
+
 	private AccountSyncDataImpl() {
 	}
 
 	AccountSyncDataImpl(@Nullable DateTime lastContactsSyncDate,
 						@Nullable DateTime lastChatsSyncDate,
-						@Nullable DateTime lastUserIconsSyncDate) {
+						@Nullable DateTime lastUserIconsSyncDate,
+						@Nullable String messagesSyncCursor,
+						@Nullable String contactsSyncCursor) {
 		this.lastContactsSyncDate = lastContactsSyncDate;
 		this.lastChatsSyncDate = lastChatsSyncDate;
 		this.lastUserIconsSyncDate = lastUserIconsSyncDate;
+		this.messagesSyncCursor = messagesSyncCursor;
+		this.contactsSyncCursor = contactsSyncCursor;
 	}
 
 	@Nonnull
 	static AccountSyncDataImpl newInstance(@Nullable DateTime lastContactsSyncDate,
 										   @Nullable DateTime lastChatsSyncDate,
-										   @Nullable DateTime lastUserIconsSyncDate) {
-		return new AccountSyncDataImpl(lastContactsSyncDate, lastChatsSyncDate, lastUserIconsSyncDate);
+										   @Nullable DateTime lastUserIconsSyncDate,
+										   @Nullable String messagesSyncCursor,
+										   @Nullable String contactsSyncCursor) {
+		return new AccountSyncDataImpl(lastContactsSyncDate, lastChatsSyncDate, lastUserIconsSyncDate, messagesSyncCursor, contactsSyncCursor);
 	}
 
 	@Nonnull
 	static AccountSyncDataImpl copyOf(@Nonnull AccountSyncData accountSyncData) {
-		return new AccountSyncDataImpl(accountSyncData.getLastContactsSyncDate(), accountSyncData.getLastChatsSyncDate(), accountSyncData.getLastUserIconsSyncData());
+		return new AccountSyncDataImpl(accountSyncData.getLastContactsSyncDate(), accountSyncData.getLastChatsSyncDate(), accountSyncData.getLastUserIconsSyncData(), accountSyncData.getMessagesSyncCursor(), accountSyncData.getContactsSyncCursor());
 	}
 
 	@Nonnull
 	static AccountSyncDataImpl newInstance(@Nullable String lastContactsSyncDateString,
 										   @Nullable String lastChatsSyncDateString,
-										   @Nullable String lastUserIconsSyncDateString) {
+										   @Nullable String lastUserIconsSyncDateString,
+										   @Nullable String messagesSyncCursor,
+										   @Nullable String contactsSyncCursor) {
 		final DateTimeFormatter dateTimeFormatter = ISODateTimeFormat.basicDateTime();
 		final DateTime lastContactsSyncDate = lastContactsSyncDateString == null ? null : dateTimeFormatter.parseDateTime(lastContactsSyncDateString);
 		final DateTime lastChatsSyncDate = lastChatsSyncDateString == null ? null : dateTimeFormatter.parseDateTime(lastChatsSyncDateString);
 		final DateTime lastUserIconsSyncDate = lastUserIconsSyncDateString == null ? null : dateTimeFormatter.parseDateTime(lastUserIconsSyncDateString);
-		return AccountSyncDataImpl.newInstance(lastContactsSyncDate, lastChatsSyncDate, lastUserIconsSyncDate);
+		return AccountSyncDataImpl.newInstance(lastContactsSyncDate, lastChatsSyncDate, lastUserIconsSyncDate, messagesSyncCursor, contactsSyncCursor);
 	}
 
 	@Override
@@ -86,6 +100,18 @@ class AccountSyncDataImpl extends JObject implements MutableAccountSyncData {
 		return lastUserIconsSyncDate;
 	}
 
+	@Nullable
+	@Override
+	public String getMessagesSyncCursor() {
+		return messagesSyncCursor;
+	}
+
+	@Nullable
+	@Override
+	public String getContactsSyncCursor() {
+		return contactsSyncCursor;
+	}
+
 	@Nonnull
 	@Override
 	public MutableAccountSyncData updateChatsSyncDate() {
@@ -110,6 +136,22 @@ class AccountSyncDataImpl extends JObject implements MutableAccountSyncData {
 		return clone;
 	}
 
+	@Nonnull
+	@Override
+	public MutableAccountSyncData updateMessagesSyncCursor(@Nullable String messagesSyncCursor) {
+		final AccountSyncDataImpl clone = this.clone();
+		clone.messagesSyncCursor = messagesSyncCursor;
+		return clone;
+	}
+
+	@Nonnull
+	@Override
+	public MutableAccountSyncData updateContactsSyncCursor(@Nullable String contactsSyncCursor) {
+		final AccountSyncDataImpl clone = this.clone();
+		clone.contactsSyncCursor = contactsSyncCursor;
+		return clone;
+	}
+
 	@Override
 	public boolean isFirstSyncDone() {
 		return getLastContactsSyncDate() != null;
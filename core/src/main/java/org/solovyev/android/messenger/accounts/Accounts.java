@@ -10,14 +10,16 @@ public final class Accounts {
 
 	@Nonnull
 	public static AccountSyncData newNeverSyncedData() {
-		return new AccountSyncDataImpl(null, null, null);
+		return new AccountSyncDataImpl(null, null, null, null, null);
 	}
 
 	@Nonnull
 	public static AccountSyncData newUserSyncData(@Nullable String lastContactsSyncDate,
 												  @Nullable String lastChatsSyncDate,
-												  @Nullable String lastUserIconsSyncDate) {
-		return AccountSyncDataImpl.newInstance(lastContactsSyncDate, lastChatsSyncDate, lastUserIconsSyncDate);
+												  @Nullable String lastUserIconsSyncDate,
+												  @Nullable String messagesSyncCursor,
+												  @Nullable String contactsSyncCursor) {
+		return AccountSyncDataImpl.newInstance(lastContactsSyncDate, lastChatsSyncDate, lastUserIconsSyncDate, messagesSyncCursor, contactsSyncCursor);
 	}
 
 	@Nonnull
@@ -29,7 +29,6 @@ import org.solovyev.android.messenger.realms.RealmService;
 import org.solovyev.android.messenger.realms.Realms;
 import org.solovyev.android.messenger.security.InvalidCredentialsException;
 import org.solovyev.android.messenger.sync.SyncService;
-import org.solovyev.android.messenger.users.PersistenceLock;
 import org.solovyev.android.messenger.users.User;
 import org.solovyev.android.messenger.users.UserEvent;
 import org.solovyev.android.messenger.users.UserService;
@@ -42,6 +41,7 @@ import org.solovyev.common.listeners.Listeners;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
 import java.util.*;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -80,12 +80,24 @@ public class DefaultAccountService implements AccountService {
 	@Nonnull
 	private SyncService syncService;
 
+	/**
+	 * Lock for operations with accounts table. Entities of accounts are guarded by {@link org.solovyev.android.messenger.users.PersistenceLock}
+	 */
 	@Nonnull
-	private final Object lock;
+	private final Object lock = new Object();
 
-	@GuardedBy("accounts")
+	/**
+	 * Lock for modifications of {@link #accounts}
+	 */
 	@Nonnull
-	private final Map<String, Account> accounts = new HashMap<String, Account>();
+	private final Object accountsLock = new Object();
+
+	/**
+	 * Current accounts. Snapshot is never modified: readers use it without locking, writers replace it with new snapshot
+	 * while holding {@link #accountsLock}
+	 */
+	@Nonnull
+	private volatile AccountsSnapshot accounts = AccountsSnapshot.EMPTY;
 
 	@Nonnull
 	private AtomicInteger accountCounter = new AtomicInteger(0);
@@ -94,8 +106,7 @@ public class DefaultAccountService implements AccountService {
 	private final JEventListeners<JEventListener<? extends AccountEvent>, AccountEvent> listeners;
 
 	@Inject
-	public DefaultAccountService(@Nonnull PersistenceLock lock, @Nonnull Executor eventExecutor) {
-		this.lock = lock;
+	public DefaultAccountService(@Nonnull Executor eventExecutor) {
 		this.listeners = Listeners.newEventListenersBuilderFor(AccountEvent.class).withHardReferences().withExecutor(eventExecutor).create();
 	}
 
@@ -113,12 +124,14 @@ public class DefaultAccountService implements AccountService {
 			// remove all scheduled to remove realms
 			for (Account account : accountDao.loadAccountsInState(removed)) {
 				this.accountDao.deleteById(account.getId());
-				this.accounts.remove(account.getId());
+				synchronized (accountsLock) {
+					this.accounts = this.accounts.withoutAccount(account.getId());
+				}
 			}
 
 			for (final Realm<? extends AccountConfiguration> realm : realmService.getRealms()) {
 				if (!realm.isEnabled()) {
-					final Iterable<Account> accounts = filter(this.accounts.values(), new Predicate<Account>() {
+					final Iterable<Account> accounts = filter(this.accounts.all, new Predicate<Account>() {
 						@Override
 						public boolean apply(Account account) {
 							return account.getRealm().equals(realm);
@@ -138,54 +151,31 @@ public class DefaultAccountService implements AccountService {
 	@Nonnull
 	@Override
 	public Collection<Account> getAccounts() {
-		synchronized (this.accounts) {
-			// must copy as concurrent modification might occur (e.g. realm removal)
-			return new ArrayList<Account>(this.accounts.values());
-		}
+		return this.accounts.all;
 	}
 
 	@Nonnull
 	@Override
 	public Collection<Account> getEnabledAccounts() {
-		synchronized (this.accounts) {
-			final List<Account> result = new ArrayList<Account>(this.accounts.size());
-			for (Account account : this.accounts.values()) {
-				if (account.isEnabled()) {
-					result.add(account);
-				}
-			}
-			return result;
-		}
+		return this.accounts.enabled;
 	}
 
 	@Nonnull
 	@Override
 	public Collection<User> getEnabledAccountUsers() {
-		final List<User> result = new ArrayList<User>();
-
-		for (Account account : getEnabledAccounts()) {
-			result.add(account.getUser());
-		}
-
-		return result;
+		return this.accounts.enabledUsers;
 	}
 
 	@Nonnull
 	@Override
 	public Collection<User> getAccountUsers() {
-		final List<User> result = new ArrayList<User>();
-		synchronized (this.accounts) {
-			for (Account account : this.accounts.values()) {
-				result.add(account.getUser());
-			}
-		}
-		return result;
+		return this.accounts.users;
 	}
 
 	@Nonnull
 	@Override
 	public Account getAccountById(@Nonnull String accountId) throws UnsupportedAccountException {
-		final Account account = this.accounts.get(accountId);
+		final Account account = this.accounts.byId.get(accountId);
 		if (account == null) {
 			throw new UnsupportedAccountException(accountId);
 		}
@@ -222,8 +212,8 @@ public class DefaultAccountService implements AccountService {
 				}
 				final A newAccount = accountBuilder.build(new AccountBuilder.Data(newAccountId));
 
-				synchronized (accounts) {
-					final boolean alreadyExists = Iterables.any(accounts.values(), new Predicate<Account>() {
+				synchronized (accountsLock) {
+					final boolean alreadyExists = Iterables.any(accounts.all, new Predicate<Account>() {
 						@Override
 						public boolean apply(@Nullable Account account) {
 							return account != null && account.getState() != removed && newAccount.same(account);
@@ -271,7 +261,7 @@ public class DefaultAccountService implements AccountService {
 	}
 
 	private void createOrUpdateAccount(@Nullable Account oldAccount, @Nonnull Account newAccount) throws AccountException, InvalidCredentialsException {
-		assert Thread.holdsLock(accounts);
+		assert Thread.holdsLock(accountsLock);
 
 		synchronized (lock) {
 			try {
@@ -281,7 +271,7 @@ public class DefaultAccountService implements AccountService {
 					if (oldUser.equals(newUser)) {
 						accountDao.update(newAccount);
 						userService.saveAccountUser(newAccount.getUser());
-						accounts.put(newAccount.getId(), newAccount);
+						accounts = accounts.withAccount(newAccount);
 						listeners.fireEvent(AccountEventType.changed.newEvent(newAccount, null));
 					} else {
 						throw new InvalidCredentialsException("Account user has been changed: remove account and create new");
@@ -289,7 +279,7 @@ public class DefaultAccountService implements AccountService {
 				} else {
 					accountDao.create(newAccount);
 					userService.saveAccountUser(newAccount.getUser());
-					accounts.put(newAccount.getId(), newAccount);
+					accounts = accounts.withAccount(newAccount);
 					listeners.fireEvent(AccountEventType.created.newEvent(newAccount, null));
 				}
 			} catch (AccountRuntimeException e) {
@@ -310,8 +300,8 @@ public class DefaultAccountService implements AccountService {
 			try {
 				final Account result = account.copyForNewState(newState);
 
-				synchronized (accounts) {
-					this.accounts.put(account.getId(), result);
+				synchronized (accountsLock) {
+					this.accounts = this.accounts.withAccount(result);
 					synchronized (lock) {
 						this.accountDao.update(result);
 					}
@@ -334,8 +324,8 @@ public class DefaultAccountService implements AccountService {
 
 	@Override
 	public void saveAccountSyncData(@Nonnull Account account) {
-		synchronized (accounts) {
-			this.accounts.put(account.getId(), account);
+		synchronized (accountsLock) {
+			this.accounts = this.accounts.withAccount(account);
 			synchronized (lock) {
 				this.accountDao.update(account);
 			}
@@ -348,12 +338,7 @@ public class DefaultAccountService implements AccountService {
 	public void removeAccount(@Nonnull String accountId) {
 		syncService.waitWhileSyncFinished();
 
-		final Account account;
-
-		synchronized (accounts) {
-			account = this.accounts.get(accountId);
-		}
-
+		final Account account = this.accounts.byId.get(accountId);
 		if (account != null) {
 			changeAccountState(account, removed);
 		}
@@ -361,8 +346,8 @@ public class DefaultAccountService implements AccountService {
 
 	@Override
 	public void removeAllAccounts() {
-		synchronized (accounts) {
-			accounts.clear();
+		synchronized (accountsLock) {
+			accounts = AccountsSnapshot.EMPTY;
 		}
 
 		synchronized (lock) {
@@ -372,26 +357,22 @@ public class DefaultAccountService implements AccountService {
 
 	@Override
 	public boolean isOneAccount() {
-		synchronized (accounts) {
-			return accounts.size() == 1;
-		}
+		return accounts.all.size() == 1;
 	}
 
 	@Override
 	public boolean isOneAccount(@Nonnull Realm realm) {
-		synchronized (accounts) {
-			int count = 0;
-			for (Account account : accounts.values()) {
-				if (account.getRealm().equals(realm)) {
-					count++;
-					if (count > 1) {
-						return false;
-					}
+		int count = 0;
+		for (Account account : accounts.all) {
+			if (account.getRealm().equals(realm)) {
+				count++;
+				if (count > 1) {
+					return false;
 				}
 			}
-
-			return true;
 		}
+
+		return true;
 	}
 
 	@Nonnull
@@ -407,10 +388,10 @@ public class DefaultAccountService implements AccountService {
 
 	private void loadAccounts() {
 		final Collection<Account> realmsFromDb = accountDao.readAll();
-		synchronized (accounts) {
+		synchronized (accountsLock) {
 			int maxRealmIndex = 0;
 
-			accounts.clear();
+			final Map<String, Account> accounts = new HashMap<String, Account>(realmsFromDb.size());
 			for (Account account : realmsFromDb) {
 				final String realmId = account.getId();
 				accounts.put(realmId, account);
@@ -424,6 +405,7 @@ public class DefaultAccountService implements AccountService {
 				}
 			}
 
+			this.accounts = new AccountsSnapshot(accounts);
 			accountCounter.set(maxRealmIndex + 1);
 		}
 	}
@@ -456,6 +438,70 @@ public class DefaultAccountService implements AccountService {
 		return newArrayList(filter(getEnabledAccounts(), new CanCreateUserPredicate()));
 	}
 
+	@Immutable
+	private static final class AccountsSnapshot {
+
+		@Nonnull
+		private static final AccountsSnapshot EMPTY = new AccountsSnapshot(Collections.<String, Account>emptyMap());
+
+		@Nonnull
+		private final Map<String, Account> byId;
+
+		@Nonnull
+		private final List<Account> all;
+
+		@Nonnull
+		private final List<Account> enabled;
+
+		@Nonnull
+		private final List<User> users;
+
+		@Nonnull
+		private final List<User> enabledUsers;
+
+		/**
+		 * @param byId accounts mapped by ids, map must not be modified after this call
+		 */
+		private AccountsSnapshot(@Nonnull Map<String, Account> byId) {
+			final List<Account> all = new ArrayList<Account>(byId.size());
+			final List<Account> enabled = new ArrayList<Account>(byId.size());
+			final List<User> users = new ArrayList<User>(byId.size());
+			final List<User> enabledUsers = new ArrayList<User>(byId.size());
+			for (Account account : byId.values()) {
+				all.add(account);
+				users.add(account.getUser());
+				if (account.isEnabled()) {
+					enabled.add(account);
+					enabledUsers.add(account.getUser());
+				}
+			}
+
+			this.byId = Collections.unmodifiableMap(byId);
+			this.all = Collections.unmodifiableList(all);
+			this.enabled = Collections.unmodifiableList(enabled);
+			this.users = Collections.unmodifiableList(users);
+			this.enabledUsers = Collections.unmodifiableList(enabledUsers);
+		}
+
+		@Nonnull
+		AccountsSnapshot withAccount(@Nonnull Account account) {
+			final Map<String, Account> byId = new HashMap<String, Account>(this.byId);
+			byId.put(account.getId(), account);
+			return new AccountsSnapshot(byId);
+		}
+
+		@Nonnull
+		AccountsSnapshot withoutAccount(@Nonnull String accountId) {
+			if (byId.containsKey(accountId)) {
+				final Map<String, Account> byId = new HashMap<String, Account>(this.byId);
+				byId.remove(accountId);
+				return new AccountsSnapshot(byId);
+			} else {
+				return this;
+			}
+		}
+	}
+
 	private static class CanCreateUserPredicate implements Predicate<Account> {
 		@Override
 		public boolean apply(@Nullable Account account) {
@@ -474,10 +520,15 @@ public class DefaultAccountService implements AccountService {
 			switch (event.getType()) {
 				case changed:
 					final User user = event.getUser();
-					for (Account account : getAccounts()) {
-						if (account.getUser().equals(user)) {
-							account.setUser(user);
+					synchronized (accountsLock) {
+						// accounts of published snapshot are read without lock => they are replaced by copies instead of being modified
+						AccountsSnapshot newAccounts = accounts;
+						for (Account account : accounts.all) {
+							if (account.getUser().equals(user)) {
+								newAccounts = newAccounts.withAccount(account.copyForNewUser(user));
+							}
 						}
+						accounts = newAccounts;
 					}
 					break;
 			}
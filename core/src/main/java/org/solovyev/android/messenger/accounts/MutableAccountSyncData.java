@@ -17,6 +17,7 @@
 package org.solovyev.android.messenger.accounts;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 public interface MutableAccountSyncData extends AccountSyncData {
 
@@ -29,4 +30,10 @@ public interface MutableAccountSyncData extends AccountSyncData {
 	@Nonnull
 	MutableAccountSyncData updateUserIconsSyncDate();
 
+	@Nonnull
+	MutableAccountSyncData updateMessagesSyncCursor(@Nullable String messagesSyncCursor);
+
+	@Nonnull
+	MutableAccountSyncData updateContactsSyncCursor(@Nullable String contactsSyncCursor);
+
 }
@@ -185,6 +185,8 @@ public class SqliteAccountDao extends AbstractSQLiteHelper implements AccountDao
 			values.put("last_contacts_sync_date", lastContactsSyncDate == null ? null : dateTimeFormatter.print(lastContactsSyncDate));
 			values.put("last_chats_sync_date", lastChatsSyncDate == null ? null : dateTimeFormatter.print(lastChatsSyncDate));
 			values.put("last_user_icons_sync_date", lastUserIconsSyncDate == null ? null : dateTimeFormatter.print(lastUserIconsSyncDate));
+			values.put("messages_sync_cursor", syncData.getMessagesSyncCursor());
+			values.put("contacts_sync_cursor", syncData.getContactsSyncCursor());
 
 			return values;
 		}
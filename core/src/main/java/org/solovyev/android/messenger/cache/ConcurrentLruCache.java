@@ -0,0 +1,327 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.cache;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded cache with LRU eviction.
+ * <p/>
+ * Reads never block: value is taken from {@link ConcurrentHashMap} and access is recorded in a lossy buffer which is
+ * applied to the LRU list by the thread which manages to acquire eviction lock without waiting.
+ * Writes update the map and then update the LRU list (and evict least recently used entries) under eviction lock.
+ * <p/>
+ * Size of cache is measured by {@link Weigher}, by default each entry has weight 1 and cache is bounded by number of entries.
+ */
+@ThreadSafe
+public final class ConcurrentLruCache<K, V> {
+
+	// pending reads after which the read buffer is drained
+	private static final int DRAIN_THRESHOLD = 32;
+
+	// pending reads after which new reads are not recorded
+	private static final int MAX_PENDING_READS = 4 * DRAIN_THRESHOLD;
+
+	@Nonnull
+	private final ConcurrentMap<K, Node<K, V>> map;
+
+	@Nonnull
+	private final Weigher<? super V> weigher;
+
+	private final int maxWeight;
+
+	@Nonnull
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	/**
+	 * Sentinel of LRU list: head.next is least recently used node, head.prev is most recently used node
+	 */
+	@GuardedBy("evictionLock")
+	@Nonnull
+	private final Node<K, V> head = new Node<K, V>(null, null, 0);
+
+	@GuardedBy("evictionLock")
+	private int weight;
+
+	@Nonnull
+	private final Queue<Node<K, V>> readBuffer = new ConcurrentLinkedQueue<Node<K, V>>();
+
+	@Nonnull
+	private final AtomicInteger pendingReads = new AtomicInteger();
+
+	@Nonnull
+	private final AtomicLong hits = new AtomicLong();
+
+	@Nonnull
+	private final AtomicLong misses = new AtomicLong();
+
+	@Nonnull
+	private final AtomicLong evictions = new AtomicLong();
+
+	private ConcurrentLruCache(int maxWeight, @Nonnull Weigher<? super V> weigher) {
+		if (maxWeight <= 0) {
+			throw new IllegalArgumentException("Max weight must be positive: " + maxWeight);
+		}
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+		this.map = new ConcurrentHashMap<K, Node<K, V>>(Math.min(maxWeight, 1024));
+		this.head.prev = head;
+		this.head.next = head;
+	}
+
+	@Nonnull
+	public static <K, V> ConcurrentLruCache<K, V> newCache(int maxSize) {
+		return new ConcurrentLruCache<K, V>(maxSize, SingletonWeigher.INSTANCE);
+	}
+
+	@Nonnull
+	public static <K, V> ConcurrentLruCache<K, V> newWeightedCache(int maxWeight, @Nonnull Weigher<? super V> weigher) {
+		return new ConcurrentLruCache<K, V>(maxWeight, weigher);
+	}
+
+	@Nullable
+	public V get(@Nonnull K key) {
+		final Node<K, V> node = map.get(key);
+		if (node == null) {
+			misses.incrementAndGet();
+			return null;
+		} else {
+			hits.incrementAndGet();
+			recordRead(node);
+			return node.value;
+		}
+	}
+
+	public void put(@Nonnull K key, @Nonnull V value) {
+		final int valueWeight = weigher.weigh(value);
+		if (valueWeight > maxWeight) {
+			// will be evicted immediately anyway
+			remove(key);
+			return;
+		}
+
+		final Node<K, V> node = new Node<K, V>(key, value, valueWeight);
+		final Node<K, V> oldNode = map.put(key, node);
+
+		evictionLock.lock();
+		try {
+			drainReadBuffer();
+			if (oldNode != null) {
+				unlink(oldNode);
+			}
+			// another thread might have already replaced the node
+			if (map.get(key) == node) {
+				linkLast(node);
+			}
+			evict();
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	public void remove(@Nonnull K key) {
+		final Node<K, V> node = map.remove(key);
+		if (node != null) {
+			evictionLock.lock();
+			try {
+				unlink(node);
+			} finally {
+				evictionLock.unlock();
+			}
+		}
+	}
+
+	public void clear() {
+		evictionLock.lock();
+		try {
+			map.clear();
+			readBuffer.clear();
+			pendingReads.set(0);
+			for (Node<K, V> node = head.next; node != head; node = head.next) {
+				unlink(node);
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	public int getWeight() {
+		evictionLock.lock();
+		try {
+			return weight;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	public int getMaxWeight() {
+		return maxWeight;
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	private void recordRead(@Nonnull Node<K, V> node) {
+		final int reads = pendingReads.incrementAndGet();
+		if (reads <= MAX_PENDING_READS) {
+			readBuffer.offer(node);
+		} else {
+			// buffer is full => LRU order is approximate for this read
+			pendingReads.decrementAndGet();
+		}
+
+		if (reads >= DRAIN_THRESHOLD && evictionLock.tryLock()) {
+			try {
+				drainReadBuffer();
+			} finally {
+				evictionLock.unlock();
+			}
+		}
+	}
+
+	@GuardedBy("evictionLock")
+	private void drainReadBuffer() {
+		Node<K, V> node;
+		while ((node = readBuffer.poll()) != null) {
+			pendingReads.decrementAndGet();
+			// node might have been removed or replaced after read
+			if (node.isLinked()) {
+				unlink(node);
+				linkLast(node);
+			}
+		}
+	}
+
+	@GuardedBy("evictionLock")
+	private void evict() {
+		while (weight > maxWeight) {
+			final Node<K, V> eldest = head.next;
+			unlink(eldest);
+			if (map.remove(eldest.key, eldest)) {
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	@GuardedBy("evictionLock")
+	private void linkLast(@Nonnull Node<K, V> node) {
+		final Node<K, V> last = head.prev;
+		node.prev = last;
+		node.next = head;
+		last.next = node;
+		head.prev = node;
+		weight += node.weight;
+	}
+
+	@GuardedBy("evictionLock")
+	private void unlink(@Nonnull Node<K, V> node) {
+		if (node.isLinked()) {
+			node.prev.next = node.next;
+			node.next.prev = node.prev;
+			node.prev = null;
+			node.next = null;
+			weight -= node.weight;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ConcurrentLruCache{" +
+				"size=" + size() +
+				", maxWeight=" + maxWeight +
+				", hits=" + hits +
+				", misses=" + misses +
+				", evictions=" + evictions +
+				'}';
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	public static interface Weigher<V> {
+
+		/**
+		 * @return weight of value in cache, must be not negative
+		 */
+		int weigh(@Nonnull V value);
+	}
+
+	private static final class SingletonWeigher implements Weigher<Object> {
+
+		@Nonnull
+		private static final Weigher<Object> INSTANCE = new SingletonWeigher();
+
+		@Override
+		public int weigh(@Nonnull Object value) {
+			return 1;
+		}
+	}
+
+	private static final class Node<K, V> {
+
+		private final K key;
+
+		private final V value;
+
+		private final int weight;
+
+		// fields below are guarded by evictionLock
+		@Nullable
+		private Node<K, V> prev;
+
+		@Nullable
+		private Node<K, V> next;
+
+		private Node(K key, V value, int weight) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+		}
+
+		private boolean isLinked() {
+			return next != null;
+		}
+	}
+}
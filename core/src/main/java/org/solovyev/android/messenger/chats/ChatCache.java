@@ -16,31 +16,43 @@
 
 package org.solovyev.android.messenger.chats;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
 
+import org.solovyev.android.messenger.cache.ConcurrentLruCache;
 import org.solovyev.android.messenger.entities.Entity;
 
+import static org.solovyev.android.messenger.cache.ConcurrentLruCache.newCache;
+
+@ThreadSafe
 class ChatCache {
 
+	private static final int MAX_SIZE = 500;
+
 	// key: chat id, value: chat
 	@Nonnull
-	private final Map<Entity, Chat> chats = new HashMap<Entity, Chat>();
+	private final ConcurrentLruCache<Entity, Chat> chats;
+
+	ChatCache() {
+		this(MAX_SIZE);
+	}
+
+	ChatCache(int maxSize) {
+		chats = newCache(maxSize);
+	}
 
 	public void put(@Nonnull Chat chat) {
-		synchronized (chats) {
-			chats.put(chat.getEntity(), chat);
-		}
+		chats.put(chat.getEntity(), chat);
 	}
 
 	@Nullable
 	public Chat get(@Nonnull Entity chat) {
-		synchronized (chats) {
-			return chats.get(chat);
-		}
+		return chats.get(chat);
+	}
+
+	public void remove(@Nonnull Entity chat) {
+		chats.remove(chat);
 	}
 
 	public void onEvent(@Nonnull ChatEvent event) {
@@ -50,4 +62,9 @@ class ChatCache {
 				break;
 		}
 	}
+
+	@Override
+	public String toString() {
+		return "ChatCache{" + chats + '}';
+	}
 }
@@ -73,4 +73,13 @@ public interface ChatDao extends LinkedEntitiesDao<Chat>, Dao<Chat> {
 
 	@Nonnull
 	List<String> readLastChatIds(@Nullable String userId, boolean privateChat, int count);
+
+	/**
+	 * @return realm specific position in the stream of chat messages up to which messages have been synchronized, null
+	 * if messages of the chat have never been synchronized incrementally
+	 */
+	@Nullable
+	String readMessagesSyncCursor(@Nonnull String chatId);
+
+	void updateMessagesSyncCursor(@Nonnull String chatId, @Nullable String messagesSyncCursor);
 }
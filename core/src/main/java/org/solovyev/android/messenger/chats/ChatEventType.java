@@ -60,6 +60,22 @@ public enum ChatEventType {
 		}
 	},
 
+	// data == list of messages of chat which states have changed
+	messages_state_changed {
+		@Override
+		protected void checkData(@Nullable Object data) {
+			assert data instanceof List;
+		}
+	},
+
+	// data == list of changed messages of chat
+	messages_changed {
+		@Override
+		protected void checkData(@Nullable Object data) {
+			assert data instanceof List;
+		}
+	},
+
 	// data == new last message for chat
 	last_message_changed {
 		@Override
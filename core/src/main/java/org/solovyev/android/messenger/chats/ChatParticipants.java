@@ -20,6 +20,7 @@ import java.util.List;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
 
 import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.users.User;
@@ -30,6 +31,7 @@ import org.solovyev.common.collections.multimap.WholeListUpdater;
 
 import static org.solovyev.common.collections.multimap.ThreadSafeMultimap.newThreadSafeMultimap;
 
+@ThreadSafe
 class ChatParticipants {
 
 	// key: chat id, value: list of participants
@@ -132,6 +132,15 @@ public interface ChatService extends JEventListeners<JEventListener<ChatEvent>,
 
 	void markMessageRead(@Nonnull Chat chat, @Nonnull Message message) throws AccountConnectionException;
 
+	/**
+	 * Must be called when message has been read outside of the application (for example, on another device).
+	 * Unlike {@link #markMessageRead(Chat, Message)} method doesn't notify realm and only updates local storage
+	 *
+	 * @param chat    chat
+	 * @param message message which has been read
+	 */
+	void onMessageRead(@Nonnull Chat chat, @Nonnull Message message);
+
 	void removeChat(@Nonnull Entity chat);
 
 	void saveDraftMessage(@Nonnull Chat chat, @Nullable String message);
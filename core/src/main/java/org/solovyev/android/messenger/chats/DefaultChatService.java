@@ -28,6 +28,7 @@ import com.google.common.collect.Multimap;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.solovyev.android.list.PrefixFilter;
+import org.solovyev.android.messenger.EventCoalescer;
 import org.solovyev.android.messenger.MergeDaoResult;
 import org.solovyev.android.messenger.accounts.*;
 import org.solovyev.android.messenger.core.R;
@@ -57,6 +58,7 @@ import static org.solovyev.android.messenger.chats.Chats.newEmptyAccountChat;
 import static org.solovyev.android.messenger.chats.UiChat.loadUiChat;
 import static org.solovyev.android.messenger.entities.Entities.newEntity;
 import static org.solovyev.android.messenger.entities.Entities.newEntityFromEntityId;
+import static org.solovyev.common.Objects.areEqual;
 import static org.solovyev.android.messenger.users.Users.newEmptyUser;
 import static org.solovyev.android.properties.Properties.newProperty;
 import static org.solovyev.common.text.Strings.isEmpty;
@@ -134,7 +136,15 @@ public class DefaultChatService implements ChatService {
 	private final ChatCache cache = new ChatCache();
 
 	@Nonnull
-	private final Object lock;
+	private final PersistenceLock lock;
+
+	@Nonnull
+	private final EventCoalescer<Chat, Entity, Message> messageStates = new EventCoalescer<Chat, Entity, Message>(new EventCoalescer.Delivery<Chat, Message>() {
+		@Override
+		public void deliver(@Nonnull Chat chat, @Nonnull List<Message> messages) {
+			fireEvent(ChatEventType.messages_state_changed.newEvent(chat, messages));
+		}
+	});
 
 	@Inject
 	public DefaultChatService(@Nonnull PersistenceLock lock, @Nonnull Executor eventExecutor) {
@@ -152,8 +162,11 @@ public class DefaultChatService implements ChatService {
 	@Override
 	public Chat updateChat(@Nonnull Chat chat) {
 		final boolean changed;
-		synchronized (lock) {
+		lock.lockEntity(chat.getEntity());
+		try {
 			changed = chatDao.update(chat) >= 0;
+		} finally {
+			lock.unlockEntity(chat.getEntity());
 		}
 
 		if (changed) {
@@ -170,7 +183,8 @@ public class DefaultChatService implements ChatService {
 		Chat result;
 
 		final Entity accountChat = getPrivateChatId(user1, user2);
-		synchronized (lock) {
+		lock.lockAccount(account.getId());
+		try {
 			result = getChatById(accountChat);
 			if (result == null) {
 				// no private chat exists => create one
@@ -189,6 +203,8 @@ public class DefaultChatService implements ChatService {
 
 				result = apiChat.getChat();
 			}
+		} finally {
+			lock.unlockAccount(account.getId());
 		}
 
 		return result;
@@ -260,8 +276,11 @@ public class DefaultChatService implements ChatService {
 	@Nonnull
 	@Override
 	public List<Chat> loadChats(@Nonnull Entity user) {
-		synchronized (lock) {
+		lock.lockAccountForRead(user.getAccountId());
+		try {
 			return chatDao.readChatsByUserId(user.getEntityId());
+		} finally {
+			lock.unlockAccountForRead(user.getAccountId());
 		}
 	}
 
@@ -281,9 +300,8 @@ public class DefaultChatService implements ChatService {
 	@Nonnull
 	@Override
 	public Map<Entity, Integer> getUnreadChats() {
-		synchronized (lock) {
-			return chatDao.getUnreadChats();
-		}
+		// one query over all accounts => no lock needed
+		return chatDao.getUnreadChats();
 	}
 
 	@Override
@@ -311,8 +329,11 @@ public class DefaultChatService implements ChatService {
 	public MergeDaoResult<Chat, String> mergeChats(@Nonnull final Entity user, @Nonnull List<? extends AccountChat> chats) {
 		final ChatMergeDaoResult result;
 
-		synchronized (lock) {
+		lock.lockAccount(user.getAccountId());
+		try {
 			result = chatDao.mergeChats(user.getEntityId(), prepareChats(chats));
+		} finally {
+			lock.unlockAccount(user.getAccountId());
 		}
 
 		for (final Chat chat : result.getUpdatedObjects()) {
@@ -362,6 +383,7 @@ public class DefaultChatService implements ChatService {
 		}
 
 		for (String removedChatId : mergeResult.getRemovedObjectIds()) {
+			cache.remove(newEntityFromEntityId(removedChatId));
 			userEvents.add(UserEventType.chat_removed.newEvent(user, removedChatId));
 		}
 
@@ -379,8 +401,11 @@ public class DefaultChatService implements ChatService {
 		Chat result = cache.get(chat);
 
 		if (result == null) {
-			synchronized (lock) {
+			lock.lockAccountForRead(chat.getAccountId());
+			try {
 				result = chatDao.read(chat.getEntityId());
+			} finally {
+				lock.unlockAccountForRead(chat.getAccountId());
 			}
 
 			if (result != null) {
@@ -400,8 +425,34 @@ public class DefaultChatService implements ChatService {
 	@Nonnull
 	@Override
 	public List<Message> syncMessages(@Nonnull Account<?> account) throws AccountException {
+		final AccountChatService accountChatService = account.getAccountChatService();
+
+		final List<? extends Message> messages;
+		if (accountChatService instanceof DeltaSyncAccountChatService) {
+			final DeltaSyncAccountChatService deltaService = (DeltaSyncAccountChatService) accountChatService;
+
+			final String cursor = account.getSyncData().getMessagesSyncCursor();
+			MessagesDelta delta = deltaService.getMessagesSince(cursor);
+			if (delta.isGap()) {
+				Log.w(TAG, "Gap in messages detected for account: " + account.getId() + ", cursor: " + cursor + ". Full resync is needed");
+				delta = deltaService.getMessagesSince(null);
+			}
+
+			messages = delta.getMessages();
+			saveMessagesByChats(account, messages);
+			if (!areEqual(cursor, delta.getCursor())) {
+				accountService.saveAccountSyncData(account.updateMessagesSyncCursor(delta.getCursor()));
+			}
+		} else {
+			messages = accountChatService.getMessages();
+			saveMessagesByChats(account, messages);
+		}
+
+		return unmodifiableList(messages);
+	}
+
+	private void saveMessagesByChats(@Nonnull Account<?> account, @Nonnull List<? extends Message> messages) throws AccountException {
 		final Entity user = account.getUser().getEntity();
-		final List<? extends Message> messages = account.getAccountChatService().getMessages();
 
 		final Multimap<Chat, Message> messagesByChats = ArrayListMultimap.create();
 
@@ -426,8 +477,6 @@ public class DefaultChatService implements ChatService {
 		for (Chat chat : messagesByChats.keySet()) {
 			saveMessages(chat, messagesByChats.get(chat), true);
 		}
-
-		return unmodifiableList(messages);
 	}
 
 	@Nonnull
@@ -436,12 +485,47 @@ public class DefaultChatService implements ChatService {
 		final Account account = getAccountByEntity(chat);
 		final AccountChatService accountChatService = account.getAccountChatService();
 
-		final List<Message> messages = accountChatService.getNewerMessagesForChat(chat.getAccountEntityId());
+		final List<Message> messages;
+		if (accountChatService instanceof DeltaSyncAccountChatService) {
+			final DeltaSyncAccountChatService deltaService = (DeltaSyncAccountChatService) accountChatService;
 
-		saveMessages(chat, messages, true);
+			final String cursor = readMessagesSyncCursor(chat);
+			MessagesDelta delta = deltaService.getNewerMessagesForChatSince(chat.getAccountEntityId(), cursor);
+			if (delta.isGap()) {
+				Log.w(TAG, "Gap in messages detected for chat: " + chat.getEntityId() + ", cursor: " + cursor + ". Full resync is needed");
+				delta = deltaService.getNewerMessagesForChatSince(chat.getAccountEntityId(), null);
+			}
+
+			messages = delta.getMessages();
+			saveMessages(chat, messages, true);
+			if (!areEqual(cursor, delta.getCursor())) {
+				updateMessagesSyncCursor(chat, delta.getCursor());
+			}
+		} else {
+			messages = accountChatService.getNewerMessagesForChat(chat.getAccountEntityId());
+			saveMessages(chat, messages, true);
+		}
 
 		return unmodifiableList(messages);
+	}
 
+	@Nullable
+	private String readMessagesSyncCursor(@Nonnull Entity chat) {
+		lock.lockAccountForRead(chat.getAccountId());
+		try {
+			return chatDao.readMessagesSyncCursor(chat.getEntityId());
+		} finally {
+			lock.unlockAccountForRead(chat.getAccountId());
+		}
+	}
+
+	private void updateMessagesSyncCursor(@Nonnull Entity chat, @Nullable String cursor) {
+		lock.lockEntity(chat);
+		try {
+			chatDao.updateMessagesSyncCursor(chat.getEntityId(), cursor);
+		} finally {
+			lock.unlockEntity(chat);
+		}
 	}
 
 	@Override
@@ -477,7 +561,9 @@ public class DefaultChatService implements ChatService {
 		}
 
 		final MergeDaoResult<Message, String> result;
-		synchronized (lock) {
+		final String accountId = chat.getEntity().getAccountId();
+		lock.lockAccount(accountId);
+		try {
 			result = getMessageDao().mergeMessages(chat.getId(), messages);
 
 			// update sync data
@@ -485,14 +571,17 @@ public class DefaultChatService implements ChatService {
 				chat = chat.updateMessagesSyncDate();
 				updateChat(chat);
 			}
+		} finally {
+			lock.unlockAccount(accountId);
 		}
 
 		final List<ChatEvent> events = new ArrayList<ChatEvent>(messages.size());
 
 		events.add(ChatEventType.messages_added.newEvent(chat, result.getAddedObjects()));
 
-		for (Message updatedMessage : result.getUpdatedObjects()) {
-			events.add(ChatEventType.message_changed.newEvent(chat, updatedMessage));
+		final List<Message> updatedMessages = result.getUpdatedObjects();
+		if (!updatedMessages.isEmpty()) {
+			events.add(ChatEventType.messages_changed.newEvent(chat, updatedMessages));
 		}
 
 		fireEvents(events);
@@ -507,15 +596,27 @@ public class DefaultChatService implements ChatService {
 		final Account account = getAccountByEntity(message.getEntity());
 
 		if (account.getAccountChatService().markMessageRead(message)) {
-			final boolean changed;
-			synchronized (lock) {
-				changed = messageDao.changeReadStatus(message.getId(), true);
-			}
+			onMessageRead(chat, message);
+		}
+	}
 
-			if (changed) {
-				fireEvent(ChatEventType.message_changed.newEvent(chat, message));
-				fireEvent(ChatEventType.message_read.newEvent(chat, message));
-			}
+	@Override
+	public void onMessageRead(@Nonnull Chat chat, @Nonnull Message message) {
+		if (!message.isRead()) {
+			message = message.cloneRead();
+		}
+
+		final boolean changed;
+		lock.lockEntity(chat.getEntity());
+		try {
+			changed = messageDao.changeReadStatus(message.getId(), true);
+		} finally {
+			lock.unlockEntity(chat.getEntity());
+		}
+
+		if (changed) {
+			fireEvent(ChatEventType.message_changed.newEvent(chat, message));
+			fireEvent(ChatEventType.message_read.newEvent(chat, message));
 		}
 	}
 
@@ -539,12 +640,16 @@ public class DefaultChatService implements ChatService {
 		message = message.cloneWithNewState(newState);
 
 		final boolean changed;
-		synchronized (lock) {
+		lock.lockEntity(chat.getEntity());
+		try {
 			changed = messageDao.changeMessageState(message.getId(), message.getState());
+		} finally {
+			lock.unlockEntity(chat.getEntity());
 		}
 
 		if (changed) {
-			fireEvent(ChatEventType.message_state_changed.newEvent(chat, message));
+			// delivery reports come one by one => states are delivered in batches
+			messageStates.add(chat, message.getEntity(), message);
 		}
 	}
 
@@ -617,6 +722,7 @@ public class DefaultChatService implements ChatService {
 	@Override
 	public void removeChat(@Nonnull Entity chat) {
 		chatDao.deleteById(chat.getEntityId());
+		cache.remove(chat);
 	}
 
 	@Override
@@ -638,7 +744,7 @@ public class DefaultChatService implements ChatService {
 	@Nonnull
 	@Override
 	public List<Message> syncOlderMessagesForChat(@Nonnull Entity chat, @Nonnull Entity user) throws AccountException {
-		final Integer offset = messageService.getMessages(chat).size();
+		final Integer offset = messageService.getMessagesCount(chat);
 
 		final List<Message> messages = getAccountByEntity(user).getAccountChatService().getOlderMessagesForChat(chat.getAccountEntityId(), offset);
 		saveMessages(chat, messages);
@@ -731,8 +837,11 @@ public class DefaultChatService implements ChatService {
 		List<User> participants = this.participants.get(chat);
 
 		if (participants == ThreadSafeMultimap.NO_VALUE) {
-			synchronized (lock) {
+			lock.lockAccountForRead(chat.getAccountId());
+			try {
 				participants = chatDao.readParticipants(chat.getEntityId());
+			} finally {
+				lock.unlockAccountForRead(chat.getAccountId());
 			}
 
 			this.participants.put(chat, participants);
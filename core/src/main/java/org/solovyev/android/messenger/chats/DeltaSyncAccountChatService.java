@@ -0,0 +1,40 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.chats;
+
+import org.solovyev.android.messenger.accounts.AccountConnectionException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Optional extension of {@link AccountChatService} for realms which can return only messages changed since the last
+ * synchronization. Cursor is an opaque realm specific string (for example, id of the last synchronized message) which is
+ * stored in the database between synchronizations.
+ * <p/>
+ * Null cursor means that messages have never been synchronized: realm must return the same messages as full
+ * synchronization does ({@link AccountChatService#getMessages()} or {@link AccountChatService#getNewerMessagesForChat(String)})
+ * together with new cursor and must never return {@link MessagesDelta#newGap()}.
+ */
+public interface DeltaSyncAccountChatService extends AccountChatService {
+
+	@Nonnull
+	MessagesDelta getMessagesSince(@Nullable String cursor) throws AccountConnectionException;
+
+	@Nonnull
+	MessagesDelta getNewerMessagesForChatSince(@Nonnull String accountChatId, @Nullable String cursor) throws AccountConnectionException;
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.chats;
+
+import org.solovyev.android.messenger.messages.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Messages changed since some position in the stream of messages, see {@link DeltaSyncAccountChatService}
+ */
+@Immutable
+public final class MessagesDelta {
+
+	@Nonnull
+	private static final MessagesDelta GAP = new MessagesDelta(Collections.<Message>emptyList(), null, true);
+
+	@Nonnull
+	private final List<Message> messages;
+
+	@Nullable
+	private final String cursor;
+
+	private final boolean gap;
+
+	private MessagesDelta(@Nonnull List<Message> messages, @Nullable String cursor, boolean gap) {
+		this.messages = messages;
+		this.cursor = cursor;
+		this.gap = gap;
+	}
+
+	/**
+	 * @param messages messages changed since previous cursor
+	 * @param cursor   position up to which messages have been returned, null if position is unknown
+	 * @return delta
+	 */
+	@Nonnull
+	public static MessagesDelta newDelta(@Nonnull List<Message> messages, @Nullable String cursor) {
+		return new MessagesDelta(Collections.unmodifiableList(messages), cursor, false);
+	}
+
+	/**
+	 * @return delta which signals that changes since requested position could not be provided
+	 * (too many changes, cursor has expired, etc) and full synchronization is needed
+	 */
+	@Nonnull
+	public static MessagesDelta newGap() {
+		return GAP;
+	}
+
+	@Nonnull
+	public List<Message> getMessages() {
+		return messages;
+	}
+
+	@Nullable
+	public String getCursor() {
+		return cursor;
+	}
+
+	public boolean isGap() {
+		return gap;
+	}
+}
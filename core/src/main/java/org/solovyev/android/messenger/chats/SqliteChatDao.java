@@ -32,11 +32,13 @@ import org.solovyev.android.db.*;
 import org.solovyev.android.db.properties.PropertyByIdDbQuery;
 import org.solovyev.android.messenger.LinkedEntitiesDao;
 import org.solovyev.android.messenger.MergeDaoResult;
+import org.solovyev.android.messenger.UpsertPropertiesExec;
 import org.solovyev.android.messenger.accounts.AccountState;
 import org.solovyev.android.messenger.db.StringIdMapper;
 import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.entities.EntityMapper;
 import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.messages.MessageState;
 import org.solovyev.android.messenger.messages.SqliteMessageDao;
 import org.solovyev.android.messenger.users.User;
 import org.solovyev.android.messenger.users.UserService;
@@ -52,11 +54,53 @@ import java.util.*;
 import static com.google.common.collect.Iterables.find;
 import static com.google.common.collect.Iterables.transform;
 import static org.solovyev.android.db.AndroidDbUtils.*;
+import static org.solovyev.android.messenger.UpsertPropertiesExec.newUpsertPropertiesExec;
 import static org.solovyev.common.text.Strings.isEmpty;
 
 @Singleton
 public class SqliteChatDao extends AbstractSQLiteHelper implements ChatDao {
 
+	/*
+	**********************************************************************
+	*
+	*                           QUERIES
+	*
+	**********************************************************************
+	*/
+
+	// queries are package-visible so that their plans can be checked in tests
+
+	static final String CHAT_PARTICIPANTS_QUERY = "select * from user_chats where chat_id = ?";
+
+	static final String CHATS_BY_USER_QUERY = "select * from chats where id in (select chat_id from user_chats where user_id = ?)";
+
+	static final String UNREAD_CHATS_QUERY = "select id, account_id, account_chat_id, unread_count from chats where unread_count > 0";
+
+	static final String MESSAGE_CHAT_QUERY = "select chat_id from messages where id = ?";
+
+	static final String CHAT_LAST_MESSAGE_QUERY = "select id, send_time from messages where chat_id = ? and state <> ? order by send_time desc, id desc limit 1";
+
+	static final String CHAT_UNREAD_COUNT_QUERY = "select count(*) from messages where read = 0 and state = ? and chat_id = ?";
+
+	/**
+	 * @param forUser true if chats of one user are loaded (then query has user id parameter), otherwise chats of all
+	 *                users of accounts in the state passed as parameter are loaded
+	 */
+	@Nonnull
+	static String newLastChatIdsQuery(boolean forUser, boolean privateChat, int count) {
+		final StringBuilder sql = new StringBuilder("select c.id from chats c, user_chats uc where uc.chat_id = c.id and c.last_message_time is not null ");
+		if (privateChat) {
+			sql.append("and exists (select * from chat_properties cp where cp.chat_id = c.id and cp.property_name = 'private' and cp.property_value = 'true') ");
+		}
+		if (forUser) {
+			sql.append("and uc.user_id = ? ");
+		} else {
+			sql.append("and uc.user_id in (select user_id from accounts where state = ?) ");
+		}
+		sql.append("order by c.last_message_time desc limit ").append(count);
+		return sql.toString();
+	}
+
     /*
 	**********************************************************************
     *
@@ -101,7 +145,7 @@ public class SqliteChatDao extends AbstractSQLiteHelper implements ChatDao {
 	public long update(@Nonnull Chat chat) {
 		final long rows = dao.update(chat);
 		if (rows >= 0) {
-			doDbExecs(getSqliteOpenHelper(), Arrays.<DbExec>asList(new DeleteChatProperties(chat), new InsertChatProperties(chat)));
+			doDbExec(getSqliteOpenHelper(), newUpsertChatProperties().addExisting(chat.getId(), chat.getPropertiesCollection()));
 		}
 
 		return rows;
@@ -131,6 +175,17 @@ public class SqliteChatDao extends AbstractSQLiteHelper implements ChatDao {
 		return doDbQuery(getSqliteOpenHelper(), new LoadLastChatIds(userId, privateChat, count));
 	}
 
+	@Nullable
+	@Override
+	public String readMessagesSyncCursor(@Nonnull String chatId) {
+		return doDbQuery(getSqliteOpenHelper(), new LoadMessagesSyncCursor(getContext(), chatId, getSqliteOpenHelper()));
+	}
+
+	@Override
+	public void updateMessagesSyncCursor(@Nonnull String chatId, @Nullable String messagesSyncCursor) {
+		doDbExec(getSqliteOpenHelper(), new UpdateMessagesSyncCursor(chatId, messagesSyncCursor));
+	}
+
 	@Nonnull
 	@Override
 	public Collection<String> readAllIds() {
@@ -201,7 +256,7 @@ public class SqliteChatDao extends AbstractSQLiteHelper implements ChatDao {
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			return db.query("user_chats", null, "chat_id = ? ", new String[]{chatId}, null, null, null);
+			return db.rawQuery(CHAT_PARTICIPANTS_QUERY, new String[]{chatId});
 		}
 
 		@Nonnull
@@ -228,7 +283,7 @@ public class SqliteChatDao extends AbstractSQLiteHelper implements ChatDao {
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			return db.query("chats", null, "id in (select chat_id from user_chats where user_id = ? ) ", new String[]{userId}, null, null, null);
+			return db.rawQuery(CHATS_BY_USER_QUERY, new String[]{userId});
 		}
 
 		@Nonnull
@@ -263,6 +318,7 @@ public class SqliteChatDao extends AbstractSQLiteHelper implements ChatDao {
 			for (Message message : chat.getMessages()) {
 				execs.add(new SqliteMessageDao.InsertMessage(message));
 			}
+			execs.add(UpdateChatSummary.forChat(addedChat.getId()));
 			result.addNewMessages(addedChat, chat.getMessages());
 
 			for (User participant : chat.getParticipants()) {
@@ -300,18 +356,22 @@ public class SqliteChatDao extends AbstractSQLiteHelper implements ChatDao {
 			execs.addAll(RemoveChats.newInstances(userId, result.getRemovedObjectIds()));
 		}
 
+		// properties of all chats are written by one exec (reusing compiled statements) after chats are inserted
+		final UpsertPropertiesExec properties = newUpsertChatProperties();
+
 		for (Chat updatedChat : result.getUpdatedObjects()) {
 			execs.add(new UpdateChat(updatedChat));
-			execs.add(new DeleteChatProperties(updatedChat));
-			execs.add(new InsertChatProperties(updatedChat));
+			properties.addExisting(updatedChat.getId(), updatedChat.getPropertiesCollection());
 		}
 
 		for (final Chat addedChat : result.getAddedObjects()) {
 			execs.add(new InsertChat(addedChat));
-			execs.add(new InsertChatProperties(addedChat));
+			properties.addNew(addedChat.getId(), addedChat.getPropertiesCollection());
 			execs.add(new InsertChatLink(userId, addedChat.getEntity().getEntityId()));
 		}
 
+		execs.add(properties);
+
 		doDbExecs(getSqliteOpenHelper(), execs);
 
 		return result;
@@ -401,65 +461,127 @@ public class SqliteChatDao extends AbstractSQLiteHelper implements ChatDao {
 		return values;
 	}
 
-	private static final class DeleteChatProperties extends AbstractObjectDbExec<Chat> {
+	@Nonnull
+	private static UpsertPropertiesExec newUpsertChatProperties() {
+		return newUpsertPropertiesExec("chat_properties", "chat_id", true);
+	}
+
+	private static final class InsertChatLink implements DbExec {
 
-		private DeleteChatProperties(@Nonnull Chat chat) {
-			super(chat);
+		@Nonnull
+		private String userId;
+
+		@Nonnull
+		private String chatId;
+
+		private InsertChatLink(@Nonnull String userId, @Nonnull String chatId) {
+			this.userId = userId;
+			this.chatId = chatId;
 		}
 
 		@Override
 		public long exec(@Nonnull SQLiteDatabase db) {
-			final Chat chat = getNotNullObject();
-
-			return db.delete("chat_properties", "chat_id = ?", new String[]{String.valueOf(chat.getEntity().getEntityId())});
+			final ContentValues values = new ContentValues();
+			values.put("user_id", userId);
+			values.put("chat_id", chatId);
+			return db.insert("user_chats", null, values);
 		}
 	}
 
-	private static final class InsertChatProperties extends AbstractObjectDbExec<Chat> {
-
-		private InsertChatProperties(@Nonnull Chat chat) {
-			super(chat);
-		}
+	/**
+	 * Recalculates columns of chat which are derived from its messages (last message and number of unread messages).
+	 * Must be executed in the same transaction as the changes of messages.
+	 */
+	public static final class UpdateChatSummary implements DbExec {
 
-		@Override
-		public long exec(@Nonnull SQLiteDatabase db) {
-			long result = 0;
-			final Chat chat = getNotNullObject();
+		@Nullable
+		private final String chatId;
 
-			for (AProperty property : chat.getPropertiesCollection()) {
-				final ContentValues values = new ContentValues();
-				values.put("chat_id", chat.getEntity().getEntityId());
-				values.put("property_name", property.getName());
-				values.put("property_value", property.getValue());
-				final long id = db.insert("chat_properties", null, values);
-				if (id == SQL_ERROR) {
-					result = SQL_ERROR;
-				}
-			}
+		@Nullable
+		private final String messageId;
 
-			return result;
+		private UpdateChatSummary(@Nullable String chatId, @Nullable String messageId) {
+			this.chatId = chatId;
+			this.messageId = messageId;
 		}
-	}
-
-	private static final class InsertChatLink implements DbExec {
 
 		@Nonnull
-		private String userId;
+		public static UpdateChatSummary forChat(@Nonnull String chatId) {
+			return new UpdateChatSummary(chatId, null);
+		}
 
+		/**
+		 * Summary is updated for chat of the message
+		 */
 		@Nonnull
-		private String chatId;
+		public static UpdateChatSummary forMessage(@Nonnull String messageId) {
+			return new UpdateChatSummary(null, messageId);
+		}
 
-		private InsertChatLink(@Nonnull String userId, @Nonnull String chatId) {
-			this.userId = userId;
-			this.chatId = chatId;
+		/**
+		 * Summaries are rebuilt for all chats
+		 */
+		@Nonnull
+		public static UpdateChatSummary forAllChats() {
+			return new UpdateChatSummary(null, null);
 		}
 
 		@Override
 		public long exec(@Nonnull SQLiteDatabase db) {
+			if (chatId != null) {
+				return update(db, chatId);
+			} else if (messageId != null) {
+				final String messageChatId = readString(db, MESSAGE_CHAT_QUERY, messageId);
+				return messageChatId == null ? 0 : update(db, messageChatId);
+			} else {
+				long rows = 0;
+				for (String id : readChatIds(db)) {
+					rows += update(db, id);
+				}
+				return rows;
+			}
+		}
+
+		private static long update(@Nonnull SQLiteDatabase db, @Nonnull String chatId) {
 			final ContentValues values = new ContentValues();
-			values.put("user_id", userId);
-			values.put("chat_id", chatId);
-			return db.insert("user_chats", null, values);
+
+			final Cursor cursor = db.rawQuery(CHAT_LAST_MESSAGE_QUERY, new String[]{chatId, MessageState.removed.name()});
+			try {
+				if (cursor.moveToFirst()) {
+					values.put("last_message_id", cursor.getString(0));
+					values.put("last_message_time", cursor.getLong(1));
+				} else {
+					values.putNull("last_message_id");
+					values.putNull("last_message_time");
+				}
+			} finally {
+				cursor.close();
+			}
+
+			final String unreadCount = readString(db, CHAT_UNREAD_COUNT_QUERY, MessageState.received.name(), chatId);
+			values.put("unread_count", unreadCount == null ? 0 : Integer.valueOf(unreadCount));
+
+			return db.update("chats", values, "id = ?", new String[]{chatId});
+		}
+
+		@Nullable
+		private static String readString(@Nonnull SQLiteDatabase db, @Nonnull String sql, @Nonnull String... args) {
+			final Cursor cursor = db.rawQuery(sql, args);
+			try {
+				return cursor.moveToFirst() ? cursor.getString(0) : null;
+			} finally {
+				cursor.close();
+			}
+		}
+
+		@Nonnull
+		private static List<String> readChatIds(@Nonnull SQLiteDatabase db) {
+			final Cursor cursor = db.rawQuery("select id from chats", null);
+			try {
+				return new ListMapper<String>(StringIdMapper.getInstance()).convert(cursor);
+			} finally {
+				cursor.close();
+			}
 		}
 	}
 
@@ -472,11 +594,7 @@ public class SqliteChatDao extends AbstractSQLiteHelper implements ChatDao {
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			return db.rawQuery(	"select c.id, c.account_id, c.account_chat_id, count(*) from chats c, messages m " +
-								"where c.id = m.chat_id " +
-								"and m.read = 0 " +
-								"and m.state = 'received' " +
-								"group by c.id, c.account_id, c.account_chat_id", null);
+			return db.rawQuery(UNREAD_CHATS_QUERY, null);
 		}
 
 		@Nonnull
@@ -498,6 +616,54 @@ public class SqliteChatDao extends AbstractSQLiteHelper implements ChatDao {
 		}
 	}
 
+	private static final class LoadMessagesSyncCursor extends AbstractDbQuery<String> {
+
+		@Nonnull
+		private final String chatId;
+
+		private LoadMessagesSyncCursor(@Nonnull Context context, @Nonnull String chatId, @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
+			super(context, sqliteOpenHelper);
+			this.chatId = chatId;
+		}
+
+		@Nonnull
+		@Override
+		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
+			return db.rawQuery("select messages_sync_cursor from chats where id = ?", new String[]{chatId});
+		}
+
+		@Nullable
+		@Override
+		public String retrieveData(@Nonnull Cursor cursor) {
+			if (cursor.moveToFirst()) {
+				return cursor.getString(0);
+			} else {
+				return null;
+			}
+		}
+	}
+
+	private static final class UpdateMessagesSyncCursor implements DbExec {
+
+		@Nonnull
+		private final String chatId;
+
+		@Nullable
+		private final String messagesSyncCursor;
+
+		private UpdateMessagesSyncCursor(@Nonnull String chatId, @Nullable String messagesSyncCursor) {
+			this.chatId = chatId;
+			this.messagesSyncCursor = messagesSyncCursor;
+		}
+
+		@Override
+		public long exec(@Nonnull SQLiteDatabase db) {
+			final ContentValues values = new ContentValues();
+			values.put("messages_sync_cursor", messagesSyncCursor);
+			return db.update("chats", values, "id = ?", new String[]{chatId});
+		}
+	}
+
 	private static final class ChatDaoMapper implements SqliteDaoEntityMapper<Chat> {
 
 		@Nonnull
@@ -539,15 +705,10 @@ public class SqliteChatDao extends AbstractSQLiteHelper implements ChatDao {
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			String start = "select c.id, m.send_time from chats c, messages m, user_chats uc where c.id = m.chat_id and uc.chat_id = c.id ";
-			if (privateChat) {
-				start += "and exists (select * from chat_properties cp where cp.chat_id = c.id and cp.property_name = 'private' and cp.property_value = 'true') ";
-			}
-			final String end = "group by c.id order by m.send_time desc limit " + count;
 			if (!isEmpty(userId)) {
-				return db.rawQuery(start + "and uc.user_id = ? " + end, new String[]{userId});
+				return db.rawQuery(newLastChatIdsQuery(true, privateChat, count), new String[]{userId});
 			} else {
-				return db.rawQuery(start + "and uc.user_id in (select a.user_id from accounts a where a.state = ?) " + end, new String[]{AccountState.enabled.name()});
+				return db.rawQuery(newLastChatIdsQuery(false, privateChat, count), new String[]{AccountState.enabled.name()});
 			}
 		}
 
@@ -26,10 +26,12 @@ import org.solovyev.android.messenger.users.User;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collections;
 
 import static com.google.common.collect.Iterables.any;
 import static org.solovyev.android.messenger.App.getAccountService;
 import static org.solovyev.android.messenger.App.getChatService;
+import static org.solovyev.android.messenger.App.getMessageService;
 
 /**
  * Chat for UI, contains additional parameters like user, last message to be shown on UI
@@ -100,7 +102,12 @@ public final class UiChat implements Identifiable, EntityAware {
 
 	@Nullable
 	private static Message getLastMessage(Chat chat) {
-		return getChatService().getLastMessage(chat.getEntity());
+		final Message lastMessage = getChatService().getLastMessage(chat.getEntity());
+		if (lastMessage != null) {
+			// ui chats are loaded in background => preview can be prepared here
+			getMessageService().prerenderMessages(Collections.singletonList(lastMessage));
+		}
+		return lastMessage;
 	}
 
 	private static int getUnreadMessagesCount(@Nonnull Chat chat) {
@@ -41,14 +41,20 @@ public final class EntityAwareRemovedUpdater<V extends EntityAware> implements T
 		if (values == ThreadSafeMultimap.NO_VALUE) {
 			return null;
 		} else {
-			final List<V> result = ThreadSafeMultimap.copy(values);
-			Iterables.removeIf(result, new Predicate<V>() {
+			final Predicate<V> removed = new Predicate<V>() {
 				@Override
 				public boolean apply(@Nullable V entityAware) {
 					return entityAware != null && entityAware.getEntity().getEntityId().equals(removedEntityId);
 				}
-			});
-			return result;
+			};
+
+			if (Iterables.any(values, removed)) {
+				final List<V> result = ThreadSafeMultimap.copy(values);
+				Iterables.removeIf(result, removed);
+				return result;
+			} else {
+				return null;
+			}
 		}
 	}
 }
@@ -22,9 +22,12 @@ import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.accounts.AccountConnectionException;
 import org.solovyev.android.messenger.accounts.AccountException;
 import org.solovyev.android.messenger.accounts.connection.BaseAccountConnection;
+import org.solovyev.android.messenger.chats.DeltaSyncAccountChatService;
 
 import javax.annotation.Nonnull;
 
+import static org.solovyev.android.messenger.App.getAccountService;
+import static org.solovyev.android.messenger.App.getChatService;
 import static org.solovyev.android.messenger.App.newTag;
 
 public abstract class LongPollAccountConnection extends BaseAccountConnection<Account> {
@@ -51,6 +54,9 @@ public abstract class LongPollAccountConnection extends BaseAccountConnection<Ac
 				Log.i(TAG, "Long polling initiated!");
 				Object longPollingData = realmLongPollService.startLongPolling();
 
+				// messages received before this session has been started are not delivered by long polling => gap must be filled
+				syncMissedMessages();
+
 				// second loop do long poll job for one session
 				while (!isStopped()) {
 					Log.i(TAG, "Long polling started!");
@@ -73,6 +79,14 @@ public abstract class LongPollAccountConnection extends BaseAccountConnection<Ac
 		}
 	}
 
+	private void syncMissedMessages() throws AccountException {
+		final Account account = getAccountService().getAccountById(getAccount().getId());
+		if (account.getAccountChatService() instanceof DeltaSyncAccountChatService) {
+			// only messages received after the last synchronization are loaded
+			getChatService().syncMessages(account);
+		}
+	}
+
 	@Override
 	protected void stop0() {
 	}
@@ -16,6 +16,8 @@
 
 package org.solovyev.android.messenger.messages;
 
+import android.text.Spanned;
+import android.util.Log;
 import android.widget.ImageView;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
@@ -24,23 +26,32 @@ import org.solovyev.android.http.ImageLoader;
 import org.solovyev.android.messenger.accounts.*;
 import org.solovyev.android.messenger.chats.AccountChatService;
 import org.solovyev.android.messenger.chats.Chat;
+import org.solovyev.android.messenger.chats.ChatEvent;
 import org.solovyev.android.messenger.chats.ChatService;
 import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.users.PersistenceLock;
 import org.solovyev.android.messenger.users.UserService;
+import org.solovyev.common.listeners.AbstractJEventListener;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import static java.util.Arrays.asList;
+import static org.solovyev.android.messenger.App.newTag;
 import static org.solovyev.android.messenger.accounts.AccountService.NO_ACCOUNT_ID;
+import static org.solovyev.android.messenger.entities.Entities.newEntityFromEntityId;
 import static org.solovyev.android.messenger.messages.Messages.copySentMessage;
 
 @Singleton
 public class DefaultMessageService implements MessageService {
 
+	@Nonnull
+	private static final String TAG = newTag("MessageService");
+
     /*
 	**********************************************************************
     *
@@ -73,6 +84,9 @@ public class DefaultMessageService implements MessageService {
 	@Nonnull
 	private final PersistenceLock lock;
 
+	@Nonnull
+	private final MessageBodyCache bodyCache = new MessageBodyCache();
+
 	@Inject
 	public DefaultMessageService(@Nonnull PersistenceLock lock) {
 		this.lock = lock;
@@ -80,6 +94,8 @@ public class DefaultMessageService implements MessageService {
 
 	@Override
 	public void init() {
+		// chat events are delivered on the event executor => merged messages are rendered off the UI thread
+		chatService.addListener(new BodyCacheUpdater());
 	}
 
 	@Nonnull
@@ -88,11 +104,32 @@ public class DefaultMessageService implements MessageService {
 		return dao.readMessages(chat.getEntityId());
 	}
 
+	@Nonnull
+	@Override
+	public List<Message> getMessages(@Nonnull Entity chat, @Nullable Message from, boolean ascending, int count) {
+		// messages and their properties are read by separate queries => no merge should happen in between
+		lock.lockAccountForRead(chat.getAccountId());
+		try {
+			return dao.readMessages(chat.getEntityId(), from, ascending, count);
+		} finally {
+			lock.unlockAccountForRead(chat.getAccountId());
+		}
+	}
+
+	@Override
+	public int getMessagesCount(@Nonnull Entity chat) {
+		// one query => no lock needed
+		return dao.getMessagesCount(chat.getEntityId());
+	}
+
 	@Nullable
 	@Override
 	public Message getSameMessage(@Nonnull String body, @Nonnull DateTime sendTime, @Nonnull Entity author, @Nonnull Entity recipient) {
-		synchronized (lock) {
+		lock.lockAccountForRead(author.getAccountId());
+		try {
 			return dao.readSameMessage(body, sendTime, author, recipient);
+		} finally {
+			lock.unlockAccountForRead(author.getAccountId());
 		}
 	}
 
@@ -133,20 +170,85 @@ public class DefaultMessageService implements MessageService {
 	@Nullable
 	@Override
 	public Message getLastMessage(@Nonnull String chatId) {
-		synchronized (lock) {
+		final String accountId = newEntityFromEntityId(chatId).getAccountId();
+		lock.lockAccountForRead(accountId);
+		try {
 			return this.dao.readLastMessage(chatId);
+		} finally {
+			lock.unlockAccountForRead(accountId);
 		}
 	}
 
 	@Override
 	public int getUnreadMessagesCount() {
-		synchronized (lock) {
-			return this.dao.getUnreadMessagesCount();
+		// one query over all accounts => no lock needed
+		return this.dao.getUnreadMessagesCount();
+	}
+
+	@Nonnull
+	@Override
+	public List<MessageSearchHit> searchMessages(@Nonnull String query, int offset, int count) {
+		// search is done over all accounts => no lock: message might be changed while its properties are loaded which is fine for search results
+		final List<Message> messages = dao.searchMessages(query, offset, count);
+
+		final List<MessageSearchHit> result = new ArrayList<MessageSearchHit>(messages.size());
+		for (Message message : messages) {
+			final Chat chat = chatService.getChatById(message.getChat());
+			if (chat != null) {
+				result.add(new MessageSearchHit(message, chat));
+			}
 		}
+		return result;
+	}
+
+	@Nonnull
+	@Override
+	public Spanned getRenderedBody(@Nonnull Message message, boolean htmlMessage) {
+		return bodyCache.getBody(message, htmlMessage);
+	}
+
+	@Nonnull
+	@Override
+	public Spanned getRenderedPreview(@Nonnull Message message) {
+		return bodyCache.getPreview(message);
+	}
+
+	@Override
+	public void prerenderMessages(@Nonnull Collection<? extends Message> messages) {
+		for (Message message : messages) {
+			try {
+				final Account account = accountService.getAccountById(message.getEntity().getAccountId());
+				bodyCache.prerender(message, account.getRealm().isHtmlMessage());
+			} catch (UnsupportedAccountException e) {
+				// account was removed => message will not be shown
+			}
+		}
+		Log.d(TAG, "Message bodies: " + bodyCache);
 	}
 
 	@Nonnull
 	private Account getAccountByUser(@Nonnull Entity userEntity) throws UnsupportedAccountException {
 		return accountService.getAccountById(userEntity.getAccountId());
 	}
+
+	private final class BodyCacheUpdater extends AbstractJEventListener<ChatEvent> {
+
+		private BodyCacheUpdater() {
+			super(ChatEvent.class);
+		}
+
+		@Override
+		public void onEvent(@Nonnull ChatEvent event) {
+			switch (event.getType()) {
+				case message_added:
+				case message_changed:
+					prerenderMessages(asList(event.getDataAsMessage()));
+					break;
+				case messages_added:
+				case messages_changed:
+					prerenderMessages(event.getDataAsMessages());
+					break;
+			}
+		}
+	}
 }
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.messages;
+
+import android.text.Html;
+import android.text.Spannable;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.util.Linkify;
+import org.solovyev.android.messenger.cache.ConcurrentLruCache;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.solovyev.android.messenger.cache.ConcurrentLruCache.newWeightedCache;
+
+/**
+ * Cache of rendered message bodies: HTML parsing and link detection are done once per message (ideally off the UI thread
+ * by {@link #prerender(Message, boolean)}) and list items only attach ready {@link Spanned} objects.
+ * <p/>
+ * Entries are keyed by message id and are valid only for the body they were rendered from (checked by body hash),
+ * so edited messages are rendered again. Cache is bounded by the total length of rendered text.
+ * <p/>
+ * Rendering done by {@link #getBody(Message, boolean)} or {@link #getPreview(Message)} means the entry was not prepared
+ * in advance and the cost was paid on the binding thread: such calls are counted as misses.
+ */
+@ThreadSafe
+final class MessageBodyCache {
+
+	// weight is the number of rendered characters: ~ 1 Mb of text (without spans)
+	private static final int MAX_WEIGHT = 512 * 1024;
+
+	// key: message id, value: rendered body
+	@Nonnull
+	private final ConcurrentLruCache<String, RenderedBody> bodies;
+
+	@Nonnull
+	private final AtomicLong hitCount = new AtomicLong();
+
+	@Nonnull
+	private final AtomicLong missCount = new AtomicLong();
+
+	@Nonnull
+	private final AtomicLong missRenderNanos = new AtomicLong();
+
+	@Nonnull
+	private final AtomicLong prerenderCount = new AtomicLong();
+
+	MessageBodyCache() {
+		this(MAX_WEIGHT);
+	}
+
+	MessageBodyCache(int maxWeight) {
+		bodies = newWeightedCache(maxWeight, new RenderedBodyWeigher());
+	}
+
+	/**
+	 * @param message     message
+	 * @param htmlMessage true if message body is HTML (see {@link org.solovyev.android.messenger.realms.Realm#isHtmlMessage()})
+	 * @return body of the message as it should be shown in the list of messages: HTML is parsed and links are added
+	 */
+	@Nonnull
+	public Spanned getBody(@Nonnull Message message, boolean htmlMessage) {
+		final RenderedBody cached = getValid(message);
+		if (cached != null && cached.body != null && cached.htmlMessage == htmlMessage) {
+			hitCount.incrementAndGet();
+			return cached.body;
+		}
+
+		final long start = System.nanoTime();
+		final Spanned body = renderBody(message.getBody(), htmlMessage);
+		bodies.put(message.getId(), new RenderedBody(message.getBody(), htmlMessage, body, cached != null ? cached.preview : null));
+		onMiss(start);
+		return body;
+	}
+
+	/**
+	 * @param message message
+	 * @return body of the message as it should be shown in the list of chats
+	 */
+	@Nonnull
+	public Spanned getPreview(@Nonnull Message message) {
+		final RenderedBody cached = getValid(message);
+		if (cached != null && cached.preview != null) {
+			hitCount.incrementAndGet();
+			return cached.preview;
+		}
+
+		final long start = System.nanoTime();
+		final Spanned preview = renderPreview(message.getBody());
+		if (cached != null) {
+			bodies.put(message.getId(), new RenderedBody(message.getBody(), cached.htmlMessage, cached.body, preview));
+		} else {
+			bodies.put(message.getId(), new RenderedBody(message.getBody(), false, null, preview));
+		}
+		onMiss(start);
+		return preview;
+	}
+
+	/**
+	 * Renders both body and preview of the message if they are not cached yet. Should be called from background thread.
+	 */
+	public void prerender(@Nonnull Message message, boolean htmlMessage) {
+		final RenderedBody cached = getValid(message);
+		if (cached == null || cached.body == null || cached.preview == null || cached.htmlMessage != htmlMessage) {
+			final String body = message.getBody();
+			final Spanned preview = cached != null && cached.preview != null ? cached.preview : renderPreview(body);
+			bodies.put(message.getId(), new RenderedBody(body, htmlMessage, renderBody(body, htmlMessage), preview));
+			prerenderCount.incrementAndGet();
+		}
+	}
+
+	public void prerender(@Nonnull Collection<? extends Message> messages, boolean htmlMessage) {
+		for (Message message : messages) {
+			prerender(message, htmlMessage);
+		}
+	}
+
+	public void remove(@Nonnull String messageId) {
+		bodies.remove(messageId);
+	}
+
+	@Nullable
+	private RenderedBody getValid(@Nonnull Message message) {
+		final RenderedBody cached = bodies.get(message.getId());
+		if (cached != null && cached.isFor(message.getBody())) {
+			return cached;
+		} else {
+			return null;
+		}
+	}
+
+	private void onMiss(long start) {
+		missRenderNanos.addAndGet(System.nanoTime() - start);
+		missCount.incrementAndGet();
+	}
+
+	@Nonnull
+	static Spanned renderBody(@Nonnull String body, boolean htmlMessage) {
+		if (!htmlMessage) {
+			body = body.replace("\n", "<br>");
+		}
+		final Spannable result = new SpannableString(Html.fromHtml(body));
+		Linkify.addLinks(result, Linkify.ALL);
+		return result;
+	}
+
+	@Nonnull
+	static Spanned renderPreview(@Nonnull String body) {
+		return Html.fromHtml(body);
+	}
+
+	public int size() {
+		return bodies.size();
+	}
+
+	/**
+	 * @return number of times ready body or preview was returned
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return number of times body or preview had to be rendered by the caller (= on the binding thread)
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return total time spent on rendering on the binding thread, in milliseconds
+	 */
+	public long getMissRenderMillis() {
+		return missRenderNanos.get() / 1000000L;
+	}
+
+	/**
+	 * @return number of messages rendered in advance
+	 */
+	public long getPrerenderCount() {
+		return prerenderCount.get();
+	}
+
+	public long getEvictionCount() {
+		return bodies.getEvictionCount();
+	}
+
+	@Override
+	public String toString() {
+		return "MessageBodyCache{" +
+				"hits=" + hitCount +
+				", misses=" + missCount +
+				", missRenderMillis=" + getMissRenderMillis() +
+				", prerendered=" + prerenderCount +
+				", bodies=" + bodies +
+				'}';
+	}
+
+	@Immutable
+	private static final class RenderedBody {
+
+		private final int bodyHash;
+
+		private final int bodyLength;
+
+		private final boolean htmlMessage;
+
+		@Nullable
+		private final Spanned body;
+
+		@Nullable
+		private final Spanned preview;
+
+		private RenderedBody(@Nonnull String source, boolean htmlMessage, @Nullable Spanned body, @Nullable Spanned preview) {
+			this.bodyHash = source.hashCode();
+			this.bodyLength = source.length();
+			this.htmlMessage = htmlMessage;
+			this.body = body;
+			this.preview = preview;
+		}
+
+		private boolean isFor(@Nonnull String source) {
+			return bodyHash == source.hashCode() && bodyLength == source.length();
+		}
+	}
+
+	private static final class RenderedBodyWeigher implements ConcurrentLruCache.Weigher<RenderedBody> {
+		@Override
+		public int weigh(@Nonnull RenderedBody value) {
+			int result = 1;
+			if (value.body != null) {
+				result += value.body.length();
+			}
+			if (value.preview != null) {
+				result += value.preview.length();
+			}
+			return result;
+		}
+	}
+}
@@ -35,6 +35,23 @@ public interface MessageDao extends Dao<Message> {
 	@Nonnull
 	List<Message> readMessages(@Nonnull String chatId);
 
+	/**
+	 * Loads page of messages of chat ordered by (send time, id)
+	 *
+	 * @param chatId    id of chat
+	 * @param from      last message of previous page (not included in result), null for the first page
+	 * @param ascending true if messages should be loaded from older to newer, false otherwise
+	 * @param count     max number of messages in the page
+	 * @return list of messages of the page
+	 */
+	@Nonnull
+	List<Message> readMessages(@Nonnull String chatId, @Nullable Message from, boolean ascending, int count);
+
+	/**
+	 * @return number of not removed messages in chat
+	 */
+	int getMessagesCount(@Nonnull String chatId);
+
 	@Nonnull
 	MergeDaoResult<Message, String> mergeMessages(@Nonnull String chatId, @Nonnull Collection<? extends Message> messages);
 
@@ -63,4 +80,15 @@ public interface MessageDao extends Dao<Message> {
 
 	@Nullable
 	Message readSameMessage(@Nonnull String body, @Nonnull DateTime sendTime, @Nonnull Entity author, @Nonnull Entity recipient);
+
+	/**
+	 * Searches not removed messages which title or body contains all the words of the query (last word is matched by prefix).
+	 *
+	 * @param query  text typed by user
+	 * @param offset number of found messages to skip
+	 * @param count  max number of messages to return
+	 * @return found messages, most recent first
+	 */
+	@Nonnull
+	List<Message> searchMessages(@Nonnull String query, int offset, int count);
 }
@@ -19,9 +19,14 @@ package org.solovyev.android.messenger.messages;
 import android.app.Activity;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.graphics.Typeface;
 import android.graphics.drawable.AnimationDrawable;
 import android.text.ClipboardManager;
-import android.text.util.Linkify;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.method.LinkMovementMethod;
+import android.text.style.StyleSpan;
+import android.text.style.URLSpan;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
@@ -42,7 +47,6 @@ import org.solovyev.android.messenger.view.ViewAwareTag;
 import javax.annotation.Nonnull;
 import java.util.Arrays;
 
-import static android.text.Html.fromHtml;
 import static android.view.View.GONE;
 import static android.view.View.VISIBLE;
 import static org.solovyev.android.messenger.App.*;
@@ -120,12 +124,8 @@ public final class MessageListItem extends BaseMessengerListItem<Message> /*, Ch
 			animation.stop();
 		}
 
-		String messageBody = message.getBody();
-
 		final Realm realm = account.getRealm();
-		if (!realm.isHtmlMessage()) {
-			messageBody = messageBody.replace("\n", "<br>");
-		}
+		final Spanned messageBody = App.getMessageService().getRenderedBody(message, realm.isHtmlMessage());
 
 		final ImageView messageIcon = viewTag.getViewById(R.id.mpp_li_message_icon_imageview);
 
@@ -133,15 +133,20 @@ public final class MessageListItem extends BaseMessengerListItem<Message> /*, Ch
 		if (MessengerPreferences.Gui.Chat.Message.showIcon.getPreference(preferences)) {
 			messageIcon.setVisibility(View.VISIBLE);
 			App.getMessageService().setMessageIcon(message, messageIcon);
+			messageTextView.setText(messageBody);
 		} else {
 			messageIcon.setVisibility(View.GONE);
 			if (!chat.isPrivate() && !userMessage) {
-				messageBody = "<b>" + Users.getDisplayNameFor(message.getAuthor()) + ":</b> " + messageBody;
+				final SpannableStringBuilder text = new SpannableStringBuilder(Users.getDisplayNameFor(message.getAuthor()));
+				text.append(':');
+				text.setSpan(new StyleSpan(Typeface.BOLD), 0, text.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+				text.append(' ').append(messageBody);
+				messageTextView.setText(text);
+			} else {
+				messageTextView.setText(messageBody);
 			}
 		}
-
-		messageTextView.setText(fromHtml(messageBody));
-		Linkify.addLinks(messageTextView, Linkify.ALL);
+		addLinkMovementMethod(messageTextView, messageBody);
 
 		final View root = viewTag.getView();
 
@@ -154,6 +159,15 @@ public final class MessageListItem extends BaseMessengerListItem<Message> /*, Ch
 		}
 	}
 
+	private static void addLinkMovementMethod(@Nonnull TextView textView, @Nonnull Spanned body) {
+		// links are added to the rendered body, here we only need to make them clickable (as Linkify.addLinks(TextView, int) does)
+		if (body.getSpans(0, body.length(), URLSpan.class).length > 0) {
+			if (!(textView.getMovementMethod() instanceof LinkMovementMethod) && textView.getLinksClickable()) {
+				textView.setMovementMethod(LinkMovementMethod.getInstance());
+			}
+		}
+	}
+
 	void onMessageChanged(@Nonnull Message message) {
 		setData(message);
 	}
@@ -29,22 +29,39 @@ import org.solovyev.android.properties.AProperty;
 import org.solovyev.common.Converter;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import static org.solovyev.android.messenger.entities.Entities.newEntityFromEntityId;
 import static org.solovyev.android.messenger.messages.Messages.newMessage;
 
 public class MessageMapper implements Converter<Cursor, Message> {
 
-	@Nonnull
+	/**
+	 * If null properties will not be loaded, see {@link #newMapperWithoutProperties()}
+	 */
+	@Nullable
 	private final MessageDao dao;
 
 	public MessageMapper(@Nonnull MessageDao dao) {
 		this.dao = dao;
 	}
 
+	private MessageMapper() {
+		this.dao = null;
+	}
+
+	/**
+	 * Mapper returned from this method doesn't load message properties: caller is responsible for setting them (e.g. from
+	 * one batch query for a bunch of messages)
+	 */
+	@Nonnull
+	public static MessageMapper newMapperWithoutProperties() {
+		return new MessageMapper();
+	}
+
 	@Nonnull
 	@Override
-	public Message convert(@Nonnull Cursor cursor) {
+	public MutableMessage convert(@Nonnull Cursor cursor) {
 		final Entity entity = EntityMapper.newInstanceFor(0).convert(cursor);
 
 		final MutableMessage message = newMessage(entity);
@@ -65,7 +82,9 @@ public class MessageMapper implements Converter<Cursor, Message> {
 		final boolean read = cursor.getInt(10) == 1;
 		message.setRead(read);
 
-		message.setProperties(dao.readPropertiesById(entity.getEntityId()));
+		if (dao != null) {
+			message.setProperties(dao.readPropertiesById(entity.getEntityId()));
+		}
 
 		return message;
 	}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.messages;
+
+import org.solovyev.android.messenger.chats.Chat;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Message found by {@link MessageService#searchMessages(String, int, int)} together with chat it belongs to
+ */
+@Immutable
+public final class MessageSearchHit {
+
+	@Nonnull
+	private final Message message;
+
+	@Nonnull
+	private final Chat chat;
+
+	public MessageSearchHit(@Nonnull Message message, @Nonnull Chat chat) {
+		this.message = message;
+		this.chat = chat;
+	}
+
+	@Nonnull
+	public Message getMessage() {
+		return message;
+	}
+
+	@Nonnull
+	public Chat getChat() {
+		return chat;
+	}
+}
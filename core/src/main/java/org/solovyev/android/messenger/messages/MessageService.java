@@ -16,6 +16,7 @@
 
 package org.solovyev.android.messenger.messages;
 
+import android.text.Spanned;
 import android.widget.ImageView;
 import org.joda.time.DateTime;
 import org.solovyev.android.messenger.accounts.AccountException;
@@ -25,6 +26,7 @@ import org.solovyev.android.messenger.entities.Entity;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -38,6 +40,17 @@ public interface MessageService {
 	@Nonnull
 	List<Message> getMessages(@Nonnull Entity chat);
 
+	/**
+	 * Loads page of messages of chat ordered by send date, see {@link MessageDao#readMessages(String, Message, boolean, int)}
+	 */
+	@Nonnull
+	List<Message> getMessages(@Nonnull Entity chat, @Nullable Message from, boolean ascending, int count);
+
+	/**
+	 * @return number of not removed messages in chat
+	 */
+	int getMessagesCount(@Nonnull Entity chat);
+
 	@Nullable
 	Message getSameMessage(@Nonnull String body, @Nonnull DateTime sendTime, @Nonnull Entity author, @Nonnull Entity recipient);
 
@@ -57,4 +70,30 @@ public interface MessageService {
 	 */
 	int getUnreadMessagesCount();
 
+	/**
+	 * Searches messages of all accounts, see {@link MessageDao#searchMessages(String, int, int)}
+	 *
+	 * @return page of found messages with their chats, most recent first
+	 */
+	@Nonnull
+	List<MessageSearchHit> searchMessages(@Nonnull String query, int offset, int count);
+
+	/**
+	 * @return body of the message with parsed HTML and links as it is shown in the list of messages. Result is cached,
+	 * see {@link #prerenderMessages(Collection)}
+	 */
+	@Nonnull
+	Spanned getRenderedBody(@Nonnull Message message, boolean htmlMessage);
+
+	/**
+	 * @return body of the message as it is shown in the list of chats. Result is cached, see {@link #prerenderMessages(Collection)}
+	 */
+	@Nonnull
+	Spanned getRenderedPreview(@Nonnull Message message);
+
+	/**
+	 * Prepares rendered bodies of the messages so that list items don't need to parse them. Should be called from background thread.
+	 */
+	void prerenderMessages(@Nonnull Collection<? extends Message> messages);
+
 }
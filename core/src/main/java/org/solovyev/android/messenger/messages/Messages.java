@@ -16,7 +16,7 @@
 
 package org.solovyev.android.messenger.messages;
 
-import android.text.Html;
+import android.text.Spanned;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDate;
@@ -37,6 +37,7 @@ import static org.joda.time.DateTime.now;
 import static org.joda.time.format.DateTimeFormat.shortDate;
 import static org.joda.time.format.DateTimeFormat.shortTime;
 import static org.solovyev.android.messenger.App.getApplication;
+import static org.solovyev.android.messenger.App.getMessageService;
 import static org.solovyev.android.messenger.accounts.AccountService.NO_ACCOUNT_ID;
 import static org.solovyev.android.messenger.entities.Entities.generateEntity;
 import static org.solovyev.android.messenger.entities.Entities.newEntityFromEntityId;
@@ -74,10 +75,11 @@ public final class Messages {
 	@Nonnull
 	public static CharSequence getMessageTitle(@Nonnull Chat chat, @Nonnull Message message, @Nonnull User user) {
 		final String authorName = getMessageAuthorDisplayName(chat, message, user);
+		final Spanned body = getMessageService().getRenderedPreview(message);
 		if (Strings.isEmpty(authorName)) {
-			return Html.fromHtml(message.getBody());
+			return body;
 		} else {
-			return authorName + ": " + Html.fromHtml(message.getBody());
+			return authorName + ": " + body;
 		}
 	}
 
@@ -20,7 +20,6 @@ import android.content.Context;
 import android.os.Handler;
 import android.util.Log;
 import com.google.common.base.Function;
-import com.google.common.base.Predicates;
 import org.joda.time.DateTime;
 import org.solovyev.android.messenger.BaseListItemAdapter;
 import org.solovyev.android.messenger.accounts.Account;
@@ -34,7 +33,6 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
 
-import static com.google.common.collect.Iterables.find;
 import static com.google.common.collect.Lists.transform;
 import static java.util.Arrays.asList;
 import static org.solovyev.android.messenger.App.newTag;
@@ -58,6 +56,11 @@ public class MessagesAdapter extends BaseListItemAdapter<MessageListItem> {
 	// VK doesn't send 'Stop typing' => this constant must be low enough
 	private static final int REMOVE_USER_START_TYPING_DELAY = 30000;
 
+	private static final int NOTIFY_DATA_SET_CHANGED_ID = 2;
+
+	// changes of list items done within one frame are shown with one notification
+	private static final int NOTIFY_DATA_SET_CHANGED_DELAY = 16;
+
 	@Nonnull
 	private static final String TAG = newTag("MessagesAdapter");
 
@@ -86,6 +89,16 @@ public class MessagesAdapter extends BaseListItemAdapter<MessageListItem> {
 	@Nonnull
 	private final Map<String, MessageListItem> sendingListItems = new HashMap<String, MessageListItem>();
 
+	// key: message id, value: list item of message
+	// NOTE: list might be changed outside of this class (e.g. by loader) => index is rebuilt on the next lookup
+	@Nonnull
+	private final Map<String, MessageListItem> listItems = new HashMap<String, MessageListItem>();
+
+	private boolean listItemsIndexed = true;
+
+	// true if list is changed by this class and index of list items has been updated accordingly
+	private boolean indexedChange = false;
+
 	@Nonnull
 	private final Handler uiHandler = new Handler(new Handler.Callback() {
 		@Override
@@ -93,11 +106,17 @@ public class MessagesAdapter extends BaseListItemAdapter<MessageListItem> {
 			switch (msg.what) {
 				case REMOVE_USER_START_TYPING_ID:
 					final MessageListItem listItem = (MessageListItem) msg.obj;
-					while (findInAllElements(listItem) != null) {
-						remove(listItem);
-					}
+					removeListItem(listItem.getMessage());
 					userTypingListItems.remove(listItem.getMessage().getAuthor());
 					return true;
+				case NOTIFY_DATA_SET_CHANGED_ID:
+					indexedChange = true;
+					try {
+						notifyDataSetChanged();
+					} finally {
+						indexedChange = false;
+					}
+					return true;
 
 			}
 			return false;
@@ -123,10 +142,20 @@ public class MessagesAdapter extends BaseListItemAdapter<MessageListItem> {
 					addMessages(event.getDataAsMessages());
 					break;
 				case message_state_changed:
-					onMessageStateChanged(event);
+					onMessageStateChanged(event.getDataAsMessage());
+					break;
+				case messages_state_changed:
+					for (Message message : event.getDataAsMessages()) {
+						onMessageStateChanged(message);
+					}
 					break;
 				case message_changed:
-					onMessageChanged(event);
+					onMessageChanged(event.getDataAsMessage());
+					break;
+				case messages_changed:
+					for (Message message : event.getDataAsMessages()) {
+						onMessageChanged(message);
+					}
 					break;
 				case user_is_typing:
 				case user_is_not_typing:
@@ -136,18 +165,31 @@ public class MessagesAdapter extends BaseListItemAdapter<MessageListItem> {
 		}
 	}
 
-	private void onMessageChanged(@Nonnull ChatEvent event) {
-		final Message message = event.getDataAsMessage();
+	private void onMessageChanged(@Nonnull Message message) {
 		final MessageListItem listItem = findInAllElements(message);
 		if (listItem != null) {
-			listItem.onMessageChanged(event.getDataAsMessage());
-			notifyDataSetChanged();
+			listItem.onMessageChanged(message);
+			onListItemChanged();
+		}
+	}
+
+	private void onListItemChanged() {
+		if (!uiHandler.hasMessages(NOTIFY_DATA_SET_CHANGED_ID)) {
+			uiHandler.sendEmptyMessageDelayed(NOTIFY_DATA_SET_CHANGED_ID, NOTIFY_DATA_SET_CHANGED_DELAY);
 		}
 	}
 
+	@Override
+	public void notifyDataSetChanged() {
+		if (!indexedChange) {
+			listItemsIndexed = false;
+		}
+		super.notifyDataSetChanged();
+	}
+
 	void addSendingMessage(@Nonnull Message message) {
 		final MessageListItem listItem = newMessageListItem(message);
-		add(listItem);
+		addListItems(asList(listItem));
 		sendingListItems.put(message.getOriginalId(), listItem);
 	}
 
@@ -165,14 +207,109 @@ public class MessagesAdapter extends BaseListItemAdapter<MessageListItem> {
 			removeSendingListItem(message);
 		}
 
-		addAll(listItems);
+		addListItems(listItems);
+	}
+
+	/**
+	 * Adds messages loaded from database when user scrolls to the top of the list
+	 */
+	void addOlderMessages(@Nonnull List<Message> messages) {
+		addListItems(transform(messages, new Function<Message, MessageListItem>() {
+			@Override
+			public MessageListItem apply(Message message) {
+				return newMessageListItem(message);
+			}
+		}));
+	}
+
+	/**
+	 * Adds list items which are not shown yet, list items of already shown messages are updated
+	 */
+	private void addListItems(@Nonnull List<MessageListItem> newListItems) {
+		final Map<String, MessageListItem> listItems = getListItems();
+
+		final List<MessageListItem> addedListItems = new ArrayList<MessageListItem>(newListItems.size());
+		boolean changed = false;
+		for (MessageListItem newListItem : newListItems) {
+			final MessageListItem listItem = listItems.get(newListItem.getId());
+			if (listItem == null) {
+				listItems.put(newListItem.getId(), newListItem);
+				addedListItems.add(newListItem);
+			} else {
+				listItem.onMessageChanged(newListItem.getMessage());
+				changed = true;
+			}
+		}
+
+		if (!addedListItems.isEmpty()) {
+			indexedChange = true;
+			try {
+				doWork(new Runnable() {
+					@Override
+					public void run() {
+						for (MessageListItem addedListItem : addedListItems) {
+							insert(addedListItem, getInsertPosition(addedListItem));
+						}
+					}
+				});
+			} finally {
+				indexedChange = false;
+			}
+		}
+
+		if (changed) {
+			onListItemChanged();
+		}
+	}
+
+	/**
+	 * Elements of the adapter are kept sorted by {@link MessageListItem.Comparator} => position of new list item can be
+	 * found by binary search instead of sorting the whole list after each addition
+	 *
+	 * @return position after the last list item which is not greater than <var>listItem</var>
+	 */
+	private int getInsertPosition(@Nonnull MessageListItem listItem) {
+		final Comparator<? super MessageListItem> comparator = getComparator();
+
+		int low = 0;
+		int high = getCount();
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (comparator.compare(getItem(middle), listItem) <= 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return oldest message shown in the list (in order of send date and id), null if list is empty
+	 */
+	@Nullable
+	Message getOldestMessage() {
+		Message result = null;
+		for (MessageListItem listItem : getAllElements()) {
+			final Message message = listItem.getMessage();
+			if (result == null || isOlder(message, result)) {
+				result = message;
+			}
+		}
+		return result;
+	}
+
+	private static boolean isOlder(@Nonnull Message message, @Nonnull Message than) {
+		final long sendTime = message.getSendDate().getMillis();
+		final long thanSendTime = than.getSendDate().getMillis();
+		return sendTime < thanSendTime || (sendTime == thanSendTime && message.getId().compareTo(than.getId()) < 0);
 	}
 
 	private void removeTypingListItem(@Nonnull Message message) {
 		if (message.isIncoming()) {
 			final MessageListItem typingListItem = userTypingListItems.remove(message.getAuthor());
 			if (typingListItem != null) {
-				remove(typingListItem);
+				removeListItem(typingListItem.getMessage());
 			}
 		}
 	}
@@ -181,15 +318,11 @@ public class MessagesAdapter extends BaseListItemAdapter<MessageListItem> {
 		if (message.isOutgoing()) {
 			final MessageListItem sendingListItem = sendingListItems.remove(message.getOriginalId());
 			if (sendingListItem != null) {
-				remove(sendingListItem);
+				removeListItem(sendingListItem.getMessage());
 			}
 		}
 	}
 
-	private void onMessageStateChanged(@Nonnull ChatEvent event) {
-		onMessageStateChanged(event.getDataAsMessage());
-	}
-
 	private void onMessageStateChanged(@Nonnull Message message) {
 		switch (message.getState()) {
 			case removed:
@@ -199,7 +332,7 @@ public class MessagesAdapter extends BaseListItemAdapter<MessageListItem> {
 				final MessageListItem listItem = findInAllElements(message);
 				if (listItem != null) {
 					listItem.onMessageChanged(message);
-					notifyDataSetChanged();
+					onListItemChanged();
 				}
 		}
 	}
@@ -215,7 +348,7 @@ public class MessagesAdapter extends BaseListItemAdapter<MessageListItem> {
 
 				// create fake list item
 				listItem = newMessageListItem(message);
-				add(listItem);
+				addListItems(asList(listItem));
 
 				// add list item to the map
 				userTypingListItems.put(user, listItem);
@@ -265,12 +398,19 @@ public class MessagesAdapter extends BaseListItemAdapter<MessageListItem> {
 
 	@Nullable
 	private MessageListItem findInAllElements(@Nonnull Message message) {
-		return findInAllElements(newMessageListItem(message));
+		return getListItems().get(message.getId());
 	}
 
-	@Nullable
-	private MessageListItem findInAllElements(@Nonnull MessageListItem listItem) {
-		return find(getAllElements(), Predicates.<MessageListItem>equalTo(listItem), null);
+	@Nonnull
+	private Map<String, MessageListItem> getListItems() {
+		if (!listItemsIndexed) {
+			listItems.clear();
+			for (MessageListItem listItem : getAllElements()) {
+				listItems.put(listItem.getId(), listItem);
+			}
+			listItemsIndexed = true;
+		}
+		return listItems;
 	}
 
 	@Nonnull
@@ -279,7 +419,15 @@ public class MessagesAdapter extends BaseListItemAdapter<MessageListItem> {
 	}
 
 	protected void removeListItem(@Nonnull Message message) {
-		remove(newMessageListItem(message));
+		final MessageListItem listItem = getListItems().remove(message.getId());
+		if (listItem != null) {
+			indexedChange = true;
+			try {
+				remove(listItem);
+			} finally {
+				indexedChange = false;
+			}
+		}
 	}
 
 	@Override
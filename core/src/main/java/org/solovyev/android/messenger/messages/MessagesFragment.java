@@ -69,6 +69,7 @@ import roboguice.event.EventListener;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import static android.view.ViewGroup.LayoutParams.MATCH_PARENT;
@@ -98,6 +99,9 @@ public final class MessagesFragment extends BaseAsyncListFragment<Message, Messa
 	@Nonnull
 	private static final String ARG_CHAT = "chat";
 
+	// number of messages loaded from database at once
+	private static final int PAGE_SIZE = 30;
+
 
     /*
 	**********************************************************************
@@ -135,6 +139,9 @@ public final class MessagesFragment extends BaseAsyncListFragment<Message, Messa
 	@Nullable
 	private JEventListener<ChatEvent> chatEventListener;
 
+	@Nullable
+	private OlderMessagesAsyncLoader olderMessagesLoader;
+
 	private EditText messageBody;
 
 	public MessagesFragment() {
@@ -379,7 +386,46 @@ public final class MessagesFragment extends BaseAsyncListFragment<Message, Messa
 	public void onTopReached() {
 		super.onTopReached();
 
-		syncOlderMessages();
+		loadOlderMessages();
+	}
+
+	/**
+	 * Loads next page of older messages from database, if there are no more messages in database => loads them from remote server
+	 */
+	private void loadOlderMessages() {
+		final FragmentActivity activity = getActivity();
+		if (activity != null && olderMessagesLoader == null && isInitialLoadingDone()) {
+			olderMessagesLoader = new OlderMessagesAsyncLoader(activity, getAdapter().getOldestMessage());
+			olderMessagesLoader.executeInParallel();
+		}
+	}
+
+	private void onOlderMessagesLoaded(@Nonnull List<Message> messages) {
+		olderMessagesLoader = null;
+
+		if (messages.isEmpty()) {
+			syncOlderMessages();
+		} else {
+			final MessagesAdapter adapter = getAdapter();
+			final ListView lv = getListViewById();
+			if (lv != null) {
+				final Integer transcriptMode = lv.getTranscriptMode();
+				lv.setTranscriptMode(ListView.TRANSCRIPT_MODE_DISABLED);
+
+				// keep currently visible messages on their places
+				final int countBefore = adapter.getCount();
+				final int firstVisiblePosition = lv.getFirstVisiblePosition();
+				final View firstVisibleView = lv.getChildAt(0);
+				final int top = firstVisibleView == null ? 0 : firstVisibleView.getTop();
+
+				adapter.addOlderMessages(messages);
+
+				lv.setSelectionFromTop(firstVisiblePosition + adapter.getCount() - countBefore, top);
+				setTranscriptMode(lv, transcriptMode);
+			} else {
+				adapter.addOlderMessages(messages);
+			}
+		}
 	}
 
 	private void syncOlderMessages() {
@@ -436,6 +482,15 @@ public final class MessagesFragment extends BaseAsyncListFragment<Message, Messa
 		}
 	}
 
+	@Override
+	public void onDestroy() {
+		if (olderMessagesLoader != null) {
+			olderMessagesLoader.cancel(false);
+			olderMessagesLoader = null;
+		}
+		super.onDestroy();
+	}
+
 	@Nonnull
 	@Override
 	protected MessengerAsyncTask<Void, Void, List<Message>> createAsyncLoader(@Nonnull BaseListItemAdapter<MessageListItem> adapter, @Nonnull Runnable onPostExecute) {
@@ -487,14 +542,21 @@ public final class MessagesFragment extends BaseAsyncListFragment<Message, Messa
 
 	private class MessagesAsyncLoader extends BaseAsyncLoader<Message, MessageListItem> {
 
+		// reload should not drop pages which have been already loaded
+		private final int count;
+
 		public MessagesAsyncLoader(BaseListItemAdapter<MessageListItem> adapter, Runnable onPostExecute) {
 			super(MessagesFragment.this.getActivity(), adapter, onPostExecute);
+			this.count = Math.max(PAGE_SIZE, adapter.getCount());
 		}
 
 		@Nonnull
 		@Override
 		protected List<Message> getElements(@Nonnull Context context) {
-			return App.getMessageService().getMessages(chat.getEntity());
+			final MessageService messageService = App.getMessageService();
+			final List<Message> messages = messageService.getMessages(chat.getEntity(), null, false, count);
+			messageService.prerenderMessages(messages);
+			return messages;
 		}
 
 		@Nonnull
@@ -504,6 +566,39 @@ public final class MessagesFragment extends BaseAsyncListFragment<Message, Messa
 		}
 	}
 
+	private class OlderMessagesAsyncLoader extends MessengerAsyncTask<Void, Void, List<Message>> {
+
+		@Nullable
+		private final Message oldestMessage;
+
+		private OlderMessagesAsyncLoader(@Nonnull Context context, @Nullable Message oldestMessage) {
+			super(context);
+			this.oldestMessage = oldestMessage;
+		}
+
+		@Override
+		protected List<Message> doWork(@Nonnull List<Void> params) {
+			final MessageService messageService = App.getMessageService();
+			final List<Message> messages = messageService.getMessages(chat.getEntity(), oldestMessage, false, PAGE_SIZE);
+			messageService.prerenderMessages(messages);
+			return messages;
+		}
+
+		@Override
+		protected void onSuccessPostExecute(@Nullable List<Message> messages) {
+			if (olderMessagesLoader == this) {
+				onOlderMessagesLoaded(messages == null ? Collections.<Message>emptyList() : messages);
+			}
+		}
+
+		@Override
+		protected void onFailurePostExecute(@Nonnull Exception e) {
+			if (olderMessagesLoader == this) {
+				olderMessagesLoader = null;
+			}
+			super.onFailurePostExecute(e);
+		}
+	}
 
 	/*
 	**********************************************************************
@@ -30,13 +30,16 @@ import org.solovyev.android.db.*;
 import org.solovyev.android.db.properties.PropertyByIdDbQuery;
 import org.solovyev.android.messenger.MergeDaoResult;
 import org.solovyev.android.messenger.MergeDaoResultImpl;
+import org.solovyev.android.messenger.UpsertPropertiesExec;
 import org.solovyev.android.messenger.chats.Chat;
 import org.solovyev.android.messenger.chats.ChatService;
+import org.solovyev.android.messenger.chats.SqliteChatDao.UpdateChatSummary;
 import org.solovyev.android.messenger.db.StringIdMapper;
 import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.users.UserService;
 import org.solovyev.android.properties.AProperty;
 import org.solovyev.common.Converter;
+import org.solovyev.common.collections.Collections;
 import org.solovyev.common.text.Strings;
 
 import javax.annotation.Nonnull;
@@ -45,17 +48,73 @@ import javax.inject.Singleton;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.google.common.collect.Iterables.getFirst;
+import static java.util.Collections.emptyList;
 import static org.solovyev.android.db.AndroidDbUtils.*;
+import static org.solovyev.android.messenger.UpsertPropertiesExec.newUpsertPropertiesExec;
 import static org.solovyev.android.messenger.entities.Entities.newEntityFromEntityId;
 import static org.solovyev.android.messenger.messages.MessageState.removed;
+import static org.solovyev.android.properties.Properties.newProperty;
 
 
 @Singleton
 public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao {
 
+	/*
+	**********************************************************************
+	*
+	*                           QUERIES
+	*
+	**********************************************************************
+	*/
+
+	// queries are package-visible so that their plans can be checked in tests
+
+	static final String MESSAGES_BY_CHAT_QUERY = "select * from messages where chat_id = ?";
+
+	static final String NOT_REMOVED_MESSAGES_BY_CHAT_QUERY = "select * from messages where chat_id = ? and state <> ?";
+
+	static final String OLDEST_MESSAGE_QUERY = "select id from messages where chat_id = ? and state <> ? order by send_time asc";
+
+	static final String LAST_MESSAGE_QUERY = "select last_message_id from chats where id = ?";
+
+	static final String MESSAGE_QUERY = "select * from messages where id = ?";
+
+	static final String MESSAGES_COUNT_QUERY = "select count(*) from messages where chat_id = ? and state <> ?";
+
+	static final String UNREAD_MESSAGES_COUNT_QUERY = "select count(*) from messages where read = 0 and state <> ?";
+
+	static final String SAME_MESSAGE_QUERY = "select * from messages where body = ? and author_id = ? and recipient_id = ? and abs(send_time - ?) < 60000";
+
+	// messages_fts is kept in sync with messages by triggers, docid is stored in messages.fts_docid (rowid of message might
+	// change after VACUUM as messages table has no INTEGER PRIMARY KEY)
+	static final String SEARCH_MESSAGES_QUERY = "select m.* from messages_fts f, messages m where f.docid = m.fts_docid and messages_fts match ? and m.state <> ? order by m.send_time desc, m.id desc limit ? offset ?";
+
+	/**
+	 * @param afterMessage true if page starts after some message (then query has 3 more parameters: send time of the
+	 *                     message twice and its id)
+	 */
+	@Nonnull
+	static String newMessagesPageQuery(boolean afterMessage, boolean ascending, int count) {
+		final String order = ascending ? " asc" : " desc";
+		final StringBuilder sql = new StringBuilder("select * from messages where chat_id = ? and state <> ?");
+		if (afterMessage) {
+			// first condition on send_time is redundant but allows range search in index
+			if (ascending) {
+				sql.append(" and send_time >= ? and (send_time > ? or id > ?)");
+			} else {
+				sql.append(" and send_time <= ? and (send_time < ? or id < ?)");
+			}
+		}
+		sql.append(" order by send_time").append(order).append(", id").append(order);
+		sql.append(" limit ").append(count);
+		return sql.toString();
+	}
+
     /*
 	**********************************************************************
     *
@@ -100,11 +159,10 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 
 	@Override
 	public long create(@Nonnull Message message) {
-		final long result = dao.create(message);
-		if (result != DbExec.SQL_ERROR) {
-			doDbExec(getSqliteOpenHelper(), new InsertProperties(message));
-		}
-		return result;
+		// message, its properties and summary of the chat are written in one transaction
+		final MessageSaver saver = MessageSaver.forNewMessage(message, newUpsertProperties().addNew(message.getId(), message.getProperties().getPropertiesCollection()));
+		doDbExecs(getSqliteOpenHelper(), Arrays.<DbExec>asList(saver));
+		return saver.result;
 	}
 
 	@Nullable
@@ -127,22 +185,24 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 
 	@Override
 	public long update(@Nonnull Message message) {
-		final long rows = dao.update(message);
-		if (rows > 0) {
-			// message exists => can remove/insert properties
-			doDbExecs(getSqliteOpenHelper(), Arrays.<DbExec>asList(new DeleteProperties(message), new InsertProperties(message)));
-		}
-		return rows;
+		// message, its properties and summary of the chat are written in one transaction
+		final MessageSaver saver = MessageSaver.forExistingMessage(message, newUpsertProperties().addExisting(message.getId(), message.getProperties().getPropertiesCollection()));
+		doDbExecs(getSqliteOpenHelper(), Arrays.<DbExec>asList(saver));
+		return saver.result;
 	}
 
 	@Override
 	public void delete(@Nonnull Message message) {
-		dao.delete(message);
+		// chat must never reference removed message => summary is updated in the same transaction
+		doDbExecs(getSqliteOpenHelper(), Arrays.<DbExec>asList(new DeleteMessage(message.getId()), UpdateChatSummary.forChat(message.getChat().getEntityId())));
 	}
 
 	@Override
 	public void deleteById(@Nonnull String id) {
-		dao.deleteById(id);
+		final Message message = dao.read(id);
+		if (message != null) {
+			delete(message);
+		}
 	}
 
 	@Nonnull
@@ -151,6 +211,19 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		return doDbQuery(getSqliteOpenHelper(), new LoadMessages(getContext(), chatId, getSqliteOpenHelper()));
 	}
 
+	@Nonnull
+	@Override
+	public List<Message> readMessages(@Nonnull String chatId, @Nullable Message from, boolean ascending, int count) {
+		final List<MutableMessage> messages = doDbQuery(getSqliteOpenHelper(), new LoadMessagesPage(getContext(), chatId, from, ascending, count, getSqliteOpenHelper()));
+		readProperties(messages);
+		return new ArrayList<Message>(messages);
+	}
+
+	@Override
+	public int getMessagesCount(@Nonnull String chatId) {
+		return doDbQuery(getSqliteOpenHelper(), new MessagesCountLoader(getContext(), getSqliteOpenHelper(), chatId));
+	}
+
 	@Nonnull
 	@Override
 	public String getOldestMessageForChat(@Nonnull String chatId) {
@@ -176,19 +249,21 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 
 	@Override
 	public boolean changeReadStatus(@Nonnull String messageId, boolean read) {
-		final Long rows = doDbExec(getSqliteOpenHelper(), new ReadStatusUpdater(messageId, read));
-		return rows != 0;
+		final ReadStatusUpdater updater = new ReadStatusUpdater(messageId, read);
+		doDbExecs(getSqliteOpenHelper(), Arrays.<DbExec>asList(updater));
+		return updater.rows != 0;
 	}
 
 	@Override
 	public boolean changeMessageState(@Nonnull String messageId, @Nonnull MessageState state) {
-		final Long rows = doDbExec(getSqliteOpenHelper(), new StateUpdater(messageId, state));
-		return rows != 0;
+		final StateUpdater updater = new StateUpdater(messageId, state);
+		doDbExecs(getSqliteOpenHelper(), Arrays.<DbExec>asList(updater));
+		return updater.rows != 0;
 	}
 
 	@Override
 	public void deleteAll() {
-		doDbExec(getSqliteOpenHelper(), DeleteAllRowsDbExec.newInstance("messages"));
+		doDbExecs(getSqliteOpenHelper(), Arrays.<DbExec>asList(DeleteAllRowsDbExec.newInstance("messages"), UpdateChatSummary.forAllChats()));
 	}
 
 	@Nonnull
@@ -203,6 +278,55 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		return getFirst(doDbQuery(getSqliteOpenHelper(), new LoadSameMessage(body, sendTime, author, recipient)), null);
 	}
 
+	@Nonnull
+	@Override
+	public List<Message> searchMessages(@Nonnull String query, int offset, int count) {
+		final String matchQuery = toMatchQuery(query);
+		if (matchQuery.length() == 0) {
+			return emptyList();
+		}
+
+		final List<MutableMessage> messages = doDbQuery(getSqliteOpenHelper(), new SearchMessages(getContext(), matchQuery, offset, count, getSqliteOpenHelper()));
+		readProperties(messages);
+		return new ArrayList<Message>(messages);
+	}
+
+	/**
+	 * Converts text typed by user to the query of FTS table: all words must be found, the last word (which might be not
+	 * typed completely) is searched by prefix. Prefix search over all words is avoided as short prefixes expand to
+	 * thousands of terms.
+	 * Words are split and ASCII letters are lower-cased in the same way as by the "simple" tokenizer of SQLite, so no FTS
+	 * operators (which are upper-case words and punctuation) can be passed from user input.
+	 */
+	@Nonnull
+	static String toMatchQuery(@Nonnull String query) {
+		final StringBuilder result = new StringBuilder(query.length() + 1);
+
+		boolean inWord = false;
+		for (int i = 0; i < query.length(); i++) {
+			final char c = query.charAt(i);
+			if (isTokenChar(c)) {
+				if (!inWord && result.length() > 0) {
+					result.append(' ');
+				}
+				result.append(c >= 'A' && c <= 'Z' ? (char) (c - 'A' + 'a') : c);
+				inWord = true;
+			} else {
+				inWord = false;
+			}
+		}
+
+		if (inWord) {
+			result.append('*');
+		}
+
+		return result.toString();
+	}
+
+	private static boolean isTokenChar(char c) {
+		return c >= 128 || (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
 	@Nonnull
 	@Override
 	public MergeDaoResult<Message, String> mergeMessages(@Nonnull String chatId, @Nonnull Collection<? extends Message> messages) {
@@ -210,9 +334,12 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 
 		final Chat chat = getChatService().getChatById(newEntityFromEntityId(chatId));
 
-		if (chat != null) {
+		if (chat != null && !messages.isEmpty()) {
+			// existing messages are loaded with a few IN queries instead of one query per message
+			final Map<String, Message> messagesFromDb = readMessagesByIds(getIds(messages));
+
 			for (Message message : messages) {
-				final Message messageFromDb = read(message.getId());
+				final Message messageFromDb = messagesFromDb.get(message.getId());
 				if (messageFromDb == null) {
 					result.addAddedObject(message);
 				} else {
@@ -223,23 +350,68 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 
 			final List<DbExec> execs = new ArrayList<DbExec>();
 
+			// properties of all messages are written by one exec (reusing compiled statements) after messages are inserted
+			final UpsertPropertiesExec properties = newUpsertProperties();
+
 			for (Message updatedMessage : result.getUpdatedObjects()) {
 				execs.add(new UpdateMessage(updatedMessage));
-				execs.add(new DeleteProperties(updatedMessage));
-				execs.add(new InsertProperties(updatedMessage));
+				properties.addExisting(updatedMessage.getId(), updatedMessage.getProperties().getPropertiesCollection());
 			}
 
 			for (Message addedMessage : result.getAddedObjects()) {
 				execs.add(new InsertMessage(addedMessage));
-				execs.add(new InsertProperties(addedMessage));
+				properties.addNew(addedMessage.getId(), addedMessage.getProperties().getPropertiesCollection());
 			}
 
+			execs.add(properties);
+			execs.add(UpdateChatSummary.forChat(chatId));
+
 			doDbExecs(getSqliteOpenHelper(), execs);
 		}
 
 		return result;
 	}
 
+	@Nonnull
+	private static List<String> getIds(@Nonnull Collection<? extends Message> messages) {
+		final List<String> ids = new ArrayList<String>(messages.size());
+		for (Message message : messages) {
+			ids.add(message.getId());
+		}
+		return ids;
+	}
+
+	@Nonnull
+	private Map<String, Message> readMessagesByIds(@Nonnull List<String> messageIds) {
+		final Map<String, Message> result = new HashMap<String, Message>(messageIds.size());
+
+		for (List<String> messageIdsChunk : Collections.split(messageIds, MAX_IN_COUNT)) {
+			final List<MutableMessage> messages = doDbQuery(getSqliteOpenHelper(), new LoadMessagesByIds(getContext(), messageIdsChunk, getSqliteOpenHelper()));
+			readProperties(messages);
+			for (MutableMessage message : messages) {
+				result.put(message.getId(), message);
+			}
+		}
+
+		return result;
+	}
+
+	private void readProperties(@Nonnull List<MutableMessage> messages) {
+		if (messages.isEmpty()) {
+			return;
+		}
+
+		for (List<MutableMessage> messagesChunk : Collections.split(messages, MAX_IN_COUNT)) {
+			final Map<String, List<AProperty>> properties = doDbQuery(getSqliteOpenHelper(), new LoadPropertiesByIdsDbQuery(getContext(), getIds(messagesChunk), getSqliteOpenHelper()));
+			for (MutableMessage message : messagesChunk) {
+				final List<AProperty> messageProperties = properties.get(message.getId());
+				if (messageProperties != null) {
+					message.setProperties(messageProperties);
+				}
+			}
+		}
+	}
+
 	@Nonnull
 	private ChatService getChatService() {
 		return this.chatService;
@@ -274,7 +446,7 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			return db.query("messages", null, "chat_id = ?", new String[]{chatId}, null, null, null);
+			return db.rawQuery(MESSAGES_BY_CHAT_QUERY, new String[]{chatId});
 		}
 
 		@Nonnull
@@ -300,6 +472,21 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		}
 	}
 
+	private static final class DeleteMessage implements DbExec {
+
+		@Nonnull
+		private final String messageId;
+
+		private DeleteMessage(@Nonnull String messageId) {
+			this.messageId = messageId;
+		}
+
+		@Override
+		public long exec(@Nonnull SQLiteDatabase db) {
+			return db.delete("messages", "id = ?", new String[]{messageId});
+		}
+	}
+
 	private static final class UpdateMessage extends AbstractObjectDbExec<Message> {
 
 		private UpdateMessage(@Nonnull Message message) {
@@ -347,7 +534,7 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			return db.query("messages", null, "chat_id = ? and state <> ?", new String[]{chatId, removed.name()}, null, null, null);
+			return db.rawQuery(NOT_REMOVED_MESSAGES_BY_CHAT_QUERY, new String[]{chatId, removed.name()});
 		}
 
 		@Nonnull
@@ -357,6 +544,148 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		}
 	}
 
+	private static final class LoadMessagesPage extends AbstractDbQuery<List<MutableMessage>> {
+
+		@Nonnull
+		private final String chatId;
+
+		@Nullable
+		private final Message from;
+
+		private final boolean ascending;
+
+		private final int count;
+
+		private LoadMessagesPage(@Nonnull Context context,
+								 @Nonnull String chatId,
+								 @Nullable Message from,
+								 boolean ascending,
+								 int count,
+								 @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
+			super(context, sqliteOpenHelper);
+			this.chatId = chatId;
+			this.from = from;
+			this.ascending = ascending;
+			this.count = count;
+		}
+
+		@Nonnull
+		@Override
+		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
+			final String sql = newMessagesPageQuery(from != null, ascending, count);
+			if (from == null) {
+				return db.rawQuery(sql, new String[]{chatId, removed.name()});
+			} else {
+				final String sendTime = String.valueOf(from.getSendDate().getMillis());
+				return db.rawQuery(sql, new String[]{chatId, removed.name(), sendTime, sendTime, from.getId()});
+			}
+		}
+
+		@Nonnull
+		@Override
+		public List<MutableMessage> retrieveData(@Nonnull Cursor cursor) {
+			return readMessages(cursor);
+		}
+	}
+
+	private static final class SearchMessages extends AbstractDbQuery<List<MutableMessage>> {
+
+		@Nonnull
+		private final String matchQuery;
+
+		private final int offset;
+
+		private final int count;
+
+		private SearchMessages(@Nonnull Context context,
+							   @Nonnull String matchQuery,
+							   int offset,
+							   int count,
+							   @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
+			super(context, sqliteOpenHelper);
+			this.matchQuery = matchQuery;
+			this.offset = offset;
+			this.count = count;
+		}
+
+		@Nonnull
+		@Override
+		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
+			return db.rawQuery(SEARCH_MESSAGES_QUERY, new String[]{matchQuery, removed.name(), String.valueOf(count), String.valueOf(offset)});
+		}
+
+		@Nonnull
+		@Override
+		public List<MutableMessage> retrieveData(@Nonnull Cursor cursor) {
+			return readMessages(cursor);
+		}
+	}
+
+	private static final class LoadMessagesByIds extends AbstractDbQuery<List<MutableMessage>> {
+
+		@Nonnull
+		private final List<String> messageIds;
+
+		private LoadMessagesByIds(@Nonnull Context context,
+								  @Nonnull List<String> messageIds,
+								  @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
+			super(context, sqliteOpenHelper);
+			this.messageIds = messageIds;
+		}
+
+		@Nonnull
+		@Override
+		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
+			return db.query("messages", null, "id in " + inClause(messageIds), inClauseValues(messageIds), null, null, null);
+		}
+
+		@Nonnull
+		@Override
+		public List<MutableMessage> retrieveData(@Nonnull Cursor cursor) {
+			return readMessages(cursor);
+		}
+	}
+
+	private static final class LoadPropertiesByIdsDbQuery extends AbstractDbQuery<Map<String, List<AProperty>>> {
+
+		@Nonnull
+		private final List<String> messageIds;
+
+		private LoadPropertiesByIdsDbQuery(@Nonnull Context context,
+										   @Nonnull List<String> messageIds,
+										   @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
+			super(context, sqliteOpenHelper);
+			this.messageIds = messageIds;
+		}
+
+		@Nonnull
+		@Override
+		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
+			return db.rawQuery("select message_id, property_name, property_value from message_properties where message_id in " + inClause(messageIds), inClauseValues(messageIds));
+		}
+
+		@Nonnull
+		@Override
+		public Map<String, List<AProperty>> retrieveData(@Nonnull Cursor cursor) {
+			final Map<String, List<AProperty>> result = new HashMap<String, List<AProperty>>();
+
+			if (cursor.moveToFirst()) {
+				while (!cursor.isAfterLast()) {
+					final String messageId = cursor.getString(0);
+					List<AProperty> properties = result.get(messageId);
+					if (properties == null) {
+						properties = new ArrayList<AProperty>();
+						result.put(messageId, properties);
+					}
+					properties.add(newProperty(cursor.getString(1), cursor.getString(2)));
+					cursor.moveToNext();
+				}
+			}
+
+			return result;
+		}
+	}
+
 	private final class LoadMessage extends AbstractDbQuery<List<Message>> {
 
 		@Nonnull
@@ -372,7 +701,7 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			return db.query("messages", null, "id = ? ", new String[]{String.valueOf(messageId)}, null, null, null);
+			return db.rawQuery(MESSAGE_QUERY, new String[]{messageId});
 		}
 
 		@Nonnull
@@ -395,7 +724,7 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			return db.rawQuery("select id from messages where chat_id = ? and state <> ? order by send_time asc", new String[]{chatId, removed.name()});
+			return db.rawQuery(OLDEST_MESSAGE_QUERY, new String[]{chatId, removed.name()});
 		}
 
 		@Nonnull
@@ -422,20 +751,40 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			return db.rawQuery("select id from messages where chat_id = ? and state <> ? order by send_time desc", new String[]{chatId, removed.name()});
+			return db.rawQuery(LAST_MESSAGE_QUERY, new String[]{chatId});
 		}
 
 		@Nonnull
 		@Override
 		public String retrieveData(@Nonnull Cursor cursor) {
 			if (cursor.moveToFirst()) {
-				return cursor.getString(0);
+				// chat without messages has no last message
+				final String lastMessageId = cursor.getString(0);
+				return lastMessageId == null ? "" : lastMessageId;
 			} else {
 				return "";
 			}
 		}
 	}
 
+	/**
+	 * Reads messages without properties, see {@link #readProperties(List)}
+	 */
+	@Nonnull
+	private static List<MutableMessage> readMessages(@Nonnull Cursor cursor) {
+		final List<MutableMessage> result = new ArrayList<MutableMessage>(cursor.getCount());
+
+		final MessageMapper mapper = MessageMapper.newMapperWithoutProperties();
+		if (cursor.moveToFirst()) {
+			while (!cursor.isAfterLast()) {
+				result.add(mapper.convert(cursor));
+				cursor.moveToNext();
+			}
+		}
+
+		return result;
+	}
+
 	@Nonnull
 	private static ContentValues toContentValues(@Nonnull Message message) {
 		final DateTimeFormatter dateTimeFormatter = ISODateTimeFormat.basicDateTime();
@@ -460,6 +809,33 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		return values;
 	}
 
+	private static class MessagesCountLoader extends AbstractDbQuery<Integer> {
+
+		@Nonnull
+		private final String chatId;
+
+		private MessagesCountLoader(@Nonnull Context context, @Nonnull SQLiteOpenHelper sqliteOpenHelper, @Nonnull String chatId) {
+			super(context, sqliteOpenHelper);
+			this.chatId = chatId;
+		}
+
+		@Nonnull
+		@Override
+		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
+			return db.rawQuery(MESSAGES_COUNT_QUERY, new String[]{chatId, removed.name()});
+		}
+
+		@Nonnull
+		@Override
+		public Integer retrieveData(@Nonnull Cursor cursor) {
+			if (cursor.moveToFirst()) {
+				return cursor.getInt(0);
+			} else {
+				return 0;
+			}
+		}
+	}
+
 	private static class UnreadMessagesCountLoader extends AbstractDbQuery<Integer> {
 
 		private UnreadMessagesCountLoader(@Nonnull Context context, @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
@@ -469,7 +845,7 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			return db.rawQuery("select count(*) from messages where read = 0 and and state <> ?", new String[]{removed.name()});
+			return db.rawQuery(UNREAD_MESSAGES_COUNT_QUERY, new String[]{removed.name()});
 		}
 
 		@Nonnull
@@ -483,6 +859,58 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		}
 	}
 
+	/**
+	 * Inserts or updates message and, if message has been saved, its properties and summary of the chat, must be executed
+	 * in transaction (see {@link #create(Message)} and {@link #update(Message)})
+	 */
+	private static final class MessageSaver implements DbExec {
+
+		@Nonnull
+		private final DbExec messageExec;
+
+		@Nonnull
+		private final UpsertPropertiesExec properties;
+
+		@Nonnull
+		private final String chatId;
+
+		private final boolean newMessage;
+
+		// id of inserted row for new message, number of updated messages for existing message
+		private long result = SQL_ERROR;
+
+		private MessageSaver(@Nonnull DbExec messageExec, @Nonnull UpsertPropertiesExec properties, @Nonnull String chatId, boolean newMessage) {
+			this.messageExec = messageExec;
+			this.properties = properties;
+			this.chatId = chatId;
+			this.newMessage = newMessage;
+		}
+
+		@Nonnull
+		private static MessageSaver forNewMessage(@Nonnull Message message, @Nonnull UpsertPropertiesExec properties) {
+			return new MessageSaver(new InsertMessage(message), properties, message.getChat().getEntityId(), true);
+		}
+
+		@Nonnull
+		private static MessageSaver forExistingMessage(@Nonnull Message message, @Nonnull UpsertPropertiesExec properties) {
+			return new MessageSaver(new UpdateMessage(message), properties, message.getChat().getEntityId(), false);
+		}
+
+		@Override
+		public long exec(@Nonnull SQLiteDatabase db) {
+			result = messageExec.exec(db);
+			final boolean saved = newMessage ? result != SQL_ERROR : result > 0;
+			if (saved) {
+				properties.exec(db);
+				UpdateChatSummary.forChat(chatId).exec(db);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Updates read status and summary of the chat, must be executed in transaction (see {@link #changeReadStatus(String, boolean)})
+	 */
 	private static class ReadStatusUpdater implements DbExec {
 
 		@Nonnull
@@ -490,6 +918,9 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 
 		private final boolean read;
 
+		// number of updated messages
+		private long rows;
+
 		private ReadStatusUpdater(@Nonnull String messageId, boolean read) {
 			this.messageId = messageId;
 			this.read = read;
@@ -500,10 +931,17 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 			final ContentValues values = new ContentValues();
 			final int newReadValue = read ? 1 : 0;
 			values.put("read", newReadValue);
-			return db.update("messages", values, "id = ? and read <> ?", new String[]{messageId, String.valueOf(newReadValue)});
+			rows = db.update("messages", values, "id = ? and read <> ?", new String[]{messageId, String.valueOf(newReadValue)});
+			if (rows > 0) {
+				UpdateChatSummary.forMessage(messageId).exec(db);
+			}
+			return rows;
 		}
 	}
 
+	/**
+	 * Updates state and summary of the chat, must be executed in transaction (see {@link #changeMessageState(String, MessageState)})
+	 */
 	private static class StateUpdater implements DbExec {
 
 		@Nonnull
@@ -512,6 +950,9 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		@Nonnull
 		private final MessageState state;
 
+		// number of updated messages
+		private long rows;
+
 		private StateUpdater(@Nonnull String messageId, @Nonnull MessageState state) {
 			this.messageId = messageId;
 			this.state = state;
@@ -521,7 +962,11 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		public long exec(@Nonnull SQLiteDatabase db) {
 			final ContentValues values = new ContentValues();
 			values.put("state", state.name());
-			return db.update("messages", values, "id = ?", new String[]{messageId});
+			rows = db.update("messages", values, "id = ?", new String[]{messageId});
+			if (rows > 0) {
+				UpdateChatSummary.forMessage(messageId).exec(db);
+			}
+			return rows;
 		}
 	}
 
@@ -532,48 +977,9 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		}
 	}
 
-	private static final class DeleteProperties extends AbstractObjectDbExec<Message> {
-
-		private DeleteProperties(@Nonnull Message message) {
-			super(message);
-		}
-
-		@Override
-		public long exec(@Nonnull SQLiteDatabase db) {
-			final Message message = getNotNullObject();
-
-			return db.delete("message_properties", "message_id = ?", new String[]{String.valueOf(message.getEntity().getEntityId())});
-		}
-	}
-
-	private static final class InsertProperties extends AbstractObjectDbExec<Message> {
-
-		private InsertProperties(@Nonnull Message message) {
-			super(message);
-		}
-
-		@Override
-		public long exec(@Nonnull SQLiteDatabase db) {
-			long result = 0;
-
-			final Message message = getNotNullObject();
-
-			for (AProperty property : message.getProperties().getPropertiesCollection()) {
-				final ContentValues values = new ContentValues();
-				final String value = property.getValue();
-				if (value != null) {
-					values.put("message_id", message.getEntity().getEntityId());
-					values.put("property_name", property.getName());
-					values.put("property_value", value);
-					final long id = db.insert("message_properties", null, values);
-					if (id == DbExec.SQL_ERROR) {
-						result = DbExec.SQL_ERROR;
-					}
-				}
-			}
-
-			return result;
-		}
+	@Nonnull
+	private static UpsertPropertiesExec newUpsertProperties() {
+		return newUpsertPropertiesExec("message_properties", "message_id", false);
 	}
 
 	private class LoadSameMessage implements DbQuery<List<Message>> {
@@ -601,7 +1007,7 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
 			final String sendTime = String.valueOf(this.sendTime.getMillis());
-			return db.query("messages", null, "body = ? and author_id = ? and recipient_id = ? and abs(send_time - ?) < 60000", new String[]{body, author.getEntityId(), recipient.getEntityId(), sendTime}, null, null, null);
+			return db.rawQuery(SAME_MESSAGE_QUERY, new String[]{body, author.getEntityId(), recipient.getEntityId(), sendTime}, null, null, null);
 		}
 
 		@Nonnull
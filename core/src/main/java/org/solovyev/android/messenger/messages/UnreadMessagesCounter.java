@@ -27,7 +27,6 @@ import org.solovyev.android.messenger.chats.Chat;
 import org.solovyev.android.messenger.chats.ChatEvent;
 import org.solovyev.android.messenger.chats.ChatService;
 import org.solovyev.android.messenger.entities.Entity;
-import org.solovyev.android.messenger.users.PersistenceLock;
 import org.solovyev.common.listeners.AbstractJEventListener;
 
 import javax.annotation.Nonnull;
@@ -89,9 +88,6 @@ public final class UnreadMessagesCounter {
     **********************************************************************
     */
 
-	@Nonnull
-	private final Object lock;
-
 	@Nonnull
 	private final AtomicInteger counter = new AtomicInteger(0);
 
@@ -106,8 +102,7 @@ public final class UnreadMessagesCounter {
 	private final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
 
 	@Inject
-	public UnreadMessagesCounter(@Nonnull PersistenceLock lock) {
-		this.lock = lock;
+	public UnreadMessagesCounter() {
 	}
 
 	public void init() {
@@ -118,11 +113,14 @@ public final class UnreadMessagesCounter {
 	}
 
 	private void updateCounters() {
-		synchronized (lock) {
+		// unread chats are loaded with one query => no persistence lock is needed, only counters must be guarded
+		final Map<Entity, Integer> unreadChats = chatService.getUnreadChats();
+
+		synchronized (counter) {
 			countersByChats.clear();
 			counter.set(0);
 
-			for (Map.Entry<Entity, Integer> entry : chatService.getUnreadChats().entrySet()) {
+			for (Map.Entry<Entity, Integer> entry : unreadChats.entrySet()) {
 				final Integer unreadInChat = entry.getValue();
 				if (unreadInChat > 0) {
 					final Entity chat = entry.getKey();
@@ -133,9 +131,9 @@ public final class UnreadMessagesCounter {
 					}
 				}
 			}
-
-			fireCounterChanged(false);
 		}
+
+		fireCounterChanged(false);
 	}
 
 	private void onMessageRead(@Nonnull Chat chat) {
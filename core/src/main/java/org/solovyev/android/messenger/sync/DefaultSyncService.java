@@ -16,8 +16,9 @@
 
 package org.solovyev.android.messenger.sync;
 
-import android.util.Log;
-
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.solovyev.android.messenger.App;
@@ -30,15 +31,15 @@ import org.solovyev.common.listeners.JEventListener;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
 
-import static java.lang.System.currentTimeMillis;
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
 
 @Singleton
 public class DefaultSyncService implements SyncService {
@@ -63,15 +64,17 @@ public class DefaultSyncService implements SyncService {
     **********************************************************************
     */
 
+	@GuardedBy("runningTasks")
 	@Nonnull
 	private final Set<SyncTask> runningTasks = EnumSet.noneOf(SyncTask.class);
 
-	@GuardedBy("syncAllTaskRunning")
+	// ids of accounts for which 'all synchronization task' is running
+	@GuardedBy("syncAllAccounts")
 	@Nonnull
-	private final AtomicBoolean syncAllTaskRunning = new AtomicBoolean(false);
+	private final Set<String> syncAllAccounts = new HashSet<String>();
 
 	@Nonnull
-	private final Executor executor = Executors.newSingleThreadExecutor();
+	private final SyncScheduler scheduler = new SyncScheduler(SyncScheduler.MAX_ACCOUNTS_PER_REALM);
 
 	@Nonnull
 	private final JEventListener<AccountEvent> realmEventListener = new RealmEventListener();
@@ -81,47 +84,85 @@ public class DefaultSyncService implements SyncService {
 		accountService.addListener(realmEventListener);
 	}
 
+	@Nonnull
 	@Override
-	public void syncAll(final boolean force) throws SyncAllTaskIsAlreadyRunning {
-		startSyncAllTask(accountService.getEnabledAccounts(), force);
+	public ListenableFuture<List<SyncTaskResult>> syncAll(final boolean force) throws SyncAllTaskIsAlreadyRunning {
+		return startSyncAllTask(accountService.getEnabledAccounts(), force);
 	}
 
 	@Override
 	public boolean isSyncAllTaskRunning() {
-		synchronized (syncAllTaskRunning) {
-			return syncAllTaskRunning.get();
+		synchronized (syncAllAccounts) {
+			return !syncAllAccounts.isEmpty();
 		}
 	}
 
 	/**
-	 * Method checks if 'all synchronization task' is not running and starts one with specified parameters
+	 * Method checks if 'all synchronization task' is not running for any of <var>accounts</var> and starts one with specified parameters
 	 *
 	 * @param accounts realms for which synchronization should be done
 	 * @param force    force synchronization. See {@link SyncService#syncAll(boolean)}
 	 * @throws SyncAllTaskIsAlreadyRunning thrown when task if 'all synchronization task' is already running
 	 */
-	private void startSyncAllTask(@Nonnull Collection<Account> accounts, boolean force) throws SyncAllTaskIsAlreadyRunning {
-		synchronized (syncAllTaskRunning) {
-			if (syncAllTaskRunning.get()) {
-				throw new SyncAllTaskIsAlreadyRunning();
-			} else {
-				syncAllTaskRunning.set(true);
+	@Nonnull
+	private ListenableFuture<List<SyncTaskResult>> startSyncAllTask(@Nonnull Collection<Account> accounts, boolean force) throws SyncAllTaskIsAlreadyRunning {
+		final List<String> accountIds = new ArrayList<String>(accounts.size());
+		for (Account account : accounts) {
+			accountIds.add(account.getId());
+		}
+
+		synchronized (syncAllAccounts) {
+			for (String accountId : accountIds) {
+				if (syncAllAccounts.contains(accountId)) {
+					throw new SyncAllTaskIsAlreadyRunning();
+				}
 			}
+			syncAllAccounts.addAll(accountIds);
 		}
 
-		executor.execute(new SyncRunnable(force, accounts));
+		final ListenableFuture<List<SyncTaskResult>> result = scheduler.schedule(accounts, Arrays.asList(SyncTask.values()), force);
+		result.addListener(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (syncAllAccounts) {
+					syncAllAccounts.removeAll(accountIds);
+				}
+			}
+		}, sameThreadExecutor());
+		return result;
 	}
 
+	@Nonnull
 	@Override
-	public void syncAllForAccount(@Nonnull Account account, boolean force) throws SyncAllTaskIsAlreadyRunning {
-		startSyncAllTask(Arrays.asList(account), force);
+	public ListenableFuture<List<SyncTaskResult>> syncAllForAccount(@Nonnull Account account, boolean force) throws SyncAllTaskIsAlreadyRunning {
+		return startSyncAllTask(Arrays.asList(account), force);
 	}
 
+	@Nonnull
 	@Override
-	public void sync(@Nonnull SyncTask syncTask, @Nullable Runnable afterSyncCallback) throws TaskIsAlreadyRunningException {
+	public ListenableFuture<List<SyncTaskResult>> sync(@Nonnull final SyncTask syncTask, @Nullable final Runnable afterSyncCallback) throws TaskIsAlreadyRunningException {
 		checkRunningTask(syncTask);
 
-		new ServiceSyncAsyncTask(syncTask, afterSyncCallback).executeInParallel();
+		final ListenableFuture<List<SyncTaskResult>> result = scheduler.schedule(accountService.getEnabledAccounts(), Arrays.asList(syncTask), true);
+		Futures.addCallback(result, new FutureCallback<List<SyncTaskResult>>() {
+			@Override
+			public void onSuccess(List<SyncTaskResult> results) {
+				onFinished();
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				onFinished();
+			}
+
+			private void onFinished() {
+				releaseRunningTask(syncTask);
+				if (afterSyncCallback != null) {
+					App.getUiHandler().post(afterSyncCallback);
+				}
+			}
+		}, sameThreadExecutor());
+		return result;
 	}
 
 	private void checkRunningTask(SyncTask syncTask) throws TaskIsAlreadyRunningException {
@@ -133,14 +174,15 @@ public class DefaultSyncService implements SyncService {
 		}
 	}
 
+	private void releaseRunningTask(@Nonnull SyncTask syncTask) {
+		synchronized (runningTasks) {
+			runningTasks.remove(syncTask);
+		}
+	}
+
 	@Override
 	public void waitWhileSyncFinished() {
-		while (this.isSyncAllTaskRunning()) {
-			try {
-				Thread.sleep(100);
-			} catch (InterruptedException e) {
-			}
-		}
+		scheduler.waitForAll();
 	}
 
     /*
@@ -151,118 +193,6 @@ public class DefaultSyncService implements SyncService {
     **********************************************************************
     */
 
-	private class ServiceSyncAsyncTask extends SyncAsyncTask {
-
-		@Nonnull
-		private final SyncTask syncTask;
-
-		@Nullable
-		private final Runnable afterSyncCallback;
-
-		public ServiceSyncAsyncTask(@Nonnull SyncTask syncTask, @Nullable Runnable afterSyncCallback) {
-			super(Arrays.asList(syncTask));
-			this.syncTask = syncTask;
-			this.afterSyncCallback = afterSyncCallback;
-		}
-
-		@Override
-		protected void onSuccessPostExecute(@Nullable Void result) {
-			releaseRunningTask(syncTask);
-			super.onSuccessPostExecute(result);
-
-			if (afterSyncCallback != null) {
-				afterSyncCallback.run();
-			}
-		}
-
-		@Override
-		protected void onCancelled() {
-			// just in case
-			releaseRunningTask(syncTask);
-			super.onCancelled();
-
-			if (afterSyncCallback != null) {
-				afterSyncCallback.run();
-			}
-		}
-
-		@Override
-		protected void onFailurePostExecute(@Nonnull Exception e) {
-			releaseRunningTask(syncTask);
-			super.onFailurePostExecute(e);
-
-			if (afterSyncCallback != null) {
-				afterSyncCallback.run();
-			}
-		}
-
-		@Override
-		public String toString() {
-			return "ServiceSyncAsyncTask{" +
-					"syncTask=" + syncTask +
-					'}';
-		}
-	}
-
-	private void releaseRunningTask(@Nonnull SyncTask syncTask) {
-		synchronized (runningTasks) {
-			runningTasks.remove(syncTask);
-		}
-	}
-
-	private class SyncRunnable implements Runnable {
-
-		private final String TAG_TIME = App.newSubTag(App.TAG_TIME, "ServiceSync");
-
-		private final boolean force;
-
-		@Nonnull
-		private final Collection<Account> accounts;
-
-		public SyncRunnable(boolean force, @Nonnull Collection<Account> accounts) {
-			this.force = force;
-			this.accounts = accounts;
-		}
-
-		@Override
-		public void run() {
-			try {
-
-				for (Account account : accounts) {
-					final SyncData syncData = new SyncDataImpl(account.getId());
-
-					for (SyncTask syncTask : SyncTask.values()) {
-						try {
-							try {
-								checkRunningTask(syncTask);
-								if (force || syncTask.isTime(syncData)) {
-									final long start = currentTimeMillis();
-									syncTask.doTask(syncData);
-									final long end = currentTimeMillis();
-									final long duration = end - start;
-									if (duration > 1000) {
-										Log.e(TAG_TIME, "Work time is too long for account: " + account + " and task: " + syncTask + ". Time: " + duration + "ms");
-									}
-								}
-							} finally {
-								releaseRunningTask(syncTask);
-							}
-						} catch (TaskIsAlreadyRunningException e) {
-							// ok, task is already running => start another task
-						} catch (RuntimeException e) {
-							App.getExceptionHandler().handleException(e);
-						}
-					}
-				}
-
-			} finally {
-				synchronized (syncAllTaskRunning) {
-					syncAllTaskRunning.set(false);
-				}
-			}
-		}
-	}
-
 	private final class RealmEventListener extends AbstractJEventListener<AccountEvent> {
 
 		private RealmEventListener() {
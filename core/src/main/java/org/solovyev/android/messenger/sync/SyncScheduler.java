@@ -0,0 +1,359 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.sync;
+
+import android.util.Log;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import org.solovyev.android.messenger.App;
+import org.solovyev.android.messenger.accounts.Account;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.System.currentTimeMillis;
+
+/**
+ * Runs {@link SyncTask}s: accounts are synchronized in parallel (each realm has own pool of threads => slow realm doesn't
+ * delay synchronization of other realms), tasks of one account are executed one after another respecting
+ * {@link SyncTask#getDependencies()}. If task of the account is already executed by another schedule it is waited for, so its
+ * dependencies are never started before it is finished.
+ */
+final class SyncScheduler {
+
+	private static final String TAG_TIME = App.newSubTag(App.TAG_TIME, "SyncScheduler");
+
+	/**
+	 * Default max number of accounts of one realm synchronized at the same time
+	 */
+	static final int MAX_ACCOUNTS_PER_REALM = 2;
+
+	private static final long MAX_TASK_MILLIS = 1000;
+
+	private final int maxAccountsPerRealm;
+
+	// key: realm id, value: executor
+	@GuardedBy("executors")
+	@Nonnull
+	private final Map<String, ListeningExecutorService> executors = new HashMap<String, ListeningExecutorService>();
+
+	// key: account id + task which is executed right now, value: future which is set to true if task has been done successfully
+	@GuardedBy("runningTasks")
+	@Nonnull
+	private final Map<String, SettableFuture<Boolean>> runningTasks = new HashMap<String, SettableFuture<Boolean>>();
+
+	@GuardedBy("pending")
+	@Nonnull
+	private final Set<ListenableFuture<?>> pending = new HashSet<ListenableFuture<?>>();
+
+	@Nonnull
+	private final AtomicInteger threadCount = new AtomicInteger();
+
+	@Nonnull
+	private final TaskRunner taskRunner;
+
+	SyncScheduler(int maxAccountsPerRealm) {
+		this(maxAccountsPerRealm, new DefaultTaskRunner());
+	}
+
+	SyncScheduler(int maxAccountsPerRealm, @Nonnull TaskRunner taskRunner) {
+		this.maxAccountsPerRealm = maxAccountsPerRealm;
+		this.taskRunner = taskRunner;
+	}
+
+	/**
+	 * Schedules <var>tasks</var> for each account
+	 *
+	 * @param accounts accounts to be synchronized
+	 * @param tasks    tasks to be done
+	 * @param force    true if tasks should be done regardless to {@link SyncTask#isTime(SyncData)}
+	 * @return future which is done when all the tasks for all the accounts are finished, contains results of executed tasks
+	 */
+	@Nonnull
+	ListenableFuture<List<SyncTaskResult>> schedule(@Nonnull Collection<Account> accounts, @Nonnull Collection<SyncTask> tasks, boolean force) {
+		final Set<SyncTask> tasksSet = tasks.isEmpty() ? EnumSet.noneOf(SyncTask.class) : EnumSet.copyOf(tasks);
+
+		final List<ListenableFuture<List<SyncTaskResult>>> futures = new ArrayList<ListenableFuture<List<SyncTaskResult>>>(accounts.size());
+		for (Account account : accounts) {
+			futures.add(getExecutor(account.getRealm().getId()).submit(new AccountSyncCallable(account, tasksSet, force)));
+		}
+
+		final ListenableFuture<List<SyncTaskResult>> result = Futures.transform(Futures.allAsList(futures), new Function<List<List<SyncTaskResult>>, List<SyncTaskResult>>() {
+			@Override
+			public List<SyncTaskResult> apply(List<List<SyncTaskResult>> resultsByAccounts) {
+				final List<SyncTaskResult> results = new ArrayList<SyncTaskResult>();
+				for (List<SyncTaskResult> accountResults : resultsByAccounts) {
+					results.addAll(accountResults);
+				}
+				return results;
+			}
+		});
+
+		synchronized (pending) {
+			pending.add(result);
+		}
+		result.addListener(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (pending) {
+					pending.remove(result);
+				}
+			}
+		}, MoreExecutors.sameThreadExecutor());
+
+		return result;
+	}
+
+	/**
+	 * Blocks current thread until all scheduled tasks are finished
+	 */
+	void waitForAll() {
+		final List<ListenableFuture<?>> futures;
+		synchronized (pending) {
+			futures = new ArrayList<ListenableFuture<?>>(pending);
+		}
+
+		for (ListenableFuture<?> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException e) {
+				// ok, errors are handled by tasks
+			} catch (CancellationException e) {
+				// ok
+			}
+		}
+	}
+
+	@Nonnull
+	private ListeningExecutorService getExecutor(@Nonnull String realmId) {
+		synchronized (executors) {
+			ListeningExecutorService executor = executors.get(realmId);
+			if (executor == null) {
+				final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(maxAccountsPerRealm, maxAccountsPerRealm, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new SyncThreadFactory(realmId));
+				// threads are not needed between synchronizations
+				threadPoolExecutor.allowCoreThreadTimeOut(true);
+				executor = MoreExecutors.listeningDecorator(threadPoolExecutor);
+				executors.put(realmId, executor);
+			}
+			return executor;
+		}
+	}
+
+	/**
+	 * @return null if task has been marked as running by the caller, future of the task otherwise (task is already executed
+	 * by another schedule)
+	 */
+	@Nullable
+	private ListenableFuture<Boolean> tryStartTask(@Nonnull String accountId, @Nonnull SyncTask task) {
+		final String key = getRunningTaskKey(accountId, task);
+		synchronized (runningTasks) {
+			final SettableFuture<Boolean> runningTask = runningTasks.get(key);
+			if (runningTask == null) {
+				runningTasks.put(key, SettableFuture.<Boolean>create());
+			}
+			return runningTask;
+		}
+	}
+
+	private void finishTask(@Nonnull String accountId, @Nonnull SyncTask task, boolean success) {
+		final SettableFuture<Boolean> runningTask;
+		synchronized (runningTasks) {
+			runningTask = runningTasks.remove(getRunningTaskKey(accountId, task));
+		}
+		if (runningTask != null) {
+			runningTask.set(success);
+		}
+	}
+
+	/**
+	 * @return true if task executed by another schedule has been done successfully
+	 */
+	private static boolean waitForTask(@Nonnull ListenableFuture<Boolean> runningTask) {
+		try {
+			return runningTask.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException e) {
+			return false;
+		}
+	}
+
+	@Nonnull
+	private static String getRunningTaskKey(@Nonnull String accountId, @Nonnull SyncTask task) {
+		return accountId + ":" + task.name();
+	}
+
+	private class AccountSyncCallable implements Callable<List<SyncTaskResult>> {
+
+		@Nonnull
+		private final Account account;
+
+		@Nonnull
+		private final Set<SyncTask> tasks;
+
+		private final boolean force;
+
+		private AccountSyncCallable(@Nonnull Account account, @Nonnull Set<SyncTask> tasks, boolean force) {
+			this.account = account;
+			this.tasks = tasks;
+			this.force = force;
+		}
+
+		@Override
+		public List<SyncTaskResult> call() {
+			final String accountId = account.getId();
+			final SyncData syncData = new SyncDataImpl(accountId);
+
+			final List<SyncTaskResult> results = new ArrayList<SyncTaskResult>(tasks.size());
+			final Set<SyncTask> failedTasks = EnumSet.noneOf(SyncTask.class);
+
+			// order of enum constants respects dependencies
+			for (SyncTask task : SyncTask.values()) {
+				if (!tasks.contains(task)) {
+					continue;
+				}
+
+				if (dependsOnFailedTask(task, failedTasks)) {
+					Log.w(SyncTask.TAG, "Sync task " + task + " is skipped for account " + accountId + ": dependency has failed");
+					failedTasks.add(task);
+					continue;
+				}
+
+				final ListenableFuture<Boolean> runningTask = tryStartTask(accountId, task);
+				if (runningTask != null) {
+					// task is executed by another schedule => dependent tasks must not start before it is finished
+					if (!waitForTask(runningTask)) {
+						Log.w(SyncTask.TAG, "Sync task " + task + " has failed in another schedule for account " + accountId);
+						failedTasks.add(task);
+					}
+					continue;
+				}
+
+				// task is considered failed until it is finished normally
+				boolean failed = true;
+				try {
+					if (force || taskRunner.isTime(task, syncData)) {
+						final long start = currentTimeMillis();
+						boolean success = false;
+						try {
+							success = taskRunner.doTask(task, syncData);
+						} catch (RuntimeException e) {
+							App.getExceptionHandler().handleException(e);
+						}
+						final long duration = currentTimeMillis() - start;
+
+						if (duration > MAX_TASK_MILLIS) {
+							Log.e(TAG_TIME, "Work time is too long for account: " + accountId + " and task: " + task + ". Time: " + duration + "ms");
+						}
+
+						results.add(new SyncTaskResult(task, accountId, success, duration));
+						failed = !success;
+					} else {
+						failed = false;
+					}
+				} catch (RuntimeException e) {
+					// isTime() might fail, for example, if account has been removed
+					App.getExceptionHandler().handleException(e);
+				} finally {
+					if (failed) {
+						failedTasks.add(task);
+					}
+					finishTask(accountId, task, !failed);
+				}
+			}
+
+			return results;
+		}
+
+		private boolean dependsOnFailedTask(@Nonnull SyncTask task, @Nonnull Set<SyncTask> failedTasks) {
+			for (SyncTask dependency : task.getDependencies()) {
+				if (failedTasks.contains(dependency)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Checks and executes {@link SyncTask}s, tests may replace it to run scheduler without application services
+	 */
+	interface TaskRunner {
+
+		boolean isTime(@Nonnull SyncTask task, @Nonnull SyncData syncData);
+
+		/**
+		 * @return true if task has been done successfully
+		 */
+		boolean doTask(@Nonnull SyncTask task, @Nonnull SyncData syncData);
+	}
+
+	private static final class DefaultTaskRunner implements TaskRunner {
+
+		@Override
+		public boolean isTime(@Nonnull SyncTask task, @Nonnull SyncData syncData) {
+			return task.isTime(syncData);
+		}
+
+		@Override
+		public boolean doTask(@Nonnull SyncTask task, @Nonnull SyncData syncData) {
+			return task.doTask(syncData);
+		}
+	}
+
+	private final class SyncThreadFactory implements ThreadFactory {
+
+		@Nonnull
+		private final String realmId;
+
+		private SyncThreadFactory(@Nonnull String realmId) {
+			this.realmId = realmId;
+		}
+
+		@Override
+		public Thread newThread(@Nonnull Runnable r) {
+			final Thread thread = new Thread(r, "Sync thread #" + threadCount.getAndIncrement() + " (realm=" + realmId + ")");
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	}
+}
@@ -16,10 +16,12 @@
 
 package org.solovyev.android.messenger.sync;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import org.solovyev.android.messenger.accounts.Account;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.List;
 
 public interface SyncService {
 
@@ -32,9 +34,11 @@ public interface SyncService {
 	 * Method runs all synchronization tasks over all realms registered in system
 	 *
 	 * @param force true if all data should be synchronized regardless to individual synchronization parameters (frequency, scheduling, etc)
+	 * @return future which is done when synchronization is finished, contains results of executed tasks
 	 * @throws SyncAllTaskIsAlreadyRunning if task for synchronization is already running
 	 */
-	void syncAll(boolean force) throws SyncAllTaskIsAlreadyRunning;
+	@Nonnull
+	ListenableFuture<List<SyncTaskResult>> syncAll(boolean force) throws SyncAllTaskIsAlreadyRunning;
 
 	boolean isSyncAllTaskRunning();
 
@@ -42,11 +46,24 @@ public interface SyncService {
 	 * Method runs all synchronization tasks for specified <var>realm</var>
 	 *
 	 * @param force true if all data should be synchronized regardless to individual synchronization parameters (frequency, scheduling, etc)
-	 * @throws SyncAllTaskIsAlreadyRunning if task for synchronization is already running
+	 * @return future which is done when synchronization is finished, contains results of executed tasks
+	 * @throws SyncAllTaskIsAlreadyRunning if task for synchronization is already running for <var>account</var>
 	 */
-	void syncAllForAccount(@Nonnull Account account, boolean force) throws SyncAllTaskIsAlreadyRunning;
+	@Nonnull
+	ListenableFuture<List<SyncTaskResult>> syncAllForAccount(@Nonnull Account account, boolean force) throws SyncAllTaskIsAlreadyRunning;
 
-	void sync(@Nonnull SyncTask syncTask, @Nullable Runnable afterSyncCallback) throws TaskIsAlreadyRunningException;
+	/**
+	 * Method runs <var>syncTask</var> for all enabled accounts
+	 *
+	 * @param afterSyncCallback callback to be run on the main thread after task is finished
+	 * @return future which is done when synchronization is finished, contains results of executed tasks
+	 * @throws TaskIsAlreadyRunningException if same task is already running
+	 */
+	@Nonnull
+	ListenableFuture<List<SyncTaskResult>> sync(@Nonnull SyncTask syncTask, @Nullable Runnable afterSyncCallback) throws TaskIsAlreadyRunningException;
 
+	/**
+	 * Method blocks current thread until all started synchronization tasks are finished
+	 */
 	void waitWhileSyncFinished();
 }
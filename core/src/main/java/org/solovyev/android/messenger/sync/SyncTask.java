@@ -23,8 +23,11 @@ import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.accounts.AccountException;
 import org.solovyev.android.messenger.accounts.AccountService;
 import org.solovyev.android.messenger.accounts.UnsupportedAccountException;
+import org.solovyev.android.messenger.chats.DeltaSyncAccountChatService;
 
 import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.solovyev.android.messenger.App.*;
 
@@ -50,7 +53,7 @@ public enum SyncTask {
 		}
 	},
 
-	user_icons {
+	user_icons(user_contacts) {
 		@Override
 		public boolean isTime(@Nonnull SyncData syncData) {
 			boolean result = false;
@@ -71,7 +74,7 @@ public enum SyncTask {
 		}
 	},
 
-	user_contacts_statuses {
+	user_contacts_statuses(user_contacts) {
 		@Override
 		public boolean isTime(@Nonnull SyncData syncData) {
 			return true;
@@ -84,7 +87,7 @@ public enum SyncTask {
 		}
 	},
 
-	user_chats {
+	user_chats(user_contacts) {
 		@Override
 		public boolean isTime(@Nonnull SyncData syncData) {
 			return isTimeForChatsUpdate(syncData);
@@ -96,10 +99,17 @@ public enum SyncTask {
 		}
 	},
 
-	chat_messages {
+	chat_messages(user_chats) {
 		@Override
 		public boolean isTime(@Nonnull SyncData syncData) {
-			return isTimeForChatsUpdate(syncData);
+			final Account account = getAccountService().getAccountById(syncData.getAccountId());
+			if (account.getAccountChatService() instanceof DeltaSyncAccountChatService) {
+				// new messages are delivered by the account connection which also loads messages missed between its
+				// sessions (see LongPollAccountConnection) => task is needed only if messages have never been synchronized
+				return account.getSyncData().getMessagesSyncCursor() == null;
+			} else {
+				return isTimeForChatsUpdate(syncData);
+			}
 		}
 
 		@Override
@@ -108,7 +118,14 @@ public enum SyncTask {
 		}
 	};
 
-	private static final String TAG = newTag("SyncTask");
+	static final String TAG = newTag("SyncTask");
+
+	@Nonnull
+	private final List<SyncTask> dependencies;
+
+	SyncTask(@Nonnull SyncTask... dependencies) {
+		this.dependencies = Arrays.asList(dependencies);
+	}
 
 	@Nonnull
 	private static AccountService getAccountService() {
@@ -117,14 +134,28 @@ public enum SyncTask {
 
 	public abstract boolean isTime(@Nonnull SyncData syncData);
 
-	public final void doTask(@Nonnull SyncData syncData) {
+	/**
+	 * @return tasks which must be done before current task. Tasks are declared in the order of dependencies =>
+	 * all dependencies of the task precede it
+	 */
+	@Nonnull
+	public List<SyncTask> getDependencies() {
+		return dependencies;
+	}
+
+	/**
+	 * @return true if task has been done successfully
+	 */
+	public final boolean doTask(@Nonnull SyncData syncData) {
 		logTaskStarted(syncData);
 
 		try {
 			doTask0(syncData);
+			return true;
 		} catch (AccountException e) {
 			// ok, user is not logged in
 			getExceptionHandler().handleException(e);
+			return false;
 		} finally {
 			logTaskFinished(syncData);
 		}
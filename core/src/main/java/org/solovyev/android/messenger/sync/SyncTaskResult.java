@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.sync;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Result of execution of {@link SyncTask} for one account
+ */
+@Immutable
+public final class SyncTaskResult {
+
+	@Nonnull
+	private final SyncTask task;
+
+	@Nonnull
+	private final String accountId;
+
+	private final boolean success;
+
+	private final long durationMillis;
+
+	SyncTaskResult(@Nonnull SyncTask task, @Nonnull String accountId, boolean success, long durationMillis) {
+		this.task = task;
+		this.accountId = accountId;
+		this.success = success;
+		this.durationMillis = durationMillis;
+	}
+
+	@Nonnull
+	public SyncTask getTask() {
+		return task;
+	}
+
+	@Nonnull
+	public String getAccountId() {
+		return accountId;
+	}
+
+	public boolean isSuccess() {
+		return success;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "SyncTaskResult{" +
+				"task=" + task +
+				", accountId='" + accountId + '\'' +
+				", success=" + success +
+				", durationMillis=" + durationMillis +
+				'}';
+	}
+}
@@ -23,9 +23,7 @@ import java.util.TimerTask;
 
 import javax.annotation.Nonnull;
 
-import org.solovyev.android.messenger.accounts.Account;
-
-import static org.solovyev.android.messenger.App.getAccountService;
+import static org.solovyev.android.messenger.App.getSyncService;
 
 /**
  * User: serso
@@ -45,14 +43,11 @@ public class SyncTimerTask extends TimerTask {
 	public void run() {
 		final Context context = this.contextRef.get();
 		if (context != null) {
-			for (Account account: getAccountService().getEnabledAccounts()) {
-				final SyncData syncData = new SyncDataImpl(account.getId());
-
-				for (SyncTask syncTask : SyncTask.values()) {
-					if (syncTask.isTime(syncData)) {
-						syncTask.doTask(syncData);
-					}
-				}
+			try {
+				// accounts are synchronized in parallel by sync service, timer thread is not blocked
+				getSyncService().syncAll(false);
+			} catch (SyncAllTaskIsAlreadyRunning e) {
+				// ok, previous synchronization is not finished yet
 			}
 		}
 	}
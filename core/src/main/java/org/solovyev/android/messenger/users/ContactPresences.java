@@ -0,0 +1,135 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.users;
+
+import org.solovyev.android.messenger.entities.Entity;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Table of last known presences of contacts. Each change gets a version from a global counter so readers can apply
+ * only changes done after some version.
+ * <p/>
+ * Presence changes arrive one by one (e.g. XMPP roster after reconnection) and must be cheap: updating the table
+ * doesn't touch contact lists, they are patched lazily on read (see {@link UserContacts#getContacts(Entity)}).
+ */
+@ThreadSafe
+final class ContactPresences {
+
+	static final long NO_VERSION = 0;
+
+	@Nonnull
+	private final AtomicLong version = new AtomicLong(NO_VERSION);
+
+	// key: contact entity, value: last known presence of contact
+	@Nonnull
+	private final ConcurrentMap<Entity, Presence> presences = new ConcurrentHashMap<Entity, Presence>();
+
+	// key: user entity, value: version of last presence change of user's contacts
+	@Nonnull
+	private final ConcurrentMap<Entity, AtomicLong> userVersions = new ConcurrentHashMap<Entity, AtomicLong>();
+
+	public void update(@Nonnull Entity user, @Nonnull User contact) {
+		final long newVersion = version.incrementAndGet();
+		presences.put(contact.getEntity(), new Presence(contact.isOnline(), newVersion));
+		setUserVersion(user, newVersion);
+	}
+
+	public void updateAll(@Nonnull Entity user, @Nonnull List<User> contacts) {
+		for (User contact : contacts) {
+			update(user, contact);
+		}
+	}
+
+	private void setUserVersion(@Nonnull Entity user, long newVersion) {
+		AtomicLong userVersion = userVersions.get(user);
+		if (userVersion == null) {
+			final AtomicLong newUserVersion = new AtomicLong(newVersion);
+			userVersion = userVersions.putIfAbsent(user, newUserVersion);
+			if (userVersion == null) {
+				return;
+			}
+		}
+
+		// versions are set concurrently => keep max
+		long oldVersion = userVersion.get();
+		while (oldVersion < newVersion && !userVersion.compareAndSet(oldVersion, newVersion)) {
+			oldVersion = userVersion.get();
+		}
+	}
+
+	@Nullable
+	public Presence getPresence(@Nonnull Entity contact) {
+		return presences.get(contact);
+	}
+
+	/**
+	 * @return true if contact is online, false if contact is offline, null if contact's presence has never been changed
+	 */
+	@Nullable
+	public Boolean isOnline(@Nonnull Entity contact) {
+		final Presence presence = presences.get(contact);
+		return presence == null ? null : presence.isOnline();
+	}
+
+	/**
+	 * @return current version of the table, all changes done after this call will have greater versions
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * @return version of last presence change of contacts of <var>user</var> or {@link #NO_VERSION}
+	 */
+	public long getVersion(@Nonnull Entity user) {
+		final AtomicLong userVersion = userVersions.get(user);
+		return userVersion == null ? NO_VERSION : userVersion.get();
+	}
+
+	public void remove(@Nonnull Entity contact) {
+		presences.remove(contact);
+	}
+
+	@Immutable
+	static final class Presence {
+
+		private final boolean online;
+
+		private final long version;
+
+		private Presence(boolean online, long version) {
+			this.online = online;
+			this.version = version;
+		}
+
+		public boolean isOnline() {
+			return online;
+		}
+
+		public long getVersion() {
+			return version;
+		}
+	}
+}
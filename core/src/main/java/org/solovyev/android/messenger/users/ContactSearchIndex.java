@@ -0,0 +1,372 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.users;
+
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.common.text.Strings;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.solovyev.android.messenger.users.User.PROPERTY_NICKNAME;
+
+/**
+ * In-memory prefix index of contacts of all account users.
+ * <p/>
+ * Each contact is indexed by lower-cased tokens: its whole display name, first name, last name and nickname, every
+ * word of them and digits of its phone numbers (whole number and number without country and area codes). Tokens are kept in a sorted map so contacts whose token starts with the
+ * query are found by a range lookup instead of a scan of all contacts.
+ * <p/>
+ * Contacts whose display name starts with the query go first, other contacts are ordered by display name.
+ */
+@ThreadSafe
+final class ContactSearchIndex {
+
+	@Nonnull
+	private final Object lock = new Object();
+
+	// key: token, value: ids of contacts having such token
+	@GuardedBy("lock")
+	@Nonnull
+	private final TreeMap<String, List<String>> tokens = new TreeMap<String, List<String>>();
+
+	// key: contact id, value: indexed contact
+	@GuardedBy("lock")
+	@Nonnull
+	private final Map<String, IndexedContact> contacts = new HashMap<String, IndexedContact>();
+
+	/**
+	 * Replaces all indexed contacts of <var>user</var> with <var>contacts</var>
+	 */
+	public void putAll(@Nonnull Entity user, @Nonnull List<User> contacts) {
+		final List<IndexedContact> indexedContacts = toIndexedContacts(user, contacts);
+		synchronized (lock) {
+			removeContacts(user);
+			for (IndexedContact contact : indexedContacts) {
+				put(contact);
+			}
+		}
+	}
+
+	public void addAll(@Nonnull Entity user, @Nonnull List<User> contacts) {
+		final List<IndexedContact> indexedContacts = toIndexedContacts(user, contacts);
+		synchronized (lock) {
+			for (IndexedContact contact : indexedContacts) {
+				put(contact);
+			}
+		}
+	}
+
+	/**
+	 * Reindexes already indexed contacts (e.g. after their names have been changed). Not indexed users are ignored.
+	 */
+	public void changeAll(@Nonnull List<User> contacts) {
+		synchronized (lock) {
+			for (User contact : contacts) {
+				final IndexedContact oldContact = this.contacts.get(contact.getId());
+				if (oldContact != null) {
+					put(new IndexedContact(oldContact.user, contact));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Updates online status of indexed contacts, tokens are not changed
+	 */
+	public void changeStatuses(@Nonnull List<User> contacts) {
+		synchronized (lock) {
+			for (User contact : contacts) {
+				final IndexedContact oldContact = this.contacts.get(contact.getId());
+				if (oldContact != null) {
+					this.contacts.put(contact.getId(), oldContact.withContact(oldContact.contact.cloneWithNewStatus(contact.isOnline())));
+				}
+			}
+		}
+	}
+
+	public void remove(@Nonnull String contactId) {
+		synchronized (lock) {
+			removeContact(contactId);
+		}
+	}
+
+	public void removeAll(@Nonnull Entity user) {
+		synchronized (lock) {
+			removeContacts(user);
+		}
+	}
+
+	public int size() {
+		synchronized (lock) {
+			return contacts.size();
+		}
+	}
+
+	/**
+	 * @param users  users whose contacts should be searched
+	 * @param query  prefix of any token of contact, if empty all contacts of <var>users</var> match
+	 * @param count  max number of returned contacts
+	 * @param except ids of contacts which should not be returned
+	 * @return best <var>count</var> contacts matching <var>query</var>
+	 */
+	@Nonnull
+	public List<User> find(@Nonnull Set<Entity> users, @Nullable String query, int count, @Nonnull Set<String> except) {
+		if (count <= 0 || users.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		final String prefix = Strings.isEmpty(query) ? "" : query.toLowerCase();
+		final String digitsPrefix = toDigits(prefix);
+
+		final TopContacts result = new TopContacts(prefix, count);
+		synchronized (lock) {
+			if (prefix.length() == 0) {
+				for (IndexedContact contact : contacts.values()) {
+					result.offer(contact, users, except);
+				}
+			} else {
+				final Set<String> foundIds = new HashSet<String>();
+				collect(prefix, foundIds);
+				if (digitsPrefix.length() > 0 && !digitsPrefix.equals(prefix)) {
+					collect(digitsPrefix, foundIds);
+				}
+
+				for (String foundId : foundIds) {
+					result.offer(contacts.get(foundId), users, except);
+				}
+			}
+		}
+		return result.toList();
+	}
+
+	@GuardedBy("lock")
+	private void collect(@Nonnull String prefix, @Nonnull Set<String> foundIds) {
+		// all tokens starting with prefix are between prefix and prefix + max char
+		final SortedMap<String, List<String>> range = tokens.subMap(prefix, prefix + Character.MAX_VALUE);
+		for (List<String> contactIds : range.values()) {
+			foundIds.addAll(contactIds);
+		}
+	}
+
+	@GuardedBy("lock")
+	private void put(@Nonnull IndexedContact contact) {
+		final String contactId = contact.contact.getId();
+		removeContact(contactId);
+
+		contacts.put(contactId, contact);
+		for (String token : contact.tokens) {
+			List<String> tokenContacts = tokens.get(token);
+			if (tokenContacts == null) {
+				tokenContacts = new ArrayList<String>(1);
+				tokens.put(token, tokenContacts);
+			}
+			tokenContacts.add(contactId);
+		}
+	}
+
+	@GuardedBy("lock")
+	private void removeContact(@Nonnull String contactId) {
+		final IndexedContact contact = contacts.remove(contactId);
+		if (contact != null) {
+			for (String token : contact.tokens) {
+				final List<String> tokenContacts = tokens.get(token);
+				if (tokenContacts != null) {
+					tokenContacts.remove(contactId);
+					if (tokenContacts.isEmpty()) {
+						tokens.remove(token);
+					}
+				}
+			}
+		}
+	}
+
+	@GuardedBy("lock")
+	private void removeContacts(@Nonnull Entity user) {
+		final List<String> contactIds = new ArrayList<String>();
+		for (IndexedContact contact : contacts.values()) {
+			if (contact.user.equals(user)) {
+				contactIds.add(contact.contact.getId());
+			}
+		}
+
+		for (String contactId : contactIds) {
+			removeContact(contactId);
+		}
+	}
+
+	@Nonnull
+	private static List<IndexedContact> toIndexedContacts(@Nonnull Entity user, @Nonnull List<User> contacts) {
+		final List<IndexedContact> result = new ArrayList<IndexedContact>(contacts.size());
+		for (User contact : contacts) {
+			result.add(new IndexedContact(user, contact));
+		}
+		return result;
+	}
+
+	@Nonnull
+	static Set<String> toTokens(@Nonnull User contact) {
+		final Set<String> result = new LinkedHashSet<String>();
+		addTokens(result, contact.getDisplayName());
+		addTokens(result, contact.getFirstName());
+		addTokens(result, contact.getLastName());
+		addTokens(result, contact.getPropertyValueByName(PROPERTY_NICKNAME));
+		for (String phone : contact.getPhoneNumbers()) {
+			final String digits = toDigits(phone);
+			if (digits.length() > 0) {
+				result.add(digits);
+				// number without country and area codes
+				result.add(PhoneNumberIndex.toKey(digits));
+			}
+		}
+		return result;
+	}
+
+	private static void addTokens(@Nonnull Set<String> tokens, @Nullable String s) {
+		if (!Strings.isEmpty(s)) {
+			final String lowerCased = s.toLowerCase();
+			// whole value is a token => query with spaces works as before
+			tokens.add(lowerCased);
+
+			int start = -1;
+			for (int i = 0; i <= lowerCased.length(); i++) {
+				final boolean letterOrDigit = i < lowerCased.length() && Character.isLetterOrDigit(lowerCased.charAt(i));
+				if (letterOrDigit) {
+					if (start < 0) {
+						start = i;
+					}
+				} else if (start >= 0) {
+					tokens.add(lowerCased.substring(start, i));
+					start = -1;
+				}
+			}
+		}
+	}
+
+	@Nonnull
+	private static String toDigits(@Nonnull String s) {
+		final StringBuilder result = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (Character.isDigit(c)) {
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+
+	private static final class IndexedContact {
+
+		// owner of contact
+		@Nonnull
+		private final Entity user;
+
+		@Nonnull
+		private final User contact;
+
+		@Nonnull
+		private final String sortKey;
+
+		@Nonnull
+		private final Set<String> tokens;
+
+		private IndexedContact(@Nonnull Entity user, @Nonnull User contact) {
+			this(user, contact, contact.getDisplayName().toLowerCase(), toTokens(contact));
+		}
+
+		private IndexedContact(@Nonnull Entity user, @Nonnull User contact, @Nonnull String sortKey, @Nonnull Set<String> tokens) {
+			this.user = user;
+			this.contact = contact;
+			this.sortKey = sortKey;
+			this.tokens = tokens;
+		}
+
+		@Nonnull
+		private IndexedContact withContact(@Nonnull User contact) {
+			return new IndexedContact(user, contact, sortKey, tokens);
+		}
+	}
+
+	/**
+	 * Keeps best <var>count</var> offered contacts in a heap whose head is the worst of them
+	 */
+	private static final class TopContacts implements Comparator<IndexedContact> {
+
+		@Nonnull
+		private final String prefix;
+
+		private final int count;
+
+		@Nonnull
+		private final PriorityQueue<IndexedContact> heap;
+
+		private TopContacts(@Nonnull String prefix, int count) {
+			this.prefix = prefix;
+			this.count = count;
+			this.heap = new PriorityQueue<IndexedContact>(Math.min(count, 64) + 1, Collections.reverseOrder(this));
+		}
+
+		private void offer(@Nullable IndexedContact contact, @Nonnull Set<Entity> users, @Nonnull Set<String> except) {
+			if (contact != null && users.contains(contact.user) && !except.contains(contact.contact.getId())) {
+				if (heap.size() < count) {
+					heap.add(contact);
+				} else if (compare(contact, heap.peek()) < 0) {
+					heap.poll();
+					heap.add(contact);
+				}
+			}
+		}
+
+		@Override
+		public int compare(@Nonnull IndexedContact l, @Nonnull IndexedContact r) {
+			final boolean lStarts = l.sortKey.startsWith(prefix);
+			final boolean rStarts = r.sortKey.startsWith(prefix);
+			if (lStarts != rStarts) {
+				return lStarts ? -1 : 1;
+			} else {
+				return l.sortKey.compareTo(r.sortKey);
+			}
+		}
+
+		@Nonnull
+		private List<User> toList() {
+			final List<IndexedContact> contacts = new ArrayList<IndexedContact>(heap);
+			Collections.sort(contacts, this);
+
+			final List<User> result = new ArrayList<User>(contacts.size());
+			for (IndexedContact contact : contacts) {
+				result.add(contact.contact);
+			}
+			return result;
+		}
+	}
+}
@@ -22,6 +22,7 @@ import com.google.common.base.Predicate;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.solovyev.android.messenger.EntityAwareByIdFinder;
+import org.solovyev.android.messenger.EventCoalescer;
 import org.solovyev.android.messenger.MergeDaoResult;
 import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.accounts.AccountException;
@@ -43,15 +44,13 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.common.collect.Iterables.*;
 import static com.google.common.collect.Lists.newArrayList;
-import static java.lang.Math.max;
-import static java.lang.Math.min;
 import static java.util.Arrays.asList;
 import static java.util.Collections.unmodifiableList;
 import static org.solovyev.android.Threads.isUiThread;
-import static org.solovyev.android.messenger.users.ContactsDisplayMode.all_contacts;
 import static org.solovyev.android.messenger.users.UiContact.loadRecentUiContact;
 import static org.solovyev.android.messenger.users.UiContact.loadUiContact;
 import static org.solovyev.android.messenger.users.UserEventType.*;
@@ -96,7 +95,7 @@ public class DefaultUserService implements UserService {
 	 * Lock for all operations with persistence state. Should guarantee that all operations done over DAOs are thread safe and not corrupt data.
 	 */
 	@Nonnull
-	private final Object lock;
+	private final PersistenceLock lock;
 
 	@Nonnull
 	private final JEventListeners<JEventListener<? extends UserEvent>, UserEvent> listeners;
@@ -113,6 +112,14 @@ public class DefaultUserService implements UserService {
 	@Nonnull
 	private UserIconsService iconsService;
 
+	@Nonnull
+	private final EventCoalescer<User, Entity, User> presences = new EventCoalescer<User, Entity, User>(new EventCoalescer.Delivery<User, User>() {
+		@Override
+		public void deliver(@Nonnull User user, @Nonnull List<User> contacts) {
+			listeners.fireEvent(contacts_presence_changed.newEvent(user, contacts));
+		}
+	});
+
 	@Inject
 	public DefaultUserService(@Nonnull PersistenceLock lock, @Nonnull Executor eventExecutor) {
 		this.listeners = Listeners.newEventListenersBuilderFor(UserEvent.class).withHardReferences().withExecutor(eventExecutor).create();
@@ -153,8 +160,11 @@ public class DefaultUserService implements UserService {
 
 		if (result == null) {
 
-			synchronized (lock) {
+			lock.lockAccountForRead(user.getAccountId());
+			try {
 				result = userDao.read(user.getEntityId());
+			} finally {
+				lock.unlockAccountForRead(user.getAccountId());
 			}
 
 			if (result == null) {
@@ -218,22 +228,31 @@ public class DefaultUserService implements UserService {
 	}
 
 	private void saveUser(@Nonnull User newUser, @Nullable Account account) {
-		synchronized (lock) {
-			final User userFromDb = userDao.read(newUser.getEntity().getEntityId());
+		final UserEvent event;
+
+		final Entity entity = newUser.getEntity();
+		lock.lockEntity(entity);
+		try {
+			final User userFromDb = userDao.read(entity.getEntityId());
 			if (userFromDb == null) {
 				if (account != null) {
 					final User user = account.getUser();
 					userDao.createContact(user.getId(), newUser);
-					listeners.fireEvent(contacts_added.newEvent(user, asList(newUser)));
+					event = contacts_added.newEvent(user, asList(newUser));
 				} else {
 					userDao.create(newUser);
-					listeners.fireEvent(added.newEvent(newUser));
+					event = added.newEvent(newUser);
 				}
 			} else {
 				userDao.update(newUser);
-				listeners.fireEvent(changed.newEvent(newUser));
+				event = changed.newEvent(newUser);
 			}
+		} finally {
+			lock.unlockEntity(entity);
 		}
+
+		// listeners might need persistence locks (e.g. to merge data) => fire outside of the lock
+		listeners.fireEvent(event);
 	}
 
 	@Override
@@ -241,8 +260,11 @@ public class DefaultUserService implements UserService {
 		final Account account = accountService.getAccountByEntity(user.getEntity());
 		final User accountUser = account.getUser();
 		if (!accountUser.equals(user)) {
-			synchronized (lock) {
+			lock.lockEntity(user.getEntity());
+			try {
 				userDao.delete(user);
+			} finally {
+				lock.unlockEntity(user.getEntity());
 			}
 			listeners.fireEvent(contact_removed.newEvent(accountUser, user.getId()));
 
@@ -258,9 +280,7 @@ public class DefaultUserService implements UserService {
 		List<Chat> result = chats.getChats(user);
 
 		if (result == ThreadSafeMultimap.NO_VALUE) {
-			synchronized (lock) {
-				result = chatService.loadChats(user);
-			}
+			result = chatService.loadChats(user);
 			chats.update(user, result);
 		}
 
@@ -269,8 +289,11 @@ public class DefaultUserService implements UserService {
 
 	@Override
 	public void updateUser(@Nonnull User user) {
-		synchronized (lock) {
+		lock.lockEntity(user.getEntity());
+		try {
 			userDao.update(user);
+		} finally {
+			lock.unlockEntity(user.getEntity());
 		}
 
 		listeners.fireEvent(changed.newEvent(user));
@@ -290,10 +313,15 @@ public class DefaultUserService implements UserService {
 		List<User> result = contacts.getContacts(user);
 
 		if (result == ThreadSafeMultimap.NO_VALUE) {
-			synchronized (lock) {
+			// presences changed while contacts are loaded might be missed by the loaded contacts => version is taken before loading
+			final long presencesVersion = contacts.getPresencesVersion();
+			lock.lockAccountForRead(user.getAccountId());
+			try {
 				result = userDao.readContacts(user.getEntityId());
+			} finally {
+				lock.unlockAccountForRead(user.getAccountId());
 			}
-			contacts.update(user, result);
+			contacts.update(user, result, presencesVersion);
 		}
 
 		return result;
@@ -313,47 +341,21 @@ public class DefaultUserService implements UserService {
 	@Override
 	public void onContactPresenceChanged(@Nonnull User user, @Nonnull final User contact, final boolean available) {
 		final User newContact = contact.cloneWithNewStatus(available);
-		synchronized (lock) {
+		lock.lockEntity(newContact.getEntity());
+		try {
 			userDao.updateOnlineStatus(newContact);
+		} finally {
+			lock.unlockEntity(newContact.getEntity());
 		}
 
-		listeners.fireEvent(contacts_presence_changed.newEvent(user, asList(newContact)));
+		// presence changes come one by one (e.g. after connection to XMPP server) => they are delivered in batches
+		presences.add(user, newContact.getEntity(), newContact);
 	}
 
 	@Nonnull
 	@Override
 	public List<UiContact> findContacts(@Nonnull User user, @Nullable String query, int count, @Nonnull Collection<UiContact> except) {
-		Log.d(TAG, "Find contacts for user: " + user.getLogin() + ", query: " + query);
-		final List<UiContact> result = new ArrayList<UiContact>();
-
-		final List<User> contacts = getContacts(user.getEntity());
-		final ContactFilter filter = new ContactFilter(query, all_contacts);
-
-		final Account account = accountService.getAccountByEntity(user.getEntity());
-
-		for (final User contact : contacts) {
-			if (!isExceptedUser(except, contact)) {
-				if (filter.apply(contact)) {
-					result.add(loadUiContact(contact, account));
-					if (result.size() >= count) {
-						break;
-					}
-				}
-			}
-		}
-
-		Log.d(TAG, "Found contacts count: " + result.size());
-
-		return result;
-	}
-
-	private boolean isExceptedUser(@Nonnull Collection<UiContact> exceptions, @Nonnull final User contact) {
-		return find(exceptions, new Predicate<UiContact>() {
-			@Override
-			public boolean apply(@Nullable UiContact uiContact) {
-				return uiContact != null && uiContact.getContact().equals(contact);
-			}
-		}, null) != null;
+		return findContacts(Collections.singletonList(user), query, count, except);
 	}
 
 	@Nonnull
@@ -365,18 +367,36 @@ public class DefaultUserService implements UserService {
 	@Nonnull
 	@Override
 	public List<UiContact> findContacts(@Nullable String query, int count, @Nonnull Collection<UiContact> except) {
-		final List<UiContact> result = new ArrayList<UiContact>();
-
-		final Collection<User> accountUsers = accountService.getEnabledAccountUsers();
-		final int accountsSize = accountUsers.size();
-		if (accountsSize > 0) {
-			final int accountCount = max(2 * except.size() / accountsSize + count / accountsSize, 1);
-			for (User user : accountUsers) {
-				result.addAll(findContacts(user, query, accountCount, except));
-			}
+		return findContacts(accountService.getEnabledAccountUsers(), query, count, except);
+	}
+
+	@Nonnull
+	private List<UiContact> findContacts(@Nonnull Collection<User> users, @Nullable String query, int count, @Nonnull Collection<UiContact> except) {
+		Log.d(TAG, "Find contacts for " + users.size() + " user(s), query: " + query);
+
+		final Set<Entity> userEntities = new HashSet<Entity>(users.size());
+		for (User user : users) {
+			// contacts must be loaded to be indexed
+			getContacts(user.getEntity());
+			userEntities.add(user.getEntity());
 		}
 
-		return result.subList(0, min(result.size(), count));
+		final Set<String> exceptIds = new HashSet<String>(except.size());
+		for (UiContact uiContact : except) {
+			exceptIds.add(uiContact.getId());
+		}
+
+		// top contacts are chosen over all users => no per-account quotas
+		final List<User> contacts = this.contacts.findContacts(userEntities, query, count, exceptIds);
+
+		final List<UiContact> result = new ArrayList<UiContact>(contacts.size());
+		for (User contact : contacts) {
+			result.add(loadUiContact(contact, getAccountByEntity(contact.getEntity())));
+		}
+
+		Log.d(TAG, "Found contacts count: " + result.size());
+
+		return result;
 	}
 
 	@Nonnull
@@ -420,17 +440,37 @@ public class DefaultUserService implements UserService {
     */
 
 	@Override
-	@Nonnull
-	public List<User> syncContacts(@Nonnull Account<?> account) throws AccountException {
-		final List<User> contacts = account.getAccountUserService().getContacts();
+	public int syncContacts(@Nonnull final Account<?> account) throws AccountException {
+		final AccountUserService accountUserService = account.getAccountUserService();
+
+		if (accountUserService instanceof DeltaSyncAccountUserService) {
+			final DeltaSyncAccountUserService deltaService = (DeltaSyncAccountUserService) accountUserService;
+
+			final AtomicInteger count = new AtomicInteger();
+			final String cursor = deltaService.loadContactsSince(account.getSyncData().getContactsSyncCursor(), new DeltaSyncAccountUserService.ContactsConsumer() {
+				@Override
+				public void onContacts(@Nonnull List<User> contacts) {
+					if (!contacts.isEmpty()) {
+						mergeContacts(account, contacts, false, true);
+						count.addAndGet(contacts.size());
+					}
+				}
+			});
 
-		if (!contacts.isEmpty()) {
-			mergeContacts(account, contacts, false, true);
+			// sync date must be updated even if nothing has changed
+			accountService.saveAccountSyncData(account.updateContactsSyncDate().updateContactsSyncCursor(cursor));
+			return count.get();
 		} else {
-			Log.w(TAG, "User contacts synchronization returned empty list for realm " + account.getId());
-		}
+			final List<User> contacts = accountUserService.getContacts();
 
-		return unmodifiableList(contacts);
+			if (!contacts.isEmpty()) {
+				mergeContacts(account, contacts, false, true);
+			} else {
+				Log.w(TAG, "User contacts synchronization returned empty list for realm " + account.getId());
+			}
+
+			return contacts.size();
+		}
 	}
 
 	@Override
@@ -438,8 +478,11 @@ public class DefaultUserService implements UserService {
 		final User user = account.getUser();
 
 		final MergeDaoResult<User, String> result;
-		synchronized (lock) {
+		lock.lockAccount(account.getId());
+		try {
 			result = userDao.mergeLinkedEntities(user.getId(), contacts, allowRemoval, allowUpdate);
+		} finally {
+			lock.unlockAccount(account.getId());
 		}
 
 		// update sync data
@@ -499,7 +542,8 @@ public class DefaultUserService implements UserService {
 
 		final List<User> offlineContacts = new ArrayList<User>();
 
-		synchronized (lock) {
+		lock.lockAccount(account.getId());
+		try {
 			for (User contact : contacts) {
 				userDao.updateOnlineStatus(contact);
 			}
@@ -513,10 +557,16 @@ public class DefaultUserService implements UserService {
 					offlineContacts.add(offlineContact);
 				}
 			}
+		} finally {
+			lock.unlockAccount(account.getId());
 		}
 
-		listeners.fireEvent(contacts_presence_changed.newEvent(user, contacts));
-		listeners.fireEvent(contacts_presence_changed.newEvent(user, offlineContacts));
+		final List<User> changedContacts = new ArrayList<User>(contacts.size() + offlineContacts.size());
+		changedContacts.addAll(contacts);
+		changedContacts.addAll(offlineContacts);
+		if (!changedContacts.isEmpty()) {
+			listeners.fireEvent(contacts_presence_changed.newEvent(user, changedContacts));
+		}
 	}
 
     /*
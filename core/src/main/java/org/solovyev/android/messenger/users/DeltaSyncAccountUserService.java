@@ -0,0 +1,47 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.users;
+
+import org.solovyev.android.messenger.accounts.AccountConnectionException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Optional extension of {@link AccountUserService} for realms with big lists of contacts (for example, address book).
+ * Contacts are passed to {@link ContactsConsumer} in chunks of limited size instead of being loaded into one list and
+ * only contacts changed since the last synchronization are loaded. Cursor is an opaque realm specific string (for
+ * example, time of the last contact's update) which is stored in the database between synchronizations.
+ * <p/>
+ * Null cursor means that contacts have never been synchronized: realm must load the same contacts as
+ * {@link AccountUserService#getContacts()} does.
+ */
+public interface DeltaSyncAccountUserService extends AccountUserService {
+
+	/**
+	 * @param cursor   position returned by the previous call of this method
+	 * @param consumer consumer of loaded contacts
+	 * @return new cursor
+	 */
+	@Nullable
+	String loadContactsSince(@Nullable String cursor, @Nonnull ContactsConsumer consumer) throws AccountConnectionException;
+
+	interface ContactsConsumer {
+		void onContacts(@Nonnull List<User> contacts);
+	}
+}
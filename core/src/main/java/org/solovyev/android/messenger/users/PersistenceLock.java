@@ -17,10 +17,103 @@
 package org.solovyev.android.messenger.users;
 
 import com.google.inject.Singleton;
+import org.solovyev.android.messenger.entities.Entity;
 
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Lock for all operations with persistence state. Should guarantee that all operations done over DAOs are thread safe and not corrupt data.
+ * <p/>
+ * Locks are striped by account and by entity (user/chat):
+ * <ol>
+ * <li>operations which change a whole set of entities of an account (merges of contacts, chats or messages) take
+ * the exclusive account lock, see {@link #lockAccount(String)}</li>
+ * <li>operations which read entities of an account take the shared account lock, see {@link #lockAccountForRead(String)}</li>
+ * <li>operations which change one entity take the shared account lock and the entity lock, see {@link #lockEntity(Entity)}</li>
+ * </ol>
+ * So a merge on one account never blocks reads and writes on another account, and a single entity update blocks only
+ * the same entity (and merges of its account). All locks are reentrant, exclusive account lock can be followed by
+ * any other lock of the same account, but shared/entity lock must never be followed by the exclusive lock of the same account.
+ * <p/>
+ * Queries which consist of one SQL statement over all accounts (e.g. unread messages count) don't need any lock.
+ */
+@ThreadSafe
 @Singleton
 public final class PersistenceLock {
 
+	private static final int ACCOUNT_STRIPES = 16;
+	private static final int ENTITY_STRIPES = 64;
+
+	@Nonnull
+	private final ReentrantReadWriteLock[] accountLocks;
+
+	@Nonnull
+	private final ReentrantLock[] entityLocks;
+
 	public PersistenceLock() {
+		this(ACCOUNT_STRIPES, ENTITY_STRIPES);
+	}
+
+	PersistenceLock(int accountStripes, int entityStripes) {
+		accountLocks = new ReentrantReadWriteLock[accountStripes];
+		for (int i = 0; i < accountLocks.length; i++) {
+			accountLocks[i] = new ReentrantReadWriteLock();
+		}
+
+		entityLocks = new ReentrantLock[entityStripes];
+		for (int i = 0; i < entityLocks.length; i++) {
+			entityLocks[i] = new ReentrantLock();
+		}
+	}
+
+	public void lockAccount(@Nonnull String accountId) {
+		getAccountLock(accountId).writeLock().lock();
+	}
+
+	public void unlockAccount(@Nonnull String accountId) {
+		getAccountLock(accountId).writeLock().unlock();
+	}
+
+	public void lockAccountForRead(@Nonnull String accountId) {
+		getAccountLock(accountId).readLock().lock();
+	}
+
+	public void unlockAccountForRead(@Nonnull String accountId) {
+		getAccountLock(accountId).readLock().unlock();
+	}
+
+	public void lockEntity(@Nonnull Entity entity) {
+		lockAccountForRead(entity.getAccountId());
+		getEntityLock(entity).lock();
+	}
+
+	public void unlockEntity(@Nonnull Entity entity) {
+		try {
+			getEntityLock(entity).unlock();
+		} finally {
+			unlockAccountForRead(entity.getAccountId());
+		}
+	}
+
+	@Nonnull
+	private ReentrantReadWriteLock getAccountLock(@Nonnull String accountId) {
+		return accountLocks[stripe(accountId.hashCode(), accountLocks.length)];
+	}
+
+	@Nonnull
+	private Lock getEntityLock(@Nonnull Entity entity) {
+		return entityLocks[stripe(entity.getEntityId().hashCode(), entityLocks.length)];
+	}
+
+	private static int stripe(int hashCode, int stripes) {
+		// spread bits as String#hashCode of similar ids differs only in lower bits
+		int h = hashCode;
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return (h & 0x7fffffff) % stripes;
 	}
 }
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.users;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.solovyev.android.messenger.users.PhoneNumber.newPhoneNumber;
+
+/**
+ * Index of contacts by their phone numbers.
+ * Phone numbers are bucketed by the last {@link #KEY_LENGTH} digits and candidates of the bucket are compared with
+ * {@link PhoneNumber#same(PhoneNumber)}, i.e. lookup finds the same contacts as linear scan of contacts but parses only
+ * the requested phone number.
+ */
+@ThreadSafe
+public final class PhoneNumberIndex {
+
+	// same as minimal number of matching digits used by Android's PhoneNumberUtils
+	static final int KEY_LENGTH = 7;
+
+	@Nonnull
+	private final Object lock = new Object();
+
+	// key: last digits of phone number, value: phones of contacts with such digits
+	@GuardedBy("lock")
+	@Nonnull
+	private final Map<String, List<IndexedPhone>> phones = new HashMap<String, List<IndexedPhone>>();
+
+	// key: user id, value: indexed phones of user (needed to remove old phones when user is changed)
+	@GuardedBy("lock")
+	@Nonnull
+	private final Map<String, List<IndexedPhone>> phonesByUserId = new HashMap<String, List<IndexedPhone>>();
+
+	private PhoneNumberIndex() {
+	}
+
+	@Nonnull
+	public static PhoneNumberIndex newPhoneNumberIndex(@Nonnull Collection<User> users) {
+		final PhoneNumberIndex result = new PhoneNumberIndex();
+		result.putAll(users);
+		return result;
+	}
+
+	@Nullable
+	public User find(@Nonnull String phone) {
+		final PhoneNumber phoneNumber = newPhoneNumber(phone);
+		final String key = toKey(phoneNumber.getNumber());
+
+		synchronized (lock) {
+			final List<IndexedPhone> candidates = phones.get(key);
+			if (candidates != null) {
+				// default phone has priority over other phones of user
+				for (IndexedPhone candidate : candidates) {
+					if (candidate.main && candidate.phoneNumber.same(phoneNumber)) {
+						return candidate.user;
+					}
+				}
+
+				for (IndexedPhone candidate : candidates) {
+					if (!candidate.main && candidate.phoneNumber.same(phoneNumber)) {
+						return candidate.user;
+					}
+				}
+			}
+		}
+
+		return null;
+	}
+
+	public void put(@Nonnull User user) {
+		final List<IndexedPhone> userPhones = toIndexedPhones(user);
+		synchronized (lock) {
+			put(user.getId(), userPhones);
+		}
+	}
+
+	public void putAll(@Nonnull Collection<User> users) {
+		final Map<String, List<IndexedPhone>> usersPhones = new HashMap<String, List<IndexedPhone>>(users.size());
+		for (User user : users) {
+			usersPhones.put(user.getId(), toIndexedPhones(user));
+		}
+
+		synchronized (lock) {
+			for (Map.Entry<String, List<IndexedPhone>> entry : usersPhones.entrySet()) {
+				put(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	public void remove(@Nonnull String userId) {
+		synchronized (lock) {
+			removeUserPhones(userId);
+		}
+	}
+
+	public int size() {
+		synchronized (lock) {
+			return phonesByUserId.size();
+		}
+	}
+
+	/**
+	 * Updates index with contacts of the user for whom index is built
+	 *
+	 * @param event user event
+	 */
+	public void onEvent(@Nonnull UserEvent event) {
+		switch (event.getType()) {
+			case contacts_added:
+			case contacts_changed:
+				putAll(event.getDataAsUsers());
+				break;
+			case contact_removed:
+				remove(event.getDataAsUserId());
+				break;
+		}
+	}
+
+	@GuardedBy("lock")
+	private void put(@Nonnull String userId, @Nonnull List<IndexedPhone> userPhones) {
+		removeUserPhones(userId);
+
+		if (!userPhones.isEmpty()) {
+			phonesByUserId.put(userId, userPhones);
+			for (IndexedPhone userPhone : userPhones) {
+				List<IndexedPhone> keyPhones = phones.get(userPhone.key);
+				if (keyPhones == null) {
+					keyPhones = new ArrayList<IndexedPhone>(1);
+					phones.put(userPhone.key, keyPhones);
+				}
+				keyPhones.add(userPhone);
+			}
+		}
+	}
+
+	@GuardedBy("lock")
+	private void removeUserPhones(@Nonnull String userId) {
+		final List<IndexedPhone> userPhones = phonesByUserId.remove(userId);
+		if (userPhones != null) {
+			for (IndexedPhone userPhone : userPhones) {
+				final List<IndexedPhone> keyPhones = phones.get(userPhone.key);
+				if (keyPhones != null) {
+					keyPhones.remove(userPhone);
+					if (keyPhones.isEmpty()) {
+						phones.remove(userPhone.key);
+					}
+				}
+			}
+		}
+	}
+
+	@Nonnull
+	private static List<IndexedPhone> toIndexedPhones(@Nonnull User user) {
+		final String mainPhone = user.getPhoneNumber();
+
+		final Collection<String> userPhones = user.getPhoneNumbers();
+		final List<IndexedPhone> result = new ArrayList<IndexedPhone>(userPhones.size());
+		for (String phone : userPhones) {
+			result.add(new IndexedPhone(user, phone, phone.equals(mainPhone)));
+		}
+		return result;
+	}
+
+	/**
+	 * @param phone phone number
+	 * @return last {@link #KEY_LENGTH} digits of phone number or phone number itself if it doesn't contain digits
+	 * (alphanumeric sender ids)
+	 */
+	@Nonnull
+	static String toKey(@Nonnull String phone) {
+		final StringBuilder digits = new StringBuilder(KEY_LENGTH);
+		for (int i = phone.length() - 1; i >= 0 && digits.length() < KEY_LENGTH; i--) {
+			final char c = phone.charAt(i);
+			if (Character.isDigit(c)) {
+				digits.append(c);
+			}
+		}
+
+		if (digits.length() > 0) {
+			return digits.reverse().toString();
+		} else {
+			return phone;
+		}
+	}
+
+	private static final class IndexedPhone {
+
+		@Nonnull
+		private final User user;
+
+		@Nonnull
+		private final PhoneNumber phoneNumber;
+
+		@Nonnull
+		private final String key;
+
+		private final boolean main;
+
+		private IndexedPhone(@Nonnull User user, @Nonnull String phone, boolean main) {
+			this.user = user;
+			this.phoneNumber = newPhoneNumber(phone);
+			this.key = toKey(this.phoneNumber.getNumber());
+			this.main = main;
+		}
+	}
+}
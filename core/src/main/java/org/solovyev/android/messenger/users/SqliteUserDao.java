@@ -31,6 +31,7 @@ import org.solovyev.android.db.properties.PropertyByIdDbQuery;
 import org.solovyev.android.messenger.LinkedEntitiesDao;
 import org.solovyev.android.messenger.MergeDaoResult;
 import org.solovyev.android.messenger.ReplacePropertyExec;
+import org.solovyev.android.messenger.UpsertPropertiesExec;
 import org.solovyev.android.properties.AProperty;
 import org.solovyev.common.Converter;
 import org.solovyev.common.collections.Collections;
@@ -40,11 +41,11 @@ import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.inject.Singleton;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
 import static org.solovyev.android.db.AndroidDbUtils.*;
+import static org.solovyev.android.messenger.UpsertPropertiesExec.newUpsertPropertiesExec;
 import static org.solovyev.android.messenger.users.Users.newOnlineProperty;
 
 /**
@@ -60,6 +61,10 @@ import static org.solovyev.android.messenger.users.Users.newOnlineProperty;
 @Singleton
 public final class SqliteUserDao extends AbstractSQLiteHelper implements UserDao {
 
+	// queries are package-visible so that their plans can be checked in tests
+
+	static final String CONTACTS_BY_USER_QUERY = "select * from users where id in (select contact_id from user_contacts where user_id = ?)";
+
 	@Nonnull
 	private final Dao<User> dao;
 
@@ -78,7 +83,7 @@ public final class SqliteUserDao extends AbstractSQLiteHelper implements UserDao
 	public long create(@Nonnull User user) {
 		final long result = dao.create(user);
 		if (result != DbExec.SQL_ERROR) {
-			doDbExec(getSqliteOpenHelper(), new InsertProperties(user));
+			doDbExec(getSqliteOpenHelper(), newUpsertProperties().addNew(user.getId(), user.getPropertiesCollection()));
 		}
 		return result;
 	}
@@ -87,7 +92,7 @@ public final class SqliteUserDao extends AbstractSQLiteHelper implements UserDao
 	public long createContact(@Nonnull String userId, @Nonnull User contact) {
 		final long result = dao.create(contact);
 		if (result != DbExec.SQL_ERROR) {
-			doDbExec(getSqliteOpenHelper(), new InsertProperties(contact));
+			doDbExec(getSqliteOpenHelper(), newUpsertProperties().addNew(contact.getId(), contact.getPropertiesCollection()));
 			doDbExec(getSqliteOpenHelper(), new InsertContact(userId, contact.getId()));
 		}
 		return result;
@@ -115,8 +120,8 @@ public final class SqliteUserDao extends AbstractSQLiteHelper implements UserDao
 	public long update(@Nonnull User user) {
 		final long rows = dao.update(user);
 		if (rows > 0) {
-			// user exists => can remove/insert properties
-			doDbExecs(getSqliteOpenHelper(), Arrays.<DbExec>asList(new DeleteProperties(user), new InsertProperties(user)));
+			// user exists => can update properties
+			doDbExec(getSqliteOpenHelper(), newUpsertProperties().addExisting(user.getId(), user.getPropertiesCollection()));
 		}
 		return rows;
 	}
@@ -168,18 +173,22 @@ public final class SqliteUserDao extends AbstractSQLiteHelper implements UserDao
 			execs.addAll(RemoveContacts.newInstances(userId, result.getRemovedObjectIds()));
 		}
 
+		// properties of all contacts are written by one exec (reusing compiled statements) after users are inserted
+		final UpsertPropertiesExec properties = newUpsertProperties();
+
 		for (User updatedContact : result.getUpdatedObjects()) {
 			execs.add(new UpdateUser(updatedContact));
-			execs.add(new DeleteProperties(updatedContact));
-			execs.add(new InsertProperties(updatedContact));
+			properties.addExisting(updatedContact.getId(), updatedContact.getPropertiesCollection());
 		}
 
 		for (User addedContact : result.getAddedObjects()) {
 			execs.add(new InsertUser(addedContact));
-			execs.add(new InsertProperties(addedContact));
+			properties.addNew(addedContact.getId(), addedContact.getPropertiesCollection());
 			execs.add(new InsertContact(userId, addedContact.getEntity().getEntityId()));
 		}
 
+		execs.add(properties);
+
 		doDbExecs(getSqliteOpenHelper(), execs);
 
 		return result;
@@ -190,6 +199,11 @@ public final class SqliteUserDao extends AbstractSQLiteHelper implements UserDao
 		doDbExec(getSqliteOpenHelper(), newReplacePropertyExec(user, newOnlineProperty(user.isOnline())));
 	}
 
+	@Nonnull
+	private static UpsertPropertiesExec newUpsertProperties() {
+		return newUpsertPropertiesExec("user_properties", "user_id", false);
+	}
+
 	@Nonnull
 	private ReplacePropertyExec newReplacePropertyExec(@Nonnull User user,
 													   @Nonnull AProperty property) {
@@ -274,7 +288,7 @@ public final class SqliteUserDao extends AbstractSQLiteHelper implements UserDao
 		@Nonnull
 		@Override
 		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
-			return db.query("users", null, "id in (select contact_id from user_contacts where user_id = ? ) ", new String[]{userId}, null, null, null);
+			return db.rawQuery(CONTACTS_BY_USER_QUERY, new String[]{userId});
 		}
 
 		@Nonnull
@@ -324,50 +338,6 @@ public final class SqliteUserDao extends AbstractSQLiteHelper implements UserDao
 		}
 	}
 
-	private static final class DeleteProperties extends AbstractObjectDbExec<User> {
-
-		private DeleteProperties(@Nonnull User user) {
-			super(user);
-		}
-
-		@Override
-		public long exec(@Nonnull SQLiteDatabase db) {
-			final User user = getNotNullObject();
-
-			return db.delete("user_properties", "user_id = ?", new String[]{String.valueOf(user.getEntity().getEntityId())});
-		}
-	}
-
-	private static final class InsertProperties extends AbstractObjectDbExec<User> {
-
-		private InsertProperties(@Nonnull User user) {
-			super(user);
-		}
-
-		@Override
-		public long exec(@Nonnull SQLiteDatabase db) {
-			long result = 0;
-
-			final User user = getNotNullObject();
-
-			for (AProperty property : user.getPropertiesCollection()) {
-				final ContentValues values = new ContentValues();
-				final String value = property.getValue();
-				if (value != null) {
-					values.put("user_id", user.getEntity().getEntityId());
-					values.put("property_name", property.getName());
-					values.put("property_value", value);
-					final long id = db.insert("user_properties", null, values);
-					if (id == DbExec.SQL_ERROR) {
-						result = DbExec.SQL_ERROR;
-					}
-				}
-			}
-
-			return result;
-		}
-	}
-
 	@Nonnull
 	private static ContentValues toContentValues(@Nonnull User user) {
 		final ContentValues values = new ContentValues();
@@ -16,42 +16,47 @@
 
 package org.solovyev.android.messenger.users;
 
+import org.solovyev.android.messenger.cache.ConcurrentLruCache;
 import org.solovyev.android.messenger.entities.Entity;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+
+import static org.solovyev.android.messenger.cache.ConcurrentLruCache.newWeightedCache;
+import static org.solovyev.android.messenger.entities.Entities.newEntityFromEntityId;
 
 @ThreadSafe
 class UserCache {
 
+	// users are weighted by number of properties: VK contacts carry a lot of them
+	private static final int MAX_WEIGHT = 20000;
+
 	// key: user entity, value: user object
-	@GuardedBy("users")
 	@Nonnull
-	private final Map<Entity, User> users = new HashMap<Entity, User>();
+	private final ConcurrentLruCache<Entity, User> users;
+
+	UserCache() {
+		this(MAX_WEIGHT);
+	}
+
+	UserCache(int maxWeight) {
+		users = newWeightedCache(maxWeight, new UserWeigher());
+	}
 
 	@Nullable
 	public User get(@Nonnull Entity key) {
-		synchronized (users) {
-			return users.get(key);
-		}
+		return users.get(key);
 	}
 
 	public void put(@Nonnull User user) {
-		synchronized (users) {
-			users.put(user.getEntity(), user);
-		}
+		users.put(user.getEntity(), user);
 	}
 
 	private void put(@Nonnull List<User> users) {
-		synchronized (this.users) {
-			for (User user : users) {
-				this.users.put(user.getEntity(), user);
-			}
+		for (User user : users) {
+			this.users.put(user.getEntity(), user);
 		}
 	}
 
@@ -65,6 +70,21 @@ class UserCache {
 			case contacts_presence_changed:
 				put(event.getDataAsUsers());
 				break;
+			case contact_removed:
+				users.remove(newEntityFromEntityId(event.getDataAsUserId()));
+				break;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "UserCache{" + users + '}';
+	}
+
+	private static final class UserWeigher implements ConcurrentLruCache.Weigher<User> {
+		@Override
+		public int weigh(@Nonnull User user) {
+			return 1 + user.getPropertiesCollection().size();
 		}
 	}
 }
@@ -83,7 +83,7 @@ class UserChats {
 		public void onEvent(@Nonnull ChatEvent event) {
 			switch (event.getType()) {
 				case changed:
-					chats.update(new ObjectsChangedMapUpdater<Entity, Chat>(event.getChat()));
+					chats.updateAll(new ObjectsChangedUpdater<Chat>(event.getChat()));
 					break;
 
 			}
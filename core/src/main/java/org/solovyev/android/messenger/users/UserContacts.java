@@ -16,38 +16,99 @@
 
 package org.solovyev.android.messenger.users;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
 import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.entities.EntityAwareRemovedUpdater;
 import org.solovyev.common.collections.multimap.*;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
 import javax.annotation.concurrent.ThreadSafe;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import static com.google.common.collect.Iterables.find;
-import static org.solovyev.common.collections.multimap.ThreadSafeMultimap.newThreadSafeMultimap;
+import static org.solovyev.android.messenger.entities.Entities.newEntityFromEntityId;
 
 @ThreadSafe
 class UserContacts {
 
-	// key: user entity, value: list of user contacts
+	// key: user entity, value: list of user contacts together with version of presences applied to it. List and version
+	// are replaced at once (as in ThreadSafeMultimap), so list can't be tagged with a version of another list
 	@Nonnull
-	private final ThreadSafeMultimap<Entity, User> contacts = newThreadSafeMultimap();
+	private final ConcurrentMap<Entity, Contacts> contacts = new ConcurrentHashMap<Entity, Contacts>();
+
+	// search index over contacts of all users, updated together with contacts
+	@Nonnull
+	private final ContactSearchIndex index = new ContactSearchIndex();
+
+	// presences are kept separately from contacts: presence change doesn't copy list of contacts
+	@Nonnull
+	private final ContactPresences presences = new ContactPresences();
 
 	@Nonnull
 	public List<User> getContacts(@Nonnull Entity user) {
-		return contacts.get(user);
+		while (true) {
+			final Contacts oldContacts = contacts.get(user);
+			if (oldContacts == null) {
+				return (List<User>) ThreadSafeMultimap.NO_VALUE;
+			}
+
+			final long version = presences.getVersion(user);
+			if (oldContacts.presencesVersion >= version) {
+				return oldContacts.list;
+			}
+
+			// list is patched once for all presence changes happened since last read
+			final List<User> patchedList = new PresencesApplier(oldContacts.presencesVersion).update(oldContacts.list);
+			final Contacts newContacts = patchedList != null ? Contacts.newContacts(patchedList, version) : new Contacts(oldContacts.list, version);
+			if (contacts.replace(user, oldContacts, newContacts)) {
+				return newContacts.list;
+			}
+			// contacts have been changed concurrently => apply presences to the new list
+		}
+	}
+
+	/**
+	 * @return true if contact is online, false if contact is offline, null if contact's presence has not been changed
+	 * since contacts were loaded
+	 */
+	@Nullable
+	public Boolean isOnline(@Nonnull Entity contact) {
+		return presences.isOnline(contact);
 	}
 
-	public void update(@Nonnull Entity user, @Nonnull List<User> contacts) {
+	/**
+	 * Searches contacts of <var>users</var>, see {@link ContactSearchIndex#find(Set, String, int, Set)}.
+	 * Note that only contacts loaded by {@link #update(Entity, List, long)} or added by events are searched.
+	 */
+	@Nonnull
+	public List<User> findContacts(@Nonnull Set<Entity> users, @Nullable String query, int count, @Nonnull Set<String> exceptIds) {
+		return index.find(users, query, count, exceptIds);
+	}
+
+	/**
+	 * @return current version of presences, must be obtained before contacts are loaded for {@link #update(Entity, List, long)}
+	 */
+	public long getPresencesVersion() {
+		return presences.getVersion();
+	}
+
+	/**
+	 * @param presencesVersion version of presences obtained by {@link #getPresencesVersion()} before <var>contacts</var>
+	 *                         were loaded: presences changed after that will be applied to the contacts on read
+	 */
+	public void update(@Nonnull Entity user, @Nonnull List<User> contacts, long presencesVersion) {
 		if (!contacts.isEmpty()) {
 			calculateDisplayNames(contacts);
-			this.contacts.update(user, new WholeListUpdater<User>(contacts));
+			// loaded contacts have presences which were saved before loading
+			this.contacts.put(user, Contacts.newContacts(ThreadSafeMultimap.copy(contacts), presencesVersion));
+			this.index.putAll(user, contacts);
 		} else {
 			this.contacts.remove(user);
+			this.index.removeAll(user);
 		}
 	}
 
@@ -56,28 +117,74 @@ class UserContacts {
 
 		switch (event.getType()) {
 			case changed:
-				this.contacts.update(new ObjectsChangedMapUpdater<Entity, User>(user));
+				updateAll(new ObjectsChangedUpdater<User>(user));
+				this.index.changeAll(Collections.singletonList(user));
 				break;
 			case contacts_added:
 				// contacts added => need to add to list of cached contacts
 				final List<User> contacts = event.getDataAsUsers();
 				calculateDisplayNames(contacts);
-				this.contacts.update(user.getEntity(), new ObjectsAddedUpdater<User>(contacts));
+				update(user.getEntity(), new ObjectsAddedUpdater<User>(contacts));
+				this.index.addAll(user.getEntity(), contacts);
 				break;
 			case contact_removed:
 				// contact removed => try to remove from cached contacts
 				final String removedContactId = event.getDataAsUserId();
-				this.contacts.update(user.getEntity(), new EntityAwareRemovedUpdater<User>(removedContactId));
+				update(user.getEntity(), new EntityAwareRemovedUpdater<User>(removedContactId));
+				this.index.remove(removedContactId);
+				this.presences.remove(newEntityFromEntityId(removedContactId));
 				break;
 			case contacts_changed:
-				this.contacts.update(new ObjectsChangedMapUpdater<Entity, User>(event.getDataAsUsers()));
+				updateAll(new ObjectsChangedUpdater<User>(event.getDataAsUsers()));
+				this.index.changeAll(event.getDataAsUsers());
 				break;
 			case contacts_presence_changed:
-				this.contacts.update(user.getEntity(), new UserListContactStatusUpdater(event.getDataAsUsers()));
+				this.presences.updateAll(user.getEntity(), event.getDataAsUsers());
+				this.index.changeStatuses(event.getDataAsUsers());
 				break;
 		}
 	}
 
+	/**
+	 * Atomically updates list of contacts of <var>user</var> keeping version of presences applied to it, see
+	 * {@link ThreadSafeMultimap#update(Object, ThreadSafeMultimap.ListUpdater)}
+	 */
+	private void update(@Nonnull Entity user, @Nonnull ThreadSafeMultimap.ListUpdater<User> updater) {
+		while (true) {
+			final Contacts oldContacts = contacts.get(user);
+			final List<User> newList = updater.update(oldContacts == null ? (List<User>) ThreadSafeMultimap.NO_VALUE : oldContacts.list);
+			if (newList == null) {
+				return;
+			}
+
+			if (oldContacts == null) {
+				// contacts have not been loaded => presences are applied on read
+				if (contacts.putIfAbsent(user, Contacts.newContacts(newList, ContactPresences.NO_VERSION)) == null) {
+					return;
+				}
+			} else if (contacts.replace(user, oldContacts, Contacts.newContacts(newList, oldContacts.presencesVersion))) {
+				return;
+			}
+		}
+	}
+
+	private void updateAll(@Nonnull ThreadSafeMultimap.ListUpdater<User> updater) {
+		for (Entity user : contacts.keySet()) {
+			while (true) {
+				final Contacts oldContacts = contacts.get(user);
+				if (oldContacts == null) {
+					// removed concurrently
+					break;
+				}
+
+				final List<User> newList = updater.update(oldContacts.list);
+				if (newList == null || contacts.replace(user, oldContacts, Contacts.newContacts(newList, oldContacts.presencesVersion))) {
+					break;
+				}
+			}
+		}
+	}
+
 	private void calculateDisplayNames(@Nonnull List<User> contacts) {
 		for (User contact : contacts) {
 			// update cached value
@@ -85,55 +192,55 @@ class UserContacts {
 		}
 	}
 
-	private static class UserListContactStatusUpdater implements ThreadSafeMultimap.ListUpdater<User> {
+	@Immutable
+	private static final class Contacts {
 
 		@Nonnull
-		private final List<User> contacts;
+		private final List<User> list;
+
+		// version of presences applied to the list
+		private final long presencesVersion;
+
+		// list must be unmodifiable
+		private Contacts(@Nonnull List<User> list, long presencesVersion) {
+			this.list = list;
+			this.presencesVersion = presencesVersion;
+		}
 
-		public UserListContactStatusUpdater(@Nonnull List<User> contacts) {
-			this.contacts = contacts;
+		@Nonnull
+		private static Contacts newContacts(@Nonnull List<User> list, long presencesVersion) {
+			return new Contacts(Collections.unmodifiableList(list), presencesVersion);
+		}
+
+		// equals and hashCode are not overridden: holders are compared by identity
+	}
+
+	private final class PresencesApplier implements ThreadSafeMultimap.ListUpdater<User> {
+
+		private final long sinceVersion;
+
+		private PresencesApplier(long sinceVersion) {
+			this.sinceVersion = sinceVersion;
 		}
 
 		@Nullable
 		@Override
 		public List<User> update(@Nonnull List<User> values) {
-			if (contacts.size() == 1) {
-				final User contact = contacts.get(0);
-
-				final int index = Iterables.indexOf(values, new Predicate<User>() {
-					@Override
-					public boolean apply(@Nullable User user) {
-						return contact.equals(user);
+			List<User> result = null;
+
+			for (int i = 0; i < values.size(); i++) {
+				final User contact = values.get(i);
+				final ContactPresences.Presence presence = presences.getPresence(contact.getEntity());
+				if (presence != null && presence.getVersion() > sinceVersion && presence.isOnline() != contact.isOnline()) {
+					if (result == null) {
+						// copy only if something has changed
+						result = ThreadSafeMultimap.copy(values);
 					}
-				});
-
-				if (index >= 0) {
-					final List<User> result = ThreadSafeMultimap.copy(values);
-					result.set(index, result.get(index).cloneWithNewStatus(contact.isOnline()));
-					return result;
-				} else {
-					return null;
+					result.set(i, contact.cloneWithNewStatus(presence.isOnline()));
 				}
-			} else {
-				final List<User> result = ThreadSafeMultimap.copy(values);
-
-				for (int i = 0; i < result.size(); i++) {
-					final User user = result.get(i);
-					final User contact = find(contacts, new Predicate<User>() {
-						@Override
-						public boolean apply(@Nullable User contact) {
-							return user.equals(contact);
-						}
-					}, null);
-
-					if(contact != null) {
-						result.set(i, user.cloneWithNewStatus(contact.isOnline()));
-					}
-				}
-
-				return result;
 			}
+
+			return result;
 		}
 	}
-
 }
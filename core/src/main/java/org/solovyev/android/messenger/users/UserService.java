@@ -160,10 +160,9 @@ public interface UserService {
 	 * NOTE: some realms do not support user contacts retrieval, in that case empty list is returned
 	 *
 	 * @param account account for which synchronization must be done
-	 * @return updated list of user contacts
+	 * @return number of synchronized contacts (for {@link DeltaSyncAccountUserService} only changed contacts are counted)
 	 */
-	@Nonnull
-	List<User> syncContacts(@Nonnull Account<?> account) throws AccountException;
+	int syncContacts(@Nonnull Account<?> account) throws AccountException;
 
 	/**
 	 * Method synchronizes local users chats with remote user chats
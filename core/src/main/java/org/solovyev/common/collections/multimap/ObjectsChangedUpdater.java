@@ -0,0 +1,62 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.common.collections.multimap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Replaces objects in the list with changed objects which are equal to them. Is usually applied to values of all keys,
+ * see {@link ThreadSafeMultimap#updateAll(ThreadSafeMultimap.ListUpdater)}
+ */
+public class ObjectsChangedUpdater<V> implements ThreadSafeMultimap.ListUpdater<V> {
+
+	@Nonnull
+	private final Collection<V> changedObjects;
+
+	public ObjectsChangedUpdater(@Nonnull V changedObject) {
+		this.changedObjects = Arrays.asList(changedObject);
+	}
+
+	public ObjectsChangedUpdater(@Nonnull Collection<V> changedObjects) {
+		this.changedObjects = changedObjects;
+	}
+
+	@Nullable
+	@Override
+	public List<V> update(@Nonnull List<V> values) {
+		List<V> result = null;
+
+		for (int i = 0; i < values.size(); i++) {
+			final V object = values.get(i);
+			for (V changedObject : changedObjects) {
+				if (object.equals(changedObject)) {
+					if (result == null) {
+						// list is copied only if it contains changed objects
+						result = ThreadSafeMultimap.copy(values);
+					}
+					result.set(i, changedObject);
+				}
+			}
+		}
+
+		return result;
+	}
+}
@@ -18,26 +18,41 @@ package org.solovyev.common.collections.multimap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
 import javax.annotation.concurrent.ThreadSafe;
-import java.util.*;
-
-import org.solovyev.android.messenger.entities.Entity;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static java.util.Collections.emptyList;
 import static java.util.Collections.unmodifiableList;
-import static java.util.Collections.unmodifiableMap;
 
+/**
+ * Multimap with lock-free reads and atomic updates of values of one key.
+ * <p/>
+ * Lists of values are never modified after they have been put to the map: {@link ListUpdater} creates a new list which
+ * replaces the old one only if the old one is still in the map, otherwise updater is applied again to the new list.
+ * That's why updaters must not have side effects. Lists are safely published through {@link ConcurrentHashMap}.
+ */
 @ThreadSafe
 public final class ThreadSafeMultimap<K, V> {
 
 	@Nonnull
 	public static final List<?> NO_VALUE = emptyList();
 
+	// lists are wrapped in holders compared by identity: replace(key, oldValue, newValue) must not succeed if
+	// another thread has put an equal list (e.g. with changed objects which are equal to old ones)
 	@Nonnull
-	private volatile Map<K, List<V>> map;
+	private final ConcurrentMap<K, Values<V>> map;
 
 	private ThreadSafeMultimap(@Nonnull Map<K, List<V>> map) {
-		this.map = map;
+		this.map = new ConcurrentHashMap<K, Values<V>>(Math.max(16, map.size()));
+		for (Map.Entry<K, List<V>> entry : map.entrySet()) {
+			this.map.put(entry.getKey(), new Values<V>(entry.getValue()));
+		}
 	}
 
 	@Nonnull
@@ -52,38 +67,78 @@ public final class ThreadSafeMultimap<K, V> {
 
 	@Nonnull
 	public List<V> get(@Nonnull K key) {
-		final List<V> values = map.get(key);
+		final Values<V> values = map.get(key);
 		if (values == null) {
 			return (List<V>) NO_VALUE;
 		} else {
-			return unmodifiableList(values);
+			return values.list;
 		}
 	}
 
-	public synchronized boolean update(@Nonnull K key, @Nonnull ListUpdater<V> updater) {
-		final List<V> newValue = updater.update(get(key));
-		if (newValue != null) {
-			map.put(key, newValue);
-			return true;
-		} else {
-			return false;
+	/**
+	 * Atomically updates values of <var>key</var>
+	 *
+	 * @return true if values have been changed
+	 */
+	public boolean update(@Nonnull K key, @Nonnull ListUpdater<V> updater) {
+		while (true) {
+			final Values<V> oldValues = map.get(key);
+			final List<V> newList = updater.update(oldValues == null ? (List<V>) NO_VALUE : oldValues.list);
+			if (newList == null) {
+				return false;
+			}
+
+			final Values<V> newValues = new Values<V>(newList);
+			if (oldValues == null) {
+				if (map.putIfAbsent(key, newValues) == null) {
+					return true;
+				}
+			} else if (map.replace(key, oldValues, newValues)) {
+				return true;
+			}
 		}
 	}
 
-	public synchronized boolean update(@Nonnull MapUpdater<K, V> updater) {
-		Map<K, List<V>> newMap = updater.update(unmodifiableMap(map));
-		if (newMap != null) {
-			map = newMap;
-			return true;
-		} else {
-			return false;
+	/**
+	 * Atomically updates values of each key (but not all keys at once). Keys added concurrently might not be updated.
+	 *
+	 * @return true if values of any key have been changed
+	 */
+	public boolean updateAll(@Nonnull ListUpdater<V> updater) {
+		boolean updated = false;
+		for (K key : map.keySet()) {
+			updated |= updateExisting(key, updater);
+		}
+		return updated;
+	}
+
+	private boolean updateExisting(@Nonnull K key, @Nonnull ListUpdater<V> updater) {
+		while (true) {
+			final Values<V> oldValues = map.get(key);
+			if (oldValues == null) {
+				// removed concurrently
+				return false;
+			}
+
+			final List<V> newList = updater.update(oldValues.list);
+			if (newList == null) {
+				return false;
+			}
+
+			if (map.replace(key, oldValues, new Values<V>(newList))) {
+				return true;
+			}
 		}
 	}
 
 	// for tests
 	@Nonnull
 	Map<K, List<V>> asMap() {
-		return map;
+		final Map<K, List<V>> result = new HashMap<K, List<V>>(map.size());
+		for (Map.Entry<K, Values<V>> entry : map.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().list);
+		}
+		return result;
 	}
 
 	public void remove(@Nonnull K key) {
@@ -98,25 +153,33 @@ public final class ThreadSafeMultimap<K, V> {
     **********************************************************************
     */
 
+	/**
+	 * Function which creates a new list of values from the current one. Might be called several times for one update
+	 * (if values have been changed concurrently) => must not have side effects and must not modify passed list.
+	 */
 	public static interface ListUpdater<V> {
+		/**
+		 * @param values current values, {@link #NO_VALUE} if there are no values for the key
+		 * @return new values or null if values should not be changed
+		 */
 		@Nullable
 		List<V> update(@Nonnull List<V> values);
 	}
 
-	public static interface MapUpdater<K, V> {
-		@Nullable
-		Map<K, List<V>> update(@Nonnull Map<K, List<V>> map);
+	public static <V> List<V> copy(@Nonnull List<V> values) {
+		return new ArrayList<V>(values);
 	}
 
-	public static <K, V> Map<K, List<V>> copy(@Nonnull Map<K, List<V>> map) {
-		final Map<K, List<V>> copy = new HashMap<K, List<V>>(map.size());
-		for (Map.Entry<K, List<V>> entry : map.entrySet()) {
-			copy.put(entry.getKey(), copy(entry.getValue()));
+	@Immutable
+	private static final class Values<V> {
+
+		@Nonnull
+		private final List<V> list;
+
+		private Values(@Nonnull List<V> list) {
+			this.list = unmodifiableList(list);
 		}
-		return copy;
-	}
 
-	public static <V> List<V> copy(@Nonnull List<V> values) {
-		return new ArrayList<V>(values);
+		// equals and hashCode are not overridden: holders are compared by identity
 	}
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EventCoalescerTest {
+
+	@Nonnull
+	private final List<String> deliveries = new ArrayList<String>();
+
+	@Nonnull
+	private EventCoalescer<String, Integer, String> coalescer;
+
+	@Before
+	public void setUp() throws Exception {
+		coalescer = new EventCoalescer<String, Integer, String>(10000L, new EventCoalescer.Delivery<String, String>() {
+			@Override
+			public void deliver(@Nonnull String group, @Nonnull List<String> values) {
+				synchronized (deliveries) {
+					deliveries.add(group + ":" + values);
+				}
+			}
+		});
+	}
+
+	@Test
+	public void testShouldCoalesceValuesWithSameKey() throws Exception {
+		coalescer.add("chat", 1, "sent");
+		coalescer.add("chat", 2, "sent");
+		coalescer.add("chat", 1, "delivered");
+		assertEquals(2, coalescer.getQueueDepth());
+
+		coalescer.flush();
+		assertEquals(asList("chat:[delivered, sent]"), deliveries);
+		assertEquals(0, coalescer.getQueueDepth());
+		assertEquals(1, coalescer.getDeliveredBatchesCount());
+	}
+
+	@Test
+	public void testShouldDeliverOneBatchPerGroup() throws Exception {
+		coalescer.add("chat1", 1, "a");
+		coalescer.add("chat2", 1, "b");
+		coalescer.add("chat1", 2, "c");
+
+		coalescer.flush();
+		assertEquals(asList("chat1:[a, c]", "chat2:[b]"), deliveries);
+		assertEquals(2, coalescer.getDeliveredBatchesCount());
+
+		coalescer.flush();
+		assertEquals(2, deliveries.size());
+	}
+
+	@Test
+	public void testShouldDeliverAfterWindow() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final EventCoalescer<String, Integer, String> coalescer = new EventCoalescer<String, Integer, String>(10L, new EventCoalescer.Delivery<String, String>() {
+			@Override
+			public void deliver(@Nonnull String group, @Nonnull List<String> values) {
+				latch.countDown();
+			}
+		});
+		coalescer.add("chat", 1, "a");
+
+		assertTrue(latch.await(5, SECONDS));
+		assertTrue(coalescer.getMaxLatencyMillis() >= 0);
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * Assertions on plans of queries (as returned by EXPLAIN QUERY PLAN). Queries must be taken from DAOs (they are
+ * package-visible there) so that plans of the queries which are actually executed are checked.
+ * Both formats of plan details are supported: "SCAN TABLE chats AS c" (SQLite before 3.8.9) and "SCAN c".
+ */
+public final class QueryPlans {
+
+	private static final Pattern SCAN = Pattern.compile("^SCAN (?:TABLE )?(\\w+)(?: AS \\w+)?(.*)$");
+
+	// scanning of small tables is cheap
+	private static final String SMALL_TABLE = "accounts";
+
+	// full scan of FTS3 table, other indexes are lookups by docid or full-text searches
+	private static final String FTS_FULL_SCAN = "VIRTUAL TABLE INDEX 0:";
+
+	private QueryPlans() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Fails if database used in tests can't explain query plans in the expected format. Robolectric runs tests on SQLite
+	 * through JDBC driver: its own driver is too old for that and is replaced by newer one in pom.xml, so the test must
+	 * never silently pass without checking plans.
+	 */
+	public static void assertQueryPlansSupported(@Nonnull SQLiteDatabase db) {
+		final List<String> details = explain(db, "select * from " + SMALL_TABLE);
+		for (String detail : details) {
+			if (SCAN.matcher(detail).find()) {
+				return;
+			}
+		}
+		fail("Query plans are not supported by SQLite used in tests, check version of sqlite-jdbc. Plan: " + details);
+	}
+
+	/**
+	 * Fails if query reads all rows of a table or of an index (except small tables)
+	 */
+	public static void assertNoFullScans(@Nonnull SQLiteDatabase db, @Nonnull String sql, @Nonnull String... args) {
+		checkScans(db, false, sql, args);
+	}
+
+	/**
+	 * Same as {@link #assertNoFullScans(SQLiteDatabase, String, String...)} but allows walking an index: query must
+	 * have a limit and order rows by the index, so only first entries of the index are read
+	 */
+	public static void assertNoFullScansExceptIndexOrder(@Nonnull SQLiteDatabase db, @Nonnull String sql, @Nonnull String... args) {
+		checkScans(db, true, sql, args);
+	}
+
+	public static void assertNoTempBTree(@Nonnull SQLiteDatabase db, @Nonnull String sql, @Nonnull String... args) {
+		for (String detail : explain(db, sql, args)) {
+			assertFalse("Temporary b-tree in query: " + sql + "\nPlan: " + detail, detail.contains("TEMP B-TREE"));
+		}
+	}
+
+	private static void checkScans(@Nonnull SQLiteDatabase db, boolean indexOrderAllowed, @Nonnull String sql, @Nonnull String... args) {
+		for (String detail : explain(db, sql, args)) {
+			final Matcher matcher = SCAN.matcher(detail);
+			if (matcher.find()) {
+				final String table = matcher.group(1);
+				final String how = matcher.group(2);
+				if (table.equals(SMALL_TABLE)) {
+					continue;
+				}
+				if (how.contains("VIRTUAL TABLE") && !how.contains(FTS_FULL_SCAN)) {
+					continue;
+				}
+				if (indexOrderAllowed && how.contains(" INDEX ")) {
+					continue;
+				}
+				fail("Full scan in query: " + sql + "\nPlan: " + detail);
+			}
+		}
+	}
+
+	@Nonnull
+	private static List<String> explain(@Nonnull SQLiteDatabase db, @Nonnull String sql, @Nonnull String... args) {
+		final List<String> result = new ArrayList<String>();
+
+		final Cursor cursor = db.rawQuery("explain query plan " + sql, args);
+		try {
+			final int detailColumn = cursor.getColumnIndex("detail");
+			while (cursor.moveToNext()) {
+				result.add(cursor.getString(detailColumn));
+			}
+		} finally {
+			cursor.close();
+		}
+
+		return result;
+	}
+}
@@ -189,6 +189,16 @@ public class AccountDaoTest extends DefaultDaoTest<Account> {
 		AccountsTest.assertEquals(excepted, findAccountInDao(excepted));
 	}
 
+	@Test
+	public void testShouldUpdateSyncCursors() throws Exception {
+		final Account expected = getAccount1().updateMessagesSyncCursor("100").updateContactsSyncCursor("200");
+		dao.update(expected);
+
+		final Account actual = findAccountInDao(expected);
+		assertEquals("100", actual.getSyncData().getMessagesSyncCursor());
+		assertEquals("200", actual.getSyncData().getContactsSyncCursor());
+	}
+
 	@Test
 	public void testShouldDeleteUsersIfAccountIsRemoved() throws Exception {
 		final TestAccount account1 = getAccount1();
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.cache;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.solovyev.android.messenger.cache.ConcurrentLruCache.newCache;
+import static org.solovyev.android.messenger.cache.ConcurrentLruCache.newWeightedCache;
+
+public class ConcurrentLruCacheTest {
+
+	@Test
+	public void testShouldEvictLeastRecentlyUsed() throws Exception {
+		final ConcurrentLruCache<Integer, String> cache = newCache(3);
+		cache.put(1, "1");
+		cache.put(2, "2");
+		cache.put(3, "3");
+
+		assertEquals("1", cache.get(1));
+
+		cache.put(4, "4");
+
+		assertEquals(3, cache.size());
+		assertNull(cache.get(2));
+		assertEquals("1", cache.get(1));
+		assertEquals("3", cache.get(3));
+		assertEquals("4", cache.get(4));
+		assertEquals(1, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testShouldReplaceValue() throws Exception {
+		final ConcurrentLruCache<Integer, String> cache = newCache(2);
+		cache.put(1, "1");
+		cache.put(1, "11");
+
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.getWeight());
+		assertEquals("11", cache.get(1));
+	}
+
+	@Test
+	public void testShouldEvictByWeight() throws Exception {
+		final ConcurrentLruCache<Integer, String> cache = newWeightedCache(10, new ConcurrentLruCache.Weigher<String>() {
+			@Override
+			public int weigh(@Nonnull String value) {
+				return value.length();
+			}
+		});
+		cache.put(1, "aaaa");
+		cache.put(2, "bbbb");
+		cache.put(3, "cccc");
+
+		assertNull(cache.get(1));
+		assertEquals(8, cache.getWeight());
+
+		// too heavy value is not cached at all
+		cache.put(4, "ddddddddddd");
+		assertNull(cache.get(4));
+		assertEquals("bbbb", cache.get(2));
+		assertEquals("cccc", cache.get(3));
+	}
+
+	@Test
+	public void testShouldCountHitsAndMisses() throws Exception {
+		final ConcurrentLruCache<Integer, String> cache = newCache(10);
+		cache.put(1, "1");
+
+		cache.get(1);
+		cache.get(1);
+		cache.get(2);
+
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(0, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testShouldRemove() throws Exception {
+		final ConcurrentLruCache<Integer, String> cache = newCache(10);
+		cache.put(1, "1");
+		cache.put(2, "2");
+		cache.remove(1);
+
+		assertNull(cache.get(1));
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.getWeight());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getWeight());
+	}
+
+	@Test
+	public void testShouldStayBoundedUnderConcurrentAccess() throws Exception {
+		final int maxSize = 100;
+		final int threads = 8;
+		final ConcurrentLruCache<Integer, Integer> cache = newCache(maxSize);
+
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int i = 0; i < threads; i++) {
+				final Random random = new Random(i);
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						for (int j = 0; j < 10000; j++) {
+							final int key = random.nextInt(5 * maxSize);
+							final Integer value = cache.get(key);
+							if (value == null) {
+								cache.put(key, key);
+							} else {
+								assertEquals(key, value.intValue());
+							}
+						}
+						return null;
+					}
+				}));
+			}
+
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		assertTrue(cache.size() <= maxSize);
+		assertEquals(cache.size(), cache.getWeight());
+		assertEquals(threads * 10000, cache.getHitCount() + cache.getMissCount());
+	}
+}
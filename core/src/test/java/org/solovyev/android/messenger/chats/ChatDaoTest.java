@@ -16,6 +16,8 @@
 
 package org.solovyev.android.messenger.chats;
 
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
 import com.google.common.base.Function;
 import com.google.common.collect.Collections2;
 import com.google.inject.Inject;
@@ -25,10 +27,12 @@ import org.solovyev.android.messenger.DefaultDaoTest;
 import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.messages.Message;
 import org.solovyev.android.messenger.messages.MessageDao;
+import org.solovyev.android.messenger.messages.MessageState;
 
 import javax.annotation.Nonnull;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -45,6 +49,10 @@ public class ChatDaoTest extends DefaultDaoTest<Chat> {
 	@Nonnull
 	private MessageDao messageDao;
 
+	@Inject
+	@Nonnull
+	private SQLiteOpenHelper sqliteOpenHelper;
+
 	@Nonnull
 	@Override
 	protected Dao<Chat> getDao() {
@@ -162,6 +170,18 @@ public class ChatDaoTest extends DefaultDaoTest<Chat> {
 		assertEquals(10, chatIds.size());
 	}
 
+	@Test
+	public void testShouldUpdateMessagesSyncCursor() throws Exception {
+		final String chatId = getAccountData1().getChats().get(0).getChat().getId();
+		assertNull(dao.readMessagesSyncCursor(chatId));
+
+		dao.updateMessagesSyncCursor(chatId, "100");
+		assertEquals("100", dao.readMessagesSyncCursor(chatId));
+
+		dao.updateMessagesSyncCursor(chatId, null);
+		assertNull(dao.readMessagesSyncCursor(chatId));
+	}
+
 	private void checkChatsAreSortedRecentFirst(@Nonnull Map<String, AccountChat> chats, @Nonnull List<String> chatIds) {
 		AccountChat previousChat = null;
 		for (String chatId : chatIds) {
@@ -195,4 +215,50 @@ public class ChatDaoTest extends DefaultDaoTest<Chat> {
 		}
 
 	}
+
+	@Test
+	public void testShouldUpdateChatSummaryWithMessages() throws Exception {
+		final AccountChat accountChat = getAccountData1().getChats().get(0);
+		final String chatId = accountChat.getChat().getId();
+		final List<Message> messages = accountChat.getMessages();
+		final Message lastMessage = messages.get(messages.size() - 1);
+		final Message previousMessage = messages.get(messages.size() - 2);
+
+		assertEquals(lastMessage.getId(), messageDao.readLastMessage(chatId).getId());
+		final int unreadMessages = getUnreadMessagesCount(chatId);
+		assertTrue(unreadMessages > 0);
+
+		Message unreadMessage = null;
+		for (Message message : messages) {
+			if (!message.isRead()) {
+				unreadMessage = message;
+				break;
+			}
+		}
+		assertNotNull(unreadMessage);
+		assertTrue(messageDao.changeReadStatus(unreadMessage.getId(), true));
+		assertEquals(unreadMessages - 1, getUnreadMessagesCount(chatId));
+
+		assertTrue(messageDao.changeMessageState(lastMessage.getId(), MessageState.removed));
+		assertEquals(previousMessage.getId(), messageDao.readLastMessage(chatId).getId());
+
+		// incrementally updated summary must be the same as the rebuilt one
+		final Map<Entity, Integer> unreadChats = dao.getUnreadChats();
+		final List<String> lastChatIds = dao.readLastChatIds(null, false, Integer.MAX_VALUE);
+		final SQLiteDatabase db = sqliteOpenHelper.getWritableDatabase();
+		db.execSQL("update chats set last_message_id = null, last_message_time = null, unread_count = 0");
+		SqliteChatDao.UpdateChatSummary.forAllChats().exec(db);
+		assertEquals(unreadChats, dao.getUnreadChats());
+		assertEquals(new HashSet<String>(lastChatIds), new HashSet<String>(dao.readLastChatIds(null, false, Integer.MAX_VALUE)));
+		assertEquals(previousMessage.getId(), messageDao.readLastMessage(chatId).getId());
+	}
+
+	private int getUnreadMessagesCount(@Nonnull String chatId) {
+		for (Map.Entry<Entity, Integer> entry : dao.getUnreadChats().entrySet()) {
+			if (entry.getKey().getEntityId().equals(chatId)) {
+				return entry.getValue();
+			}
+		}
+		return 0;
+	}
 }
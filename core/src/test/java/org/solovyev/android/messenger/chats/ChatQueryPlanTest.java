@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.chats;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import com.google.inject.Inject;
+import org.junit.Before;
+import org.junit.Test;
+import org.solovyev.android.messenger.DefaultMessengerTest;
+import org.solovyev.android.messenger.accounts.AccountState;
+import org.solovyev.android.messenger.messages.MessageState;
+
+import javax.annotation.Nonnull;
+
+import static org.solovyev.android.messenger.QueryPlans.*;
+import static org.solovyev.android.messenger.chats.SqliteChatDao.*;
+
+/**
+ * Checks plans of hot queries of {@link SqliteChatDao}: none of them should scan a whole table (except small tables,
+ * like accounts). If you change schema or queries update this test accordingly.
+ */
+public class ChatQueryPlanTest extends DefaultMessengerTest {
+
+	private static final String CHAT_ID = "test~01:chat";
+
+	private static final String USER_ID = "test~01:user";
+
+	@Inject
+	@Nonnull
+	private SQLiteOpenHelper sqliteOpenHelper;
+
+	@Nonnull
+	private SQLiteDatabase db;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		db = sqliteOpenHelper.getReadableDatabase();
+		assertQueryPlansSupported(db);
+	}
+
+	@Test
+	public void testUnreadChatsShouldUseIndex() throws Exception {
+		assertNoFullScans(db, UNREAD_CHATS_QUERY);
+	}
+
+	@Test
+	public void testLastChatsShouldUseIndex() throws Exception {
+		// chats might be read in order of last_message_time index, query is limited => only first entries are read
+		for (boolean privateChat : new boolean[]{true, false}) {
+			assertNoFullScansExceptIndexOrder(db, newLastChatIdsQuery(true, privateChat, 20), USER_ID);
+			assertNoFullScansExceptIndexOrder(db, newLastChatIdsQuery(false, privateChat, 20), AccountState.enabled.name());
+		}
+	}
+
+	@Test
+	public void testChatSummaryShouldUseIndex() throws Exception {
+		final String removed = MessageState.removed.name();
+		assertNoFullScans(db, CHAT_LAST_MESSAGE_QUERY, CHAT_ID, removed);
+		assertNoTempBTree(db, CHAT_LAST_MESSAGE_QUERY, CHAT_ID, removed);
+		assertNoFullScans(db, CHAT_UNREAD_COUNT_QUERY, MessageState.received.name(), CHAT_ID);
+		assertNoFullScans(db, MESSAGE_CHAT_QUERY, "test~01:message");
+	}
+
+	@Test
+	public void testLinkedEntitiesShouldUseIndex() throws Exception {
+		assertNoFullScans(db, CHAT_PARTICIPANTS_QUERY, CHAT_ID);
+		assertNoFullScans(db, CHATS_BY_USER_QUERY, USER_ID);
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.messages;
+
+import android.text.Spanned;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.solovyev.android.messenger.entities.Entities.newEntity;
+import static org.solovyev.android.messenger.messages.Messages.newMessage;
+
+@RunWith(RobolectricTestRunner.class)
+public class MessageBodyCacheTest {
+
+	@Nonnull
+	private MessageBodyCache cache;
+
+	@Before
+	public void setUp() throws Exception {
+		cache = new MessageBodyCache();
+	}
+
+	@Test
+	public void testShouldReturnPrerenderedBody() throws Exception {
+		final MutableMessage message = newTestMessage("1", "Hello, <b>world</b>");
+		cache.prerender(message, true);
+		assertEquals(1, cache.getPrerenderCount());
+
+		final Spanned body = cache.getBody(message, true);
+		assertEquals("Hello, world", body.toString());
+		assertSame(body, cache.getBody(message, true));
+		cache.getPreview(message);
+		assertEquals(3, cache.getHitCount());
+		assertEquals(0, cache.getMissCount());
+
+		// already rendered => nothing to do
+		cache.prerender(message, true);
+		assertEquals(1, cache.getPrerenderCount());
+	}
+
+	@Test
+	public void testShouldRenderAgainIfBodyChanged() throws Exception {
+		final MutableMessage message = newTestMessage("1", "first");
+		final Spanned body = cache.getBody(message, false);
+		assertEquals(1, cache.getMissCount());
+
+		message.setBody("second");
+		final Spanned newBody = cache.getBody(message, false);
+		assertNotSame(body, newBody);
+		assertEquals("second", newBody.toString());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testShouldRenderAgainIfFormatChanged() throws Exception {
+		final MutableMessage message = newTestMessage("1", "line1\nline2");
+		assertEquals("line1\nline2", cache.getBody(message, false).toString());
+		assertEquals("line1 line2", cache.getBody(message, true).toString());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void testShouldEvictByWeight() throws Exception {
+		cache = new MessageBodyCache(100);
+		for (int i = 0; i < 10; i++) {
+			cache.prerender(newTestMessage(String.valueOf(i), "0123456789"), true);
+		}
+		assertEquals(10, cache.getPrerenderCount());
+		assertEquals(4, cache.size());
+		assertEquals(6, cache.getEvictionCount());
+	}
+
+	@Nonnull
+	private static MutableMessage newTestMessage(@Nonnull String id, @Nonnull String body) {
+		final MutableMessage message = newMessage(newEntity("test~01", id));
+		message.setBody(body);
+		return message;
+	}
+}
@@ -21,6 +21,7 @@ import org.joda.time.DateTime;
 import org.junit.Test;
 import org.solovyev.android.db.Dao;
 import org.solovyev.android.messenger.DefaultDaoTest;
+import org.solovyev.android.messenger.MergeDaoResult;
 import org.solovyev.android.messenger.PropertiesEqualizer;
 import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.chats.AccountChat;
@@ -34,6 +35,8 @@ import javax.annotation.Nonnull;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -113,6 +116,76 @@ public class MessageDaoTest extends DefaultDaoTest<Message> {
 		assertNotNull(actual.getProperties().getPropertyValue("property_2"));
 	}
 
+	@Test
+	public void testShouldMergeExistingAndNewMessagesInOneBatch() throws Exception {
+		final AccountData ad = getAccountData1();
+		final AccountChat chat = ad.getChats().get(0);
+
+		final MutableMessage existing = newMessageWithProperties(ad);
+		dao.mergeMessages(chat.getChat().getId(), Arrays.asList(existing));
+
+		existing.getProperties().setProperty("property_1", "test2");
+		final MutableMessage added = newMessageWithProperties(ad);
+		final MergeDaoResult<Message, String> result = dao.mergeMessages(chat.getChat().getId(), Arrays.<Message>asList(existing, added));
+
+		assertEquals(1, result.getUpdatedObjects().size());
+		assertEquals(existing.getId(), result.getUpdatedObjects().get(0).getId());
+		assertEquals("test2", result.getUpdatedObjects().get(0).getProperties().getPropertyValue("property_1"));
+		assertEquals(1, result.getAddedObjects().size());
+		assertEquals(added.getId(), result.getAddedObjects().get(0).getId());
+
+		assertEquals("test2", dao.read(existing.getId()).getProperties().getPropertyValue("property_1"));
+		assertNotNull(dao.read(added.getId()));
+	}
+
+	@Test
+	public void testShouldLoadMessagesByPages() throws Exception {
+		final Account account = getAccount1();
+		final org.solovyev.android.messenger.entities.Entity from = account.getUser().getEntity();
+		final org.solovyev.android.messenger.entities.Entity to = getContactForAccount(account, 0).getEntity();
+		final Chat chat = chatService.getOrCreatePrivateChat(from, to);
+
+		// messages with the same send time must not be lost between pages
+		final DateTime now = DateTime.now();
+		final List<Message> messages = new ArrayList<Message>();
+		for (int i = 0; i < 5; i++) {
+			messages.add(newMockMessage(now, from, to, account, chat.getId()));
+		}
+		dao.mergeMessages(chat.getId(), messages);
+
+		final List<Message> expected = new ArrayList<Message>(dao.readMessages(chat.getId()));
+		Collections.sort(expected, new MessageKeyComparator());
+		assertEquals(expected.size(), dao.getMessagesCount(chat.getId()));
+
+		assertEquals(getIds(expected), getIds(readAllPages(chat, true, 3)));
+
+		Collections.reverse(expected);
+		assertEquals(getIds(expected), getIds(readAllPages(chat, false, 3)));
+	}
+
+	@Nonnull
+	private List<Message> readAllPages(@Nonnull Chat chat, boolean ascending, int pageSize) {
+		final List<Message> result = new ArrayList<Message>();
+
+		List<Message> page = dao.readMessages(chat.getId(), null, ascending, pageSize);
+		while (!page.isEmpty()) {
+			assertTrue(page.size() <= pageSize);
+			result.addAll(page);
+			page = dao.readMessages(chat.getId(), page.get(page.size() - 1), ascending, pageSize);
+		}
+
+		return result;
+	}
+
+	@Nonnull
+	private static List<String> getIds(@Nonnull List<Message> messages) {
+		final List<String> result = new ArrayList<String>(messages.size());
+		for (Message message : messages) {
+			result.add(message.getId());
+		}
+		return result;
+	}
+
 	@Test
 	public void testShouldReturnSameMessageForExactMatch() throws Exception {
 		final AccountData ad = getAccountData1();
@@ -149,6 +222,58 @@ public class MessageDaoTest extends DefaultDaoTest<Message> {
 	}
 
 
+	@Test
+	public void testShouldSearchMessages() throws Exception {
+		final AccountData ad = getAccountData1();
+		final Chat chat = ad.getChats().get(0).getChat();
+		final DateTime now = DateTime.now();
+
+		final MutableMessage first = newMessageWithProperties(ad);
+		first.setBody("Hello, zebrafish!");
+		first.setSendDate(now);
+		final MutableMessage second = newMessageWithProperties(ad);
+		second.setBody("zebrafinch and Zebrafish");
+		second.setSendDate(now.plusMinutes(1));
+		final MutableMessage third = newMessageWithProperties(ad);
+		third.setBody("zebra");
+		third.setSendDate(now.plusMinutes(2));
+		dao.mergeMessages(chat.getId(), Arrays.<Message>asList(first, second, third));
+
+		assertEquals(Arrays.asList(second.getId(), first.getId()), getIds(dao.searchMessages("zebraf", 0, 10)));
+		assertEquals(Arrays.asList(second.getId(), first.getId()), getIds(dao.searchMessages("ZEBRAFISH", 0, 10)));
+		assertEquals(Arrays.asList(first.getId()), getIds(dao.searchMessages("zebrafish hel", 0, 10)));
+		assertTrue(dao.searchMessages("zebraf hello", 0, 10).isEmpty());
+		assertEquals(Arrays.asList(third.getId(), second.getId(), first.getId()), getIds(dao.searchMessages("zebra", 0, 10)));
+		assertEquals(Arrays.asList(second.getId()), getIds(dao.searchMessages("zebra", 1, 1)));
+		assertEquals("test", dao.searchMessages("zebrafinch", 0, 10).get(0).getProperties().getPropertyValue("property_1"));
+
+		// index must follow changes of messages
+		second.setBody("nothing");
+		dao.update(second);
+		assertEquals(Arrays.asList(first.getId()), getIds(dao.searchMessages("zebraf", 0, 10)));
+
+		dao.changeMessageState(first.getId(), MessageState.removed);
+		assertTrue(dao.searchMessages("zebraf", 0, 10).isEmpty());
+
+		dao.delete(third);
+		assertTrue(dao.searchMessages("zebra", 0, 10).isEmpty());
+
+		assertTrue(dao.searchMessages("", 0, 10).isEmpty());
+		assertTrue(dao.searchMessages(" ,! ", 0, 10).isEmpty());
+	}
+
+	@Test
+	public void testShouldConvertUserInputToMatchQuery() throws Exception {
+		assertEquals("", SqliteMessageDao.toMatchQuery(""));
+		assertEquals("", SqliteMessageDao.toMatchQuery(" -*\"\" "));
+		assertEquals("hello*", SqliteMessageDao.toMatchQuery("hello"));
+		assertEquals("hello", SqliteMessageDao.toMatchQuery("hello "));
+		assertEquals("hello world*", SqliteMessageDao.toMatchQuery("  hello,world"));
+		assertEquals("a or b", SqliteMessageDao.toMatchQuery("\"a\" OR -b!"));
+		assertEquals("hello world*", SqliteMessageDao.toMatchQuery("Hello WORLD"));
+		assertEquals("привет мир*", SqliteMessageDao.toMatchQuery("привет мир"));
+	}
+
 	private MutableMessage newMessageWithProperties(AccountData ad) {
 		final MutableMessage expected = Messages.newMessage(ad.getAccount().newMessageEntity(MessagesMock.getMessageId()));
 		expected.getProperties().setProperty("property_1", "test");
@@ -204,6 +329,14 @@ public class MessageDaoTest extends DefaultDaoTest<Message> {
 		return message;
 	}
 
+	private static class MessageKeyComparator implements Comparator<Message> {
+		@Override
+		public int compare(@Nonnull Message m1, @Nonnull Message m2) {
+			final int result = Long.valueOf(m1.getSendDate().getMillis()).compareTo(m2.getSendDate().getMillis());
+			return result != 0 ? result : m1.getId().compareTo(m2.getId());
+		}
+	}
+
 	private static class MessageSameEqualizer implements Equalizer<Message> {
 		@Override
 		public boolean areEqual(@Nonnull Message m1, @Nonnull Message m2) {
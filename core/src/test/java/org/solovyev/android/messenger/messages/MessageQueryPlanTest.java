@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.messages;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import com.google.inject.Inject;
+import org.junit.Before;
+import org.junit.Test;
+import org.solovyev.android.messenger.DefaultMessengerTest;
+
+import javax.annotation.Nonnull;
+
+import static org.solovyev.android.messenger.QueryPlans.*;
+import static org.solovyev.android.messenger.messages.SqliteMessageDao.*;
+
+/**
+ * Checks plans of hot queries of {@link SqliteMessageDao}: none of them should scan a whole table.
+ * If you change schema or queries update this test accordingly.
+ */
+public class MessageQueryPlanTest extends DefaultMessengerTest {
+
+	private static final String CHAT_ID = "test~01:chat";
+
+	private static final String REMOVED = MessageState.removed.name();
+
+	@Inject
+	@Nonnull
+	private SQLiteOpenHelper sqliteOpenHelper;
+
+	@Nonnull
+	private SQLiteDatabase db;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		db = sqliteOpenHelper.getReadableDatabase();
+		assertQueryPlansSupported(db);
+	}
+
+	@Test
+	public void testMessagesByChatShouldUseIndex() throws Exception {
+		assertNoFullScans(db, MESSAGES_BY_CHAT_QUERY, CHAT_ID);
+		assertNoFullScans(db, NOT_REMOVED_MESSAGES_BY_CHAT_QUERY, CHAT_ID, REMOVED);
+	}
+
+	@Test
+	public void testOldestMessageShouldUseIndex() throws Exception {
+		assertNoFullScans(db, OLDEST_MESSAGE_QUERY, CHAT_ID, REMOVED);
+		assertNoTempBTree(db, OLDEST_MESSAGE_QUERY, CHAT_ID, REMOVED);
+	}
+
+	@Test
+	public void testMessageByIdShouldUseIndex() throws Exception {
+		assertNoFullScans(db, MESSAGE_QUERY, "test~01:message");
+		assertNoFullScans(db, LAST_MESSAGE_QUERY, CHAT_ID);
+	}
+
+	@Test
+	public void testMessagesPageShouldUseIndex() throws Exception {
+		for (boolean ascending : new boolean[]{true, false}) {
+			final String firstPage = newMessagesPageQuery(false, ascending, 30);
+			assertNoFullScans(db, firstPage, CHAT_ID, REMOVED);
+			assertNoTempBTree(db, firstPage, CHAT_ID, REMOVED);
+
+			final String nextPage = newMessagesPageQuery(true, ascending, 30);
+			assertNoFullScans(db, nextPage, CHAT_ID, REMOVED, "0", "0", "test~01:message");
+			assertNoTempBTree(db, nextPage, CHAT_ID, REMOVED, "0", "0", "test~01:message");
+		}
+	}
+
+	@Test
+	public void testMessagesCountShouldUseIndex() throws Exception {
+		assertNoFullScans(db, MESSAGES_COUNT_QUERY, CHAT_ID, REMOVED);
+		assertNoFullScans(db, UNREAD_MESSAGES_COUNT_QUERY, REMOVED);
+	}
+
+	@Test
+	public void testSameMessagesShouldUseIndex() throws Exception {
+		assertNoFullScans(db, SAME_MESSAGE_QUERY, "body", "test~01:author", "test~01:recipient", "0");
+	}
+
+	@Test
+	public void testMessagesSearchShouldUseIndex() throws Exception {
+		assertNoFullScans(db, SEARCH_MESSAGES_QUERY, "test*", REMOVED, "30", "0");
+	}
+}
@@ -88,6 +88,21 @@ public class MessagesAdapterTest extends DefaultMessengerTest {
 		assertSame(message, adapter.getItem(0).getMessage());
 	}
 
+	@Test
+	public void testShouldUpdateAndRemoveShownMessages() throws Exception {
+		final MutableMessage message = newMessage(0);
+		adapter.onEvent(message_added.newEvent(chat.getChat(), message));
+		adapter.onEvent(messages_added.newEvent(chat.getChat(), Arrays.<Message>asList(message)));
+		assertEquals(1, adapter.getCount());
+
+		adapter.onEvent(message_state_changed.newEvent(chat.getChat(), message.cloneWithNewState(MessageState.delivered)));
+		assertEquals(1, adapter.getCount());
+		assertEquals(MessageState.delivered, adapter.getItem(0).getMessage().getState());
+
+		adapter.onEvent(message_state_changed.newEvent(chat.getChat(), message.cloneWithNewState(MessageState.removed)));
+		assertEquals(0, adapter.getCount());
+	}
+
 	private void fireRandomEventsAndCheck(boolean sendStopTypingEvent, @Nonnull Runnable checker) throws InterruptedException {
 		for (int i = 0; i < 100; i++) {
 			Thread.sleep(r.nextInt(10));
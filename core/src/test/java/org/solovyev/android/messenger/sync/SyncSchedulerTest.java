@@ -0,0 +1,244 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.sync;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.realms.Realm;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class SyncSchedulerTest {
+
+	private static final int TIMEOUT_SECONDS = 30;
+
+	@Test
+	public void testShouldSyncAccountsOfDifferentRealmsInParallel() throws Exception {
+		final CountDownLatch started = new CountDownLatch(2);
+		final TestTaskRunner runner = new TestTaskRunner() {
+			@Override
+			protected void onTask(@Nonnull SyncTask task, @Nonnull String accountId) throws InterruptedException {
+				started.countDown();
+				// both accounts must be synchronized at the same time, otherwise latch is never released
+				assertTrue(started.await(TIMEOUT_SECONDS, SECONDS));
+			}
+		};
+		final SyncScheduler scheduler = new SyncScheduler(1, runner);
+
+		final List<SyncTaskResult> results = get(scheduler.schedule(listOf(newAccount("a1", "r1"), newAccount("a2", "r2")), listOf(SyncTask.user_contacts), true));
+
+		assertEquals(2, results.size());
+		for (SyncTaskResult result : results) {
+			assertTrue(result.isSuccess());
+		}
+	}
+
+	@Test
+	public void testShouldLimitAccountsSyncedPerRealm() throws Exception {
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final TestTaskRunner runner = new TestTaskRunner() {
+			@Override
+			protected void onTask(@Nonnull SyncTask task, @Nonnull String accountId) throws InterruptedException {
+				final int count = running.incrementAndGet();
+				synchronized (maxRunning) {
+					maxRunning.set(Math.max(maxRunning.get(), count));
+				}
+				Thread.sleep(50);
+				running.decrementAndGet();
+			}
+		};
+		final SyncScheduler scheduler = new SyncScheduler(2, runner);
+
+		final List<Account> accounts = new ArrayList<Account>();
+		for (int i = 0; i < 6; i++) {
+			accounts.add(newAccount("a" + i, "r"));
+		}
+		final List<SyncTaskResult> results = get(scheduler.schedule(accounts, listOf(SyncTask.user_contacts), true));
+
+		assertEquals(accounts.size(), results.size());
+		assertTrue("Max running: " + maxRunning.get(), maxRunning.get() <= 2);
+	}
+
+	@Test
+	public void testShouldSkipDependentTasksIfDependencyFailed() throws Exception {
+		final TestTaskRunner runner = new TestTaskRunner();
+		runner.failedTasks.add(SyncTask.user_contacts);
+		final SyncScheduler scheduler = new SyncScheduler(1, runner);
+
+		final List<SyncTaskResult> results = get(scheduler.schedule(listOf(newAccount("a", "r")), listOf(SyncTask.user_contacts, SyncTask.user_chats, SyncTask.chat_messages), true));
+
+		assertEquals(1, results.size());
+		assertEquals(SyncTask.user_contacts, results.get(0).getTask());
+		assertFalse(results.get(0).isSuccess());
+		assertEquals(Arrays.asList(SyncTask.user_contacts), runner.doneTasks);
+	}
+
+	@Test
+	public void testShouldReturnResultsOfAllAccountsAndTasks() throws Exception {
+		final TestTaskRunner runner = new TestTaskRunner();
+		runner.failedTasks.add(SyncTask.chat_messages);
+		final SyncScheduler scheduler = new SyncScheduler(1, runner);
+
+		final List<SyncTaskResult> results = get(scheduler.schedule(listOf(newAccount("a1", "r1"), newAccount("a2", "r1"), newAccount("a3", "r2")), listOf(SyncTask.user_contacts, SyncTask.user_chats, SyncTask.chat_messages), true));
+
+		assertEquals(9, results.size());
+		for (String accountId : Arrays.asList("a1", "a2", "a3")) {
+			final List<SyncTask> tasks = new ArrayList<SyncTask>();
+			for (SyncTaskResult result : results) {
+				if (result.getAccountId().equals(accountId)) {
+					tasks.add(result.getTask());
+					assertEquals(result.getTask() != SyncTask.chat_messages, result.isSuccess());
+				}
+			}
+			// tasks of one account are executed in order of dependencies
+			assertEquals(Arrays.asList(SyncTask.user_contacts, SyncTask.user_chats, SyncTask.chat_messages), tasks);
+		}
+	}
+
+	@Test
+	public void testShouldNotStartDependentTaskBeforeTaskRunningInAnotherSchedule() throws Exception {
+		final CountDownLatch contactsStarted = new CountDownLatch(1);
+		final CountDownLatch contactsReleased = new CountDownLatch(1);
+		final TestTaskRunner runner = new TestTaskRunner() {
+			@Override
+			protected void onTask(@Nonnull SyncTask task, @Nonnull String accountId) throws InterruptedException {
+				if (task == SyncTask.user_contacts) {
+					contactsStarted.countDown();
+					assertTrue(contactsReleased.await(TIMEOUT_SECONDS, SECONDS));
+				}
+			}
+		};
+		final SyncScheduler scheduler = new SyncScheduler(2, runner);
+		final Account account = newAccount("a", "r");
+
+		final ListenableFuture<List<SyncTaskResult>> first = scheduler.schedule(listOf(account), listOf(SyncTask.user_contacts), true);
+		assertTrue(contactsStarted.await(TIMEOUT_SECONDS, SECONDS));
+
+		final ListenableFuture<List<SyncTaskResult>> second = scheduler.schedule(listOf(account), listOf(SyncTask.user_contacts, SyncTask.user_chats), true);
+		Thread.sleep(100);
+		assertFalse(second.isDone());
+		assertEquals(Arrays.asList(SyncTask.user_contacts), runner.doneTasks);
+
+		contactsReleased.countDown();
+		assertEquals(1, get(first).size());
+
+		// contacts are synchronized by the first schedule => second one syncs only chats
+		final List<SyncTaskResult> results = get(second);
+		assertEquals(1, results.size());
+		assertEquals(SyncTask.user_chats, results.get(0).getTask());
+		assertEquals(Arrays.asList(SyncTask.user_contacts, SyncTask.user_chats), runner.doneTasks);
+	}
+
+	@Test
+	public void testShouldSkipDependentTaskIfTaskFailedInAnotherSchedule() throws Exception {
+		final CountDownLatch contactsStarted = new CountDownLatch(1);
+		final CountDownLatch contactsReleased = new CountDownLatch(1);
+		final TestTaskRunner runner = new TestTaskRunner() {
+			@Override
+			protected void onTask(@Nonnull SyncTask task, @Nonnull String accountId) throws InterruptedException {
+				if (task == SyncTask.user_contacts) {
+					contactsStarted.countDown();
+					assertTrue(contactsReleased.await(TIMEOUT_SECONDS, SECONDS));
+				}
+			}
+		};
+		runner.failedTasks.add(SyncTask.user_contacts);
+		final SyncScheduler scheduler = new SyncScheduler(2, runner);
+		final Account account = newAccount("a", "r");
+
+		final ListenableFuture<List<SyncTaskResult>> first = scheduler.schedule(listOf(account), listOf(SyncTask.user_contacts), true);
+		assertTrue(contactsStarted.await(TIMEOUT_SECONDS, SECONDS));
+
+		final ListenableFuture<List<SyncTaskResult>> second = scheduler.schedule(listOf(account), listOf(SyncTask.user_contacts, SyncTask.user_chats), true);
+		contactsReleased.countDown();
+
+		assertFalse(get(first).get(0).isSuccess());
+		assertTrue(get(second).isEmpty());
+		assertEquals(Arrays.asList(SyncTask.user_contacts), runner.doneTasks);
+	}
+
+	@Nonnull
+	private static <T> T get(@Nonnull ListenableFuture<T> future) throws Exception {
+		return future.get(TIMEOUT_SECONDS, SECONDS);
+	}
+
+	@Nonnull
+	private static <T> List<T> listOf(@Nonnull T... elements) {
+		return Collections.unmodifiableList(Arrays.asList(elements));
+	}
+
+	@Nonnull
+	private static Account newAccount(@Nonnull String accountId, @Nonnull String realmId) {
+		final Realm realm = mock(Realm.class);
+		when(realm.getId()).thenReturn(realmId);
+
+		final Account account = mock(Account.class);
+		when(account.getId()).thenReturn(accountId);
+		when(account.getRealm()).thenReturn(realm);
+		return account;
+	}
+
+	private static class TestTaskRunner implements SyncScheduler.TaskRunner {
+
+		@Nonnull
+		final Set<SyncTask> failedTasks = EnumSet.noneOf(SyncTask.class);
+
+		@Nonnull
+		final List<SyncTask> doneTasks = new CopyOnWriteArrayList<SyncTask>();
+
+		@Override
+		public boolean isTime(@Nonnull SyncTask task, @Nonnull SyncData syncData) {
+			return true;
+		}
+
+		@Override
+		public boolean doTask(@Nonnull SyncTask task, @Nonnull SyncData syncData) {
+			doneTasks.add(task);
+			try {
+				onTask(task, syncData.getAccountId());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			return !failedTasks.contains(task);
+		}
+
+		protected void onTask(@Nonnull SyncTask task, @Nonnull String accountId) throws InterruptedException {
+		}
+	}
+}
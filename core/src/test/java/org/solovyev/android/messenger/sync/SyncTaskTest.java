@@ -0,0 +1,40 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.sync;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+public class SyncTaskTest {
+
+	@Test
+	public void testDependenciesShouldPrecedeTask() throws Exception {
+		// SyncScheduler executes tasks in the order of declaration
+		for (SyncTask task : SyncTask.values()) {
+			for (SyncTask dependency : task.getDependencies()) {
+				assertTrue(dependency + " must be declared before " + task, dependency.ordinal() < task.ordinal());
+			}
+		}
+	}
+
+	@Test
+	public void testMessagesShouldBeSyncedAfterChatsAndContacts() throws Exception {
+		assertTrue(SyncTask.chat_messages.getDependencies().contains(SyncTask.user_chats));
+		assertTrue(SyncTask.user_chats.getDependencies().contains(SyncTask.user_contacts));
+	}
+}
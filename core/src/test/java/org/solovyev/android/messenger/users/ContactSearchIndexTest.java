@@ -0,0 +1,156 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.users;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.solovyev.android.messenger.entities.Entity;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.solovyev.android.messenger.entities.Entities.newEntity;
+import static org.solovyev.android.messenger.users.User.*;
+import static org.solovyev.android.messenger.users.UserEventType.*;
+import static org.solovyev.android.messenger.users.Users.newEmptyUser;
+
+@RunWith(RobolectricTestRunner.class)
+public class ContactSearchIndexTest {
+
+	@Nonnull
+	private User accountUser1;
+
+	@Nonnull
+	private User accountUser2;
+
+	@Nonnull
+	private User john;
+
+	@Nonnull
+	private User johanna;
+
+	@Nonnull
+	private User smith;
+
+	@Nonnull
+	private UserContacts contacts;
+
+	@Before
+	public void setUp() throws Exception {
+		accountUser1 = newEmptyUser(newEntity("test~01", "self"));
+		accountUser2 = newEmptyUser(newEntity("test~02", "self"));
+		john = newContact("test~01", "john", "John", "Smith", null, "+7 911 123-45-67");
+		johanna = newContact("test~01", "johanna", "Johanna", null, "jo", null);
+		smith = newContact("test~02", "smith", "Adam", "Johnson", null, null);
+
+		contacts = new UserContacts();
+		contacts.update(accountUser1.getEntity(), asList(john, johanna), contacts.getPresencesVersion());
+		contacts.update(accountUser2.getEntity(), asList(smith), contacts.getPresencesVersion());
+	}
+
+	@Nonnull
+	private static User newContact(@Nonnull String accountId, @Nonnull String id, @Nullable String firstName, @Nullable String lastName, @Nullable String nickname, @Nullable String phone) {
+		final MutableUser user = newEmptyUser(newEntity(accountId, id));
+		if (firstName != null) {
+			user.getProperties().setProperty(PROPERTY_FIRST_NAME, firstName);
+		}
+		if (lastName != null) {
+			user.getProperties().setProperty(PROPERTY_LAST_NAME, lastName);
+		}
+		if (nickname != null) {
+			user.getProperties().setProperty(PROPERTY_NICKNAME, nickname);
+		}
+		if (phone != null) {
+			user.getProperties().setProperty(PROPERTY_PHONE, phone);
+		}
+		return user;
+	}
+
+	@Test
+	public void testShouldFindContactsByAnyToken() throws Exception {
+		assertEquals(asList(john), find("smi"));
+		assertEquals(asList(john), find("john s"));
+		assertEquals(asList(john), find("1234567"));
+		assertEquals(asList(john), find("123-45"));
+		assertEquals(asList(johanna, john), find("JO", accountUser1));
+		assertEquals(Collections.<User>emptyList(), find("bob"));
+	}
+
+	@Test
+	public void testShouldReturnDisplayNamePrefixMatchesFirst() throws Exception {
+		// "Adam Johnson" matches by last name only => goes last
+		assertEquals(asList(johanna, john, smith), find("joh"));
+		assertEquals(asList(johanna, john), find(null, accountUser1));
+		assertEquals(asList(johanna), find("joh", 1, Collections.<String>emptySet(), accountUser1, accountUser2));
+	}
+
+	@Test
+	public void testShouldExcludeContacts() throws Exception {
+		final Set<String> except = new HashSet<String>(asList(johanna.getId(), smith.getId()));
+		assertEquals(asList(john), find("joh", 10, except, accountUser1, accountUser2));
+	}
+
+	@Test
+	public void testShouldBeUpdatedByEvents() throws Exception {
+		final User newJohn = newContact("test~01", "john", "Bob", "Smith", null, null);
+		contacts.onEvent(contacts_changed.newEvent(accountUser1, Arrays.<User>asList(newJohn)));
+		assertEquals(asList(newJohn), find("bob"));
+		assertEquals(asList(johanna, smith), find("joh"));
+
+		final User peter = newContact("test~02", "peter", "Peter", null, null, null);
+		contacts.onEvent(contacts_added.newEvent(accountUser2, Arrays.<User>asList(peter)));
+		assertEquals(asList(peter), find("pe"));
+
+		contacts.onEvent(contact_removed.newEvent(accountUser1, johanna.getId()));
+		assertEquals(asList(smith), find("joh"));
+
+		contacts.onEvent(contacts_presence_changed.newEvent(accountUser2, Arrays.<User>asList(smith.cloneWithNewStatus(true))));
+		assertTrue(find("adam").get(0).isOnline());
+
+		contacts.update(accountUser2.getEntity(), Collections.<User>emptyList(), contacts.getPresencesVersion());
+		assertEquals(asList(newJohn), find(null));
+	}
+
+	@Nonnull
+	private List<User> find(@Nullable String query) {
+		return find(query, accountUser1, accountUser2);
+	}
+
+	@Nonnull
+	private List<User> find(@Nullable String query, @Nonnull User... users) {
+		return find(query, 10, Collections.<String>emptySet(), users);
+	}
+
+	@Nonnull
+	private List<User> find(@Nullable String query, int count, @Nonnull Set<String> except, @Nonnull User... users) {
+		final Set<Entity> entities = new HashSet<Entity>();
+		for (User user : users) {
+			entities.add(user.getEntity());
+		}
+		return contacts.findContacts(entities, query, count, except);
+	}
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.users;
+
+import org.junit.Test;
+import org.solovyev.android.messenger.entities.Entity;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.solovyev.android.messenger.entities.Entities.newEntity;
+
+public class PersistenceLockTest {
+
+	private static final int ACCOUNTS = 4;
+	private static final int THREADS_PER_ACCOUNT = 2;
+	private static final int MERGES_PER_THREAD = 25;
+
+	// only protects from hanging forever, not blocked thread finishes immediately
+	private static final long TIMEOUT_SECONDS = 30;
+
+	@Test
+	public void testMergeShouldNotBlockOtherAccount() throws Exception {
+		final PersistenceLock lock = new PersistenceLock();
+
+		lock.lockAccount("test~0");
+		try {
+			assertNotBlocked(new Runnable() {
+				@Override
+				public void run() {
+					lock.lockAccount("test~1");
+					lock.unlockAccount("test~1");
+					lock.lockEntity(newEntity("test~1", "user"));
+					lock.unlockEntity(newEntity("test~1", "user"));
+				}
+			});
+		} finally {
+			lock.unlockAccount("test~0");
+		}
+	}
+
+	@Test
+	public void testMergeShouldBlockEntityOfSameAccount() throws Exception {
+		final PersistenceLock lock = new PersistenceLock();
+
+		final OtherThread thread;
+		lock.lockAccount("test~0");
+		try {
+			thread = assertBlocked(new Runnable() {
+				@Override
+				public void run() {
+					lock.lockAccountForRead("test~0");
+					lock.unlockAccountForRead("test~0");
+				}
+			});
+		} finally {
+			lock.unlockAccount("test~0");
+		}
+		thread.assertFinished();
+	}
+
+	@Test
+	public void testEntityLockShouldBlockOnlySameEntity() throws Exception {
+		final PersistenceLock lock = new PersistenceLock(1, 1024);
+
+		final Entity entity = newEntity("test~0", "user_0");
+		final OtherThread thread;
+		lock.lockEntity(entity);
+		try {
+			assertNotBlocked(new Runnable() {
+				@Override
+				public void run() {
+					final Entity otherEntity = newEntity("test~0", "user_1");
+					lock.lockEntity(otherEntity);
+					lock.unlockEntity(otherEntity);
+				}
+			});
+
+			thread = assertBlocked(new Runnable() {
+				@Override
+				public void run() {
+					final Entity sameEntity = newEntity("test~0", "user_0");
+					lock.lockEntity(sameEntity);
+					lock.unlockEntity(sameEntity);
+				}
+			});
+		} finally {
+			lock.unlockEntity(entity);
+		}
+		thread.assertFinished();
+	}
+
+	@Test
+	public void testLockShouldBeReentrant() throws Exception {
+		final PersistenceLock lock = new PersistenceLock();
+		final Entity entity = newEntity("test~0", "user_0");
+
+		lock.lockAccount("test~0");
+		lock.lockAccount("test~0");
+		lock.lockAccountForRead("test~0");
+		lock.lockEntity(entity);
+		lock.unlockEntity(entity);
+		lock.unlockAccountForRead("test~0");
+		lock.unlockAccount("test~0");
+		lock.unlockAccount("test~0");
+
+		assertNotBlocked(new Runnable() {
+			@Override
+			public void run() {
+				lock.lockAccount("test~0");
+				lock.unlockAccount("test~0");
+			}
+		});
+	}
+
+	@Test
+	public void testConcurrentMergesOnSeveralAccounts() throws Exception {
+		// one stripe == old global lock
+		runConcurrentMerges(new PersistenceLock(1, 1));
+		runConcurrentMerges(new PersistenceLock());
+	}
+
+	private void runConcurrentMerges(@Nonnull final PersistenceLock lock) throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(ACCOUNTS * THREADS_PER_ACCOUNT);
+		try {
+			// accounts' "tables": must not be corrupted by concurrent merges
+			final int[] rows = new int[ACCOUNTS];
+
+			final List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int i = 0; i < ACCOUNTS; i++) {
+				final int account = i;
+				final String accountId = "test~" + account;
+				for (int j = 0; j < THREADS_PER_ACCOUNT; j++) {
+					futures.add(executor.submit(new Runnable() {
+						@Override
+						public void run() {
+							for (int k = 0; k < MERGES_PER_THREAD; k++) {
+								lock.lockAccount(accountId);
+								try {
+									final int before = rows[account];
+									// let other threads run between read and write
+									Thread.yield();
+									rows[account] = before + 1;
+								} finally {
+									lock.unlockAccount(accountId);
+								}
+
+								// meanwhile entities of the account are updated
+								final Entity entity = newEntity(accountId, String.valueOf(k));
+								lock.lockEntity(entity);
+								try {
+									Thread.yield();
+								} finally {
+									lock.unlockEntity(entity);
+								}
+							}
+						}
+					}));
+				}
+			}
+
+			for (Future<?> future : futures) {
+				future.get();
+			}
+
+			for (int row : rows) {
+				assertEquals(THREADS_PER_ACCOUNT * MERGES_PER_THREAD, row);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static void assertNotBlocked(@Nonnull Runnable runnable) throws InterruptedException {
+		new OtherThread(runnable).assertFinished();
+	}
+
+	/**
+	 * Waits until thread running <var>runnable</var> is parked on a lock
+	 *
+	 * @return blocked thread, must finish after the lock is released
+	 */
+	@Nonnull
+	private static OtherThread assertBlocked(@Nonnull Runnable runnable) throws InterruptedException {
+		final OtherThread thread = new OtherThread(runnable);
+		final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+		while (!thread.isParked()) {
+			if (thread.isFinished()) {
+				fail("Thread was not blocked");
+			}
+			if (System.currentTimeMillis() > deadline) {
+				fail("Thread neither finished nor blocked");
+			}
+			Thread.sleep(1);
+		}
+		return thread;
+	}
+
+	private static final class OtherThread {
+
+		@Nonnull
+		private final CountDownLatch finished = new CountDownLatch(1);
+
+		@Nonnull
+		private final Thread thread;
+
+		private OtherThread(@Nonnull final Runnable runnable) {
+			thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					runnable.run();
+					finished.countDown();
+				}
+			});
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		private boolean isFinished() {
+			return finished.getCount() == 0;
+		}
+
+		private boolean isParked() {
+			final Thread.State state = thread.getState();
+			return !isFinished() && (state == Thread.State.WAITING || state == Thread.State.BLOCKED);
+		}
+
+		private void assertFinished() throws InterruptedException {
+			assertTrue("Thread was blocked", finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.users;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.solovyev.android.messenger.entities.Entities.newEntity;
+import static org.solovyev.android.messenger.users.PhoneNumberIndex.newPhoneNumberIndex;
+import static org.solovyev.android.messenger.users.User.PROPERTY_PHONE;
+import static org.solovyev.android.messenger.users.User.PROPERTY_PHONES;
+import static org.solovyev.android.messenger.users.UserEventType.contact_removed;
+import static org.solovyev.android.messenger.users.UserEventType.contacts_changed;
+import static org.solovyev.android.messenger.users.Users.newEmptyUser;
+
+@RunWith(RobolectricTestRunner.class)
+public class PhoneNumberIndexTest {
+
+	@Nonnull
+	private User accountUser;
+
+	@Nonnull
+	private User first;
+
+	@Nonnull
+	private User second;
+
+	@Nonnull
+	private PhoneNumberIndex index;
+
+	@Before
+	public void setUp() throws Exception {
+		accountUser = newEmptyUser(newEntity("test~01", "self"));
+		first = newContact("first", "345-67-89", "345-67-89;+7 911 1234567");
+		second = newContact("second", "+7 921 1234567", null);
+		index = newPhoneNumberIndex(asList(first, second, newContact("third", null, null)));
+	}
+
+	@Nonnull
+	private static User newContact(@Nonnull String id, String phone, String phones) {
+		final MutableUser user = newEmptyUser(newEntity("test~01", id));
+		if (phone != null) {
+			user.getProperties().setProperty(PROPERTY_PHONE, phone);
+		}
+		if (phones != null) {
+			user.getProperties().setProperty(PROPERTY_PHONES, phones);
+		}
+		return user;
+	}
+
+	@Test
+	public void testShouldFindSamePhones() throws Exception {
+		assertEquals(2, index.size());
+		assertEquals(first, index.find("3456789"));
+		assertEquals(first, index.find("+7 911 1234567"));
+		assertEquals(second, index.find("+7 921 1234567"));
+		assertNull(index.find("+7 931 1234567"));
+		assertNull(index.find("9999999"));
+	}
+
+	@Test
+	public void testKeyShouldBeLastDigits() throws Exception {
+		assertEquals("1234567", PhoneNumberIndex.toKey("+7 (911) 123-45-67"));
+		assertEquals("12", PhoneNumberIndex.toKey("12"));
+		assertEquals("Bank", PhoneNumberIndex.toKey("Bank"));
+	}
+
+	@Test
+	public void testShouldBeUpdatedByEvents() throws Exception {
+		final User changedFirst = newContact("first", "+7 931 1234567", null);
+		index.onEvent(contacts_changed.newEvent(accountUser, Arrays.<User>asList(changedFirst)));
+		assertNull(index.find("3456789"));
+		assertEquals(changedFirst, index.find("+7 931 1234567"));
+
+		index.onEvent(contact_removed.newEvent(accountUser, second.getId()));
+		assertNull(index.find("+7 921 1234567"));
+		assertEquals(1, index.size());
+	}
+}
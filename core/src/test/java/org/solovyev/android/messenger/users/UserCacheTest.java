@@ -63,4 +63,30 @@ public class UserCacheTest {
 		assertSame(expected, cache.get(expected.getEntity()));
 
 	}
+
+	@Test
+	public void testShouldRemoveUserOnContactRemovedEvent() throws Exception {
+		final UserCache cache = new UserCache();
+		final User user = newEmptyUser("test:test");
+		cache.put(user);
+
+		cache.onEvent(UserEventType.contact_removed.newEvent(newEmptyUser("test:account"), user.getId()));
+
+		assertNull(cache.get(user.getEntity()));
+	}
+
+	@Test
+	public void testShouldEvictUsersOverMaxWeight() throws Exception {
+		final UserCache cache = new UserCache(2);
+		final User user1 = newEmptyUser("test:test1");
+		final User user2 = newEmptyUser("test:test2");
+		final User user3 = newEmptyUser("test:test3");
+		cache.put(user1);
+		cache.put(user2);
+		cache.put(user3);
+
+		assertNull(cache.get(user1.getEntity()));
+		assertSame(user2, cache.get(user2.getEntity()));
+		assertSame(user3, cache.get(user3.getEntity()));
+	}
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.users;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+import static org.solovyev.android.messenger.entities.Entities.newEntity;
+import static org.solovyev.android.messenger.users.UserEventType.contact_removed;
+import static org.solovyev.android.messenger.users.UserEventType.contacts_presence_changed;
+import static org.solovyev.android.messenger.users.Users.newEmptyUser;
+
+@RunWith(RobolectricTestRunner.class)
+public class UserContactsTest {
+
+	@Nonnull
+	private User user;
+
+	@Nonnull
+	private User first;
+
+	@Nonnull
+	private User second;
+
+	@Nonnull
+	private UserContacts contacts;
+
+	@Before
+	public void setUp() throws Exception {
+		user = newEmptyUser(newEntity("test~01", "self"));
+		first = newEmptyUser(newEntity("test~01", "first"));
+		second = newEmptyUser(newEntity("test~01", "second"));
+
+		contacts = new UserContacts();
+		contacts.update(user.getEntity(), asList(first, second), contacts.getPresencesVersion());
+	}
+
+	@Test
+	public void testShouldApplyPresencesOnRead() throws Exception {
+		final List<User> before = contacts.getContacts(user.getEntity());
+		assertFalse(before.get(0).isOnline());
+
+		contacts.onEvent(contacts_presence_changed.newEvent(user, Arrays.<User>asList(first.cloneWithNewStatus(true))));
+		contacts.onEvent(contacts_presence_changed.newEvent(user, Arrays.<User>asList(second.cloneWithNewStatus(true))));
+		contacts.onEvent(contacts_presence_changed.newEvent(user, Arrays.<User>asList(second.cloneWithNewStatus(false))));
+		assertTrue(contacts.isOnline(first.getEntity()));
+		assertFalse(contacts.isOnline(second.getEntity()));
+
+		// cached list is not changed by presence events
+		assertFalse(before.get(0).isOnline());
+
+		final List<User> after = contacts.getContacts(user.getEntity());
+		assertEquals(asList(first, second), after);
+		assertTrue(after.get(0).isOnline());
+		assertFalse(after.get(1).isOnline());
+	}
+
+	@Test
+	public void testShouldNotOverrideNewerContacts() throws Exception {
+		contacts.onEvent(contacts_presence_changed.newEvent(user, Arrays.<User>asList(first.cloneWithNewStatus(true))));
+		assertTrue(contacts.getContacts(user.getEntity()).get(0).isOnline());
+
+		// contacts reloaded after presence change => loaded status wins
+		contacts.update(user.getEntity(), asList(first, second), contacts.getPresencesVersion());
+		assertFalse(contacts.getContacts(user.getEntity()).get(0).isOnline());
+	}
+
+	@Test
+	public void testShouldApplyPresenceChangedWhileContactsWereLoaded() throws Exception {
+		contacts.update(user.getEntity(), Collections.<User>emptyList(), contacts.getPresencesVersion());
+
+		// contacts are read from the database before presence change is saved, but presence is applied before update
+		final long presencesVersion = contacts.getPresencesVersion();
+		final List<User> loadedContacts = asList(first, second);
+		contacts.onEvent(contacts_presence_changed.newEvent(user, Arrays.<User>asList(first.cloneWithNewStatus(true))));
+		contacts.update(user.getEntity(), loadedContacts, presencesVersion);
+
+		assertTrue(contacts.getContacts(user.getEntity()).get(0).isOnline());
+	}
+
+	@Test
+	public void testShouldForgetPresenceOfRemovedContact() throws Exception {
+		contacts.onEvent(contacts_presence_changed.newEvent(user, Arrays.<User>asList(first.cloneWithNewStatus(true))));
+		contacts.onEvent(contact_removed.newEvent(user, first.getId()));
+		assertNull(contacts.isOnline(first.getEntity()));
+		assertEquals(asList(second), contacts.getContacts(user.getEntity()));
+	}
+}
@@ -33,7 +33,9 @@ import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.google.common.collect.Iterables.getFirst;
 import static com.google.common.collect.Iterables.transform;
@@ -41,6 +43,7 @@ import static com.google.common.collect.Lists.newArrayList;
 import static org.junit.Assert.*;
 import static org.solovyev.android.messenger.users.Users.newUser;
 import static org.solovyev.android.properties.Properties.newProperties;
+import static org.solovyev.android.properties.Properties.newProperty;
 
 public class UserDaoTest extends DefaultDaoTest<User> {
 
@@ -163,6 +166,38 @@ public class UserDaoTest extends DefaultDaoTest<User> {
 		}
 	}
 
+	@Test
+	public void testShouldReplacePropertiesOnUpdate() throws Exception {
+		final User user = getAccountData1().getContacts().get(0);
+
+		dao.update(user.cloneWithNewProperties(newProperties(properties("removed", "1", "changed", "1"))));
+		assertEquals(values(properties("removed", "1", "changed", "1")), values(dao.readPropertiesById(user.getId())));
+
+		dao.update(user.cloneWithNewProperties(newProperties(properties("changed", "2", "added", "1"))));
+		assertEquals(values(properties("changed", "2", "added", "1")), values(dao.readPropertiesById(user.getId())));
+
+		dao.update(user.cloneWithNewProperties(newProperties(Collections.<AProperty>emptyList())));
+		assertTrue(dao.readPropertiesById(user.getId()).isEmpty());
+	}
+
+	@Nonnull
+	private static List<AProperty> properties(@Nonnull String... namesAndValues) {
+		final List<AProperty> result = new ArrayList<AProperty>();
+		for (int i = 0; i < namesAndValues.length; i += 2) {
+			result.add(newProperty(namesAndValues[i], namesAndValues[i + 1]));
+		}
+		return result;
+	}
+
+	@Nonnull
+	private static Map<String, String> values(@Nonnull Collection<AProperty> properties) {
+		final Map<String, String> result = new HashMap<String, String>();
+		for (AProperty property : properties) {
+			result.put(property.getName(), property.getValue());
+		}
+		return result;
+	}
+
 	@Nonnull
 	@Override
 	protected Collection<User> populateEntities(@Nonnull Dao<User> dao) {
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.users;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import com.google.inject.Inject;
+import org.junit.Before;
+import org.junit.Test;
+import org.solovyev.android.messenger.DefaultMessengerTest;
+
+import javax.annotation.Nonnull;
+
+import static org.solovyev.android.messenger.QueryPlans.*;
+import static org.solovyev.android.messenger.users.SqliteUserDao.CONTACTS_BY_USER_QUERY;
+
+/**
+ * Checks plans of hot queries of {@link SqliteUserDao}: none of them should scan a whole table.
+ * If you change schema or queries update this test accordingly.
+ */
+public class UserQueryPlanTest extends DefaultMessengerTest {
+
+	@Inject
+	@Nonnull
+	private SQLiteOpenHelper sqliteOpenHelper;
+
+	@Nonnull
+	private SQLiteDatabase db;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		db = sqliteOpenHelper.getReadableDatabase();
+		assertQueryPlansSupported(db);
+	}
+
+	@Test
+	public void testContactsShouldUseIndex() throws Exception {
+		assertNoFullScans(db, CONTACTS_BY_USER_QUERY, "test~01:user");
+	}
+
+	@Test
+	public void testContactsCascadeDeleteShouldUseIndex() throws Exception {
+		// lookup done by SQLite for ON DELETE CASCADE of user_contacts.contact_id when user is removed
+		assertNoFullScans(db, "select * from user_contacts where contact_id = ?", "test~01:user");
+	}
+}
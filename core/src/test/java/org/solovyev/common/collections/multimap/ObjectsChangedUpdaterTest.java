@@ -23,13 +23,13 @@ import java.util.List;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 
-public class ObjectsChangedMapUpdaterTest extends ThreadSafeMultimapTest {
+public class ObjectsChangedUpdaterTest extends ThreadSafeMultimapTest {
 
 	@Test
 	public void testShouldUpdateObject() throws Exception {
 		final TestObject oldObject = map.get(5).get(5);
 		final TestObject expected = new TestObject(oldObject.index);
-		multimap.update(new ObjectsChangedMapUpdater<Integer, TestObject>(expected));
+		multimap.updateAll(new ObjectsChangedUpdater<TestObject>(expected));
 		assertNotSame(oldObject, multimap.get(5).get(5));
 		assertSame(expected, multimap.get(5).get(5));
 	}
@@ -38,7 +38,7 @@ public class ObjectsChangedMapUpdaterTest extends ThreadSafeMultimapTest {
 	public void testShouldNotCopyAllListsIfObjectDoesntExist() throws Exception {
 		final TestObject oldObject = new TestObject(10000);
 		final List<TestObject> expected = multimap.asMap().get(5);
-		multimap.update(new ObjectsChangedMapUpdater<Integer, TestObject>(oldObject));
+		multimap.updateAll(new ObjectsChangedUpdater<TestObject>(oldObject));
 		final List<TestObject> actual = multimap.asMap().get(5);
 		assertSame(expected, actual);
 	}
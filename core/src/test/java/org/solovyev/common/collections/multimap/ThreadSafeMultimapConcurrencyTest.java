@@ -0,0 +1,159 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.common.collections.multimap;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ThreadSafeMultimapConcurrencyTest extends ThreadSafeMultimapTest {
+
+	private static final int WRITERS = 4;
+
+	private static final int READERS = 2;
+
+	private static final int VALUES_PER_WRITER = 500;
+
+	@Test
+	public void testConcurrentUpdatesShouldNotBeLost() throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS);
+		try {
+			final CountDownLatch start = new CountDownLatch(1);
+			final AtomicBoolean writing = new AtomicBoolean(true);
+
+			final List<Future<?>> writers = new ArrayList<Future<?>>();
+			for (int i = 0; i < WRITERS; i++) {
+				final int writer = i;
+				writers.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						start.await();
+						for (int j = 0; j < VALUES_PER_WRITER; j++) {
+							// all writers update the same key
+							assertTrue(multimap.update(0, new ObjectAddedUpdater<TestObject>(newTestObject(writer, j))));
+							// and change objects in all keys
+							multimap.updateAll(new ObjectsChangedUpdater<TestObject>(new TestObject(j % 100)));
+						}
+						return null;
+					}
+				}));
+			}
+
+			final List<Future<Boolean>> readers = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < READERS; i++) {
+				readers.add(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws Exception {
+						start.await();
+						int previousSize = 0;
+						while (writing.get()) {
+							final List<TestObject> values = multimap.get(0);
+							// values are only added => size can't decrease, published list must be complete
+							if (values.size() < previousSize) {
+								return false;
+							}
+							for (TestObject value : values) {
+								if (value == null) {
+									return false;
+								}
+							}
+							previousSize = values.size();
+						}
+						return true;
+					}
+				}));
+			}
+
+			start.countDown();
+			for (Future<?> writer : writers) {
+				writer.get(30, TimeUnit.SECONDS);
+			}
+			writing.set(false);
+			for (Future<Boolean> reader : readers) {
+				assertTrue(reader.get(30, TimeUnit.SECONDS));
+			}
+
+			final List<TestObject> values = multimap.get(0);
+			assertEquals(10 + WRITERS * VALUES_PER_WRITER, values.size());
+			assertEquals(values.size(), new HashSet<TestObject>(values).size());
+			for (int i = 0; i < WRITERS; i++) {
+				for (int j = 0; j < VALUES_PER_WRITER; j++) {
+					assertTrue(values.contains(newTestObject(i, j)));
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testConcurrentRemovalsShouldNotBeLost() throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+		try {
+			final List<Future<?>> writers = new ArrayList<Future<?>>();
+			for (int i = 0; i < WRITERS; i++) {
+				final int writer = i;
+				writers.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						for (int key = 0; key < 10; key++) {
+							// each writer removes its own objects from each key
+							for (int j = 10 * key + writer; j < 10 * key + 10; j += WRITERS) {
+								multimap.update(key, new ObjectRemovedUpdater<TestObject>(new TestObject(j)));
+							}
+						}
+						return null;
+					}
+				}));
+			}
+
+			for (Future<?> writer : writers) {
+				writer.get(30, TimeUnit.SECONDS);
+			}
+
+			final Set<Integer> keys = multimap.asMap().keySet();
+			assertEquals(10, keys.size());
+			for (Integer key : keys) {
+				assertTrue(multimap.get(key).isEmpty());
+			}
+			assertFalse(multimap.update(0, new ObjectRemovedUpdater<TestObject>(new TestObject(0))));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Nonnull
+	private static TestObject newTestObject(int writer, int j) {
+		// objects of setUp have indices < 100
+		return new TestObject(1000 + writer * VALUES_PER_WRITER + j);
+	}
+}
@@ -0,0 +1,6 @@
+ALTER TABLE chats ADD COLUMN last_message_id text;
+ALTER TABLE chats ADD COLUMN last_message_time integer;
+ALTER TABLE chats ADD COLUMN unread_count integer NOT NULL DEFAULT 0;
+UPDATE chats SET last_message_id = (SELECT m.id FROM messages m WHERE m.chat_id = chats.id AND m.state <> 'removed' ORDER BY m.send_time DESC, m.id DESC LIMIT 1), last_message_time = (SELECT max(m.send_time) FROM messages m WHERE m.chat_id = chats.id AND m.state <> 'removed'), unread_count = (SELECT count(*) FROM messages m WHERE m.read = 0 AND m.state = 'received' AND m.chat_id = chats.id);
+CREATE INDEX chats_last_message_time_idx ON chats (last_message_time);
+CREATE INDEX chats_unread_count_idx ON chats (unread_count);
@@ -0,0 +1,2 @@
+ALTER TABLE accounts ADD COLUMN messages_sync_cursor text;
+ALTER TABLE chats ADD COLUMN messages_sync_cursor text;
@@ -0,0 +1 @@
+ALTER TABLE accounts ADD COLUMN contacts_sync_cursor text;
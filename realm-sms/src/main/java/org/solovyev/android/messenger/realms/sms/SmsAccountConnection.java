@@ -27,9 +27,7 @@ import android.telephony.PhoneStateListener;
 import android.telephony.SmsMessage;
 import android.telephony.TelephonyManager;
 import android.util.Log;
-import com.google.common.base.Predicate;
 import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
 import org.joda.time.DateTime;
 import org.solovyev.android.Threads;
@@ -45,8 +43,8 @@ import org.solovyev.android.messenger.messages.MessageState;
 import org.solovyev.android.messenger.messages.MutableMessage;
 import org.solovyev.android.messenger.users.MutableUser;
 import org.solovyev.android.messenger.users.PhoneNumber;
+import org.solovyev.android.messenger.users.PhoneNumberIndex;
 import org.solovyev.android.messenger.users.User;
-import org.solovyev.android.messenger.users.UserService;
 import org.solovyev.android.properties.MutableAProperties;
 
 import javax.annotation.Nonnull;
@@ -62,7 +60,6 @@ import static android.telephony.PhoneStateListener.LISTEN_CALL_STATE;
 import static android.telephony.PhoneStateListener.LISTEN_NONE;
 import static android.telephony.SmsMessage.createFromPdu;
 import static android.telephony.TelephonyManager.*;
-import static com.google.common.collect.Iterables.any;
 import static java.util.Arrays.asList;
 import static org.solovyev.android.messenger.App.*;
 import static org.solovyev.android.messenger.accounts.AccountService.NO_ACCOUNT_ID;
@@ -174,13 +171,10 @@ final class SmsAccountConnection extends BaseAccountConnection<SmsAccount> {
 
 		if (!messagesByPhoneNumber.isEmpty()) {
 			final User user = account.getUser();
-			final UserService userService = getUserService();
 			final ChatService chatService = getChatService();
 
-			final List<User> contacts = userService.getContacts(user.getEntity());
-
 			for (Map.Entry<String, Collection<SmsData>> entry : messagesByPhoneNumber.asMap().entrySet()) {
-				final User contact = findOrCreateContact(entry.getKey(), contacts);
+				final User contact = findOrCreateContact(entry.getKey());
 				final Chat chat = chatService.getOrCreatePrivateChat(user.getEntity(), contact.getEntity());
 
 				final List<Message> messages = new ArrayList<Message>(entry.getValue().size());
@@ -252,13 +246,17 @@ final class SmsAccountConnection extends BaseAccountConnection<SmsAccount> {
 	}
 
 	@Nonnull
-	public User findOrCreateContact(@Nonnull final String phone, @Nonnull List<User> contacts) {
-		User result = findContactByPhone(phone, contacts);
+	public User findOrCreateContact(@Nonnull final String phone) {
+		final SmsAccount account = getAccount();
+		final PhoneNumberIndex index = account.getRealm().getPhoneIndex(account.getUser());
+
+		User result = index.find(phone);
 		if (result == null) {
 			result = toUser(phone);
 
-			final SmsAccount account = getAccount();
 			App.getUserService().mergeContacts(account, asList(result), false, false);
+			// contacts' events will do the same but new contact must be found by next lookup in any case
+			index.put(result);
 		}
 		return result;
 	}
@@ -284,34 +282,12 @@ final class SmsAccountConnection extends BaseAccountConnection<SmsAccount> {
 		return user;
 	}
 
-	@Nullable
-	private static User findContactByPhone(@Nonnull final String phone, @Nonnull List<User> contacts) {
-		final SamePhonePredicate predicate = new SamePhonePredicate(newPhoneNumber(phone));
-
-		return Iterables.find(contacts, new Predicate<User>() {
-			@Override
-			public boolean apply(@Nullable User contact) {
-				if (contact != null) {
-					// first try to find by default phone property
-					if (predicate.apply(contact.getPropertyValueByName(PROPERTY_PHONE))) {
-						return true;
-					} else {
-						return any(contact.getPhoneNumbers(), predicate);
-					}
-				} else {
-					return false;
-				}
-			}
-		}, null);
-	}
-
 	private void onCall(@Nonnull Call call) {
 		final String number = call.getNumber();
 		if (!isEmpty(number)) {
 			final SmsAccount account = getAccount();
 			final User user = account.getUser();
-			final List<User> contacts = getUserService().getContacts(user.getEntity());
-			final User contact = findOrCreateContact(number, contacts);
+			final User contact = findOrCreateContact(number);
 			try {
 				final Chat chat = getChatService().getOrCreatePrivateChat(user.getEntity(), contact.getEntity());
 
@@ -352,27 +328,6 @@ final class SmsAccountConnection extends BaseAccountConnection<SmsAccount> {
 		return String.format("%dm %ds", minutes, seconds);
 	}
 
-	private static class SamePhonePredicate implements Predicate<String> {
-
-		@Nonnull
-		private final PhoneNumber phoneNumber;
-
-		public SamePhonePredicate(@Nonnull PhoneNumber phoneNumber) {
-			this.phoneNumber = phoneNumber;
-		}
-
-		@Override
-		public boolean apply(@Nullable String phone) {
-			if (phone != null) {
-				if (newPhoneNumber(phone).same(phoneNumber)) {
-					return true;
-				}
-			}
-
-			return false;
-		}
-	}
-
 	private final class CallListener {
 
 		@Nonnull
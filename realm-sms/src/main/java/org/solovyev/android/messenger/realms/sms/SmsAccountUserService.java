@@ -22,21 +22,21 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
 import android.provider.ContactsContract;
-import org.solovyev.android.db.ListMapper;
 import org.solovyev.android.messenger.accounts.AccountConnectionException;
-import org.solovyev.android.messenger.users.AccountUserService;
+import org.solovyev.android.messenger.users.DeltaSyncAccountUserService;
 import org.solovyev.android.messenger.users.User;
 import org.solovyev.android.messenger.users.Users;
 import org.solovyev.common.text.Strings;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.List;
 
 import static java.util.Collections.emptyList;
 import static org.solovyev.android.messenger.App.getApplication;
 
-final class SmsAccountUserService implements AccountUserService {
+final class SmsAccountUserService implements DeltaSyncAccountUserService {
 
 	@Nonnull
 	private final SmsAccount account;
@@ -96,10 +96,25 @@ final class SmsAccountUserService implements AccountUserService {
 	@Nonnull
 	@Override
 	public List<User> getContacts() throws AccountConnectionException {
-		final String selection = ContactsContract.Contacts.HAS_PHONE_NUMBER + " = 1";
-		final ContentResolver cr = getApplication().getContentResolver();
-		final Cursor cursor = cr.query(ContactsContract.Contacts.CONTENT_URI, SmsUserMapper.COLUMNS, selection, null, null);
-		return new ListMapper<User>(new SmsUserMapper(account, cr)).convert(cursor);
+		final List<User> contacts = new ArrayList<User>();
+		newContactsLoader().load(null, new ContactsConsumer() {
+			@Override
+			public void onContacts(@Nonnull List<User> chunk) {
+				contacts.addAll(chunk);
+			}
+		});
+		return contacts;
+	}
+
+	@Nullable
+	@Override
+	public String loadContactsSince(@Nullable String cursor, @Nonnull ContactsConsumer consumer) throws AccountConnectionException {
+		return newContactsLoader().load(cursor, consumer);
+	}
+
+	@Nonnull
+	private SmsContactsLoader newContactsLoader() {
+		return new SmsContactsLoader(account, getApplication().getContentResolver());
 	}
 
 	@Nonnull
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.sms;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Build;
+import android.provider.ContactsContract;
+import org.solovyev.android.messenger.users.DeltaSyncAccountUserService.ContactsConsumer;
+import org.solovyev.android.messenger.users.PhoneNumber;
+import org.solovyev.android.messenger.users.User;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.lang.Math.max;
+import static org.solovyev.android.messenger.users.PhoneNumber.newPhoneNumber;
+
+/**
+ * Loads contacts from address book in chunks: contacts are read with one query and phones of each chunk are read with
+ * one query over data table (instead of one query per contact).
+ * <p/>
+ * Since API 18 contacts have time of the last update which is used as a cursor: only contacts updated after the cursor
+ * are loaded. On older versions all contacts are loaded.
+ */
+final class SmsContactsLoader {
+
+	static final int CHUNK_SIZE = 100;
+
+	// ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP, available since API 18
+	private static final String LAST_UPDATED_TIMESTAMP = "contact_last_updated_timestamp";
+	private static final int LAST_UPDATED_TIMESTAMP_SDK = 18;
+
+	@Nonnull
+	private final SmsAccount account;
+
+	@Nonnull
+	private final ContentResolver contentResolver;
+
+	private final int chunkSize;
+
+	SmsContactsLoader(@Nonnull SmsAccount account, @Nonnull ContentResolver contentResolver) {
+		this(account, contentResolver, CHUNK_SIZE);
+	}
+
+	SmsContactsLoader(@Nonnull SmsAccount account, @Nonnull ContentResolver contentResolver, int chunkSize) {
+		this.account = account;
+		this.contentResolver = contentResolver;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @param cursor   time of the last update of contacts loaded before, null if all contacts must be loaded
+	 * @param consumer consumer of chunks
+	 * @return time of the last update of loaded contacts, null if time is not supported by platform
+	 */
+	@Nullable
+	String load(@Nullable String cursor, @Nonnull ContactsConsumer consumer) {
+		final boolean delta = Build.VERSION.SDK_INT >= LAST_UPDATED_TIMESTAMP_SDK;
+
+		long lastUpdated = 0;
+		String selection = ContactsContract.Contacts.HAS_PHONE_NUMBER + " = 1";
+		final String[] columns;
+		if (delta) {
+			columns = new String[]{ContactsContract.Contacts._ID, ContactsContract.Contacts.DISPLAY_NAME, LAST_UPDATED_TIMESTAMP};
+			if (cursor != null) {
+				lastUpdated = Long.parseLong(cursor);
+				selection += " and " + LAST_UPDATED_TIMESTAMP + " > " + lastUpdated;
+			}
+		} else {
+			columns = new String[]{ContactsContract.Contacts._ID, ContactsContract.Contacts.DISPLAY_NAME};
+		}
+
+		final Cursor contactsCursor = contentResolver.query(ContactsContract.Contacts.CONTENT_URI, columns, selection, null, null);
+		if (contactsCursor == null) {
+			return cursor;
+		}
+
+		try {
+			// key: contact id, value: display name
+			final Map<String, String> chunk = new LinkedHashMap<String, String>(chunkSize);
+			while (contactsCursor.moveToNext()) {
+				chunk.put(contactsCursor.getString(0), contactsCursor.getString(1));
+				if (delta) {
+					lastUpdated = max(lastUpdated, contactsCursor.getLong(2));
+				}
+
+				if (chunk.size() >= chunkSize) {
+					consumer.onContacts(toUsers(chunk));
+					chunk.clear();
+				}
+			}
+
+			if (!chunk.isEmpty()) {
+				consumer.onContacts(toUsers(chunk));
+			}
+		} finally {
+			contactsCursor.close();
+		}
+
+		return delta ? String.valueOf(lastUpdated) : null;
+	}
+
+	@Nonnull
+	private List<User> toUsers(@Nonnull Map<String, String> chunk) {
+		final Map<String, Set<String>> phones = loadPhoneNumbers(chunk.keySet());
+
+		final List<User> users = new ArrayList<User>(chunk.size());
+		for (Map.Entry<String, String> entry : chunk.entrySet()) {
+			Set<String> userPhones = phones.get(entry.getKey());
+			if (userPhones == null) {
+				userPhones = Collections.emptySet();
+			}
+			users.add(SmsUserMapper.toUser(account, entry.getKey(), entry.getValue(), userPhones));
+		}
+		return users;
+	}
+
+	@Nonnull
+	private Map<String, Set<String>> loadPhoneNumbers(@Nonnull Set<String> userIds) {
+		final Map<String, Set<String>> result = new HashMap<String, Set<String>>(userIds.size());
+
+		final StringBuilder selection = new StringBuilder(ContactsContract.CommonDataKinds.Phone.CONTACT_ID + " in (");
+		for (int i = 0; i < userIds.size(); i++) {
+			if (i > 0) {
+				selection.append(", ");
+			}
+			selection.append("?");
+		}
+		selection.append(")");
+
+		final String[] columns = {ContactsContract.CommonDataKinds.Phone.CONTACT_ID, ContactsContract.CommonDataKinds.Phone.NUMBER};
+		final String[] selectionArgs = userIds.toArray(new String[userIds.size()]);
+		final Cursor phonesCursor = contentResolver.query(ContactsContract.CommonDataKinds.Phone.CONTENT_URI, columns, selection.toString(), selectionArgs, null);
+		if (phonesCursor != null) {
+			try {
+				while (phonesCursor.moveToNext()) {
+					final PhoneNumber phoneNumber = newPhoneNumber(phonesCursor.getString(1));
+					if (phoneNumber.isValid()) {
+						final String userId = phonesCursor.getString(0);
+						Set<String> userPhones = result.get(userId);
+						if (userPhones == null) {
+							userPhones = new HashSet<String>();
+							result.put(userId, userPhones);
+						}
+						userPhones.add(phoneNumber.getNumber());
+					}
+				}
+			} finally {
+				phonesCursor.close();
+			}
+		}
+
+		return result;
+	}
+}
@@ -29,7 +29,6 @@ import org.solovyev.common.Converter;
 import javax.annotation.Nonnull;
 
 import static org.solovyev.android.messenger.App.getChatService;
-import static org.solovyev.android.messenger.App.getUserService;
 import static org.solovyev.android.messenger.entities.Entities.generateEntity;
 import static org.solovyev.android.messenger.messages.Messages.newMessage;
 import static org.solovyev.android.messenger.realms.sms.SmsAccount.TAG;
@@ -76,7 +75,7 @@ class SmsMessageConverter implements Converter<Cursor, MutableMessage> {
 			throw new IllegalArgumentException("Body must not be empty");
 		}
 
-		final Entity participant = getParticipant(cursor, user);
+		final Entity participant = getParticipant(cursor);
 		message.setRead(getBoolean(cursor, "read"));
 		message.setSendDate(getDate(cursor, "date"));
 		final boolean incoming = getBoolean(cursor, "type");
@@ -103,14 +102,14 @@ class SmsMessageConverter implements Converter<Cursor, MutableMessage> {
 	}
 
 	@Nonnull
-	private Entity getParticipant(@Nonnull Cursor cursor, @Nonnull Entity user) {
+	private Entity getParticipant(@Nonnull Cursor cursor) {
 		final Entity participant;
 
 		final SmsAccountConnection connection = tryGetConnection();
 
 		final String address = cursor.getString(cursor.getColumnIndexOrThrow("address"));
 		if (!isEmpty(address)) {
-			participant = connection.findOrCreateContact(address, getUserService().getContacts(user)).getEntity();
+			participant = connection.findOrCreateContact(address).getEntity();
 			if (!participant.isAccountEntityIdSet()) {
 				throw new IllegalArgumentException("No account entity id is set");
 			}
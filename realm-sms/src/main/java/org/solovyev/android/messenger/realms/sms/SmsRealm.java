@@ -28,16 +28,23 @@ import org.solovyev.android.messenger.accounts.AccountState;
 import org.solovyev.android.messenger.accounts.AccountSyncData;
 import org.solovyev.android.messenger.icons.RealmIconService;
 import org.solovyev.android.messenger.realms.AbstractRealm;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.users.PhoneNumberIndex;
 import org.solovyev.android.messenger.users.User;
+import org.solovyev.android.messenger.users.UserEvent;
+import org.solovyev.common.listeners.AbstractJEventListener;
 import org.solovyev.common.security.Cipherer;
 import org.solovyev.common.security.CiphererException;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.crypto.SecretKey;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static android.telephony.TelephonyManager.PHONE_TYPE_NONE;
 import static org.solovyev.android.messenger.App.newTag;
+import static org.solovyev.android.messenger.users.PhoneNumberIndex.newPhoneNumberIndex;
 
 @Singleton
 public final class SmsRealm extends AbstractRealm<SmsAccountConfiguration> {
@@ -72,12 +79,23 @@ public final class SmsRealm extends AbstractRealm<SmsAccountConfiguration> {
 	@Nonnull
 	private final Context context;
 
+	// key: account user, value: index of phones of user's contacts, built on first lookup
+	@Nonnull
+	private final ConcurrentMap<Entity, PhoneNumberIndex> phoneIndexes = new ConcurrentHashMap<Entity, PhoneNumberIndex>();
+
 	@Inject
 	public SmsRealm(@Nonnull Application context) {
 		super(REALM_ID, R.string.mpp_sms_name, R.drawable.mpp_sms_icon, SmsAccountConfigurationFragment.class, SmsAccountConfiguration.class, true, SmsEditUserFragment.class, false);
 		this.context = context;
 	}
 
+	@Override
+	public void init(@Nonnull Context context) {
+		super.init(context);
+
+		App.getUserService().addListener(new PhoneIndexUpdater());
+	}
+
 	@Nonnull
 	@Override
 	public Account<SmsAccountConfiguration> newAccount(@Nonnull String accountId, @Nonnull User user, @Nonnull SmsAccountConfiguration configuration, @Nonnull AccountState state, @Nonnull AccountSyncData syncData) {
@@ -108,6 +126,38 @@ public final class SmsRealm extends AbstractRealm<SmsAccountConfiguration> {
 		return new SmsRealmConfigurationCipherer();
 	}
 
+	/**
+	 * @param user account user
+	 * @return index of phones of contacts of <var>user</var>. Index is kept up to date by contacts' events
+	 */
+	@Nonnull
+	PhoneNumberIndex getPhoneIndex(@Nonnull User user) {
+		PhoneNumberIndex index = phoneIndexes.get(user.getEntity());
+		if (index == null) {
+			final PhoneNumberIndex newIndex = newPhoneNumberIndex(App.getUserService().getContacts(user.getEntity()));
+			index = phoneIndexes.putIfAbsent(user.getEntity(), newIndex);
+			if (index == null) {
+				index = newIndex;
+			}
+		}
+		return index;
+	}
+
+	private final class PhoneIndexUpdater extends AbstractJEventListener<UserEvent> {
+
+		private PhoneIndexUpdater() {
+			super(UserEvent.class);
+		}
+
+		@Override
+		public void onEvent(@Nonnull UserEvent event) {
+			final PhoneNumberIndex index = phoneIndexes.get(event.getUser().getEntity());
+			if (index != null) {
+				index.onEvent(event);
+			}
+		}
+	}
+
 	/*
 	**********************************************************************
     *
@@ -28,6 +28,7 @@ import org.solovyev.android.properties.AProperty;
 import org.solovyev.common.Converter;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -58,11 +59,13 @@ public final class SmsUserMapper implements Converter<Cursor, User> {
 	@Override
 	public User convert(@Nonnull Cursor cursor) {
 		final String userId = cursor.getString(0);
+		return toUser(account, userId, cursor.getString(1), getPhoneNumbers(userId));
+	}
 
-		final Set<String> phoneNumbers = getPhoneNumbers(userId);
-
+	@Nonnull
+	static User toUser(@Nonnull SmsAccount account, @Nonnull String userId, @Nullable String displayName, @Nonnull Set<String> phoneNumbers) {
 		final List<AProperty> propertiesList = new ArrayList<AProperty>();
-		Users.tryParseNameProperties(propertiesList, cursor.getString(1));
+		Users.tryParseNameProperties(propertiesList, displayName);
 		final MutableUser user = newUser(newEntity(account.getId(), userId), propertiesList);
 
 		if (phoneNumbers.size() == 1) {
@@ -16,26 +16,36 @@
 
 package org.solovyev.android.messenger.realms.vk;
 
-import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
 
 import static org.solovyev.common.Objects.areEqual;
 
-public class JsonResult {
-
-	@Nullable
-	private String response;
+public final class JsonResult {
 
+	private JsonResult() {
+		throw new AssertionError();
+	}
 
-	public static boolean asBoolean(@Nonnull String json) {
-		return areEqual(asString(json), "1");
+	public static boolean asBoolean(@Nonnull JsonReader reader) throws IOException {
+		return areEqual(asString(reader), "1");
 	}
 
+	/**
+	 * @param reader reader positioned at the value of "response" property
+	 * @return primitive value of "response" property as string
+	 */
 	@Nullable
-	public static String asString(@Nonnull String json) {
-		final JsonResult result = new Gson().fromJson(json, JsonResult.class);
-		return result.response;
+	public static String asString(@Nonnull JsonReader reader) throws IOException {
+		if (reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return null;
+		} else {
+			return reader.nextString();
+		}
 	}
 }
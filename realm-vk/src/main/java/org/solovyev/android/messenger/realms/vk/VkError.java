@@ -17,8 +17,10 @@
 package org.solovyev.android.messenger.realms.vk;
 
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
 import org.solovyev.android.captcha.Captcha;
 import org.solovyev.android.messenger.http.IllegalJsonException;
+import org.solovyev.android.messenger.realms.vk.http.VkJson;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -51,7 +53,7 @@ public class VkError {
 
 	@Nonnull
 	public static VkError fromJson(@Nonnull String json) throws IllegalJsonException {
-		final Gson gson = new Gson();
+		final Gson gson = VkJson.getGson();
 		final VkErrorJsonWrapper vkErrorJsonWrapper = gson.fromJson(json, VkErrorJsonWrapper.class);
 		if (vkErrorJsonWrapper.error == null) {
 			throw new IllegalJsonException();
@@ -61,6 +63,18 @@ public class VkError {
 		return fromJson(vkErrorJsonWrapper.error);
 	}
 
+	/**
+	 * @param reader reader positioned at the value of "error" property
+	 */
+	@Nonnull
+	public static VkError fromJson(@Nonnull JsonReader reader) throws IllegalJsonException {
+		final VkErrorJson json = VkJson.getGson().fromJson(reader, VkErrorJson.class);
+		if (json == null || json.error_code == null) {
+			throw new IllegalJsonException();
+		}
+		return fromJson(json);
+	}
+
 	@Nonnull
 	private static VkError fromJson(@Nonnull VkErrorJson json) throws IllegalJsonException {
 		final VkError result = new VkError();
@@ -18,6 +18,7 @@ package org.solovyev.android.messenger.realms.vk.auth;
 
 import com.google.gson.Gson;
 import org.solovyev.android.messenger.http.IllegalJsonException;
+import org.solovyev.android.messenger.realms.vk.http.VkJson;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -40,7 +41,7 @@ public final class JsonAuthResult {
 
 	@Nonnull
 	public static JsonAuthResult fromJson(@Nonnull String json) throws IllegalJsonException {
-		final Gson gson = new Gson();
+		final Gson gson = VkJson.getGson();
 
 		final JsonAuthResult result = gson.fromJson(json, JsonAuthResult.class);
 
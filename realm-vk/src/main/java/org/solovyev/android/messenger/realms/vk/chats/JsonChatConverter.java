@@ -20,8 +20,6 @@ import android.util.Log;
 import com.google.common.base.Function;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Iterables;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import org.solovyev.android.messenger.App;
 import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.chats.AccountChat;
@@ -31,7 +29,6 @@ import org.solovyev.android.messenger.http.IllegalJsonException;
 import org.solovyev.android.messenger.http.IllegalJsonRuntimeException;
 import org.solovyev.android.messenger.messages.MutableMessage;
 import org.solovyev.android.messenger.realms.vk.messages.JsonMessage;
-import org.solovyev.android.messenger.realms.vk.messages.JsonMessageTypedAttachment;
 import org.solovyev.android.messenger.realms.vk.messages.JsonMessages;
 import org.solovyev.android.messenger.users.User;
 import org.solovyev.android.messenger.users.UserService;
@@ -54,7 +51,7 @@ import static org.solovyev.common.text.Strings.isEmpty;
  * Date: 6/6/12
  * Time: 1:33 PM
  */
-public class JsonChatConverter implements Converter<String, List<AccountChat>> {
+public class JsonChatConverter implements Converter<JsonMessages, List<AccountChat>> {
 
 	@Nonnull
 	private final User user;
@@ -85,15 +82,8 @@ public class JsonChatConverter implements Converter<String, List<AccountChat>> {
 
 	@Nonnull
 	@Override
-	public List<AccountChat> convert(@Nonnull String json) {
+	public List<AccountChat> convert(@Nonnull JsonMessages jsonMessagesResult) {
 		// todo serso: we need to save title for chat somewhere
-		final Gson gson = new GsonBuilder()
-				.registerTypeAdapter(JsonMessages.class, new JsonMessages.Adapter())
-				.registerTypeAdapter(JsonMessageTypedAttachment.class, new JsonMessageTypedAttachment.Adapter())
-				.create();
-
-		final JsonMessages jsonMessagesResult = gson.fromJson(json, JsonMessages.class);
-
 		final List<JsonMessage> jsonMessages = jsonMessagesResult.getResponse();
 
 		// key: chat id, value: chat
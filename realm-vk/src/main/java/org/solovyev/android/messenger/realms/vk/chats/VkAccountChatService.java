@@ -39,7 +39,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
-public class VkAccountChatService implements AccountChatService {
+public class VkAccountChatService implements DeltaSyncAccountChatService {
 
 	@Nonnull
 	private static final String TAG = VkAccountChatService.class.getSimpleName();
@@ -47,6 +47,11 @@ public class VkAccountChatService implements AccountChatService {
 	@Nonnull
 	private static final String CHAT_DELIMITER = ":";
 
+	/**
+	 * Max number of messages loaded by one incremental synchronization, if there are more new messages => full synchronization is done
+	 */
+	private static final int MAX_DELTA_COUNT = 100;
+
 	@Nonnull
 	private final VkAccount account;
 
@@ -60,6 +65,100 @@ public class VkAccountChatService implements AccountChatService {
 		return executeHttpRequest(new VkMessagesGetHttpTransaction(account));
 	}
 
+	/**
+	 * Cursor is the greatest id of message (VK message ids are increasing)
+	 */
+	@Nonnull
+	@Override
+	public MessagesDelta getMessagesSince(@Nullable String cursor) throws AccountConnectionException {
+		if (cursor == null) {
+			final List<Message> messages = getMessages();
+			return MessagesDelta.newDelta(messages, getLastMessageId(messages, null));
+		} else {
+			final List<Message> messages = executeHttpRequest(VkMessagesGetHttpTransaction.newerThan(account, cursor, MAX_DELTA_COUNT));
+			if (messages.size() >= MAX_DELTA_COUNT) {
+				// there might be more messages than returned
+				return MessagesDelta.newGap();
+			} else {
+				final List<Message> newMessages = getMessagesNewerThan(messages, cursor);
+				return MessagesDelta.newDelta(newMessages, getLastMessageId(newMessages, cursor));
+			}
+		}
+	}
+
+	/**
+	 * Only messages sent after the cursor are requested from the history of the chat, if page is full => there might be more
+	 * messages than returned
+	 */
+	@Nonnull
+	@Override
+	public MessagesDelta getNewerMessagesForChatSince(@Nonnull String accountChatId, @Nullable final String cursor) throws AccountConnectionException {
+		if (cursor == null) {
+			final List<Message> messages = getNewerMessagesForChat(accountChatId);
+			return MessagesDelta.newDelta(messages, getLastMessageId(messages, null));
+		} else {
+			final List<Message> messages = getMessagesForChat(accountChatId, new VkHttpTransactionForMessagesForChatProvider() {
+				@Nonnull
+				@Override
+				public List<? extends HttpTransaction<List<Message>>> getForPrivateChat(@Nonnull User user, @Nonnull String secondUserId) {
+					return Arrays.asList(VkMessagesGetHistoryHttpTransaction.forUserNewerThan(account, secondUserId, user, cursor, MAX_DELTA_COUNT));
+				}
+
+				@Nonnull
+				@Override
+				public List<? extends HttpTransaction<List<Message>>> getForChat(@Nonnull User user, @Nonnull String chatId) {
+					return Arrays.asList(VkMessagesGetHistoryHttpTransaction.forChatNewerThan(account, chatId, user, cursor, MAX_DELTA_COUNT));
+				}
+			});
+
+			if (messages.size() >= MAX_DELTA_COUNT) {
+				return MessagesDelta.newGap();
+			} else {
+				final List<Message> newMessages = getMessagesNewerThan(messages, cursor);
+				return MessagesDelta.newDelta(newMessages, getLastMessageId(newMessages, cursor));
+			}
+		}
+	}
+
+	@Nonnull
+	private static List<Message> getMessagesNewerThan(@Nonnull List<Message> messages, @Nonnull String messageId) {
+		final long id = parseMessageId(messageId);
+
+		final List<Message> result = new ArrayList<Message>(messages.size());
+		for (Message message : messages) {
+			if (parseMessageId(message.getEntity().getAccountEntityId()) > id) {
+				result.add(message);
+			}
+		}
+		return result;
+	}
+
+	@Nullable
+	private static String getLastMessageId(@Nonnull List<Message> messages, @Nullable String cursor) {
+		String result = cursor;
+		long lastId = cursor == null ? Long.MIN_VALUE : parseMessageId(cursor);
+
+		for (Message message : messages) {
+			final String messageId = message.getEntity().getAccountEntityId();
+			final long id = parseMessageId(messageId);
+			if (id > lastId) {
+				lastId = id;
+				result = messageId;
+			}
+		}
+
+		return result;
+	}
+
+	private static long parseMessageId(@Nonnull String messageId) {
+		try {
+			return Long.parseLong(messageId);
+		} catch (NumberFormatException e) {
+			Log.e(TAG, "Message id is not a number: " + messageId);
+			return Long.MIN_VALUE;
+		}
+	}
+
 	@Nonnull
 	@Override
 	public List<Message> getNewerMessagesForChat(@Nonnull String accountChatId) throws AccountConnectionException {
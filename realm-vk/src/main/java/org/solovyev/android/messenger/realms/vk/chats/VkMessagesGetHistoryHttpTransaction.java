@@ -16,21 +16,23 @@
 
 package org.solovyev.android.messenger.realms.vk.chats;
 
+import com.google.gson.stream.JsonReader;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 import org.solovyev.android.http.HttpTransaction;
 import org.solovyev.android.messenger.App;
 import org.solovyev.android.messenger.chats.AccountChat;
-import org.solovyev.android.messenger.http.IllegalJsonException;
 import org.solovyev.android.messenger.messages.Message;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
 import org.solovyev.android.messenger.realms.vk.http.AbstractVkHttpTransaction;
+import org.solovyev.android.messenger.realms.vk.messages.JsonMessages;
 import org.solovyev.android.messenger.realms.vk.users.ApiUserField;
 import org.solovyev.android.messenger.users.User;
 import org.solovyev.common.text.Strings;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -61,6 +63,9 @@ public class VkMessagesGetHistoryHttpTransaction extends AbstractVkHttpTransacti
 	@Nullable
 	private Integer offset;
 
+	@Nullable
+	private String startMessageId;
+
 	private VkMessagesGetHistoryHttpTransaction(@Nonnull VkAccount realm) {
 		super(realm, "messages.getHistory");
 	}
@@ -107,6 +112,41 @@ public class VkMessagesGetHistoryHttpTransaction extends AbstractVkHttpTransacti
 		return result;
 	}
 
+	/**
+	 * @return transaction which loads at most <var>count</var> messages of chat sent after message with id <var>startMessageId</var>
+	 */
+	@Nonnull
+	public static HttpTransaction<List<Message>> forChatNewerThan(@Nonnull VkAccount realm, @Nonnull String chatId, @Nonnull User user, @Nonnull String startMessageId, int count) {
+		final VkMessagesGetHistoryHttpTransaction result = new VkMessagesGetHistoryHttpTransaction(realm);
+
+		result.chatId = chatId;
+		result.user = user;
+		result.setNewerThan(startMessageId, count);
+
+		return result;
+	}
+
+	/**
+	 * @return transaction which loads at most <var>count</var> messages of private chat sent after message with id <var>startMessageId</var>
+	 */
+	@Nonnull
+	public static HttpTransaction<List<Message>> forUserNewerThan(@Nonnull VkAccount realm, @Nonnull String userId, @Nonnull User user, @Nonnull String startMessageId, int count) {
+		final VkMessagesGetHistoryHttpTransaction result = new VkMessagesGetHistoryHttpTransaction(realm);
+
+		result.userId = userId;
+		result.user = user;
+		result.setNewerThan(startMessageId, count);
+
+		return result;
+	}
+
+	private void setNewerThan(@Nonnull String startMessageId, int count) {
+		this.startMessageId = startMessageId;
+		this.count = count;
+		// negative offset from start message => newer messages are returned
+		this.offset = -count;
+	}
+
 	@Nonnull
 	@Override
 	public List<NameValuePair> getRequestParameters() {
@@ -128,14 +168,18 @@ public class VkMessagesGetHistoryHttpTransaction extends AbstractVkHttpTransacti
 			requestParameters.add(new BasicNameValuePair("offset", String.valueOf(offset)));
 		}
 
+		if (startMessageId != null) {
+			requestParameters.add(new BasicNameValuePair("start_mid", startMessageId));
+		}
+
 		requestParameters.add(new BasicNameValuePair("fields", Strings.getAllValues(Arrays.asList(ApiUserField.uid, ApiUserField.last_name))));
 
 		return requestParameters;
 	}
 
 	@Override
-	protected List<Message> getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
-		final List<AccountChat> chats = new JsonChatConverter(user, chatId, userId, App.getUserService(), getAccount()).convert(json);
+	protected List<Message> getResponseFromJson(@Nonnull JsonReader json) throws IOException {
+		final List<AccountChat> chats = new JsonChatConverter(user, chatId, userId, App.getUserService(), getAccount()).convert(JsonMessages.read(json));
 
 		// todo serso: optimize - convert json to the messages directly
 		final List<Message> messages = new ArrayList<Message>(chats.size() * 10);
@@ -16,17 +16,19 @@
 
 package org.solovyev.android.messenger.realms.vk.chats;
 
+import com.google.gson.stream.JsonReader;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 import org.solovyev.android.messenger.App;
 import org.solovyev.android.messenger.chats.AccountChat;
-import org.solovyev.android.messenger.http.IllegalJsonException;
 import org.solovyev.android.messenger.messages.Message;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
 import org.solovyev.android.messenger.realms.vk.http.AbstractVkHttpTransaction;
+import org.solovyev.android.messenger.realms.vk.messages.JsonMessages;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -35,10 +37,24 @@ public class VkMessagesGetHttpTransaction extends AbstractVkHttpTransaction<List
 	@Nullable
 	private Integer count;
 
+	@Nullable
+	private String lastMessageId;
+
 	protected VkMessagesGetHttpTransaction(@Nonnull VkAccount account) {
 		super(account, "messages.get");
 	}
 
+	/**
+	 * @return transaction which loads at most <var>count</var> messages received after message with id <var>lastMessageId</var>
+	 */
+	@Nonnull
+	static VkMessagesGetHttpTransaction newerThan(@Nonnull VkAccount account, @Nonnull String lastMessageId, int count) {
+		final VkMessagesGetHttpTransaction result = new VkMessagesGetHttpTransaction(account);
+		result.lastMessageId = lastMessageId;
+		result.count = count;
+		return result;
+	}
+
 	@Nonnull
 	@Override
 	public List<NameValuePair> getRequestParameters() {
@@ -48,12 +64,16 @@ public class VkMessagesGetHttpTransaction extends AbstractVkHttpTransaction<List
 			requestParameters.add(new BasicNameValuePair("count", String.valueOf(count)));
 		}
 
+		if (lastMessageId != null) {
+			requestParameters.add(new BasicNameValuePair("last_message_id", lastMessageId));
+		}
+
 		return requestParameters;
 	}
 
 	@Override
-	protected List<Message> getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
-		final List<AccountChat> chats = new JsonChatConverter(getAccount().getUser(), null, null, App.getUserService(), getAccount()).convert(json);
+	protected List<Message> getResponseFromJson(@Nonnull JsonReader json) throws IOException {
+		final List<AccountChat> chats = new JsonChatConverter(getAccount().getUser(), null, null, App.getUserService(), getAccount()).convert(JsonMessages.read(json));
 
 		// todo serso: optimize - convert json to the messages directly
 		final List<Message> messages = new ArrayList<Message>(chats.size() * 10);
@@ -18,11 +18,14 @@ package org.solovyev.android.messenger.realms.vk.http;
 
 import android.util.Log;
 import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.protocol.HTTP;
 import org.apache.http.util.EntityUtils;
 import org.solovyev.android.http.AbstractHttpTransaction;
 import org.solovyev.android.http.HttpMethod;
@@ -30,10 +33,11 @@ import org.solovyev.android.http.HttpRuntimeIoException;
 import org.solovyev.android.messenger.accounts.AccountRuntimeException;
 import org.solovyev.android.messenger.http.IllegalJsonException;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
+import org.solovyev.android.messenger.realms.vk.VkError;
 
 import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -70,33 +74,78 @@ public abstract class AbstractVkHttpTransaction<R> extends AbstractHttpTransacti
 	public R getResponse(@Nonnull HttpResponse response) {
 		try {
 			final HttpEntity httpEntity = response.getEntity();
-			final String entity = EntityUtils.toString(httpEntity);
-
-			checkStatusCode(response, entity);
-
-			Log.d(getClass().getSimpleName(), "Json: " + entity);
+			checkStatusCode(response, httpEntity);
 
+			// response is parsed while it is read from the stream: no intermediate string or tree of JSON elements is created
+			final String charset = EntityUtils.getContentCharSet(httpEntity);
+			final JsonReader reader = new JsonReader(new InputStreamReader(httpEntity.getContent(), charset == null ? HTTP.UTF_8 : charset));
 			try {
-				return getResponseFromJson(entity);
-			} catch (JsonParseException e) {
-				throw new AccountRuntimeException(account.getId(), VkResponseErrorException.newInstance(entity, this));
-			} catch (IllegalJsonException e) {
-				throw new AccountRuntimeException(account.getId(), VkResponseErrorException.newInstance(entity, this));
+				return readResponse(reader);
+			} finally {
+				reader.close();
 			}
 		} catch (IOException e) {
 			throw new HttpRuntimeIoException(e);
 		}
 	}
 
-	private void checkStatusCode(@Nonnull HttpResponse response, @Nullable String entity) {
+	/**
+	 * Reads VK response which is either <code>{"response": ...}</code> or <code>{"error": {...}}</code>
+	 */
+	private R readResponse(@Nonnull JsonReader reader) throws IOException {
+		try {
+			R result = null;
+			boolean responseRead = false;
+
+			reader.beginObject();
+			while (reader.hasNext()) {
+				final String name = reader.nextName();
+				if ("response".equals(name)) {
+					result = getResponseFromJson(reader);
+					responseRead = true;
+				} else if ("error".equals(name)) {
+					throw new AccountRuntimeException(account.getId(), new VkResponseErrorException(VkError.fromJson(reader), this));
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+
+			if (!responseRead) {
+				throw new IllegalJsonException();
+			}
+
+			return result;
+		} catch (JsonParseException e) {
+			throw newUnableToParseException(e);
+		} catch (IllegalStateException e) {
+			// unexpected JSON token
+			throw newUnableToParseException(e);
+		} catch (MalformedJsonException e) {
+			throw newUnableToParseException(e);
+		} catch (IllegalJsonException e) {
+			throw newUnableToParseException(e);
+		}
+	}
+
+	@Nonnull
+	private AccountRuntimeException newUnableToParseException(@Nonnull Exception e) {
+		Log.e(getClass().getSimpleName(), "Unable to parse response of " + createRequest().getURI(), e);
+		return new AccountRuntimeException(account.getId(), new VkResponseErrorException(VkError.newInstance("UnableToParseJson", "Unable to parse JSON from server!"), this));
+	}
+
+	private void checkStatusCode(@Nonnull HttpResponse response, @Nonnull HttpEntity httpEntity) throws IOException {
 		final int statusCode = response.getStatusLine().getStatusCode();
 		final boolean ok = statusCode == HttpStatus.SC_OK;
 		if (!ok) {
 			Log.e(getClass().getSimpleName(), "Error in HTTP request: " + createRequest().getURI());
-			Log.e(getClass().getSimpleName(), "Got response: " + entity);
+			Log.e(getClass().getSimpleName(), "Got response: " + EntityUtils.toString(httpEntity));
 			throw new HttpRuntimeIoException(new IOException("Error status code: " + statusCode));
 		}
 	}
 
-	protected abstract R getResponseFromJson(@Nonnull String json) throws IllegalJsonException;
+	/**
+	 * @param response reader positioned at the value of "response" property, value must be read completely
+	 */
+	protected abstract R getResponseFromJson(@Nonnull JsonReader response) throws IOException, IllegalJsonException;
 }
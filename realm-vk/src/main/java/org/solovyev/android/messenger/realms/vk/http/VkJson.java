@@ -0,0 +1,47 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.http;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.solovyev.android.messenger.realms.vk.longpoll.LongPollUpdate;
+import org.solovyev.android.messenger.realms.vk.messages.JsonMessageTypedAttachment;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Holds {@link Gson} configured for VK responses.
+ * Gson is thread safe and caches type adapters => one instance is shared by all transactions instead of creating new
+ * instance for each response.
+ */
+public final class VkJson {
+
+	@Nonnull
+	private static final Gson gson = new GsonBuilder()
+			.registerTypeAdapter(JsonMessageTypedAttachment.class, new JsonMessageTypedAttachment.Adapter())
+			.registerTypeAdapter(LongPollUpdate.class, new LongPollUpdate.Adapter())
+			.create();
+
+	private VkJson() {
+		throw new AssertionError();
+	}
+
+	@Nonnull
+	public static Gson getGson() {
+		return gson;
+	}
+}
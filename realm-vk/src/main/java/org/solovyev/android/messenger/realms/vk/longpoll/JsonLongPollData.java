@@ -36,12 +36,19 @@ public class JsonLongPollData {
 	@Nullable
 	private List<LongPollUpdate> updates;
 
+	/**
+	 * 1 if events history is outdated (some events have been lost) and polling should continue with new <var>ts</var>
+	 */
+	@Nullable
+	private Integer failed;
+
 	@Nonnull
 	public VkLongPollResult toResult() throws IllegalJsonException {
 		if (ts == null) {
 			throw new IllegalJsonException();
 		}
 
-		return new VkLongPollResult(ts, updates == null ? Collections.<LongPollUpdate>emptyList() : updates);
+		final boolean eventsLost = Integer.valueOf(1).equals(failed);
+		return new VkLongPollResult(ts, updates == null ? Collections.<LongPollUpdate>emptyList() : updates, eventsLost);
 	}
 }
@@ -16,6 +16,9 @@
 
 package org.solovyev.android.messenger.realms.vk.longpoll;
 
+import org.solovyev.android.messenger.http.IllegalJsonException;
+
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 /**
@@ -48,4 +51,13 @@ public class JsonLongPollServerData {
 	public Long getTs() {
 		return ts;
 	}
+
+	@Nonnull
+	public LongPollServerData toLongPollServerData() throws IllegalJsonException {
+		if (key == null || server == null || ts == null) {
+			throw new IllegalJsonException();
+		}
+
+		return new LongPollServerData(key, server, ts);
+	}
 }
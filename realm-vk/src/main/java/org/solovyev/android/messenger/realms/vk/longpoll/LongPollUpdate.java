@@ -17,10 +17,18 @@
 package org.solovyev.android.messenger.realms.vk.longpoll;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.joda.time.DateTime;
 import org.solovyev.android.messenger.App;
 import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.accounts.AccountException;
@@ -29,6 +37,9 @@ import org.solovyev.android.messenger.chats.ChatEventType;
 import org.solovyev.android.messenger.chats.ChatService;
 import org.solovyev.android.messenger.chats.MutableAccountChat;
 import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.messages.MutableMessage;
+import org.solovyev.android.messenger.realms.vk.messages.MessageFlag;
 import org.solovyev.android.messenger.users.User;
 import org.solovyev.android.messenger.users.UserService;
 
@@ -39,6 +50,11 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonParseException;
 
 import static org.solovyev.android.messenger.chats.Chats.newAccountChat;
+import static org.solovyev.android.messenger.messages.MessageState.delivered;
+import static org.solovyev.android.messenger.messages.MessageState.received;
+import static org.solovyev.android.messenger.messages.MessageState.sent;
+import static org.solovyev.android.messenger.messages.Messages.newMessage;
+import static org.solovyev.common.text.Strings.getNotEmpty;
 
 public interface LongPollUpdate {
 
@@ -55,23 +71,21 @@ public interface LongPollUpdate {
 
 				switch (jsonArray.get(0).getAsInt()) {
 					case 0:
-						return new RemoveMessage(jsonArray.get(1).getAsInt());
-					//case 3: todo serso: implement ONE message update
-					case 4:
-						int flags = jsonArray.get(2).getAsInt();
-						int chatUserId = jsonArray.get(3).getAsInt();
-						// todo serso: uncomment after answer
-						if (/*MessageFlag.chat.isApplied(flags) && */chatUserId >= 2000000000) {
-
-							// MAGIC MAGIC MAGIC
-							int chatId = chatUserId - 2000000000;
-
-							return MessageAdded.forChat(String.valueOf(chatId));
-
-						} else {
-							int userId = chatUserId;
-							return MessageAdded.forFriend(String.valueOf(userId));
+						return new RemoveMessage(jsonArray.get(1).getAsString());
+					case 2:
+						// flags set
+						if (MessageFlag.deleted.isApplied(jsonArray.get(2).getAsInt())) {
+							return new RemoveMessage(jsonArray.get(1).getAsString());
+						}
+						break;
+					case 3:
+						// flags reset
+						if (MessageFlag.unread.isApplied(jsonArray.get(2).getAsInt())) {
+							return new MessageRead(jsonArray.get(1).getAsString());
 						}
+						break;
+					case 4:
+						return MessageAdded.fromJson(jsonArray);
 					case 8:
 						return new FriendOnline(String.valueOf(-jsonArray.get(1).getAsInt()), true);
 					case 9:
@@ -200,14 +214,41 @@ public interface LongPollUpdate {
 
 	}
 
+	/**
+	 * New message event: <code>[4, message_id, flags, from_id, timestamp, subject, text, attachments]</code>.
+	 * Event contains message itself => message is saved without requesting history of the chat
+	 */
 	static class MessageAdded implements LongPollUpdate {
 
+		// MAGIC MAGIC MAGIC: id of the peer in event is 2000000000 + chat id for multi user chats
+		private static final int CHAT_ID_OFFSET = 2000000000;
+
 		@Nullable
 		private String accountFriendId;
 
 		@Nullable
 		private String accountChatId;
 
+		@Nullable
+		private String accountMessageId;
+
+		private int flags;
+
+		@Nullable
+		private Long sendTime;
+
+		@Nullable
+		private String title;
+
+		@Nullable
+		private String body;
+
+		/**
+		 * Author of the message in multi user chat
+		 */
+		@Nullable
+		private String accountAuthorId;
+
 		private MessageAdded() {
 		}
 
@@ -229,31 +270,152 @@ public interface LongPollUpdate {
 			return result;
 		}
 
+		@Nonnull
+		static MessageAdded fromJson(@Nonnull JsonArray json) {
+			final int chatUserId = json.get(3).getAsInt();
+
+			final MessageAdded result;
+			if (chatUserId >= CHAT_ID_OFFSET) {
+				result = forChat(String.valueOf(chatUserId - CHAT_ID_OFFSET));
+			} else {
+				result = forFriend(String.valueOf(chatUserId));
+			}
+
+			result.accountMessageId = json.get(1).getAsString();
+			result.flags = json.get(2).getAsInt();
+			if (json.size() > 6) {
+				result.sendTime = json.get(4).getAsLong();
+				result.title = json.get(5).getAsString();
+				result.body = json.get(6).getAsString();
+			}
+			if (json.size() > 7 && json.get(7).isJsonObject()) {
+				final JsonElement from = json.get(7).getAsJsonObject().get("from");
+				if (from != null && !from.isJsonNull()) {
+					result.accountAuthorId = from.getAsString();
+				}
+			}
+
+			return result;
+		}
+
+		/**
+		 * @return message from event, null if event doesn't contain all the data needed to construct the message
+		 */
+		@Nullable
+		MutableMessage toMessage(@Nonnull Account account) {
+			if (accountMessageId == null || sendTime == null || body == null) {
+				return null;
+			}
+
+			final Entity user = account.getUser().getEntity();
+			final MutableMessage message = newMessage(account.newMessageEntity(accountMessageId));
+
+			final boolean unread = MessageFlag.unread.isApplied(flags);
+			if (MessageFlag.outbox.isApplied(flags)) {
+				message.setAuthor(user);
+				if (accountFriendId != null) {
+					message.setRecipient(account.newUserEntity(accountFriendId));
+				}
+				message.setState(unread ? sent : delivered);
+				message.setRead(true);
+			} else {
+				if (accountFriendId != null) {
+					message.setAuthor(account.newUserEntity(accountFriendId));
+					message.setRecipient(user);
+				} else if (accountAuthorId != null) {
+					message.setAuthor(account.newUserEntity(accountAuthorId));
+				} else {
+					// author of multi user chat message is unknown
+					return null;
+				}
+				message.setState(received);
+				message.setRead(!unread);
+			}
+
+			message.setSendDate(new DateTime(sendTime * 1000L));
+			message.setTitle(getNotEmpty(title, ""));
+			message.setBody(body);
+
+			return message;
+		}
+
 		@Override
 		public void doUpdate(@Nonnull Account account) throws AccountException {
-			final Chat chat;
-			if (this.accountChatId != null) {
-				final Entity chatId = account.newChatEntity(this.accountChatId);
-				final Chat oldChat = getChatService().getChatById(chatId);
-				if (oldChat == null) {
-					final MutableAccountChat newChat = newAccountChat(account.newChatEntity(accountChatId), false);
-					newChat.addParticipant(account.getUser());
-					chat = getChatService().saveChat(account.getUser().getEntity(), newChat);
+			doUpdates(account, Collections.singletonList(this));
+		}
+
+		/**
+		 * Saves messages from events with one merge per chat. History of chat is requested only if there might be a gap
+		 * in local messages: chat has just been created or event doesn't contain the message
+		 */
+		static void doUpdates(@Nonnull Account account, @Nonnull List<MessageAdded> updates) throws AccountException {
+			if (updates.isEmpty()) {
+				return;
+			}
+
+			final ChatService chatService = getChatService();
+
+			// key: chat, value: messages from events
+			final Map<Entity, List<Message>> messagesByChats = new LinkedHashMap<Entity, List<Message>>();
+			final Set<Entity> chatsToSync = new LinkedHashSet<Entity>();
+
+			for (MessageAdded update : updates) {
+				final Chat chat;
+				boolean newChat = false;
+
+				final Entity user = account.getUser().getEntity();
+				if (update.accountChatId != null) {
+					final Chat oldChat = chatService.getChatById(account.newChatEntity(update.accountChatId));
+					if (oldChat == null) {
+						final MutableAccountChat accountChat = newAccountChat(account.newChatEntity(update.accountChatId), false);
+						accountChat.addParticipant(account.getUser());
+						chat = chatService.saveChat(user, accountChat);
+						newChat = true;
+					} else {
+						chat = oldChat;
+					}
 				} else {
-					chat = oldChat;
+					assert update.accountFriendId != null;
+					final Entity friend = account.newUserEntity(update.accountFriendId);
+					final Chat oldChat = chatService.getPrivateChat(user, friend);
+					if (oldChat == null) {
+						chat = chatService.getOrCreatePrivateChat(user, friend);
+						newChat = true;
+					} else {
+						chat = oldChat;
+					}
+				}
+
+				if (chat != null) {
+					final MutableMessage message = update.toMessage(account);
+					if (newChat || message == null) {
+						chatsToSync.add(chat.getEntity());
+					} else {
+						message.setChat(chat.getEntity());
+
+						List<Message> messages = messagesByChats.get(chat.getEntity());
+						if (messages == null) {
+							messages = new ArrayList<Message>();
+							messagesByChats.put(chat.getEntity(), messages);
+						}
+						messages.add(message);
+					}
 				}
-			} else {
-				assert accountFriendId != null;
-				chat = getChatService().getOrCreatePrivateChat(account.getUser().getEntity(), account.newUserEntity(accountFriendId));
 			}
 
-			if (chat != null) {
-				getChatService().syncNewerMessagesForChat(chat.getEntity());
+			for (Map.Entry<Entity, List<Message>> entry : messagesByChats.entrySet()) {
+				if (!chatsToSync.contains(entry.getKey())) {
+					chatService.saveMessages(entry.getKey(), entry.getValue());
+				}
+			}
+
+			for (Entity chat : chatsToSync) {
+				chatService.syncNewerMessagesForChat(chat);
 			}
 		}
 
 		@Nonnull
-		private ChatService getChatService() {
+		private static ChatService getChatService() {
 			return App.getChatService();
 		}
 	}
@@ -284,15 +446,49 @@ public interface LongPollUpdate {
 	static class RemoveMessage implements LongPollUpdate {
 
 		@Nonnull
-		private final Integer messageId;
+		private final String accountMessageId;
 
-		public RemoveMessage(@Nonnull Integer messageId) {
-			this.messageId = messageId;
+		public RemoveMessage(@Nonnull String accountMessageId) {
+			this.accountMessageId = accountMessageId;
 		}
 
 		@Override
 		public void doUpdate(@Nonnull Account account) {
-			// todo serso: implement
+			final Message message = App.getMessageService().getMessage(account.newMessageEntity(accountMessageId).getEntityId());
+			if (message != null) {
+				App.getChatService().removeMessage(message);
+			}
+		}
+	}
+
+	/**
+	 * Message has been read: by user on another device (incoming message) or by recipient (outgoing message)
+	 */
+	static class MessageRead implements LongPollUpdate {
+
+		@Nonnull
+		private final String accountMessageId;
+
+		public MessageRead(@Nonnull String accountMessageId) {
+			this.accountMessageId = accountMessageId;
+		}
+
+		@Override
+		public void doUpdate(@Nonnull Account account) {
+			final Message message = App.getMessageService().getMessage(account.newMessageEntity(accountMessageId).getEntityId());
+			if (message != null) {
+				final ChatService chatService = App.getChatService();
+				if (message.getAuthor().equals(account.getUser().getEntity())) {
+					if (message.getState() == sent) {
+						chatService.updateMessageState(message.cloneWithNewState(delivered));
+					}
+				} else if (!message.isRead()) {
+					final Chat chat = chatService.getChatById(message.getChat());
+					if (chat != null) {
+						chatService.onMessageRead(chat, message);
+					}
+				}
+			}
 		}
 	}
 
@@ -16,12 +16,14 @@
 
 package org.solovyev.android.messenger.realms.vk.longpoll;
 
-import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
 import org.solovyev.android.messenger.http.IllegalJsonException;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
 import org.solovyev.android.messenger.realms.vk.http.AbstractVkHttpTransaction;
+import org.solovyev.android.messenger.realms.vk.http.VkJson;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
 
 /**
  * User: serso
@@ -35,9 +37,11 @@ public class VkGetLongPollServerHttpTransaction extends AbstractVkHttpTransactio
 	}
 
 	@Override
-	protected LongPollServerData getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
-		final Gson gson = new Gson();
-		final JsonLongPollResponse jsonLongPollResponse = gson.fromJson(json, JsonLongPollResponse.class);
-		return jsonLongPollResponse.toLongPollServerData();
+	protected LongPollServerData getResponseFromJson(@Nonnull JsonReader json) throws IOException, IllegalJsonException {
+		final JsonLongPollServerData jsonLongPollServerData = VkJson.getGson().fromJson(json, JsonLongPollServerData.class);
+		if (jsonLongPollServerData == null) {
+			throw new IllegalJsonException();
+		}
+		return jsonLongPollServerData.toLongPollServerData();
 	}
 }
@@ -16,14 +16,13 @@
 
 package org.solovyev.android.messenger.realms.vk.longpoll;
 
-import android.util.Log;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.params.CoreConnectionPNames;
+import org.apache.http.protocol.HTTP;
 import org.apache.http.util.EntityUtils;
 import org.solovyev.android.http.AbstractHttpTransaction;
 import org.solovyev.android.http.HttpMethod;
@@ -31,9 +30,11 @@ import org.solovyev.android.http.HttpRuntimeIoException;
 import org.solovyev.android.messenger.http.IllegalJsonException;
 import org.solovyev.android.messenger.http.IllegalJsonRuntimeException;
 import org.solovyev.android.messenger.longpoll.LongPollResult;
+import org.solovyev.android.messenger.realms.vk.http.VkJson;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -56,16 +57,17 @@ public class VkGetLongPollingDataHttpTransaction extends AbstractHttpTransaction
 	public LongPollResult getResponse(@Nonnull HttpResponse response) {
 		try {
 			final HttpEntity httpEntity = response.getEntity();
-			final String json = EntityUtils.toString(httpEntity);
-			Log.i("LongPolling", json);
-
-			// prepare builder
-			final GsonBuilder builder = new GsonBuilder();
-			builder.registerTypeAdapter(LongPollUpdate.class, new LongPollUpdate.Adapter());
-			final Gson gson = builder.create();
-
-			final JsonLongPollData jsonLongPollData = gson.fromJson(json, JsonLongPollData.class);
-			return jsonLongPollData.toResult();
+			final String charset = EntityUtils.getContentCharSet(httpEntity);
+			final JsonReader reader = new JsonReader(new InputStreamReader(httpEntity.getContent(), charset == null ? HTTP.UTF_8 : charset));
+			try {
+				final JsonLongPollData jsonLongPollData = VkJson.getGson().fromJson(reader, JsonLongPollData.class);
+				if (jsonLongPollData == null) {
+					throw new IllegalJsonException();
+				}
+				return jsonLongPollData.toResult();
+			} finally {
+				reader.close();
+			}
 		} catch (IOException e) {
 			throw new HttpRuntimeIoException(e);
 		} catch (IllegalJsonException e) {
@@ -23,6 +23,7 @@ import org.solovyev.android.messenger.longpoll.LongPollResult;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -38,9 +39,19 @@ public class VkLongPollResult implements LongPollResult {
 	@Nonnull
 	private List<LongPollUpdate> updates;
 
+	/**
+	 * True if some events were lost => messages must be requested from server
+	 */
+	private final boolean eventsLost;
+
 	public VkLongPollResult(@Nonnull Long lastUpdate, @Nonnull List<LongPollUpdate> updates) {
+		this(lastUpdate, updates, false);
+	}
+
+	public VkLongPollResult(@Nonnull Long lastUpdate, @Nonnull List<LongPollUpdate> updates, boolean eventsLost) {
 		this.lastUpdate = lastUpdate;
 		this.updates = updates;
+		this.eventsLost = eventsLost;
 	}
 
 	@Override
@@ -56,7 +67,32 @@ public class VkLongPollResult implements LongPollResult {
 
 	@Override
 	public void doUpdates(@Nonnull Account account) {
+		if (eventsLost) {
+			try {
+				App.getChatService().syncMessages(account);
+			} catch (AccountException e) {
+				App.getExceptionHandler().handleException(e);
+			}
+		}
+
+		// new messages are saved first in one batch, other updates (read, removed, etc) might refer to these messages
+		final List<LongPollUpdate.MessageAdded> addedMessages = new ArrayList<LongPollUpdate.MessageAdded>();
+		final List<LongPollUpdate> otherUpdates = new ArrayList<LongPollUpdate>(updates.size());
 		for (LongPollUpdate update : updates) {
+			if (update instanceof LongPollUpdate.MessageAdded) {
+				addedMessages.add((LongPollUpdate.MessageAdded) update);
+			} else {
+				otherUpdates.add(update);
+			}
+		}
+
+		try {
+			LongPollUpdate.MessageAdded.doUpdates(account, addedMessages);
+		} catch (AccountException e) {
+			App.getExceptionHandler().handleException(e);
+		}
+
+		for (LongPollUpdate update : otherUpdates) {
 			try {
 				update.doUpdate(account);
 			} catch (AccountException e) {
@@ -64,4 +100,13 @@ public class VkLongPollResult implements LongPollResult {
 			}
 		}
 	}
+
+	@Nonnull
+	List<LongPollUpdate> getUpdates() {
+		return updates;
+	}
+
+	boolean isEventsLost() {
+		return eventsLost;
+	}
 }
@@ -16,11 +16,13 @@
 
 package org.solovyev.android.messenger.realms.vk.messages;
 
-import com.google.gson.*;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import org.solovyev.android.messenger.realms.vk.http.VkJson;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.lang.reflect.Type;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -42,37 +44,30 @@ public class JsonMessages {
 		return response;
 	}
 
-	public static class Adapter implements JsonDeserializer<JsonMessages> {
-
-		@Override
-		public JsonMessages deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
-			final JsonMessages result = new JsonMessages();
-
-			if (json.isJsonObject()) {
-				final JsonObject response = json.getAsJsonObject();
-				final JsonArray responseArray = response.getAsJsonArray("response");
-				if (responseArray != null && responseArray.isJsonArray()) {
-					boolean first = true;
+	/**
+	 * Reads messages array (<code>[count, {message}, {message}, ...]</code>) element by element
+	 *
+	 * @param reader reader positioned at the value of "response" property
+	 * @return messages
+	 */
+	@Nonnull
+	public static JsonMessages read(@Nonnull JsonReader reader) throws IOException {
+		final JsonMessages result = new JsonMessages();
 
-					result.response = new ArrayList<JsonMessage>();
-					for (JsonElement e : responseArray.getAsJsonArray()) {
-						if (first) {
-							result.count = e.getAsInt();
-							first = false;
-						} else {
-							result.response.add((JsonMessage) context.deserialize(e, JsonMessage.class));
-						}
-					}
-				} else {
-					throw new JsonParseException("Unexpected JSON type: " + (responseArray == null ? null : responseArray.getClass()));
-				}
+		final TypeAdapter<JsonMessage> messageAdapter = VkJson.getGson().getAdapter(JsonMessage.class);
 
-			} else {
-				throw new JsonParseException("Unexpected JSON type: " + json.getClass());
-			}
+		result.response = new ArrayList<JsonMessage>();
 
-			return result;
+		reader.beginArray();
+		if (reader.hasNext()) {
+			result.count = reader.nextInt();
 		}
+		while (reader.hasNext()) {
+			result.response.add(messageAdapter.read(reader));
+		}
+		reader.endArray();
+
+		return result;
 	}
 
 	@Nonnull
@@ -16,14 +16,15 @@
 
 package org.solovyev.android.messenger.realms.vk.messages;
 
+import com.google.gson.stream.JsonReader;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
-import org.solovyev.android.messenger.http.IllegalJsonException;
 import org.solovyev.android.messenger.realms.vk.JsonResult;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
 import org.solovyev.android.messenger.realms.vk.http.AbstractVkHttpTransaction;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.util.List;
 
 public class VkMessagesMarkAsReadHttpTransaction extends AbstractVkHttpTransaction<Boolean> {
@@ -45,7 +46,7 @@ public class VkMessagesMarkAsReadHttpTransaction extends AbstractVkHttpTransacti
 	}
 
 	@Override
-	protected Boolean getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
+	protected Boolean getResponseFromJson(@Nonnull JsonReader json) throws IOException {
 		return JsonResult.asBoolean(json);
 	}
 
@@ -16,10 +16,10 @@
 
 package org.solovyev.android.messenger.realms.vk.messages;
 
+import com.google.gson.stream.JsonReader;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 import org.solovyev.android.messenger.chats.Chat;
-import org.solovyev.android.messenger.http.IllegalJsonException;
 import org.solovyev.android.messenger.messages.Message;
 import org.solovyev.android.messenger.realms.vk.JsonResult;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
@@ -27,6 +27,7 @@ import org.solovyev.android.messenger.realms.vk.http.AbstractVkHttpTransaction;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.List;
 
 public class VkMessagesSendHttpTransaction extends AbstractVkHttpTransaction<String> {
@@ -65,7 +66,7 @@ public class VkMessagesSendHttpTransaction extends AbstractVkHttpTransaction<Str
 
 	@Nullable
 	@Override
-	protected String getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
+	protected String getResponseFromJson(@Nonnull JsonReader json) throws IOException {
 		return JsonResult.asString(json);
 	}
 }
@@ -16,21 +16,24 @@
 
 package org.solovyev.android.messenger.realms.vk.users;
 
-import com.google.common.base.Function;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.http.IllegalJsonException;
-import org.solovyev.android.messenger.http.IllegalJsonRuntimeException;
+import org.solovyev.android.messenger.realms.vk.http.VkJson;
 import org.solovyev.android.messenger.users.User;
-import org.solovyev.common.Converter;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
-import static com.google.common.collect.Iterables.transform;
-import static com.google.common.collect.Lists.newArrayList;
-import static org.solovyev.android.messenger.realms.vk.users.JsonUsers.newFromJson;
-
-public class JsonUserConverter implements Converter<String, List<User>> {
+/**
+ * Converts users array from VK response to the list of {@link User}s.
+ * Users are converted one by one while they are read => list of intermediate {@link JsonUser} objects is not kept in memory.
+ */
+public class JsonUserConverter {
 
 	@Nonnull
 	private final Account account;
@@ -39,25 +42,31 @@ public class JsonUserConverter implements Converter<String, List<User>> {
 		this.account = account;
 	}
 
+	/**
+	 * @param reader reader positioned at the users array
+	 * @return list of users
+	 */
 	@Nonnull
-	@Override
-	public List<User> convert(@Nonnull String json) {
-		final JsonUsers jsonUsersResult = newFromJson(json);
-		final List<JsonUser> jsonUsers = jsonUsersResult.getUsers();
-		return newArrayList(transform(jsonUsers, new Function<JsonUser, User>() {
-			@Override
-			public User apply(JsonUser jsonUser) {
-				try {
-					return jsonUser.toUser(account);
-				} catch (IllegalJsonException e) {
-					throw new IllegalJsonRuntimeException(e);
-				}
+	public List<User> convert(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		final TypeAdapter<JsonUser> userAdapter = VkJson.getGson().getAdapter(JsonUser.class);
+
+		final List<User> result = new ArrayList<User>();
+
+		reader.beginArray();
+		while (reader.hasNext()) {
+			if (reader.peek() == JsonToken.NULL) {
+				reader.nextNull();
+			} else {
+				result.add(userAdapter.read(reader).toUser(account));
 			}
-		}));
+		}
+		reader.endArray();
+
+		return result;
 	}
 
 	@Nonnull
-	public static Converter<String, List<User>> newInstance(@Nonnull Account account) {
+	public static JsonUserConverter newInstance(@Nonnull Account account) {
 		return new JsonUserConverter(account);
 	}
 }
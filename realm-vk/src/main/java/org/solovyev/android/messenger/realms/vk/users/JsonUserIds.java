@@ -16,26 +16,34 @@
 
 package org.solovyev.android.messenger.realms.vk.users;
 
-import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
 
 import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
-import java.util.Collections;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
-class JsonUserIds {
+final class JsonUserIds {
 
-	@Nullable
-	private List<String> response;
-
-	@Nonnull
-	public List<String> getIds() {
-		return response == null ? Collections.<String>emptyList() : response;
+	private JsonUserIds() {
+		throw new AssertionError();
 	}
 
+	/**
+	 * @param reader reader positioned at the array of user ids
+	 * @return user ids
+	 */
 	@Nonnull
-	static JsonUserIds newFromJson(@Nonnull String json) {
-		final Gson gson = new Gson();
-		return gson.fromJson(json, JsonUserIds.class);
+	static List<String> read(@Nonnull JsonReader reader) throws IOException {
+		final List<String> result = new ArrayList<String>();
+
+		reader.beginArray();
+		while (reader.hasNext()) {
+			// ids might be sent as numbers, nextString() accepts both
+			result.add(reader.nextString());
+		}
+		reader.endArray();
+
+		return result;
 	}
 }
@@ -16,7 +16,7 @@
 
 package org.solovyev.android.messenger.realms.vk.users;
 
-import com.google.gson.Gson;
+import org.solovyev.android.messenger.realms.vk.http.VkJson;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -35,7 +35,6 @@ class JsonUsers {
 
 	@Nonnull
 	static JsonUsers newFromJson(@Nonnull String json) {
-		final Gson gson = new Gson();
-		return gson.fromJson(json, JsonUsers.class);
+		return VkJson.getGson().fromJson(json, JsonUsers.class);
 	}
 }
@@ -16,15 +16,16 @@
 
 package org.solovyev.android.messenger.realms.vk.users;
 
+import com.google.gson.stream.JsonReader;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 import org.solovyev.android.messenger.http.IllegalJsonException;
-import org.solovyev.android.messenger.http.IllegalJsonRuntimeException;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
 import org.solovyev.android.messenger.realms.vk.http.AbstractVkHttpTransaction;
 import org.solovyev.android.messenger.users.User;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.util.List;
 
 public class VkFriendsGetHttpTransaction extends AbstractVkHttpTransaction<List<User>> {
@@ -43,12 +44,8 @@ public class VkFriendsGetHttpTransaction extends AbstractVkHttpTransaction<List<
 	}
 
 	@Override
-	protected List<User> getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
-		try {
-			return JsonUserConverter.newInstance(getAccount()).convert(json);
-		} catch (IllegalJsonRuntimeException e) {
-			throw e.getIllegalJsonException();
-		}
+	protected List<User> getResponseFromJson(@Nonnull JsonReader json) throws IOException, IllegalJsonException {
+		return JsonUserConverter.newInstance(getAccount()).convert(json);
 	}
 
 	@Nonnull
@@ -16,14 +16,14 @@
 
 package org.solovyev.android.messenger.realms.vk.users;
 
+import com.google.gson.stream.JsonReader;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
-import org.solovyev.android.messenger.http.IllegalJsonException;
-import org.solovyev.android.messenger.http.IllegalJsonRuntimeException;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
 import org.solovyev.android.messenger.realms.vk.http.AbstractVkHttpTransaction;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.util.List;
 
 public class VkFriendsGetOnlineHttpTransaction extends AbstractVkHttpTransaction<List<String>> {
@@ -43,12 +43,8 @@ public class VkFriendsGetOnlineHttpTransaction extends AbstractVkHttpTransaction
 
 
 	@Override
-	protected List<String> getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
-		try {
-			return JsonUserIds.newFromJson(json).getIds();
-		} catch (IllegalJsonRuntimeException e) {
-			throw e.getIllegalJsonException();
-		}
+	protected List<String> getResponseFromJson(@Nonnull JsonReader json) throws IOException {
+		return JsonUserIds.read(json);
 	}
 
 	@Nonnull
@@ -17,10 +17,10 @@
 package org.solovyev.android.messenger.realms.vk.users;
 
 import com.google.common.base.Function;
+import com.google.gson.stream.JsonReader;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 import org.solovyev.android.messenger.http.IllegalJsonException;
-import org.solovyev.android.messenger.http.IllegalJsonRuntimeException;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
 import org.solovyev.android.messenger.realms.vk.http.AbstractVkHttpTransaction;
 import org.solovyev.android.messenger.users.User;
@@ -29,6 +29,7 @@ import org.solovyev.common.text.Strings;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -96,12 +97,8 @@ public class VkUsersGetHttpTransaction extends AbstractVkHttpTransaction<List<Us
 	}
 
 	@Override
-	protected List<User> getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
-		try {
-			return JsonUserConverter.newInstance(getAccount()).convert(json);
-		} catch (IllegalJsonRuntimeException e) {
-			throw e.getIllegalJsonException();
-		}
+	protected List<User> getResponseFromJson(@Nonnull JsonReader json) throws IOException, IllegalJsonException {
+		return JsonUserConverter.newInstance(getAccount()).convert(json);
 	}
 
 }
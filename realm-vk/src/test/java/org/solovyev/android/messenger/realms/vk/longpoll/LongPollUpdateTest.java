@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.longpoll;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.realms.test.TestAccount;
+import org.solovyev.android.messenger.realms.test.TestRealm;
+import org.solovyev.android.messenger.realms.vk.http.VkJson;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.solovyev.android.messenger.messages.MessageState.received;
+import static org.solovyev.android.messenger.messages.MessageState.sent;
+
+public class LongPollUpdateTest {
+
+	private TestAccount account;
+
+	@Before
+	public void setUp() throws Exception {
+		account = new TestAccount(new TestRealm());
+	}
+
+	@Test
+	public void testShouldDecodeMessageUpdates() throws Exception {
+		final List<LongPollUpdate> updates = readUpdates("[[4,100,1,42,1380000000,\" ... \",\"Hello\",{}]," +
+				"[4,101,17,2000000005,1380000001,\"Chat\",\"Hi all\",{\"from\":\"43\"}]," +
+				"[4,102,3,42,1380000002,\" ... \",\"Answer\",{}]," +
+				"[0,100]," +
+				"[3,101,1,2000000005]," +
+				"[3,101,8,2000000005]]");
+
+		assertEquals(6, updates.size());
+
+		final Message fromFriend = ((LongPollUpdate.MessageAdded) updates.get(0)).toMessage(account);
+		assertNotNull(fromFriend);
+		assertEquals(account.newMessageEntity("100"), fromFriend.getEntity());
+		assertEquals(account.newUserEntity("42"), fromFriend.getAuthor());
+		assertEquals(account.getUser().getEntity(), fromFriend.getRecipient());
+		assertEquals("Hello", fromFriend.getBody());
+		assertEquals(1380000000000L, fromFriend.getSendDate().getMillis());
+		assertEquals(received, fromFriend.getState());
+		assertFalse(fromFriend.isRead());
+
+		final Message inChat = ((LongPollUpdate.MessageAdded) updates.get(1)).toMessage(account);
+		assertNotNull(inChat);
+		assertEquals(account.newUserEntity("43"), inChat.getAuthor());
+		assertNull(inChat.getRecipient());
+		assertEquals("Chat", inChat.getTitle());
+
+		final Message toFriend = ((LongPollUpdate.MessageAdded) updates.get(2)).toMessage(account);
+		assertNotNull(toFriend);
+		assertEquals(account.getUser().getEntity(), toFriend.getAuthor());
+		assertEquals(account.newUserEntity("42"), toFriend.getRecipient());
+		assertEquals(sent, toFriend.getState());
+		assertTrue(toFriend.isRead());
+
+		assertTrue(updates.get(3) instanceof LongPollUpdate.RemoveMessage);
+		assertTrue(updates.get(4) instanceof LongPollUpdate.MessageRead);
+		assertTrue(updates.get(5) instanceof LongPollUpdate.EmptyLongPollUpdate);
+	}
+
+	@Test
+	public void testShouldNotCreateMessageWithoutAuthor() throws Exception {
+		final List<LongPollUpdate> updates = readUpdates("[[4,101,17,2000000005,1380000001,\"Chat\",\"Hi all\"],[4,102,1,42]]");
+
+		assertNull(((LongPollUpdate.MessageAdded) updates.get(0)).toMessage(account));
+		assertNull(((LongPollUpdate.MessageAdded) updates.get(1)).toMessage(account));
+	}
+
+	@Test
+	public void testShouldMarkLostEvents() throws Exception {
+		final JsonLongPollData data = VkJson.getGson().fromJson("{\"failed\":1,\"ts\":1855}", JsonLongPollData.class);
+		final VkLongPollResult result = data.toResult();
+		assertTrue(result.isEventsLost());
+	}
+
+	private static List<LongPollUpdate> readUpdates(String updates) throws Exception {
+		final JsonLongPollData data = VkJson.getGson().fromJson("{\"ts\":1855,\"updates\":" + updates + "}", JsonLongPollData.class);
+		return data.toResult().getUpdates();
+	}
+}
@@ -16,11 +16,13 @@
 
 package org.solovyev.android.messenger.realms.vk.users;
 
+import com.google.gson.stream.JsonReader;
 import org.junit.Test;
 import org.solovyev.android.messenger.realms.test.TestAccount;
 import org.solovyev.android.messenger.realms.test.TestRealm;
 import org.solovyev.android.messenger.users.User;
 
+import java.io.StringReader;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
@@ -43,4 +45,19 @@ public class JsonUsersTest {
 		assertEquals("Павел", user1.getFirstName());
 		assertEquals("Дуров", user1.getLastName());
 	}
+
+	@Test
+	public void testShouldConvertJsonStream() throws Exception {
+		final TestAccount account = new TestAccount(new TestRealm());
+		final JsonReader reader = new JsonReader(new StringReader("[{\"uid\":\"1\",\"first_name\":\"Павел\",\"last_name\":\"Дуров\"},\n" +
+				"null,\n" +
+				"{\"uid\":6492,\"first_name\":\"Andrew\",\"last_name\":\"Rogozov\"}]"));
+
+		final List<User> users = JsonUserConverter.newInstance(account).convert(reader);
+		assertEquals(2, users.size());
+		assertEquals("1", users.get(0).getEntity().getAccountEntityId());
+		assertEquals("Дуров", users.get(0).getLastName());
+		assertEquals("6492", users.get(1).getEntity().getAccountEntityId());
+		assertEquals("Andrew", users.get(1).getFirstName());
+	}
 }
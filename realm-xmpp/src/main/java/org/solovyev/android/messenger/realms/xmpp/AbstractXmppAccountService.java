@@ -38,6 +38,11 @@ public abstract class AbstractXmppAccountService {
 		return account;
 	}
 
+	@Nonnull
+	protected XmppConnectionAware getConnectionAware() {
+		return connectionAware;
+	}
+
 	protected <R> R doOnConnection(@Nonnull XmppConnectedCallable<R> callable) throws AccountConnectionException {
 		try {
 			return connectionAware.doOnConnection(callable);
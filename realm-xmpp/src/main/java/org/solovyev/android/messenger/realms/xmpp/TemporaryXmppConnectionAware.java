@@ -16,21 +16,41 @@
 
 package org.solovyev.android.messenger.realms.xmpp;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import org.jivesoftware.smack.Connection;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.packet.IQ;
 import org.solovyev.android.messenger.accounts.AccountConnectionException;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
 
 /**
- * Temporary class which is used when realm xmpp connection is not established yet
+ * Temporary class which is used when realm xmpp connection is not established yet.
+ * Callables run on their own connection which is closed after the call. IQ requests share one connection which is
+ * created on the first request and closed when all users of the requests released it (see {@link #retain()} and
+ * {@link #release()}).
  */
+@ThreadSafe
 class TemporaryXmppConnectionAware implements XmppConnectionAware {
 
 	@Nonnull
 	private final XmppAccount realm;
 
+	@GuardedBy("this")
+	@Nullable
+	private Connection connection;
+
+	@GuardedBy("this")
+	@Nullable
+	private XmppRequestManager requestManager;
+
+	@GuardedBy("this")
+	private int users = 0;
+
 	private TemporaryXmppConnectionAware(@Nonnull XmppAccount realm) {
 		this.realm = realm;
 	}
@@ -43,7 +63,64 @@ class TemporaryXmppConnectionAware implements XmppConnectionAware {
 	@Override
 	public <R> R doOnConnection(@Nonnull XmppConnectedCallable<R> callable) throws XMPPException, AccountConnectionException {
 		final Connection connection = new XMPPConnection(realm.getConfiguration().toXmppConfiguration());
-		XmppAccountConnection.checkConnectionStatus(connection, realm);
-		return callable.call(connection);
+		try {
+			XmppAccountConnection.checkConnectionStatus(connection, realm);
+			return callable.call(connection);
+		} finally {
+			disconnect(connection);
+		}
+	}
+
+	@Nonnull
+	@Override
+	public ListenableFuture<IQ> sendIq(@Nonnull IQ request) throws AccountConnectionException {
+		return getRequestManager().sendIq(request);
+	}
+
+	@Nonnull
+	private synchronized XmppRequestManager getRequestManager() throws AccountConnectionException {
+		if (requestManager == null) {
+			final Connection connection = new XMPPConnection(realm.getConfiguration().toXmppConfiguration());
+			try {
+				XmppAccountConnection.checkConnectionStatus(connection, realm);
+			} catch (XMPPException e) {
+				disconnect(connection);
+				throw new AccountConnectionException(realm.getId(), e);
+			}
+			this.connection = connection;
+			this.requestManager = new XmppRequestManager(connection);
+		}
+		return requestManager;
+	}
+
+	/**
+	 * Registers one more user of the IQ connection, each call must be followed by {@link #release()}
+	 */
+	synchronized void retain() {
+		users++;
+	}
+
+	/**
+	 * Unregisters user of the IQ connection, connection is closed when the last user is released
+	 */
+	synchronized void release() {
+		users--;
+		if (users <= 0) {
+			users = 0;
+			if (requestManager != null) {
+				requestManager.close();
+				requestManager = null;
+			}
+			if (connection != null) {
+				disconnect(connection);
+				connection = null;
+			}
+		}
+	}
+
+	private static void disconnect(@Nonnull Connection connection) {
+		if (connection.isConnected()) {
+			connection.disconnect();
+		}
 	}
 }
@@ -61,7 +61,7 @@ public class XmppAccountBuilder extends AbstractAccountBuilder<XmppAccount, Xmpp
 
 		if (connection != null) {
 			try {
-				user = toAccountUser(accountId, accountUserId, null, connection);
+				user = toAccountUser(accountId, accountUserId, null, connection, getRealm().getAvatarStore());
 			} catch (XMPPException e) {
 				Log.e(XmppRealm.TAG, e.getMessage(), e);
 				user = newEmptyUser(Entities.newEntity(accountId, accountUserId));
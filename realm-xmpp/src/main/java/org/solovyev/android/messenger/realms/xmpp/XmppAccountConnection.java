@@ -18,7 +18,9 @@ package org.solovyev.android.messenger.realms.xmpp;
 
 import android.content.Context;
 import android.util.Log;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.jivesoftware.smack.*;
+import org.jivesoftware.smack.packet.IQ;
 import org.jivesoftware.smackx.ChatStateManager;
 import org.solovyev.android.messenger.accounts.AccountConnectionException;
 import org.solovyev.android.messenger.accounts.AccountDisconnectedException;
@@ -36,6 +38,12 @@ public class XmppAccountConnection extends LoopedAccountConnection<XmppAccount>
 	@Nullable
 	private volatile Connection connection;
 
+	/**
+	 * Request manager of {@link #connection}
+	 */
+	@Nullable
+	private volatile XmppRequestManager requestManager;
+
 	@Nonnull
 	private final ChatManagerListener chatListener;
 
@@ -45,6 +53,9 @@ public class XmppAccountConnection extends LoopedAccountConnection<XmppAccount>
 	@Nonnull
 	private final ConnectionListener connectionListener = new XmppConnectionListener();
 
+	// accessed only from connection thread
+	private boolean avatarsMigrated;
+
 	public XmppAccountConnection(@Nonnull XmppAccount account, @Nonnull Context context) {
 		super(account, context);
 		chatListener = new XmppChatListener(account);
@@ -53,6 +64,12 @@ public class XmppAccountConnection extends LoopedAccountConnection<XmppAccount>
 
 	@Override
 	protected void reconnectIfDisconnected() throws AccountConnectionException {
+		if (!avatarsMigrated) {
+			// connection thread is started after application is initialized => good place for the migration
+			XmppAvatarMigration.migrateIfNeeded(getAccount());
+			avatarsMigrated = true;
+		}
+
 		if (this.connection == null) {
 			tryToConnect(0);
 		}
@@ -68,6 +85,7 @@ public class XmppAccountConnection extends LoopedAccountConnection<XmppAccount>
 			try {
 				prepareConnection(connection, account);
 
+				this.requestManager = new XmppRequestManager(connection);
 				this.connection = connection;
 			} catch (XMPPException e) {
 				if (connectionAttempt < CONNECTION_RETRIES) {
@@ -126,6 +144,13 @@ public class XmppAccountConnection extends LoopedAccountConnection<XmppAccount>
 				localConnection.disconnect();
 			}
 		}
+
+		final XmppRequestManager localRequestManager = requestManager;
+		if (localRequestManager != null) {
+			localRequestManager.close();
+		}
+
+		requestManager = null;
 		connection = null;
 	}
 
@@ -148,9 +173,27 @@ public class XmppAccountConnection extends LoopedAccountConnection<XmppAccount>
 	@Override
 	public <R> R doOnConnection(@Nonnull XmppConnectedCallable<R> callable) throws XMPPException, AccountConnectionException {
 		if (!isStopped()) {
-			final Connection connection = tryGetConnection();
-			synchronized (connection) {
-				return callable.call(connection);
+			return callable.call(tryGetConnection());
+		} else {
+			throw new AccountDisconnectedException(getAccount().getId());
+		}
+	}
+
+	@Nonnull
+	@Override
+	public ListenableFuture<IQ> sendIq(@Nonnull IQ request) throws AccountConnectionException {
+		if (!isStopped()) {
+			try {
+				tryGetConnection();
+			} catch (XMPPException e) {
+				throw new AccountConnectionException(getAccount().getId(), e);
+			}
+
+			final XmppRequestManager localRequestManager = requestManager;
+			if (localRequestManager != null) {
+				return localRequestManager.sendIq(request);
+			} else {
+				throw new AccountConnectionException(getAccount().getId());
 			}
 		} else {
 			throw new AccountDisconnectedException(getAccount().getId());
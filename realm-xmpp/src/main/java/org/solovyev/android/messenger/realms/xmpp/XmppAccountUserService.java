@@ -28,13 +28,14 @@ import org.solovyev.android.messenger.accounts.AccountConnectionException;
 import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.users.*;
 import org.solovyev.android.properties.AProperty;
-import org.solovyev.android.security.base64.ABase64StringEncoder;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.solovyev.android.messenger.App.newSubTag;
 import static org.solovyev.android.messenger.entities.Entities.newEntity;
@@ -103,7 +104,16 @@ class XmppAccountUserService extends AbstractXmppAccountService implements Accou
 	@Nonnull
 	@Override
 	public List<User> getContacts() throws AccountConnectionException {
-		return doOnConnection(new UserContactsLoader(getAccount()));
+		final XmppAccount account = getAccount();
+		final XmppVCardLoader vCardLoader = ((XmppRealm) account.getRealm()).getVCardLoader();
+
+		final UserContactsLoader contactsLoader = new UserContactsLoader(account, vCardLoader.getCache(), userService.getContacts(account.getUser().getEntity()));
+		final List<User> contacts = doOnConnection(contactsLoader);
+
+		// vCards are loaded in background without blocking the connection, contacts will be updated after vCards are loaded
+		vCardLoader.loadVCards(account, getConnectionAware(), contactsLoader.getOutdatedUserIds());
+
+		return contacts;
 	}
 
 	@Nonnull
@@ -145,7 +155,7 @@ class XmppAccountUserService extends AbstractXmppAccountService implements Accou
 
 			if (account.isAccountUser(accountUserId)) {
 				// realm user cannot be found in roster ->  information should be loaded separately
-				result = toAccountUser(account.getId(), accountUserId, null, connection);
+				result = toAccountUser(account.getId(), accountUserId, null, connection, getAvatarStore(account));
 			} else {
 				// try to find user contacts in roster
 				final RosterEntry entry = connection.getRoster().getEntry(accountUserId);
@@ -160,19 +170,24 @@ class XmppAccountUserService extends AbstractXmppAccountService implements Accou
 		}
 	}
 
+	@Nonnull
+	private static XmppAvatarStore getAvatarStore(@Nonnull Account account) {
+		return ((XmppRealm) account.getRealm()).getAvatarStore();
+	}
+
 	@Nonnull
 	public static User toUser(@Nonnull String accountId, @Nonnull String accountUserId, @Nullable String name, @Nonnull Connection connection, @Nonnull Account account) throws XMPPException {
 		final Entity entity = newEntity(accountId, accountUserId);
-		final List<AProperty> properties = loadUserProperties(true, accountUserId, connection, name);
+		final List<AProperty> properties = loadUserProperties(true, accountUserId, connection, name, getAvatarStore(account));
 		final MutableUser user = newUser(entity, properties);
 		user.setOnline(isUserOnline(account, connection.getRoster(), entity));
 		return user;
 	}
 
 	@Nonnull
-	public static MutableUser toAccountUser(@Nonnull String accountId, @Nonnull String accountUserId, @Nullable String name, @Nonnull Connection connection) throws XMPPException {
+	public static MutableUser toAccountUser(@Nonnull String accountId, @Nonnull String accountUserId, @Nullable String name, @Nonnull Connection connection, @Nonnull XmppAvatarStore avatarStore) throws XMPPException {
 		final Entity entity = newEntity(accountId, accountUserId);
-		final List<AProperty> properties = loadUserProperties(true, accountUserId, connection, name);
+		final List<AProperty> properties = loadUserProperties(true, accountUserId, connection, name, avatarStore);
 		final MutableUser user = newUser(entity, properties);
 		user.setOnline(true);
 		return user;
@@ -182,31 +197,14 @@ class XmppAccountUserService extends AbstractXmppAccountService implements Accou
 	private static List<AProperty> loadUserProperties(boolean loadVCard,
 													  @Nonnull String accountUserId,
 													  @Nonnull Connection connection,
-													  @Nullable String name) throws XMPPException {
+													  @Nullable String name,
+													  @Nullable XmppAvatarStore avatarStore) throws XMPPException {
 		final List<AProperty> result = new ArrayList<AProperty>();
 
 		if (loadVCard) {
 			try {
-
-				final VCard userCard = new VCard();
-
-				userCard.load(connection, accountUserId);
-
-				result.add(newProperty(User.PROPERTY_FIRST_NAME, userCard.getFirstName()));
-				result.add(newProperty(User.PROPERTY_LAST_NAME, userCard.getLastName()));
-				result.add(newProperty(User.PROPERTY_NICKNAME, userCard.getNickName()));
-				result.add(newProperty(User.PROPERTY_EMAIL, userCard.getEmailHome()));
-				result.add(newProperty(User.PROPERTY_PHONE, userCard.getPhoneHome("VOICE")));
-				result.add(newProperty(XmppRealm.USER_PROPERTY_AVATAR_HASH, userCard.getAvatarHash()));
-
-				final byte[] avatar = userCard.getAvatar();
-				if (avatar != null) {
-					result.add(newProperty(XmppRealm.USER_PROPERTY_AVATAR_BASE64, ABase64StringEncoder.getInstance().convert(avatar)));
-				}
-
-				// full name
-				final String fullName = userCard.getField("FN");
-				Users.tryParseNameProperties(result, fullName);
+				assert avatarStore != null;
+				result.addAll(loadVCardProperties(connection, accountUserId, avatarStore));
 			} catch (XMPPException e) {
 				if (!isEmpty(name)) {
 					Users.tryParseNameProperties(result, name);
@@ -223,13 +221,73 @@ class XmppAccountUserService extends AbstractXmppAccountService implements Accou
 		return result;
 	}
 
+	/**
+	 * Loads user properties from vCard, blocks until vCard is received. Avatar is saved in <var>avatarStore</var>.
+	 */
+	@Nonnull
+	private static List<AProperty> loadVCardProperties(@Nonnull Connection connection, @Nonnull String accountUserId, @Nonnull XmppAvatarStore avatarStore) throws XMPPException {
+		final VCard userCard = new VCard();
+
+		userCard.load(connection, accountUserId);
+
+		return toProperties(userCard, avatarStore);
+	}
+
+	/**
+	 * @return user properties from <var>userCard</var>, avatar is saved in <var>avatarStore</var>
+	 */
+	@Nonnull
+	static List<AProperty> toProperties(@Nonnull VCard userCard, @Nonnull XmppAvatarStore avatarStore) {
+		final List<AProperty> result = new ArrayList<AProperty>();
+
+		result.add(newProperty(User.PROPERTY_FIRST_NAME, userCard.getFirstName()));
+		result.add(newProperty(User.PROPERTY_LAST_NAME, userCard.getLastName()));
+		result.add(newProperty(User.PROPERTY_NICKNAME, userCard.getNickName()));
+		result.add(newProperty(User.PROPERTY_EMAIL, userCard.getEmailHome()));
+		result.add(newProperty(User.PROPERTY_PHONE, userCard.getPhoneHome("VOICE")));
+
+		final byte[] avatar = userCard.getAvatar();
+		if (avatar != null) {
+			final String avatarHash = XmppAvatarStore.getHash(avatar);
+			avatarStore.put(avatarHash, avatar);
+			result.add(newProperty(XmppRealm.USER_PROPERTY_AVATAR_HASH, avatarHash));
+		} else {
+			result.add(newProperty(XmppRealm.USER_PROPERTY_AVATAR_HASH, null));
+		}
+
+		// full name
+		final String fullName = userCard.getField("FN");
+		Users.tryParseNameProperties(result, fullName);
+
+		return result;
+	}
+
+	/**
+	 * Creates contacts from roster entries without loading vCards: properties are taken from {@link XmppVCardCache} or
+	 * from the previously saved contacts. Ids of contacts whose vCards should be (re)loaded are collected in
+	 * {@link #getOutdatedUserIds()}.
+	 */
 	private static class UserContactsLoader implements XmppConnectedCallable<List<User>> {
 
 		@Nonnull
 		private final Account account;
 
-		private UserContactsLoader(@Nonnull Account account) {
+		@Nonnull
+		private final XmppVCardCache vCardCache;
+
+		@Nonnull
+		private final Map<Entity, User> oldContacts;
+
+		@Nonnull
+		private final List<String> outdatedUserIds = new ArrayList<String>();
+
+		private UserContactsLoader(@Nonnull Account account, @Nonnull XmppVCardCache vCardCache, @Nonnull List<User> oldContacts) {
 			this.account = account;
+			this.vCardCache = vCardCache;
+			this.oldContacts = new HashMap<Entity, User>(oldContacts.size());
+			for (User oldContact : oldContacts) {
+				this.oldContacts.put(oldContact.getEntity(), oldContact);
+			}
 		}
 
 		@Override
@@ -239,11 +297,35 @@ class XmppAccountUserService extends AbstractXmppAccountService implements Accou
 
 			final List<User> result = new ArrayList<User>(entries.size());
 			for (RosterEntry entry : entries) {
-				result.add(toUser(account.getId(), entry.getUser(), entry.getName(), connection, account));
+				final String accountUserId = entry.getUser();
+				final Entity entity = newEntity(account.getId(), accountUserId);
+
+				final String avatarHash = XmppVCardLoader.getAvatarHash(roster.getPresence(accountUserId));
+				Collection<AProperty> properties = vCardCache.get(accountUserId, avatarHash);
+				if (properties == null) {
+					outdatedUserIds.add(accountUserId);
+
+					final User oldContact = oldContacts.get(entity);
+					if (oldContact != null) {
+						// avatar is not kept in properties anymore (will be reloaded with vCard)
+						properties = XmppAvatarMigration.withoutAvatarBase64(oldContact.getPropertiesCollection());
+					} else {
+						properties = loadUserProperties(false, accountUserId, connection, entry.getName(), null);
+					}
+				}
+
+				final MutableUser user = newUser(entity, properties);
+				user.setOnline(isUserOnline(account, roster, entity));
+				result.add(user);
 			}
 
 			return result;
 		}
+
+		@Nonnull
+		List<String> getOutdatedUserIds() {
+			return outdatedUserIds;
+		}
 	}
 
 	private class OnlineUsersGetter implements XmppConnectedCallable<List<User>> {
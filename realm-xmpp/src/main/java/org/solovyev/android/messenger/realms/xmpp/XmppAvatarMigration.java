@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.xmpp;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+import org.solovyev.android.messenger.App;
+import org.solovyev.android.messenger.users.User;
+import org.solovyev.android.messenger.users.UserService;
+import org.solovyev.android.properties.AProperty;
+import org.solovyev.android.security.base64.ABase64StringDecoder;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.solovyev.android.messenger.realms.xmpp.XmppRealm.TAG;
+import static org.solovyev.android.messenger.realms.xmpp.XmppRealm.USER_PROPERTY_AVATAR_BASE64;
+import static org.solovyev.android.messenger.realms.xmpp.XmppRealm.USER_PROPERTY_AVATAR_HASH;
+import static org.solovyev.android.messenger.users.Users.newUser;
+import static org.solovyev.android.properties.Properties.newProperty;
+
+/**
+ * Moves avatars stored as base64 user properties to {@link XmppAvatarStore}. Migration is done once per account.
+ */
+final class XmppAvatarMigration {
+
+	@Nonnull
+	private static final String PREFERENCE_PREFIX = "xmpp_avatars_migrated_";
+
+	private XmppAvatarMigration() {
+		throw new AssertionError();
+	}
+
+	static void migrateIfNeeded(@Nonnull XmppAccount account) {
+		final SharedPreferences preferences = App.getPreferences();
+		final String preference = PREFERENCE_PREFIX + account.getId();
+		if (preferences.getBoolean(preference, false)) {
+			return;
+		}
+
+		final XmppAvatarStore avatarStore = ((XmppRealm) account.getRealm()).getAvatarStore();
+		final UserService userService = App.getUserService();
+
+		final List<User> users = new ArrayList<User>(userService.getContacts(account.getUser().getEntity()));
+		users.add(account.getUser());
+
+		int migrated = 0;
+		for (User user : users) {
+			final String avatarBase64 = user.getPropertyValueByName(USER_PROPERTY_AVATAR_BASE64);
+			if (avatarBase64 != null) {
+				final List<AProperty> properties = withoutAvatarBase64(user.getPropertiesCollection());
+				try {
+					final byte[] avatar = ABase64StringDecoder.getInstance().convert(avatarBase64);
+					final String avatarHash = XmppAvatarStore.getHash(avatar);
+					avatarStore.put(avatarHash, avatar);
+					properties.add(newProperty(USER_PROPERTY_AVATAR_HASH, avatarHash));
+				} catch (IllegalArgumentException e) {
+					// avatar is broken => it will be reloaded with vCard
+					Log.e(TAG, e.getMessage(), e);
+				}
+				userService.updateUser(newUser(user.getEntity(), properties));
+				migrated++;
+			}
+		}
+
+		Log.i(TAG, "Avatars migrated for account " + account.getId() + ": " + migrated);
+		preferences.edit().putBoolean(preference, true).commit();
+	}
+
+	/**
+	 * @return copy of <var>properties</var> without avatar stored in base64 (and without its hash as it must be set
+	 * together with avatar)
+	 */
+	@Nonnull
+	static List<AProperty> withoutAvatarBase64(@Nonnull Collection<AProperty> properties) {
+		final List<AProperty> result = new ArrayList<AProperty>(properties.size());
+
+		boolean hasAvatarBase64 = false;
+		for (AProperty property : properties) {
+			if (USER_PROPERTY_AVATAR_BASE64.equals(property.getName())) {
+				hasAvatarBase64 = true;
+				break;
+			}
+		}
+
+		for (AProperty property : properties) {
+			final String name = property.getName();
+			if (!USER_PROPERTY_AVATAR_BASE64.equals(name) && !(hasAvatarBase64 && USER_PROPERTY_AVATAR_HASH.equals(name))) {
+				result.add(property);
+			}
+		}
+
+		return result;
+	}
+}
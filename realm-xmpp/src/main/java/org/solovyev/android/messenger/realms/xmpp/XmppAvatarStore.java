@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.xmpp;
+
+import android.util.Log;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static org.solovyev.android.messenger.realms.xmpp.XmppRealm.TAG;
+import static org.solovyev.common.text.Strings.isEmpty;
+
+/**
+ * Content addressed storage of avatars: avatar is saved in the file named by its hash (SHA-1 as in XEP-0153), user
+ * properties contain only hash of the avatar ({@link XmppRealm#USER_PROPERTY_AVATAR_HASH})
+ */
+@ThreadSafe
+final class XmppAvatarStore {
+
+	@Nonnull
+	private final File dir;
+
+	XmppAvatarStore(@Nonnull File dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * @return file of the avatar, null if there is no avatar with such hash in the storage
+	 */
+	@Nullable
+	File getFile(@Nullable String avatarHash) {
+		if (isEmpty(avatarHash)) {
+			return null;
+		}
+
+		final File file = new File(dir, avatarHash);
+		return file.exists() ? file : null;
+	}
+
+	void put(@Nonnull String avatarHash, @Nonnull byte[] avatar) {
+		final File file = new File(dir, avatarHash);
+		if (file.exists()) {
+			// same hash => same content
+			return;
+		}
+
+		if (!dir.exists() && !dir.mkdirs()) {
+			Log.w(TAG, "Unable to create avatars directory: " + dir);
+			return;
+		}
+
+		final File tmpFile = new File(dir, avatarHash + ".tmp" + Thread.currentThread().getId());
+		try {
+			final OutputStream out = new FileOutputStream(tmpFile);
+			try {
+				out.write(avatar);
+			} finally {
+				out.close();
+			}
+
+			// rename is atomic => readers never see partially written file
+			if (!tmpFile.renameTo(file)) {
+				tmpFile.delete();
+			}
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to save avatar " + avatarHash, e);
+			tmpFile.delete();
+		}
+	}
+
+	@Nonnull
+	static String getHash(@Nonnull byte[] avatar) {
+		try {
+			final byte[] digest = MessageDigest.getInstance("SHA-1").digest(avatar);
+			final StringBuilder result = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				result.append(Character.forDigit((b >> 4) & 0xF, 16));
+				result.append(Character.forDigit(b & 0xF, 16));
+			}
+			return result.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(e);
+		}
+	}
+}
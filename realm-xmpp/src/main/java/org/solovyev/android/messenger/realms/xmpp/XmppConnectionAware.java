@@ -16,12 +16,24 @@
 
 package org.solovyev.android.messenger.realms.xmpp;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.packet.IQ;
 import org.solovyev.android.messenger.accounts.AccountConnectionException;
 
 import javax.annotation.Nonnull;
 
 public interface XmppConnectionAware {
 
+	/**
+	 * Calls <var>callable</var> on the connection. Callables are not serialized (Smack connection is thread safe) =>
+	 * independent callables may run at the same time
+	 */
 	<R> R doOnConnection(@Nonnull XmppConnectedCallable<R> callable) throws XMPPException, AccountConnectionException;
+
+	/**
+	 * Sends IQ request without blocking, see {@link XmppRequestManager#sendIq(IQ)}
+	 */
+	@Nonnull
+	ListenableFuture<IQ> sendIq(@Nonnull IQ request) throws AccountConnectionException;
 }
@@ -50,12 +50,17 @@ final class XmppMessengerSender implements XmppConnectedCallable<String> {
 
 		final Entity chatId = chat.getEntity();
 		final XmppMessageListener messageListener = new XmppMessageListener(account, chatId);
-		org.jivesoftware.smack.Chat smackChat = chatManager.getThreadChat(chatId.getAccountEntityId());
-		if (smackChat == null) {
-			// smack forget about chat ids after restart => need to create chat here
-			smackChat = chatManager.createChat(chat.getSecondUser().getAccountEntityId(), chatId.getAccountEntityId(), messageListener);
-		} else if (!smackChat.getListeners().contains(messageListener)) {
-			smackChat.addMessageListener(messageListener);
+
+		org.jivesoftware.smack.Chat smackChat;
+		// messages might be sent from different threads => chat must be created only once
+		synchronized (chatManager) {
+			smackChat = chatManager.getThreadChat(chatId.getAccountEntityId());
+			if (smackChat == null) {
+				// smack forget about chat ids after restart => need to create chat here
+				smackChat = chatManager.createChat(chat.getSecondUser().getAccountEntityId(), chatId.getAccountEntityId(), messageListener);
+			} else if (!smackChat.getListeners().contains(messageListener)) {
+				smackChat.addMessageListener(messageListener);
+			}
 		}
 
 		smackChat.sendMessage(message.getBody());
@@ -37,6 +37,7 @@ import org.solovyev.common.security.CiphererException;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.crypto.SecretKey;
+import java.io.File;
 
 import static org.solovyev.android.messenger.App.newTag;
 
@@ -51,7 +52,11 @@ public class XmppRealm extends AbstractRealm<XmppAccountConfiguration> {
     */
 
 	public static final String USER_PROPERTY_AVATAR_HASH = "avatar_hash";
-	public static final String USER_PROPERTY_AVATAR_BASE64 = "avatar_base64";
+
+	/**
+	 * Avatars were stored in user properties before {@link XmppAvatarStore}, see {@link XmppAvatarMigration}
+	 */
+	static final String USER_PROPERTY_AVATAR_BASE64 = "avatar_base64";
 
 	public static final String TAG = newTag("XMPP");
 
@@ -67,6 +72,15 @@ public class XmppRealm extends AbstractRealm<XmppAccountConfiguration> {
 	@Nonnull
 	private Application context;
 
+	@Nullable
+	private XmppVCardLoader vCardLoader;
+
+	@Nullable
+	private XmppAvatarStore avatarStore;
+
+	@Nullable
+	private XmppRealmIconService iconService;
+
 	protected XmppRealm(@Nonnull String realmId, int nameResId, int iconResId, @Nonnull Class<? extends XmppAccountConfigurationFragment> configurationFragmentClass) {
 		super(realmId, nameResId, iconResId, configurationFragmentClass, XmppAccountConfiguration.class, false, null, true);
 	}
@@ -93,12 +107,34 @@ public class XmppRealm extends AbstractRealm<XmppAccountConfiguration> {
 
 		// we need to call static initializer block
 		ServiceDiscoveryManager.class.getName();
+
+		vCardLoader = new XmppVCardLoader(new XmppVCardCache(new File(context.getCacheDir(), "xmpp_vcards")));
+		avatarStore = new XmppAvatarStore(new File(context.getFilesDir(), "xmpp_avatars"));
+	}
+
+	@Nonnull
+	XmppVCardLoader getVCardLoader() {
+		if (vCardLoader == null) {
+			throw new IllegalStateException("Realm must be initialized first");
+		}
+		return vCardLoader;
+	}
+
+	@Nonnull
+	XmppAvatarStore getAvatarStore() {
+		if (avatarStore == null) {
+			throw new IllegalStateException("Realm must be initialized first");
+		}
+		return avatarStore;
 	}
 
 	@Nonnull
 	@Override
-	public RealmIconService getRealmIconService() {
-		return new XmppRealmIconService(context, R.drawable.mpp_icon_user, R.drawable.mpp_icon_users);
+	public synchronized RealmIconService getRealmIconService() {
+		if (iconService == null) {
+			iconService = new XmppRealmIconService(context, getAvatarStore(), R.drawable.mpp_icon_user, R.drawable.mpp_icon_users);
+		}
+		return iconService;
 	}
 
 	@Nullable
@@ -17,38 +17,70 @@
 package org.solovyev.android.messenger.realms.xmpp;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
-import android.util.Log;
 import android.widget.ImageView;
+import org.solovyev.android.messenger.cache.ConcurrentLruCache;
 import org.solovyev.android.messenger.icons.RealmIconService;
 import org.solovyev.android.messenger.users.User;
-import org.solovyev.android.security.base64.ABase64StringDecoder;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.File;
 import java.util.List;
 
+import static org.solovyev.android.messenger.cache.ConcurrentLruCache.newWeightedCache;
+
 public class XmppRealmIconService implements RealmIconService {
 
+	/**
+	 * Part of max heap size which can be used by decoded avatars
+	 */
+	private static final int MEMORY_CACHE_PART = 16;
+
 	@Nonnull
 	private final Context context;
 
+	@Nonnull
+	private final XmppAvatarStore avatarStore;
+
 	private final int defaultUserIconResId;
 
 	private final int defaultUsersIconResId;
 
-	public XmppRealmIconService(@Nonnull Context context, int defaultUserIconResId, int defaultUsersIconResId) {
+	/**
+	 * Avatars are downsampled to this size as the biggest icon shown in the application has this size
+	 */
+	private final int maxAvatarSize;
+
+	/**
+	 * Decoded avatars by avatar hashes
+	 */
+	@Nonnull
+	private final ConcurrentLruCache<String, Bitmap> avatars;
+
+	public XmppRealmIconService(@Nonnull Context context, @Nonnull XmppAvatarStore avatarStore, int defaultUserIconResId, int defaultUsersIconResId) {
 		this.context = context;
+		this.avatarStore = avatarStore;
 		this.defaultUserIconResId = defaultUserIconResId;
 		this.defaultUsersIconResId = defaultUsersIconResId;
+		this.maxAvatarSize = context.getResources().getDimensionPixelSize(R.dimen.mpp_fragment_icon_size);
+
+		final long maxWeight = Runtime.getRuntime().maxMemory() / MEMORY_CACHE_PART;
+		this.avatars = newWeightedCache((int) Math.min(maxWeight, Integer.MAX_VALUE), new ConcurrentLruCache.Weigher<Bitmap>() {
+			@Override
+			public int weigh(@Nonnull Bitmap bitmap) {
+				return bitmap.getRowBytes() * bitmap.getHeight();
+			}
+		});
 	}
 
 	@Override
 	public void setUserIcon(@Nonnull User user, @Nonnull ImageView imageView) {
-		final BitmapDrawable drawable = getUserIcon(user);
-		if (drawable != null) {
-			imageView.setImageDrawable(drawable);
+		final Bitmap avatar = getUserIcon(user);
+		if (avatar != null) {
+			imageView.setImageDrawable(new BitmapDrawable(context.getResources(), avatar));
 		} else {
 			imageView.setImageDrawable(context.getResources().getDrawable(defaultUserIconResId));
 		}
@@ -70,19 +102,39 @@ public class XmppRealmIconService implements RealmIconService {
 	}
 
 	@Nullable
-	private BitmapDrawable getUserIcon(@Nonnull User user) {
-		BitmapDrawable result = null;
-
-		final String userIconBase64 = user.getPropertyValueByName(XmppRealm.USER_PROPERTY_AVATAR_BASE64);
-		if (userIconBase64 != null) {
-			try {
-				final byte[] userIconBytes = ABase64StringDecoder.getInstance().convert(userIconBase64);
-				result = new BitmapDrawable(BitmapFactory.decodeByteArray(userIconBytes, 0, userIconBytes.length));
-			} catch (IllegalArgumentException e) {
-				Log.e("XmppRealm", e.getMessage(), e);
+	private Bitmap getUserIcon(@Nonnull User user) {
+		final String avatarHash = user.getPropertyValueByName(XmppRealm.USER_PROPERTY_AVATAR_HASH);
+		if (avatarHash == null) {
+			return null;
+		}
+
+		Bitmap result = avatars.get(avatarHash);
+		if (result == null) {
+			final File file = avatarStore.getFile(avatarHash);
+			if (file != null) {
+				result = decodeAvatar(file);
+				if (result != null) {
+					avatars.put(avatarHash, result);
+				}
 			}
 		}
 
 		return result;
 	}
+
+	@Nullable
+	private Bitmap decodeAvatar(@Nonnull File file) {
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeFile(file.getPath(), options);
+
+		int sampleSize = 1;
+		while (options.outWidth / (2 * sampleSize) >= maxAvatarSize && options.outHeight / (2 * sampleSize) >= maxAvatarSize) {
+			sampleSize *= 2;
+		}
+
+		options.inJustDecodeBounds = false;
+		options.inSampleSize = sampleSize;
+		return BitmapFactory.decodeFile(file.getPath(), options);
+	}
 }
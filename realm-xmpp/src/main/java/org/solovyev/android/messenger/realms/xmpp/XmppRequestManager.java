@@ -0,0 +1,179 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.xmpp;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.jivesoftware.smack.Connection;
+import org.jivesoftware.smack.PacketListener;
+import org.jivesoftware.smack.SmackConfiguration;
+import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.filter.PacketTypeFilter;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Packet;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.util.concurrent.Futures.immediateFailedFuture;
+
+/**
+ * Asynchronous IQ requests over one connection: requests are sent without waiting for responses, responses are
+ * matched to requests by stanza id by one listener of the connection. Each request fails if no response is received in
+ * time, number of pending requests is limited by {@link #MAX_PENDING_REQUESTS} (requests over the limit fail immediately).
+ */
+@ThreadSafe
+final class XmppRequestManager {
+
+	static final int MAX_PENDING_REQUESTS = 32;
+
+	@Nonnull
+	private static final ScheduledExecutorService timeoutExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(@Nonnull Runnable r) {
+			final Thread thread = new Thread(r, "XMPP request timeouts");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	@Nonnull
+	private final Connection connection;
+
+	private final long timeoutMillis;
+
+	@Nonnull
+	private final ConcurrentMap<String, PendingRequest> pendingRequests = new ConcurrentHashMap<String, PendingRequest>();
+
+	@Nonnull
+	private final Semaphore permits = new Semaphore(MAX_PENDING_REQUESTS);
+
+	@Nonnull
+	private final PacketListener responseListener = new ResponseListener();
+
+	private volatile boolean closed = false;
+
+	XmppRequestManager(@Nonnull Connection connection) {
+		this(connection, SmackConfiguration.getPacketReplyTimeout());
+	}
+
+	XmppRequestManager(@Nonnull Connection connection, long timeoutMillis) {
+		this.connection = connection;
+		this.timeoutMillis = timeoutMillis;
+		this.connection.addPacketListener(responseListener, new PacketTypeFilter(IQ.class));
+	}
+
+	/**
+	 * @return future of the response, future fails with {@link XMPPException} if server returned an error, response
+	 * has not been received in time or request could not be sent
+	 */
+	@Nonnull
+	ListenableFuture<IQ> sendIq(@Nonnull IQ request) {
+		if (closed) {
+			return immediateFailedFuture(new XMPPException("Connection is closed"));
+		}
+
+		if (!permits.tryAcquire()) {
+			return immediateFailedFuture(new XMPPException("Too many pending requests: " + MAX_PENDING_REQUESTS));
+		}
+
+		final String id = request.getPacketID();
+		final PendingRequest pendingRequest = new PendingRequest();
+		pendingRequests.put(id, pendingRequest);
+		pendingRequest.timeout = timeoutExecutor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				complete(id, null, new XMPPException("No response from the server in " + timeoutMillis + "ms"));
+			}
+		}, timeoutMillis, TimeUnit.MILLISECONDS);
+
+		try {
+			connection.sendPacket(request);
+		} catch (RuntimeException e) {
+			// e.g. connection is not connected
+			complete(id, null, new XMPPException(e));
+		}
+
+		return pendingRequest.future;
+	}
+
+	int getPendingRequestsCount() {
+		return pendingRequests.size();
+	}
+
+	/**
+	 * Fails all pending requests, no requests can be sent after this method is called
+	 */
+	void close() {
+		closed = true;
+		connection.removePacketListener(responseListener);
+		for (String id : pendingRequests.keySet()) {
+			complete(id, null, new XMPPException("Connection is closed"));
+		}
+	}
+
+	private void complete(@Nonnull String id, @Nullable IQ response, @Nullable XMPPException error) {
+		final PendingRequest pendingRequest = pendingRequests.remove(id);
+		if (pendingRequest != null) {
+			permits.release();
+
+			final ScheduledFuture<?> timeout = pendingRequest.timeout;
+			if (timeout != null) {
+				timeout.cancel(false);
+			}
+
+			if (error != null) {
+				pendingRequest.future.setException(error);
+			} else {
+				pendingRequest.future.set(response);
+			}
+		}
+	}
+
+	private static final class PendingRequest {
+
+		@Nonnull
+		private final SettableFuture<IQ> future = SettableFuture.create();
+
+		@Nullable
+		private volatile ScheduledFuture<?> timeout;
+	}
+
+	private final class ResponseListener implements PacketListener {
+		@Override
+		public void processPacket(@Nonnull Packet packet) {
+			final IQ iq = (IQ) packet;
+			final String id = iq.getPacketID();
+			if (id != null) {
+				if (iq.getType() == IQ.Type.RESULT) {
+					complete(id, iq, null);
+				} else if (iq.getType() == IQ.Type.ERROR) {
+					complete(id, null, new XMPPException(iq.getError()));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.xmpp;
+
+import android.util.Log;
+import org.solovyev.android.properties.AProperty;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.*;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.solovyev.android.messenger.realms.xmpp.XmppRealm.TAG;
+import static org.solovyev.android.messenger.realms.xmpp.XmppRealm.USER_PROPERTY_AVATAR_BASE64;
+import static org.solovyev.android.messenger.realms.xmpp.XmppRealm.USER_PROPERTY_AVATAR_HASH;
+import static org.solovyev.android.properties.Properties.newProperty;
+
+/**
+ * Disk cache of user properties loaded from vCards. One file is stored per user, cached properties are valid while
+ * avatar hash of the user (announced in presence, see XEP-0153) is the same as hash stored in the cache.
+ */
+@ThreadSafe
+final class XmppVCardCache {
+
+	@Nonnull
+	private static final String FILE_SUFFIX = ".vcard";
+
+	@Nonnull
+	private final File dir;
+
+	XmppVCardCache(@Nonnull File dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * @param accountUserId user id
+	 * @param avatarHash    current avatar hash of the user, null if unknown (e.g. user is offline)
+	 * @return cached properties or null if there is no cached vCard or vCard has been changed
+	 */
+	@Nullable
+	List<AProperty> get(@Nonnull String accountUserId, @Nullable String avatarHash) {
+		final File file = getFile(accountUserId);
+		if (!file.exists()) {
+			return null;
+		}
+
+		final Properties properties = new Properties();
+		try {
+			final InputStream in = new BufferedInputStream(new FileInputStream(file));
+			try {
+				properties.load(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to read vCard of " + accountUserId + " from cache", e);
+			return null;
+		}
+
+		if (properties.containsKey(USER_PROPERTY_AVATAR_BASE64)) {
+			// cached before avatars were moved to XmppAvatarStore
+			return null;
+		}
+
+		if (avatarHash != null && !avatarHash.equals(nullToEmpty(properties.getProperty(USER_PROPERTY_AVATAR_HASH)))) {
+			// avatar has been changed => vCard should be reloaded
+			return null;
+		}
+
+		final List<AProperty> result = new ArrayList<AProperty>(properties.size());
+		for (String name : properties.stringPropertyNames()) {
+			result.add(newProperty(name, properties.getProperty(name)));
+		}
+		return result;
+	}
+
+	void put(@Nonnull String accountUserId, @Nonnull List<AProperty> vCardProperties) {
+		final Properties properties = new Properties();
+		for (AProperty property : vCardProperties) {
+			final String value = property.getValue();
+			if (value != null) {
+				properties.setProperty(property.getName(), value);
+			}
+		}
+
+		if (!dir.exists() && !dir.mkdirs()) {
+			Log.w(TAG, "Unable to create vCard cache directory: " + dir);
+			return;
+		}
+
+		final File file = getFile(accountUserId);
+		final File tmpFile = new File(dir, file.getName() + ".tmp");
+		try {
+			final OutputStream out = new BufferedOutputStream(new FileOutputStream(tmpFile));
+			try {
+				properties.store(out, null);
+			} finally {
+				out.close();
+			}
+
+			// rename is atomic => readers never see partially written file
+			if (!tmpFile.renameTo(file)) {
+				Log.w(TAG, "Unable to save vCard of " + accountUserId + " in cache");
+				tmpFile.delete();
+			}
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to save vCard of " + accountUserId + " in cache", e);
+			tmpFile.delete();
+		}
+	}
+
+	@Nonnull
+	private File getFile(@Nonnull String accountUserId) {
+		try {
+			return new File(dir, URLEncoder.encode(accountUserId, "UTF-8") + FILE_SUFFIX);
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	@Nonnull
+	static String nullToEmpty(@Nullable String s) {
+		return s == null ? "" : s;
+	}
+}
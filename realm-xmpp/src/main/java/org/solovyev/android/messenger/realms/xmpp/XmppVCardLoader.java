@@ -0,0 +1,223 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.xmpp;
+
+import android.util.Log;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.jivesoftware.smack.packet.DefaultPacketExtension;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.PacketExtension;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smackx.packet.VCard;
+import org.solovyev.android.messenger.App;
+import org.solovyev.android.messenger.accounts.AccountConnectionException;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.users.MutableUser;
+import org.solovyev.android.messenger.users.User;
+import org.solovyev.android.messenger.users.UserService;
+import org.solovyev.android.properties.AProperty;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.solovyev.android.messenger.realms.xmpp.XmppRealm.TAG;
+import static org.solovyev.android.messenger.realms.xmpp.XmppVCardCache.nullToEmpty;
+import static org.solovyev.android.messenger.users.Users.newUser;
+
+/**
+ * Loads vCards of contacts in background: at most {@link #MAX_CONCURRENT_REQUESTS} vCard requests are sent at the same
+ * time (through {@link XmppConnectionAware#sendIq(IQ)}, no thread waits for the response). Loaded vCards are stored in {@link XmppVCardCache} and
+ * contacts are updated through {@link UserService#updateUser(User)}. {@link TemporaryXmppConnectionAware} is retained
+ * for each queued request and released when the request is finished => temporary connection is closed when queue
+ * drains.
+ */
+@ThreadSafe
+final class XmppVCardLoader {
+
+	private static final int MAX_CONCURRENT_REQUESTS = 4;
+
+	@Nonnull
+	private static final String VCARD_UPDATE_ELEMENT = "x";
+
+	@Nonnull
+	private static final String VCARD_UPDATE_NAMESPACE = "vcard-temp:x:update";
+
+	@Nonnull
+	private final XmppVCardCache cache;
+
+	/**
+	 * Requests which are not sent yet
+	 */
+	@Nonnull
+	private final Queue<VCardRequest> queue = new ConcurrentLinkedQueue<VCardRequest>();
+
+	/**
+	 * Number of sent requests for which responses are not processed yet
+	 */
+	@Nonnull
+	private final AtomicInteger sentRequests = new AtomicInteger(0);
+
+	/**
+	 * Ids of users for which vCards are currently loading
+	 */
+	@Nonnull
+	private final ConcurrentHashMap<String, Boolean> loading = new ConcurrentHashMap<String, Boolean>();
+
+	XmppVCardLoader(@Nonnull XmppVCardCache cache) {
+		this.cache = cache;
+	}
+
+	@Nonnull
+	XmppVCardCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * @param presence presence of the user
+	 * @return avatar hash announced in presence, null if presence doesn't contain information about avatar
+	 */
+	@Nullable
+	static String getAvatarHash(@Nonnull Presence presence) {
+		final PacketExtension extension = presence.getExtension(VCARD_UPDATE_ELEMENT, VCARD_UPDATE_NAMESPACE);
+		if (extension instanceof DefaultPacketExtension) {
+			return nullToEmpty(((DefaultPacketExtension) extension).getValue("photo"));
+		} else {
+			return null;
+		}
+	}
+
+	void loadVCards(@Nonnull XmppAccount account, @Nonnull XmppConnectionAware connectionAware, @Nonnull Collection<String> accountUserIds) {
+		for (String accountUserId : accountUserIds) {
+			if (loading.putIfAbsent(accountUserId, true) == null) {
+				if (connectionAware instanceof TemporaryXmppConnectionAware) {
+					((TemporaryXmppConnectionAware) connectionAware).retain();
+				}
+				queue.add(new VCardRequest(account, connectionAware, accountUserId));
+			}
+		}
+
+		sendRequests();
+	}
+
+	private void sendRequests() {
+		while (true) {
+			final int requests = sentRequests.get();
+			if (requests >= MAX_CONCURRENT_REQUESTS) {
+				// request will be sent when one of the sent requests is finished
+				return;
+			}
+
+			if (sentRequests.compareAndSet(requests, requests + 1)) {
+				final VCardRequest request = queue.poll();
+				if (request != null) {
+					request.send();
+				} else {
+					sentRequests.decrementAndGet();
+					if (queue.isEmpty()) {
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	private final class VCardRequest implements FutureCallback<IQ> {
+
+		@Nonnull
+		private final XmppAccount account;
+
+		@Nonnull
+		private final XmppConnectionAware connectionAware;
+
+		@Nonnull
+		private final String accountUserId;
+
+		private VCardRequest(@Nonnull XmppAccount account, @Nonnull XmppConnectionAware connectionAware, @Nonnull String accountUserId) {
+			this.account = account;
+			this.connectionAware = connectionAware;
+			this.accountUserId = accountUserId;
+		}
+
+		void send() {
+			final VCard request = new VCard();
+			request.setTo(accountUserId);
+			request.setType(IQ.Type.GET);
+
+			ListenableFuture<IQ> response;
+			try {
+				response = connectionAware.sendIq(request);
+			} catch (AccountConnectionException e) {
+				response = Futures.immediateFailedFuture(e);
+			}
+
+			// response is processed in background as database and disk are accessed
+			Futures.addCallback(response, this, App.getBackground());
+		}
+
+		@Override
+		public void onSuccess(@Nullable IQ response) {
+			try {
+				if (response instanceof VCard) {
+					final List<AProperty> properties = XmppAccountUserService.toProperties((VCard) response, ((XmppRealm) account.getRealm()).getAvatarStore());
+
+					cache.put(accountUserId, properties);
+
+					final UserService userService = App.getUserService();
+					final Entity entity = account.newUserEntity(accountUserId);
+					final User oldUser = userService.getUserById(entity);
+
+					final MutableUser user = newUser(entity, properties);
+					user.setOnline(oldUser.isOnline());
+					userService.updateUser(user);
+				} else {
+					Log.w(TAG, "Unexpected response on vCard request for " + accountUserId + ": " + response);
+				}
+			} finally {
+				onFinished();
+			}
+		}
+
+		@Override
+		public void onFailure(@Nonnull Throwable e) {
+			try {
+				// For some reason vcard loading may return timeout exception => investigate this behaviour
+				// NOTE: pidgin loads user information also very slow
+				Log.w(TAG, "vCard of " + accountUserId + " was not loaded: " + e.getMessage());
+			} finally {
+				onFinished();
+			}
+		}
+
+		private void onFinished() {
+			loading.remove(accountUserId);
+			if (connectionAware instanceof TemporaryXmppConnectionAware) {
+				((TemporaryXmppConnectionAware) connectionAware).release();
+			}
+			sentRequests.decrementAndGet();
+			sendRequests();
+		}
+	}
+}
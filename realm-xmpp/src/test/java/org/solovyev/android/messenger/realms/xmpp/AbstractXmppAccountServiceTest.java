@@ -16,8 +16,10 @@
 
 package org.solovyev.android.messenger.realms.xmpp;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import org.jivesoftware.smack.Connection;
 import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.packet.IQ;
 import org.junit.Test;
 import org.solovyev.android.messenger.accounts.AccountConnectionException;
 import org.solovyev.android.messenger.accounts.AccountState;
@@ -41,6 +43,12 @@ public class AbstractXmppAccountServiceTest {
 				callable.call(mock(Connection.class));
 				return null;
 			}
+
+			@Nonnull
+			@Override
+			public ListenableFuture<IQ> sendIq(@Nonnull IQ request) throws AccountConnectionException {
+				throw new UnsupportedOperationException();
+			}
 		});
 
 		try {
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.xmpp;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class XmppAvatarStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private XmppAvatarStore store;
+
+	@Before
+	public void setUp() throws Exception {
+		store = new XmppAvatarStore(new File(folder.getRoot(), "avatars"));
+	}
+
+	@Test
+	public void testShouldCalculateSha1Hash() throws Exception {
+		assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", XmppAvatarStore.getHash("abc".getBytes("UTF-8")));
+	}
+
+	@Test
+	public void testShouldStoreAvatarByHash() throws Exception {
+		final byte[] avatar = new byte[]{1, 2, 3};
+		final String hash = XmppAvatarStore.getHash(avatar);
+		assertNull(store.getFile(hash));
+
+		store.put(hash, avatar);
+
+		final File file = store.getFile(hash);
+		assertNotNull(file);
+		assertEquals(avatar.length, file.length());
+	}
+
+	@Test
+	public void testShouldReturnNullForEmptyHash() throws Exception {
+		assertNull(store.getFile(null));
+		assertNull(store.getFile(""));
+	}
+}
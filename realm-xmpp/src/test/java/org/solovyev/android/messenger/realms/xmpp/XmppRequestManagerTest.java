@@ -0,0 +1,151 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.xmpp;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.jivesoftware.smack.Connection;
+import org.jivesoftware.smack.PacketListener;
+import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.filter.PacketFilter;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.XMPPError;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class XmppRequestManagerTest {
+
+	private Connection connection;
+
+	private XmppRequestManager requestManager;
+
+	private PacketListener responseListener;
+
+	@Before
+	public void setUp() throws Exception {
+		connection = mock(Connection.class);
+		requestManager = new XmppRequestManager(connection, 10000);
+
+		final ArgumentCaptor<PacketListener> listener = ArgumentCaptor.forClass(PacketListener.class);
+		verify(connection).addPacketListener(listener.capture(), any(PacketFilter.class));
+		responseListener = listener.getValue();
+	}
+
+	@Test
+	public void testShouldMatchResponseById() throws Exception {
+		final IQ request1 = newIq(IQ.Type.GET);
+		final IQ request2 = newIq(IQ.Type.GET);
+		final ListenableFuture<IQ> response1 = requestManager.sendIq(request1);
+		final ListenableFuture<IQ> response2 = requestManager.sendIq(request2);
+		verify(connection).sendPacket(request1);
+		verify(connection).sendPacket(request2);
+
+		final IQ result2 = newResponse(request2, IQ.Type.RESULT);
+		responseListener.processPacket(result2);
+		assertFalse(response1.isDone());
+		assertSame(result2, response2.get());
+
+		final IQ result1 = newResponse(request1, IQ.Type.RESULT);
+		responseListener.processPacket(result1);
+		assertSame(result1, response1.get());
+		assertEquals(0, requestManager.getPendingRequestsCount());
+	}
+
+	@Test
+	public void testShouldFailOnErrorResponse() throws Exception {
+		final IQ request = newIq(IQ.Type.GET);
+		final ListenableFuture<IQ> response = requestManager.sendIq(request);
+
+		final IQ error = newResponse(request, IQ.Type.ERROR);
+		error.setError(new XMPPError(XMPPError.Condition.item_not_found));
+		responseListener.processPacket(error);
+
+		assertFailed(response);
+	}
+
+	@Test
+	public void testShouldFailOnTimeout() throws Exception {
+		requestManager = new XmppRequestManager(connection, 10);
+
+		final ListenableFuture<IQ> response = requestManager.sendIq(newIq(IQ.Type.GET));
+		try {
+			response.get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof XMPPException);
+		}
+		assertEquals(0, requestManager.getPendingRequestsCount());
+	}
+
+	@Test
+	public void testShouldLimitPendingRequests() throws Exception {
+		for (int i = 0; i < XmppRequestManager.MAX_PENDING_REQUESTS; i++) {
+			assertFalse(requestManager.sendIq(newIq(IQ.Type.GET)).isDone());
+		}
+
+		final IQ request = newIq(IQ.Type.GET);
+		assertFailed(requestManager.sendIq(request));
+	}
+
+	@Test
+	public void testShouldFailPendingRequestsOnClose() throws Exception {
+		final ListenableFuture<IQ> response = requestManager.sendIq(newIq(IQ.Type.GET));
+		requestManager.close();
+
+		assertFailed(response);
+		assertFailed(requestManager.sendIq(newIq(IQ.Type.GET)));
+		verify(connection).removePacketListener(responseListener);
+	}
+
+	private static void assertFailed(@Nonnull ListenableFuture<IQ> response) throws InterruptedException {
+		assertTrue(response.isDone());
+		try {
+			response.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof XMPPException);
+		}
+	}
+
+	@Nonnull
+	private static IQ newResponse(@Nonnull IQ request, @Nonnull IQ.Type type) {
+		final IQ result = newIq(type);
+		result.setPacketID(request.getPacketID());
+		return result;
+	}
+
+	@Nonnull
+	private static IQ newIq(@Nonnull IQ.Type type) {
+		final IQ result = new IQ() {
+			@Override
+			public String getChildElementXML() {
+				return null;
+			}
+		};
+		result.setType(type);
+		return result;
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.xmpp;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.solovyev.android.messenger.users.User;
+import org.solovyev.android.properties.AProperty;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.solovyev.android.messenger.realms.xmpp.XmppRealm.USER_PROPERTY_AVATAR_HASH;
+import static org.solovyev.android.properties.Properties.newProperty;
+
+public class XmppVCardCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private XmppVCardCache cache;
+
+	@Before
+	public void setUp() throws Exception {
+		cache = new XmppVCardCache(folder.newFolder("vcards"));
+	}
+
+	@Test
+	public void testShouldReturnNullIfNotCached() throws Exception {
+		assertNull(cache.get("test@jabber.org", null));
+	}
+
+	@Test
+	public void testShouldReturnCachedPropertiesIfHashIsSame() throws Exception {
+		cache.put("test@jabber.org/resource", newProperties("hash"));
+
+		final List<AProperty> properties = cache.get("test@jabber.org/resource", "hash");
+		assertNotNull(properties);
+		final Map<String, String> values = toMap(properties);
+		assertEquals(2, values.size());
+		assertEquals("Test", values.get(User.PROPERTY_FIRST_NAME));
+		assertEquals("hash", values.get(USER_PROPERTY_AVATAR_HASH));
+	}
+
+	@Test
+	public void testShouldReturnCachedPropertiesIfHashIsUnknown() throws Exception {
+		cache.put("test@jabber.org", newProperties("hash"));
+		assertNotNull(cache.get("test@jabber.org", null));
+	}
+
+	@Test
+	public void testShouldReturnNullIfHashIsChanged() throws Exception {
+		cache.put("test@jabber.org", newProperties("hash"));
+		assertNull(cache.get("test@jabber.org", "new_hash"));
+		assertNull(cache.get("test@jabber.org", ""));
+	}
+
+	@Test
+	public void testShouldTreatMissingAvatarAsEmptyHash() throws Exception {
+		cache.put("test@jabber.org", newProperties(null));
+		assertNotNull(cache.get("test@jabber.org", ""));
+		assertNull(cache.get("test@jabber.org", "hash"));
+	}
+
+	private static Map<String, String> toMap(List<AProperty> properties) {
+		final Map<String, String> result = new HashMap<String, String>();
+		for (AProperty property : properties) {
+			result.put(property.getName(), property.getValue());
+		}
+		return result;
+	}
+
+	private static List<AProperty> newProperties(String avatarHash) {
+		final List<AProperty> result = new ArrayList<AProperty>();
+		result.add(newProperty(User.PROPERTY_FIRST_NAME, "Test"));
+		result.add(newProperty(User.PROPERTY_LAST_NAME, null));
+		result.add(newProperty(USER_PROPERTY_AVATAR_HASH, avatarHash));
+		return result;
+	}
+}